@@ -0,0 +1,108 @@
+package edu.brown.cs.student.api;
+
+import com.google.gson.Gson;
+import edu.brown.cs.student.database.BatchException;
+import edu.brown.cs.student.database.DatabaseProxy;
+import edu.brown.cs.student.database.Mutation;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a list of inserts, updates and deletes in one transaction, so that bulk edits take one
+ * request and one commit. Either every operation takes effect or none do.
+ * @author Justin Rhee
+ */
+public class Batch extends Handler implements Route {
+  /**
+   * Runs a batch of operations on the loaded database.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return String of whether the batch was committed, and the rows changed by each operation or
+   *         the operation that failed
+   * @throws SQLException thrown if SQL exception
+   */
+  @Override
+  public String handle(Request request, Response response) throws SQLException {
+    Map<String, Object> result = new LinkedHashMap<>();
+    Gson gson = new Gson();
+
+    List<Mutation> mutations = new ArrayList<>();
+    try {
+      JSONObject json = new JSONObject(request.body());
+      String defaultTable = json.optString("tb_name", null);
+      JSONArray operations = json.getJSONArray("operations");
+      for (int i = 0; i < operations.length(); i++) {
+        try {
+          mutations.add(toMutation(getDB(), operations.getJSONObject(i), defaultTable));
+        } catch (JSONException | IllegalArgumentException e) {
+          result.put("committed", false);
+          result.put("failed_index", i);
+          result.put("error", e.getMessage());
+          return gson.toJson(result);
+        }
+      }
+    } catch (JSONException | NullPointerException e) {
+      System.out.println(e.getMessage());
+      return "-1";
+    }
+
+    try {
+      int[] counts = getDB().executeBatch(mutations);
+      result.put("committed", true);
+      result.put("rows_affected", counts);
+    } catch (BatchException e) {
+      result.put("committed", false);
+      result.put("failed_index", e.getIndex());
+      result.put("error", e.getMessage());
+    }
+    return gson.toJson(result);
+  }
+
+  /**
+   * Reads one operation of a batch.
+   *
+   * @param db proxy of the database, which identifies the rows to update and delete
+   * @param operation JSON of the operation
+   * @param defaultTable table to use if the operation names none, or null
+   * @return the operation as a mutation
+   * @throws JSONException thrown if the operation is missing a field
+   * @throws IllegalArgumentException thrown if the operation is unknown or has an empty row
+   */
+  private static Mutation toMutation(DatabaseProxy db, JSONObject operation, String defaultTable)
+      throws JSONException {
+    String table = operation.has("tb_name") ? operation.getString("tb_name") : defaultTable;
+    if (table == null) {
+      throw new JSONException("No tb_name");
+    }
+    String op = operation.getString("op");
+    switch (op) {
+      case "insert":
+        return Mutation.insert(table, jsonObjectToMap(operation.getJSONObject("new_row")));
+      case "update":
+        Map<String, String> oldRow = jsonObjectToMap(operation.getJSONObject("old_row"));
+        Map<String, String> newRow = jsonObjectToMap(operation.getJSONObject("new_row"));
+        Map<String, String> changed = Mutation.changedValues(oldRow, newRow);
+        if (changed.isEmpty()) {
+          // an update that changes nothing still writes its values, so it counts the row it finds
+          changed = Mutation.changedValues(Map.of(), newRow);
+        }
+        return Mutation.update(table, db.identifyRow(table, oldRow), changed);
+      case "delete":
+        return Mutation.delete(table,
+            db.identifyRow(table, jsonObjectToMap(operation.getJSONObject("row"))));
+      default:
+        throw new IllegalArgumentException("Unknown operation " + op);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package edu.brown.cs.student.api;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compression a response body can be sent with, as named in the Accept-Encoding and
+ * Content-Encoding headers. Both encodings use DEFLATE; gzip wraps it in a gzip header and CRC,
+ * and deflate in the zlib format, as HTTP defines it.
+ * @author Justin Rhee
+ */
+public enum ContentEncoding {
+  GZIP("gzip"),
+  DEFLATE("deflate");
+
+  /** Lowest compression level, which is the fastest. */
+  public static final int MIN_LEVEL = Deflater.BEST_SPEED;
+  /** Highest compression level, which makes the smallest output. */
+  public static final int MAX_LEVEL = Deflater.BEST_COMPRESSION;
+
+  private final String token;
+
+  /**
+   * Constructs an encoding.
+   *
+   * @param token name of the encoding in HTTP headers
+   */
+  ContentEncoding(String token) {
+    this.token = token;
+  }
+
+  /**
+   * Returns the name of the encoding in HTTP headers.
+   *
+   * @return value of the Content-Encoding header
+   */
+  public String getToken() {
+    return token;
+  }
+
+  /**
+   * Compresses bytes with the encoding.
+   *
+   * @param body bytes to compress
+   * @param level compression level, from MIN_LEVEL to MAX_LEVEL
+   * @return compressed bytes
+   */
+  public byte[] compress(byte[] body, int level) {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 1);
+    try (OutputStream out = this.wrap(bytes, level)) {
+      out.write(body);
+    } catch (IOException e) {
+      // a ByteArrayOutputStream never throws
+      throw new UncheckedIOException(e);
+    }
+    return bytes.toByteArray();
+  }
+
+  /**
+   * Wraps a stream in one that compresses with the encoding.
+   *
+   * @param out stream to write the compressed bytes to
+   * @param level compression level, from MIN_LEVEL to MAX_LEVEL
+   * @return compressing stream, which must be closed to finish the output
+   * @throws IOException exception thrown while writing the gzip header
+   */
+  private OutputStream wrap(OutputStream out, int level) throws IOException {
+    if (this == GZIP) {
+      return new GZIPOutputStream(out) {
+        {
+          // nothing has been compressed yet, so the level applies to the whole body
+          def.setLevel(level);
+        }
+      };
+    }
+    Deflater deflater = new Deflater(level);
+    return new DeflaterOutputStream(out, deflater) {
+      @Override
+      public void close() throws IOException {
+        try {
+          super.close();
+        } finally {
+          // a deflater passed in holds native memory until it is ended, which close does not do
+          deflater.end();
+        }
+      }
+    };
+  }
+
+  /**
+   * Chooses the encoding to send a response with, from the Accept-Encoding header of its request.
+   * Each listed encoding may have a quality value; the accepted encoding with the highest one is
+   * chosen, gzip if they are equal, and an encoding with quality 0 is never chosen. An asterisk
+   * stands for every encoding not listed.
+   *
+   * @param acceptEncoding value of the Accept-Encoding header, or null
+   * @return the encoding, or null to send the response uncompressed
+   */
+  public static ContentEncoding negotiate(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return null;
+    }
+    double[] quality = new double[values().length];
+    Arrays.fill(quality, -1);
+    double any = -1;
+    for (String part : acceptEncoding.split(",")) {
+      String[] params = part.split(";");
+      String name = params[0].trim().toLowerCase(Locale.ROOT);
+      double q = 1;
+      for (int i = 1; i < params.length; i++) {
+        String param = params[i].trim();
+        if (param.startsWith("q=") || param.startsWith("Q=")) {
+          try {
+            q = Double.parseDouble(param.substring(2).trim());
+          } catch (NumberFormatException e) {
+            q = 0;
+          }
+        }
+      }
+      if (name.equals("*")) {
+        any = q;
+      }
+      for (ContentEncoding encoding : values()) {
+        // x-gzip is an old name for gzip that clients may still send
+        if (name.equals(encoding.token) || name.equals("x-" + encoding.token)) {
+          quality[encoding.ordinal()] = Math.max(quality[encoding.ordinal()], q);
+        }
+      }
+    }
+
+    ContentEncoding best = null;
+    double bestQuality = 0;
+    for (ContentEncoding encoding : values()) {
+      double q = quality[encoding.ordinal()] < 0 ? any : quality[encoding.ordinal()];
+      if (q > bestQuality) {
+        best = encoding;
+        bestQuality = q;
+      }
+    }
+    return best;
+  }
+}
@@ -1,5 +1,7 @@
 package edu.brown.cs.student.api;
 
+import edu.brown.cs.student.database.DatabaseProxy;
+import edu.brown.cs.student.database.Mutation;
 import org.json.JSONException;
 import org.json.JSONObject;
 import spark.Request;
@@ -7,7 +9,6 @@ import spark.Response;
 import spark.Route;
 
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -39,18 +40,11 @@ public class Delete extends Handler implements Route {
       return -1;
     }
 
-    List<String> params = new ArrayList<>();
-    // instead of using primary key, just check all the columns
-    String command = "DELETE FROM " + tableName + " WHERE ";
-
-    for (Map.Entry<String, String> entry : rowMap.entrySet()) {
-      command = command + entry.getKey() + " = ? AND ";
-      params.add(entry.getValue());
+    // the row is found by its rowid or primary key when it has one
+    if (rowMap.size() > 0) {
+      DatabaseProxy db = getDB();
+      db.executeBatch(List.of(Mutation.delete(tableName, db.identifyRow(tableName, rowMap))));
     }
-
-    command = command.substring(0, command.length() - 5) + ";";
-
-    getDB().executeQuery(command, params);
     return 1;
   }
 }
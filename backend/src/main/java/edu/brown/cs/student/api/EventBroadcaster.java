@@ -0,0 +1,423 @@
+package edu.brown.cs.student.api;
+
+import com.google.gson.Gson;
+import edu.brown.cs.student.database.DatabaseProxy;
+import edu.brown.cs.student.database.TableChanges;
+import org.json.JSONException;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pushes changes to the loaded databases to connected clients as Server-Sent Events. Each client
+ * hears about its own session, and about writes to the database its session has loaded.
+ *
+ * <p>Clients hold no thread while they wait: each connection is an asynchronous servlet request
+ * written to with non-blocking I/O, so idle clients only cost their socket and a small queue.
+ * Events are built once on a single background thread and the same bytes are queued for every
+ * client. Writes of the same table that arrive while an event is being built are sent as one
+ * event. A client that falls too far behind is disconnected, and can reconnect and reload.
+ * @author Justin Rhee
+ */
+public class EventBroadcaster {
+  private static final long HEARTBEAT_SECONDS = 15;
+  private static final int MAX_QUEUED_EVENTS = 256;
+  private static final int RETRY_MILLIS = 2000;
+  private static final byte[] HEARTBEAT = ": ping\n\n".getBytes(StandardCharsets.UTF_8);
+
+  private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+  private final ScheduledExecutorService executor;
+  private final Queue<Change> pendingChanges = new ConcurrentLinkedQueue<>();
+  private final AtomicBoolean flushScheduled = new AtomicBoolean();
+  // versions last sent for each database, by canonical path; only touched on the executor thread
+  private final Map<String, SentVersions> sent = new HashMap<>();
+
+  /**
+   * Tables of a database whose version changed.
+   */
+  private static final class Change {
+    private final String path;
+    private final DatabaseProxy db;
+    private final Set<String> tables;
+
+    /**
+     * Constructs a change.
+     *
+     * @param path canonical path of the database
+     * @param db proxy of the database
+     * @param tables names of the tables
+     */
+    Change(String path, DatabaseProxy db, Set<String> tables) {
+      this.path = path;
+      this.db = db;
+      this.tables = tables;
+    }
+  }
+
+  /**
+   * Versions of the tables of one open database that events have been sent for.
+   */
+  private static final class SentVersions {
+    private final DatabaseProxy db;
+    private final Map<String, Long> versions = new HashMap<>();
+    private String epoch;
+
+    /**
+     * Constructs the versions of a database that no event has been sent for.
+     *
+     * @param db proxy of the database
+     */
+    SentVersions(DatabaseProxy db) {
+      this.db = db;
+    }
+  }
+
+  /**
+   * Constructs a broadcaster with no clients.
+   */
+  public EventBroadcaster() {
+    executor = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread thread = new Thread(r, "events");
+      thread.setDaemon(true);
+      return thread;
+    });
+    // comments keep idle connections from timing out and find clients that went away
+    executor.scheduleAtFixedRate(() -> this.broadcast(HEARTBEAT), HEARTBEAT_SECONDS,
+        HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+  }
+
+  /**
+   * Returns the number of connected clients.
+   *
+   * @return number of clients
+   */
+  public int getClientCount() {
+    return clients.size();
+  }
+
+  /**
+   * Turns a request into an event stream. The response is committed and left open, and the
+   * calling thread returns right away.
+   *
+   * @param request request to answer with the stream
+   * @param response response to write events to
+   * @param session session of the client
+   * @param hello name and data of the first event sent to the client
+   * @throws IOException if the response cannot be committed
+   */
+  void subscribe(HttpServletRequest request, HttpServletResponse response, Session session,
+                 Map<String, Object> hello) throws IOException {
+    response.setStatus(HttpServletResponse.SC_OK);
+    response.setContentType("text/event-stream");
+    response.setCharacterEncoding("UTF-8");
+    response.setHeader("Cache-Control", "no-cache");
+    // committing the headers now also stops Spark from writing and closing the body
+    response.flushBuffer();
+
+    AsyncContext context = request.startAsync();
+    context.setTimeout(0);
+    Client client = new Client(context, response.getOutputStream(), session);
+    context.addListener(client);
+    clients.add(client);
+    client.send(("retry: " + RETRY_MILLIS + "\n").getBytes(StandardCharsets.UTF_8));
+    client.send(event("hello", hello));
+    client.out.setWriteListener(client);
+  }
+
+  /**
+   * Tells the clients of a session that it loaded another database.
+   *
+   * @param session session that loaded the database
+   * @param data data of the event
+   */
+  void dbSwitched(Session session, Map<String, Object> data) {
+    byte[] bytes = event("db_switched", data);
+    executor.execute(() -> this.sendToSession(session, bytes));
+  }
+
+  /**
+   * Tells the clients of a session that it views another table.
+   *
+   * @param session session viewing the table
+   * @param table name of the table
+   */
+  void tableSelected(Session session, String table) {
+    Map<String, Object> data = new LinkedHashMap<>();
+    data.put("table", table);
+    byte[] bytes = event("table_selected", data);
+    executor.execute(() -> this.sendToSession(session, bytes));
+  }
+
+  /**
+   * Queues an event for each table whose version changed. Called on the writing thread, so the
+   * changed rows are read later on the broadcaster's thread.
+   *
+   * @param path canonical path of the database the tables belong to
+   * @param db proxy of the database
+   * @param tables names of the tables
+   */
+  void tablesChanged(String path, DatabaseProxy db, Set<String> tables) {
+    pendingChanges.add(new Change(path, db, tables));
+    if (flushScheduled.compareAndSet(false, true)) {
+      executor.execute(this::flushChanges);
+    }
+  }
+
+  /**
+   * Sends an event with the changed rows of every table queued by tablesChanged to the clients
+   * whose session has the table's database loaded.
+   */
+  private void flushChanges() {
+    flushScheduled.set(false);
+    Map<String, Change> byPath = new LinkedHashMap<>();
+    for (Change change = pendingChanges.poll(); change != null; change = pendingChanges.poll()) {
+      Change merged = byPath.get(change.path);
+      if (merged != null && merged.db == change.db) {
+        Set<String> tables = new LinkedHashSet<>(merged.tables);
+        tables.addAll(change.tables);
+        change = new Change(change.path, change.db, tables);
+      }
+      byPath.put(change.path, change);
+    }
+
+    for (Change change : byPath.values()) {
+      List<Client> watching = new ArrayList<>();
+      for (Client client : clients) {
+        if (change.path.equals(client.session.getDBKey())) {
+          watching.add(client);
+        }
+      }
+      if (watching.isEmpty()) {
+        // the next event reads every change since the versions last sent
+        continue;
+      }
+      SentVersions versions = sent.get(change.path);
+      if (versions == null || versions.db != change.db) {
+        versions = new SentVersions(change.db);
+        sent.put(change.path, versions);
+      }
+      for (String table : change.tables) {
+        byte[] bytes = this.changedRows(versions, table);
+        for (Client client : watching) {
+          client.send(bytes);
+        }
+      }
+    }
+  }
+
+  /**
+   * Encodes the event for a table whose version changed, reading its changed rows.
+   *
+   * @param versions versions of the database already sent
+   * @param table name of the table
+   * @return encoded event
+   */
+  private byte[] changedRows(SentVersions versions, String table) {
+    try {
+      TableChanges changes = versions.db.getChanges(table,
+          versions.versions.getOrDefault(table, 0L), versions.epoch);
+      versions.epoch = changes.getEpoch();
+      versions.versions.put(table, changes.getVersion());
+      return event("table_changed", changes.toJSON());
+    } catch (SQLException | JSONException e) {
+      // the table was dropped or cannot be read; clients only learn that it changed
+      Map<String, Object> fallback = new LinkedHashMap<>();
+      fallback.put("table", table);
+      fallback.put("full_reload", true);
+      return event("table_changed", fallback);
+    }
+  }
+
+  /**
+   * Queues bytes for the clients of one session.
+   *
+   * @param session session of the clients
+   * @param bytes encoded event
+   */
+  private void sendToSession(Session session, byte[] bytes) {
+    for (Client client : clients) {
+      if (client.session == session) {
+        client.send(bytes);
+      }
+    }
+  }
+
+  /**
+   * Queues the same bytes for every client.
+   *
+   * @param bytes encoded event
+   */
+  private void broadcast(byte[] bytes) {
+    for (Client client : clients) {
+      client.send(bytes);
+    }
+  }
+
+  /**
+   * Encodes an event with JSON data.
+   *
+   * @param name name of the event
+   * @param data data of the event
+   * @return encoded event
+   */
+  private static byte[] event(String name, Map<String, Object> data) {
+    return event(name, new Gson().toJson(data));
+  }
+
+  /**
+   * Encodes an event.
+   *
+   * @param name name of the event
+   * @param json data of the event, as JSON on one line
+   * @return encoded event
+   */
+  private static byte[] event(String name, String json) {
+    return ("event: " + name + "\ndata: " + json + "\n\n").getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * One connected client and the events waiting to be written to it.
+   */
+  private final class Client implements WriteListener, AsyncListener {
+    private final AsyncContext context;
+    private final ServletOutputStream out;
+    private final Session session;
+    private final Queue<byte[]> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private boolean listening;
+    private boolean flushed = true;
+    private volatile boolean closed;
+
+    /**
+     * Constructs a client.
+     *
+     * @param context asynchronous request of the client
+     * @param out stream of the response
+     * @param session session of the client
+     */
+    Client(AsyncContext context, ServletOutputStream out, Session session) {
+      this.context = context;
+      this.out = out;
+      this.session = session;
+    }
+
+    /**
+     * Queues bytes for the client and writes as many as the connection takes without blocking.
+     *
+     * @param bytes bytes to send
+     */
+    void send(byte[] bytes) {
+      if (closed) {
+        return;
+      }
+      if (queued.incrementAndGet() > MAX_QUEUED_EVENTS) {
+        this.close();
+        return;
+      }
+      queue.add(bytes);
+      this.drain();
+    }
+
+    /**
+     * Writes queued bytes until the queue is empty or the connection stops taking them, in which
+     * case the container calls onWritePossible once it does.
+     */
+    private synchronized void drain() {
+      // nothing may be written before the write listener is registered
+      if (!listening || closed) {
+        return;
+      }
+      try {
+        while (out.isReady()) {
+          byte[] bytes = queue.poll();
+          if (bytes == null) {
+            if (flushed) {
+              return;
+            }
+            flushed = true;
+            out.flush();
+          } else {
+            queued.decrementAndGet();
+            flushed = false;
+            out.write(bytes);
+          }
+        }
+      } catch (IOException | IllegalStateException e) {
+        this.close();
+      }
+    }
+
+    /**
+     * Disconnects the client.
+     */
+    private void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      clients.remove(this);
+      queue.clear();
+      try {
+        context.complete();
+      } catch (IllegalStateException e) {
+        // already completed by the container
+      }
+    }
+
+    @Override
+    public void onWritePossible() {
+      synchronized (this) {
+        listening = true;
+      }
+      this.drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+      this.close();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+      closed = true;
+      clients.remove(this);
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+      this.close();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+      this.close();
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {
+    }
+  }
+}
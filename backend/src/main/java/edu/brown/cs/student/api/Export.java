@@ -0,0 +1,51 @@
+package edu.brown.cs.student.api;
+
+import edu.brown.cs.student.database.ExportWriter;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+
+/**
+ * Streams a whole table of the loaded database as CSV, newline-delimited JSON or binary.
+ * @author Justin Rhee
+ */
+public class Export extends Handler implements Route {
+  /**
+   * Handles a request for the rows of a table. The table and format are passed as the query
+   * parameters table and format; the table defaults to the current table and the format to csv.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return empty String once the rows are written, or -1 if the format is unknown
+   * @throws SQLException thrown if the table doesn't exist or cannot be read
+   * @throws IOException thrown if the rows cannot be written to the client
+   */
+  @Override
+  public String handle(Request request, Response response) throws SQLException, IOException {
+    String table = request.queryParams("table") != null ? request.queryParams("table")
+        : getCurTable();
+    String name = request.queryParams("format") != null ? request.queryParams("format") : "csv";
+    ExportWriter.Format format = ExportWriter.Format.of(name);
+    if (format == null) {
+      System.out.println("ERROR: Unknown export format: " + name);
+      return "-1";
+    }
+    if (getDB() == null) {
+      System.out.println("ERROR: No database loaded");
+      return "-1";
+    }
+
+    response.type(format.getContentType());
+    response.header("Content-Disposition",
+        "attachment; filename=\"" + table.replace("\"", "") + "." + format.getExtension() + "\"");
+    OutputStream out = response.raw().getOutputStream();
+    getDB().exportTable(table, format, out);
+    // flushing commits the response, so Spark does not write a body of its own after it
+    out.flush();
+    return "";
+  }
+}
@@ -0,0 +1,45 @@
+package edu.brown.cs.student.api;
+
+import edu.brown.cs.student.database.TableChanges;
+import org.json.JSONException;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.sql.SQLException;
+
+/**
+ * Returns the rows of a table that changed after a version, so that clients can keep a table up
+ * to date without reading all of it after every change.
+ * @author Justin Rhee
+ */
+public class GetChanges extends Handler implements Route {
+  /**
+   * Handles a request for the changes of a table. The table, the version the client has and the
+   * epoch it came with are passed as the query parameters table, since and epoch; without since,
+   * the client is told to read the whole table.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return String of the changed rows and the new version of the table
+   * @throws SQLException thrown if the table doesn't exist or cannot be read
+   * @throws JSONException thrown if JSON error
+   */
+  @Override
+  public String handle(Request request, Response response) throws SQLException, JSONException {
+    String table = request.queryParams("table") != null ? request.queryParams("table")
+        : getCurTable();
+    Long since;
+    try {
+      since = request.queryParams("since") == null ? null
+          : Long.parseLong(request.queryParams("since"));
+    } catch (NumberFormatException e) {
+      System.out.println("ERROR: Invalid version: " + request.queryParams("since"));
+      return "-1";
+    }
+
+    TableChanges changes = getDB().getChanges(table, since, request.queryParams("epoch"));
+    response.type("application/json");
+    return changes.toJSON();
+  }
+}
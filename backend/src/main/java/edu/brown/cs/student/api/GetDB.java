@@ -42,9 +42,8 @@ public class GetDB extends Handler implements Route {
       return "Failed.";
     }
 
-    setDB(new DatabaseProxy(dbPath), false);
-    setDBPath(dbPath);
-    Map<String, List<String>> immutableMap = ImmutableMap.of("tb_names", getDB().getTableNames());
+    DatabaseProxy dbp = openDB(dbPath, false);
+    Map<String, List<String>> immutableMap = ImmutableMap.of("tb_names", dbp.getTableNames());
 
     Gson gson = new Gson();
     return gson.toJson(immutableMap);
@@ -0,0 +1,38 @@
+package edu.brown.cs.student.api;
+
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Opens a Server-Sent Events stream of changes to the loaded database, so that clients do not
+ * have to poll for them.
+ * @author Justin Rhee
+ */
+public class GetEvents extends Handler implements Route {
+  /**
+   * Handles a request for the event stream. The first event describes the loaded database, as
+   * /get_loaded does; the stream then stays open for later events.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return empty string, as the stream is written outside of this call
+   * @throws IOException thrown if the stream cannot be opened
+   */
+  @Override
+  public String handle(Request request, Response response) throws IOException {
+    Map<String, Object> hello = new LinkedHashMap<>();
+    hello.put("loaded", getDB() != null);
+    hello.put("db_path", getDBPath());
+    hello.put("from_repl", getLoadedFromREPL());
+    hello.put("cur_table", getCurTable());
+    hello.put("tb_names", getDB() == null ? null : getDB().getTableNames());
+
+    getEvents().subscribe(request.raw(), response.raw(), getSession(), hello);
+    return "";
+  }
+}
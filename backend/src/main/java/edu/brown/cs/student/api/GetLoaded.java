@@ -14,7 +14,8 @@ import java.util.Map;
  */
 public class GetLoaded extends Handler implements Route {
   /**
-   * Handles a request for loaded metadata.
+   * Handles a request for loaded metadata. A session that has not loaded a database is told
+   * about the database of the REPL, so that a frontend can follow a database connected there.
    *
    * @param request request from frontend
    * @param response response from frontend
@@ -22,20 +23,24 @@ public class GetLoaded extends Handler implements Route {
    */
   @Override
   public String handle(Request request, Response response) {
+    Session session = getSession();
+    if (session.getDBPath() == null) {
+      session = getReplSession();
+    }
 
-    String fromREPL = getLoadedFromREPL() ? "true" : "false";
+    String fromREPL = session.isLoadedFromREPL() ? "true" : "false";
     String path;
     String loaded;
     String curTable;
 
-    if (getDBPath() == null) {
+    if (session.getDBPath() == null) {
       loaded = "false";
       path = "";
       curTable = "";
     } else {
       loaded = "true";
-      path = getDBPath();
-      curTable = getCurTable();
+      path = session.getDBPath();
+      curTable = session.getCurTable();
     }
 
     Map<String, String> immutableMap = ImmutableMap.of(
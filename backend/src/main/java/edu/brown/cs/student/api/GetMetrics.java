@@ -0,0 +1,26 @@
+package edu.brown.cs.student.api;
+
+import edu.brown.cs.student.metrics.Metrics;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+/**
+ * Returns the metrics of the server in the Prometheus text format, for a Prometheus server to
+ * scrape.
+ * @author Justin Rhee
+ */
+public class GetMetrics extends Handler implements Route {
+  /**
+   * Handles a request for the metrics of the server.
+   *
+   * @param request request from the scraper
+   * @param response response to the scraper
+   * @return every metric of the server, one sample per line
+   */
+  @Override
+  public String handle(Request request, Response response) {
+    response.type("text/plain; version=0.0.4; charset=utf-8");
+    return Metrics.REGISTRY.scrape();
+  }
+}
@@ -0,0 +1,61 @@
+package edu.brown.cs.student.api;
+
+import com.google.gson.Gson;
+import edu.brown.cs.student.database.DatabaseSchema;
+import edu.brown.cs.student.database.TableSchema;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Returns the schema of the loaded database: the columns, declared types, keys, indexes and
+ * estimated row counts of its tables.
+ * @author Justin Rhee
+ */
+public class GetSchema extends Handler implements Route {
+  /**
+   * Handles a request for the schema. With the query parameter table, only that table is
+   * returned. The schema version is sent as the ETag, so a client that sends it back in
+   * If-None-Match is answered with 304 until the schema changes.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return String of the schema, empty if no database is loaded, or -1 if the table is unknown
+   * @throws SQLException thrown if the schema cannot be read
+   */
+  @Override
+  public String handle(Request request, Response response) throws SQLException {
+    response.type("application/json");
+    if (getDB() == null) {
+      return "{}";
+    }
+    DatabaseSchema schema = getDB().getSchema();
+    String table = request.queryParams("table");
+    // the version only tells schemas of the same file apart, so the tag names the file too
+    String etag = "\"" + Integer.toHexString(getDBPath().hashCode()) + "-" + schema.getVersion()
+        + (table == null ? "" : "-" + table) + "\"";
+    response.header("ETag", etag);
+    if (etag.equals(request.headers("If-None-Match"))) {
+      response.status(304);
+      return "";
+    }
+
+    Gson gson = new Gson();
+    if (table == null) {
+      return gson.toJson(schema.toMap());
+    }
+    TableSchema info = schema.getTable(table);
+    if (info == null) {
+      System.out.println("ERROR: Table doesn't exist: " + table);
+      return "-1";
+    }
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("version", schema.getVersion());
+    result.put("table", info.toMap());
+    return gson.toJson(result);
+  }
+}
@@ -0,0 +1,33 @@
+package edu.brown.cs.student.api;
+
+import com.google.gson.Gson;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Returns how far the search indexes of the loaded database have been built.
+ * @author Justin Rhee
+ */
+public class GetSearchStatus extends Handler implements Route {
+  /**
+   * Handles a request for the progress of the search indexes.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return progress of the index of each table, empty if no database is loaded
+   */
+  @Override
+  public String handle(Request request, Response response) {
+    Map<String, Object> status = new LinkedHashMap<>();
+    if (getDB() != null) {
+      status.put("tables", getDB().getSearchProgress());
+    }
+
+    Gson gson = new Gson();
+    return gson.toJson(status);
+  }
+}
@@ -0,0 +1,38 @@
+package edu.brown.cs.student.api;
+
+import com.google.gson.Gson;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Returns statistics about the loaded database.
+ * @author Justin Rhee
+ */
+public class GetStats extends Handler implements Route {
+  /**
+   * Handles a request for statistics about the loaded database.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return statistics about the loaded database, empty if no database is loaded
+   */
+  @Override
+  public String handle(Request request, Response response) {
+    Map<String, Object> stats = new LinkedHashMap<>();
+    stats.put("databases", getRegistry().getStats());
+    stats.put("event_clients", getEvents().getClientCount());
+    stats.put("memory", getConfig().getMemoryStats());
+    if (getDB() != null) {
+      stats.put("pool", getDB().getPoolStats());
+      stats.put("cache", getDB().getCacheStats());
+      stats.put("tables", getDB().getTableCacheStats());
+    }
+
+    Gson gson = new Gson();
+    return gson.toJson(stats);
+  }
+}
@@ -1,19 +1,41 @@
 package edu.brown.cs.student.api;
 
-import edu.brown.cs.student.database.QueryOutput;
+import edu.brown.cs.student.database.EncodedResponse;
+import edu.brown.cs.student.database.JsonStreamWriter;
+import edu.brown.cs.student.database.SortKey;
+import edu.brown.cs.student.database.TablePage;
+import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 import spark.Request;
 import spark.Response;
 import spark.Route;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
- * Returns a JSON of a table for a given database.
+ * Returns a JSON of a table for a given database. If the request has a page_size, only one page
+ * of the table is returned, starting after the row given by cursor.
+ *
+ * <p>Whole tables are written to the response as they are serialized rather than built up as one
+ * String. With stream set, rows go straight from the database to the response without being
+ * cached, and with format set to compact, column names are sent once instead of in every row.
+ *
+ * <p>With sort set, the table is sorted on the server and returned as one page, or as the whole
+ * table if there is no page_size. The cursor of a sorted page is a row offset.
+ *
+ * <p>Otherwise the serialized table is cached until the table is written, and sent with an ETag.
+ * A request whose If-None-Match header holds that ETag gets 304 Not Modified and no body.
  * @author Justin Rhee
  */
 public class GetTable extends Handler implements Route {
+  private static final int MAX_PAGE_SIZE = 10000;
+  private static final int NOT_MODIFIED = 304;
+
   /**
    * Returns a JSON of a table for a given database.
    *
@@ -22,20 +44,109 @@ public class GetTable extends Handler implements Route {
    * @return String of table requested
    * @throws SQLException thrown if SQL exception
    * @throws JSONException thrown if JSON error
+   * @throws IOException thrown if the response cannot be written
    */
   @Override
-  public String handle(Request request, Response response) throws SQLException, JSONException {
+  public String handle(Request request, Response response) throws SQLException, JSONException,
+      IOException {
+    int pageSize = 0;
+    Long cursor = null;
+    boolean stream;
+    boolean compact;
+    List<SortKey> sort = new ArrayList<>();
     try {
       JSONObject json = new JSONObject(request.body());
       if (!getLoadedFromREPL()) {
         setCurTable(json.getString("tb_name"));
       }
+      if (json.has("page_size")) {
+        pageSize = Math.min(json.getInt("page_size"), MAX_PAGE_SIZE);
+        if (json.has("cursor") && !json.isNull("cursor")) {
+          cursor = json.getLong("cursor");
+        }
+      }
+      stream = json.optBoolean("stream", false);
+      compact = "compact".equals(json.optString("format", "rows"));
+      JSONArray sortArray = json.optJSONArray("sort");
+      if (sortArray != null) {
+        for (int i = 0; i < sortArray.length(); i++) {
+          JSONObject key = sortArray.getJSONObject(i);
+          sort.add(new SortKey(key.getString("column"), key.optBoolean("ascending", true)));
+        }
+      } else if (json.has("sort")) {
+        sort.add(new SortKey(json.getString("sort"), json.optBoolean("ascending", true)));
+      }
     } catch (JSONException e) {
       System.out.println(e.getMessage());
       return "-1";
     }
 
-    QueryOutput table = getDB().executeQuery("SELECT * FROM " + getCurTable());
-    return table.toJSON();
+    if (!sort.isEmpty()) {
+      long offset = cursor == null ? 0 : cursor;
+      int size = pageSize > 0 ? pageSize : Integer.MAX_VALUE;
+      return getDB().getSortedPage(getCurTable(), sort, offset, size).toJSON();
+    }
+
+    if (pageSize > 0) {
+      TablePage page = getDB().getPage(getCurTable(), cursor, pageSize);
+      return page.toJSON();
+    }
+
+    response.type("application/json");
+    OutputStream out = response.raw().getOutputStream();
+    if (stream) {
+      getDB().streamTable(getCurTable(), new JsonStreamWriter(out, compact));
+      // flushing commits the response, so Spark does not write a body of its own after it
+      out.flush();
+      return "";
+    }
+
+    response.raw().addHeader("Access-Control-Expose-Headers", "ETag");
+    response.header("Vary", "Accept-Encoding");
+    String etag = getDB().getTableETag(getCurTable(), compact);
+    if (matches(request.headers("If-None-Match"), etag)) {
+      response.header("ETag", etag);
+      response.status(NOT_MODIFIED);
+      return "";
+    }
+
+    EncodedResponse encoded = getDB().getEncodedTable(getCurTable(), compact);
+    byte[] body = encoded.getBody();
+    ContentEncoding encoding = ContentEncoding.negotiate(request.headers("Accept-Encoding"));
+    if (encoding != null && body.length >= getConfig().getCompressionMinBytes()) {
+      // compressed once and cached with the table, so a hot table is not compressed again
+      body = getDB().getCompressedTable(encoded, getCurTable(), compact, encoding);
+      response.header("Content-Encoding", encoding.getToken());
+    }
+    response.header("ETag", encoded.getETag());
+    response.raw().setContentLength(body.length);
+    // written to the raw stream so that Spark does not compress the compressed body again
+    out.write(body);
+    out.flush();
+    return "";
+  }
+
+  /**
+   * Checks whether an If-None-Match header holds an entity tag.
+   *
+   * @param ifNoneMatch value of the If-None-Match header, or null
+   * @param etag entity tag, in quotes
+   * @return true if the header is * or lists the tag
+   */
+  private static boolean matches(String ifNoneMatch, String etag) {
+    if (ifNoneMatch == null) {
+      return false;
+    }
+    for (String tag : ifNoneMatch.split(",")) {
+      tag = tag.trim();
+      // If-None-Match compares weakly, so a weak form of the tag matches too
+      if (tag.startsWith("W/")) {
+        tag = tag.substring(2);
+      }
+      if (tag.equals("*") || tag.equals(etag)) {
+        return true;
+      }
+    }
+    return false;
   }
 }
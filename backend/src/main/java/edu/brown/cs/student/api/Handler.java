@@ -1,40 +1,222 @@
 package edu.brown.cs.student.api;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import edu.brown.cs.student.database.DatabaseProxy;
+import edu.brown.cs.student.database.DatabaseRegistry;
+import edu.brown.cs.student.database.ProxyConfig;
 import org.json.JSONException;
 import org.json.JSONObject;
+import org.eclipse.jetty.io.EndPoint;
+import spark.Request;
+import spark.Response;
 
+import java.io.FileNotFoundException;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.sql.SQLException;
+import java.util.Base64;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
 
 /**
  * Contains shared metadata of the database.
+ *
+ * <p>Each client has its own session, holding the database it loaded and the table it views.
+ * A request names its session with the X-Session-Id header, the session query parameter or the
+ * session cookie. A request that names none is given a new session, whose id is sent back in the
+ * header and the cookie. Only the REPL uses the REPL session. Databases are opened through a
+ * registry that shares one proxy between every session using the same file.
  */
 public abstract class Handler {
-  private static DatabaseProxy db;
-  private static String dbpath;
-  private static String curTable;
-  private static boolean loadedFromREPL;
+  private static final String SESSION_HEADER = "X-Session-Id";
+  private static final String SESSION_PARAM = "session";
+  private static final String SESSION_COOKIE = "session";
+  private static final int SESSION_ID_BYTES = 16;
+  private static final int MAX_SESSIONS = 10000;
+  private static final long SESSION_IDLE_HOURS = 24;
+
+  private static volatile ProxyConfig config = new ProxyConfig();
+  private static final EventBroadcaster EVENTS = new EventBroadcaster();
+  private static volatile DatabaseRegistry registry = newRegistry(config);
+  private static final Session REPL_SESSION = new Session(null);
+  private static final SecureRandom SESSION_IDS = new SecureRandom();
+  private static final Cache<String, Session> SESSIONS = CacheBuilder.newBuilder()
+      .maximumSize(MAX_SESSIONS)
+      .expireAfterAccess(SESSION_IDLE_HOURS, TimeUnit.HOURS)
+      .build();
+  // session of the request being handled by the current thread
+  private static final ThreadLocal<Session> CURRENT_SESSION = new ThreadLocal<>();
+
+  /**
+   * Creates a registry of databases opened with some settings.
+   *
+   * @param proxyConfig settings for the database proxies
+   * @return new registry
+   */
+  private static DatabaseRegistry newRegistry(ProxyConfig proxyConfig) {
+    return new DatabaseRegistry(proxyConfig, proxyConfig.getMaxOpenDatabases(),
+        proxyConfig.getDatabaseIdleSeconds(), (path, dbp) -> {
+          dbp.addChangeListener(tables -> EVENTS.tablesChanged(path, dbp, tables));
+          if (proxyConfig.isSearchIndex()) {
+            dbp.buildSearchIndex();
+          }
+        });
+  }
+
+  /**
+   * Makes the session named by a request the session of the current thread, until the next call.
+   * A request that names no session is given a new one, and its id is sent with the response.
+   *
+   * @param request request being handled
+   * @param response response to the request
+   */
+  public static void bindSession(Request request, Response response) {
+    DatabaseProxy.setClientCheck(clientGone(request));
+    if ("OPTIONS".equals(request.requestMethod())) {
+      // preflight requests carry neither the header nor the cookie, and need no session
+      return;
+    }
+    String id = request.headers(SESSION_HEADER);
+    if (id == null) {
+      id = sessionParam(request.queryString());
+    }
+    if (id == null) {
+      id = request.cookie(SESSION_COOKIE);
+    }
+    if (id == null || id.isEmpty()) {
+      id = newSessionId();
+      response.header(SESSION_HEADER, id);
+      response.raw().addHeader("Access-Control-Expose-Headers", SESSION_HEADER);
+      response.cookie("/", SESSION_COOKIE, id, -1, false, true);
+    }
+    CURRENT_SESSION.set(SESSIONS.asMap().computeIfAbsent(id, Session::new));
+  }
 
   /**
-   * Sets database proxy.
+   * Returns a new random session id, which cannot be guessed from the ids of other sessions.
    *
-   * @param dbp database proxy
+   * @return session id
+   */
+  private static String newSessionId() {
+    byte[] bytes = new byte[SESSION_ID_BYTES];
+    SESSION_IDS.nextBytes(bytes);
+    return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+  }
+
+  /**
+   * Finds the session parameter in a query string. The query string is parsed by hand, because
+   * asking the servlet for parameters would consume a form-encoded request body.
+   *
+   * @param queryString query string of a request, or null
+   * @return value of the session parameter, or null if there is none
+   */
+  private static String sessionParam(String queryString) {
+    if (queryString == null) {
+      return null;
+    }
+    for (String pair : queryString.split("&")) {
+      if (pair.startsWith(SESSION_PARAM + "=")) {
+        return URLDecoder.decode(pair.substring(SESSION_PARAM.length() + 1),
+            StandardCharsets.UTF_8);
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Returns the current thread to the REPL session.
+   */
+  public static void unbindSession() {
+    CURRENT_SESSION.remove();
+    DatabaseProxy.setClientCheck(null);
+  }
+
+  /**
+   * Returns a check for whether the client of a request has closed its connection. The check
+   * only looks at the state of the connection and never reads from it, so bytes of a pipelined
+   * request stay with Jetty's parser. Jetty marks the connection closed once a read or write on
+   * it fails; a query whose client left without that happening runs until its time limit, and a
+   * streamed response stops at its first failed write.
+   *
+   * @param request request of the client
+   * @return check that returns true once the client is gone, or null if it cannot be checked
+   */
+  private static BooleanSupplier clientGone(Request request) {
+    org.eclipse.jetty.server.Request base =
+        org.eclipse.jetty.server.Request.getBaseRequest(request.raw());
+    if (base == null) {
+      return null;
+    }
+    EndPoint endPoint = base.getHttpChannel().getEndPoint();
+    return () -> !endPoint.isOpen();
+  }
+
+  /**
+   * Returns the session of the current thread, which is the REPL session outside of requests.
+   *
+   * @return the session
+   */
+  static Session getSession() {
+    Session session = CURRENT_SESSION.get();
+    return session == null ? REPL_SESSION : session;
+  }
+
+  /**
+   * Returns the session of the REPL.
+   *
+   * @return the REPL session
+   */
+  static Session getReplSession() {
+    return REPL_SESSION;
+  }
+
+  /**
+   * Loads a database in the current session, opening it if no session has it open.
+   *
+   * @param path path to a SQL database
    * @param fromREPL flag for whether the database was loaded from the REPL
+   * @return proxy of the database
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws FileNotFoundException thrown when file indicated by filepath is not found
+   * @throws ClassNotFoundException exception thrown by Class.forName
    */
-  public static void setDB(DatabaseProxy dbp, boolean fromREPL) {
-    db = dbp;
-    curTable = dbp.getTableNames().get(0);
-    loadedFromREPL = fromREPL;
+  public static DatabaseProxy openDB(String path, boolean fromREPL)
+      throws SQLException, FileNotFoundException, ClassNotFoundException {
+    DatabaseProxy dbp = registry.get(path);
+    Session session = getSession();
+    session.load(path, DatabaseRegistry.canonicalPath(path), dbp.getTableNames().get(0),
+        fromREPL);
+
+    Map<String, Object> event = new LinkedHashMap<>();
+    event.put("db_path", path);
+    event.put("from_repl", fromREPL);
+    event.put("cur_table", session.getCurTable());
+    event.put("tb_names", dbp.getTableNames());
+    EVENTS.dbSwitched(session, event);
+    return dbp;
   }
 
   /**
    * Returns database proxy.
-   * @return connected database proxy
+   * @return database proxy of the current session, or null if it has not loaded one
    */
   public static DatabaseProxy getDB() {
-    return db;
+    String key = getSession().getDBKey();
+    if (key == null) {
+      return null;
+    }
+    try {
+      return registry.get(key);
+    } catch (SQLException | FileNotFoundException | ClassNotFoundException e) {
+      System.out.println("ERROR: Could not reopen " + key + ": " + e.getMessage());
+      return null;
+    }
   }
 
   /**
@@ -43,7 +225,9 @@ public abstract class Handler {
    * @param name name of table being viewed
    */
   public static void setCurTable(String name) {
-    curTable = name;
+    Session session = getSession();
+    session.setCurTable(name);
+    EVENTS.tableSelected(session, name);
   }
 
   /**
@@ -52,7 +236,7 @@ public abstract class Handler {
    * @return name of current table.
    */
   public static String getCurTable() {
-    return curTable;
+    return getSession().getCurTable();
   }
 
   /**
@@ -61,25 +245,56 @@ public abstract class Handler {
    * @return flag for if the database was loaded from the REPL
    */
   public static boolean getLoadedFromREPL() {
-    return loadedFromREPL;
+    return getSession().isLoadedFromREPL();
+  }
+
+  /**
+   * Returns the path to the connected database.
+   *
+   * @return the path to the connected database, as it was given when it was loaded
+   */
+  public static String getDBPath() {
+    return getSession().getDBPath();
   }
 
   /**
-   * Sets the path to the loaded database.
+   * Returns the broadcaster that pushes changes to the loaded database to clients.
    *
-   * @param path path to the loaded database
+   * @return event broadcaster
    */
-  public static void setDBPath(String path) {
-    dbpath = path;
+  public static EventBroadcaster getEvents() {
+    return EVENTS;
   }
 
   /**
-   * Returns the path to the connected database.
+   * Returns the registry of open databases.
    *
-   * @return the path to the connected database
+   * @return registry of open databases
    */
-  public static String getDBPath() {
-    return dbpath;
+  public static DatabaseRegistry getRegistry() {
+    return registry;
+  }
+
+  /**
+   * Sets the settings used for databases opened from here on. Databases that are already open
+   * are closed, and opened again with the new settings when they are next used.
+   *
+   * @param proxyConfig settings for new database proxies
+   */
+  public static void setConfig(ProxyConfig proxyConfig) {
+    DatabaseRegistry oldRegistry = registry;
+    config = proxyConfig;
+    registry = newRegistry(proxyConfig);
+    oldRegistry.closeAll();
+  }
+
+  /**
+   * Returns the settings used for newly opened databases.
+   *
+   * @return settings for new database proxies
+   */
+  public static ProxyConfig getConfig() {
+    return config;
   }
 
   public static Map<String, String> jsonObjectToMap(JSONObject json) throws JSONException {
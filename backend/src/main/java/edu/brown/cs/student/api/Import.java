@@ -0,0 +1,59 @@
+package edu.brown.cs.student.api;
+
+import com.google.gson.Gson;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Imports a CSV file on the server into a table of the loaded database.
+ * @author Justin Rhee
+ */
+public class Import extends Handler implements Route {
+  /**
+   * Imports a CSV file, then builds the indexes asked for.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return String of the number of rows imported and how fast, or of why the import failed
+   */
+  @Override
+  public String handle(Request request, Response response) {
+    String csvPath;
+    String tableName;
+    List<String> indexColumns = new ArrayList<>();
+    try {
+      JSONObject json = new JSONObject(request.body());
+      csvPath = json.getString("csv_path");
+      tableName = json.getString("tb_name");
+      JSONArray indexes = json.optJSONArray("indexes");
+      for (int i = 0; indexes != null && i < indexes.length(); i++) {
+        indexColumns.add(indexes.getString(i));
+      }
+    } catch (JSONException | NullPointerException e) {
+      System.out.println(e.getMessage());
+      return "-1";
+    }
+
+    Gson gson = new Gson();
+    response.type("application/json");
+    if (getDB() == null) {
+      return gson.toJson(Map.of("error", "No database loaded"));
+    }
+    try {
+      return gson.toJson(getDB().importCsv(csvPath, tableName, indexColumns));
+    } catch (IOException | SQLException e) {
+      System.out.println("ERROR: " + e.getMessage());
+      return gson.toJson(Map.of("error", e.getMessage()));
+    }
+  }
+}
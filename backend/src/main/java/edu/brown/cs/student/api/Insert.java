@@ -1,5 +1,6 @@
 package edu.brown.cs.student.api;
 
+import edu.brown.cs.student.database.Mutation;
 import org.json.JSONException;
 import org.json.JSONObject;
 import spark.Request;
@@ -7,7 +8,6 @@ import spark.Response;
 import spark.Route;
 
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -39,25 +39,8 @@ public class Insert extends Handler implements Route {
       return -1;
     }
 
-    List<String> params = new ArrayList<>();
     if (newRow.size() > 0) {
-      String command = "INSERT INTO " + tableName;
-
-      String cols = " (";
-      String values = "VALUES (";
-      for (Map.Entry<String, String> entry : newRow.entrySet()) {
-        cols = cols + entry.getKey() + ", ";
-        values = values + "?, ";
-        params.add(entry.getValue());
-      }
-
-      cols = cols.substring(0, cols.length() - 2) + ") ";
-      values = values.substring(0, values.length() - 2) + ") ";
-
-      command = command + cols + values;
-      command = command + ";";
-
-      getDB().executeQuery(command, params);
+      getDB().executeBatch(List.of(Mutation.insert(tableName, newRow)));
     }
 
     return 1;
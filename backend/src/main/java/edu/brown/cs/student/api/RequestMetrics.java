@@ -0,0 +1,189 @@
+package edu.brown.cs.student.api;
+
+import edu.brown.cs.student.metrics.Counter;
+import edu.brown.cs.student.metrics.Histogram;
+import edu.brown.cs.student.metrics.Metrics;
+import edu.brown.cs.student.metrics.MetricsRegistry;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Records the number, latency and response size of requests by method and route, for the
+ * /metrics route.
+ *
+ * <p>Requests are labelled with the path of the route that handled them. Paths that are not
+ * routes, and methods other than GET, POST and OPTIONS, are labelled "other", so that clients
+ * cannot make up new labels without end. The metrics of a method and route are looked up once,
+ * and recording a request to them allocates nothing.
+ * @author Justin Rhee
+ */
+public class RequestMetrics {
+  private static final String OTHER = "other";
+  private static final Set<String> METHODS = Set.of("GET", "POST", "OPTIONS");
+  private static final int MAX_STATUS = 600;
+
+  private final MetricsRegistry registry;
+  private final Set<String> routes;
+  private final Map<String, Map<String, RouteMetrics>> byMethod = new ConcurrentHashMap<>();
+  // the start time of the request each thread is handling, which is only read on that thread
+  private final ThreadLocal<long[]> started = ThreadLocal.withInitial(() -> new long[1]);
+
+  /**
+   * The metrics of requests of one method to one route.
+   */
+  private final class RouteMetrics {
+    private final String method;
+    private final String route;
+    private final Histogram duration;
+    private final Histogram size;
+    private final AtomicReferenceArray<Counter> byStatus =
+        new AtomicReferenceArray<>(MAX_STATUS);
+
+    /**
+     * Registers the latency and size histograms of a method and route.
+     *
+     * @param method method of the requests
+     * @param route path of the route, or other
+     */
+    RouteMetrics(String method, String route) {
+      this.method = method;
+      this.route = route;
+      this.duration = registry.histogram("http_request_duration_seconds",
+          "Time from the start of handling a request until its response is written.",
+          Metrics.LATENCY_BUCKETS, Metrics.NANOS_PER_SECOND, "method", method, "route", route);
+      this.size = registry.histogram("http_response_size_bytes",
+          "Size of response bodies as sent, after any compression.", Metrics.SIZE_BUCKETS, 1,
+          "method", method, "route", route);
+    }
+
+    /**
+     * Returns the counter of requests answered with a status, registering it the first time.
+     *
+     * @param status HTTP status code
+     * @return the counter of the status
+     */
+    Counter requests(int status) {
+      int index = status >= 0 && status < MAX_STATUS ? status : 0;
+      Counter counter = byStatus.get(index);
+      if (counter == null) {
+        counter = registry.counter("http_requests_total", "Requests handled, by status code.",
+            "method", method, "route", route, "code", Integer.toString(index));
+        byStatus.set(index, counter);
+      }
+      return counter;
+    }
+  }
+
+  /**
+   * Constructs the request metrics of a server.
+   *
+   * @param registry registry to record to
+   * @param routes paths of the routes of the server
+   */
+  public RequestMetrics(MetricsRegistry registry, Set<String> routes) {
+    this.registry = registry;
+    this.routes = Set.copyOf(routes);
+  }
+
+  /**
+   * Notes when handling of a request started. Registered as a before filter.
+   *
+   * @param request request being handled
+   * @param response response to it
+   */
+  public void start(Request request, Response response) {
+    started.get()[0] = System.nanoTime();
+  }
+
+  /**
+   * Records a request that has been handled. Registered as an after-after filter, after any
+   * filter that changes the body, so that the size is what is sent.
+   *
+   * @param request request that was handled
+   * @param response response to it
+   */
+  public void record(Request request, Response response) {
+    long[] start = started.get();
+    if (start[0] == 0) {
+      return;
+    }
+    long nanos = System.nanoTime() - start[0];
+    start[0] = 0;
+
+    RouteMetrics metrics = this.lookup(request.requestMethod(), request.pathInfo());
+    HttpServletResponse raw = response.raw();
+    metrics.requests(raw.getStatus()).increment();
+    metrics.duration.record(nanos);
+    metrics.size.record(bodyBytes(raw, response.body()));
+  }
+
+  /**
+   * Returns the metrics of a method and path, registering them the first time.
+   *
+   * @param method method of the request
+   * @param path path of the request
+   * @return the metrics of the method and route
+   */
+  private RouteMetrics lookup(String method, String path) {
+    String methodLabel = METHODS.contains(method) ? method : OTHER;
+    String route = path != null && routes.contains(path) ? path : OTHER;
+    Map<String, RouteMetrics> byRoute = byMethod.get(methodLabel);
+    if (byRoute == null) {
+      byRoute = byMethod.computeIfAbsent(methodLabel, m -> new ConcurrentHashMap<>());
+    }
+    RouteMetrics metrics = byRoute.get(route);
+    if (metrics == null) {
+      metrics = byRoute.computeIfAbsent(route, r -> new RouteMetrics(methodLabel, r));
+    }
+    return metrics;
+  }
+
+  /**
+   * Returns the size of the body of a response: what has been written to it, or if nothing has,
+   * the body Spark is about to write.
+   *
+   * @param raw the servlet response
+   * @param body body set by the route, or null
+   * @return size of the body in bytes
+   */
+  private static long bodyBytes(HttpServletResponse raw, String body) {
+    if (raw.isCommitted()) {
+      if (raw instanceof org.eclipse.jetty.server.Response) {
+        return ((org.eclipse.jetty.server.Response) raw).getHttpOutput().getWritten();
+      }
+      return 0;
+    }
+    return body == null ? 0 : utf8Length(body);
+  }
+
+  /**
+   * Counts the bytes of a string in UTF-8 without encoding it.
+   *
+   * @param s string to measure
+   * @return length of the string in UTF-8
+   */
+  static long utf8Length(String s) {
+    long bytes = 0;
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+      if (c < 0x80) {
+        bytes++;
+      } else if (c < 0x800) {
+        bytes += 2;
+      } else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+          && Character.isLowSurrogate(s.charAt(i + 1))) {
+        bytes += 4;
+        i++;
+      } else {
+        bytes += 3;
+      }
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,59 @@
+package edu.brown.cs.student.api;
+
+import edu.brown.cs.student.database.ProxyConfig;
+import spark.Filter;
+import spark.Request;
+import spark.Response;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Compresses the bodies of responses for clients that accept it, after every route has run.
+ *
+ * <p>A body at least as large as the minimum size of the settings is compressed with gzip or
+ * deflate, whichever the Accept-Encoding header of the request prefers, at the level of the
+ * settings. Smaller bodies, and bodies a route has already written to the response itself, are
+ * left as they are; those routes negotiate the encoding with ContentEncoding.negotiate. Every
+ * body large enough to be compressed is sent with Vary: Accept-Encoding, so that caches keep the
+ * compressed and uncompressed forms apart.
+ * @author Justin Rhee
+ */
+public class ResponseCompression implements Filter {
+  /**
+   * Compresses the body of a response, if it is large enough and the client accepts it.
+   *
+   * @param request request that was handled
+   * @param response response to it, whose body has not yet been written
+   * @throws IOException thrown if the response cannot be written
+   */
+  @Override
+  public void handle(Request request, Response response) throws IOException {
+    HttpServletResponse raw = response.raw();
+    String body = response.body();
+    if (body == null || body.isEmpty() || raw.isCommitted()
+        || raw.getHeader("Content-Encoding") != null) {
+      return;
+    }
+    ProxyConfig config = Handler.getConfig();
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    if (bytes.length < config.getCompressionMinBytes()) {
+      return;
+    }
+    response.header("Vary", "Accept-Encoding");
+    ContentEncoding encoding = ContentEncoding.negotiate(request.headers("Accept-Encoding"));
+    if (encoding == null) {
+      return;
+    }
+
+    byte[] compressed = encoding.compress(bytes, config.getCompressionLevel());
+    response.header("Content-Encoding", encoding.getToken());
+    raw.setContentLength(compressed.length);
+    OutputStream out = raw.getOutputStream();
+    out.write(compressed);
+    // flushing commits the response, so Spark does not write the uncompressed body after it
+    out.flush();
+  }
+}
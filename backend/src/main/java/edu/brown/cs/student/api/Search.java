@@ -0,0 +1,51 @@
+package edu.brown.cs.student.api;
+
+import edu.brown.cs.student.database.TablePage;
+import org.json.JSONException;
+import org.json.JSONObject;
+import spark.Request;
+import spark.Response;
+import spark.Route;
+
+import java.sql.SQLException;
+
+/**
+ * Returns one page of the rows of a table that match a full-text search, best matches first.
+ * @author Justin Rhee
+ */
+public class Search extends Handler implements Route {
+  private static final int DEFAULT_PAGE_SIZE = 50;
+  private static final int MAX_PAGE_SIZE = 10000;
+
+  /**
+   * Searches a table of the loaded database.
+   *
+   * @param request request from frontend
+   * @param response response from frontend
+   * @return String of the page of matching rows
+   * @throws SQLException thrown if SQL exception, or if the table's index is not ready
+   * @throws JSONException thrown if JSON error
+   */
+  @Override
+  public String handle(Request request, Response response) throws SQLException, JSONException {
+    String table;
+    String text;
+    String column;
+    int pageSize;
+    long cursor;
+    try {
+      JSONObject json = new JSONObject(request.body());
+      table = json.has("tb_name") ? json.getString("tb_name") : getCurTable();
+      text = json.getString("query");
+      column = json.has("column") && !json.isNull("column") ? json.getString("column") : null;
+      pageSize = Math.min(json.optInt("page_size", DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+      cursor = json.isNull("cursor") ? 0 : json.optLong("cursor", 0);
+    } catch (JSONException e) {
+      System.out.println(e.getMessage());
+      return "-1";
+    }
+
+    TablePage page = getDB().search(table, text, column, cursor, pageSize);
+    return page.toJSON();
+  }
+}
@@ -0,0 +1,92 @@
+package edu.brown.cs.student.api;
+
+/**
+ * State of one client of the server: which database it has loaded and which table it views. The
+ * databases themselves are shared through the registry, so a session only holds their path.
+ * @author Justin Rhee
+ */
+final class Session {
+  private final String id;
+  private volatile String dbPath;
+  private volatile String dbKey;
+  private volatile String curTable;
+  private volatile boolean loadedFromREPL;
+
+  /**
+   * Constructs a session with no database loaded.
+   *
+   * @param id id of the session
+   */
+  Session(String id) {
+    this.id = id;
+  }
+
+  /**
+   * Returns the id of the session.
+   *
+   * @return id of the session
+   */
+  String getId() {
+    return id;
+  }
+
+  /**
+   * Returns the path of the loaded database, as it was given when it was loaded.
+   *
+   * @return path of the database, or null if none is loaded
+   */
+  String getDBPath() {
+    return dbPath;
+  }
+
+  /**
+   * Returns the canonical path of the loaded database, which identifies it in the registry.
+   *
+   * @return canonical path of the database, or null if none is loaded
+   */
+  String getDBKey() {
+    return dbKey;
+  }
+
+  /**
+   * Returns the table being viewed.
+   *
+   * @return name of the table
+   */
+  String getCurTable() {
+    return curTable;
+  }
+
+  /**
+   * Returns whether the database was loaded from the REPL.
+   *
+   * @return flag for if the database was loaded from the REPL
+   */
+  boolean isLoadedFromREPL() {
+    return loadedFromREPL;
+  }
+
+  /**
+   * Loads a database in the session.
+   *
+   * @param path path of the database, as it was given
+   * @param key canonical path of the database
+   * @param table table to view first
+   * @param fromREPL flag for whether the database was loaded from the REPL
+   */
+  void load(String path, String key, String table, boolean fromREPL) {
+    curTable = table;
+    loadedFromREPL = fromREPL;
+    dbPath = path;
+    dbKey = key;
+  }
+
+  /**
+   * Sets the table being viewed.
+   *
+   * @param table name of the table
+   */
+  void setCurTable(String table) {
+    curTable = table;
+  }
+}
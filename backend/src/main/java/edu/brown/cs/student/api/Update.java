@@ -1,5 +1,7 @@
 package edu.brown.cs.student.api;
 
+import edu.brown.cs.student.database.DatabaseProxy;
+import edu.brown.cs.student.database.Mutation;
 import org.json.JSONException;
 import org.json.JSONObject;
 import spark.Request;
@@ -7,7 +9,6 @@ import spark.Response;
 import spark.Route;
 
 import java.sql.SQLException;
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -42,24 +43,12 @@ public class Update extends Handler implements Route {
       return -1;
     }
 
-    if (oldRow.size() > 0 && newRow.size() > 0) {
-      List<String> params = new ArrayList<>();
-      String command = "UPDATE " + tableName + " SET ";
-      for (Map.Entry<String, String> entry : newRow.entrySet()) {
-        command = command + entry.getKey() + " = ?, ";
-        params.add(entry.getValue());
-      }
-      command = command.substring(0, command.length() - 2);
-      command = command + " WHERE ";
-
-      for (Map.Entry<String, String> entry : oldRow.entrySet()) {
-        command = command + entry.getKey() + " = ? AND ";
-        params.add(entry.getValue());
-      }
-
-      command = command.substring(0, command.length() - 5) + ";";
-
-      getDB().executeQuery(command, params);
+    // only the changed cells are written, to the row found by its rowid or primary key
+    Map<String, String> changed = Mutation.changedValues(oldRow, newRow);
+    if (oldRow.size() > 0 && changed.size() > 0) {
+      DatabaseProxy db = getDB();
+      db.executeBatch(List.of(Mutation.update(tableName, db.identifyRow(tableName, oldRow),
+          changed)));
     }
     return 1;
   }
@@ -0,0 +1,32 @@
+package edu.brown.cs.student.database;
+
+import java.sql.SQLException;
+
+/**
+ * Exception thrown when one mutation of a batch fails, after the whole batch was rolled back.
+ * @author Justin Rhee
+ */
+public class BatchException extends SQLException {
+  private static final long serialVersionUID = 1L;
+  private final int index;
+
+  /**
+   * Constructs a batch exception.
+   *
+   * @param index position in the batch of the mutation that failed
+   * @param message what went wrong
+   */
+  public BatchException(int index, String message) {
+    super(message);
+    this.index = index;
+  }
+
+  /**
+   * Returns the position in the batch of the mutation that failed.
+   *
+   * @return index of the failed mutation, starting from 0
+   */
+  public int getIndex() {
+    return index;
+  }
+}
@@ -0,0 +1,17 @@
+package edu.brown.cs.student.database;
+
+import java.util.Set;
+
+/**
+ * Listener told about the tables whose version changed after a write to a database proxy.
+ * @author Justin Rhee
+ */
+public interface ChangeListener {
+  /**
+   * Called after a write has been committed and the cache invalidated, on the thread that made
+   * the write, so it should hand any slow work to another thread.
+   *
+   * @param tables names of the tables whose version changed
+   */
+  void tablesChanged(Set<String> tables);
+}
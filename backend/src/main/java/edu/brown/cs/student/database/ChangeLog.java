@@ -0,0 +1,225 @@
+package edu.brown.cs.student.database;
+
+import org.sqlite.SQLiteCommitListener;
+import org.sqlite.SQLiteUpdateListener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Bounded log of the rows inserted, updated and deleted in each table, so that clients can ask for
+ * what changed since a version instead of reading whole tables again.
+ *
+ * <p>Rows are captured by SQLite's update hook on the write connection, so every write is seen
+ * however it was made, including writes by triggers and foreign key cascades. Changes are held back
+ * until their transaction commits and dropped if it rolls back. Each committed transaction gives
+ * every table it changed a new version. Only the most recent changes of each table are kept; a
+ * client asking for changes that are no longer in the log has to read the whole table again.
+ * @author Justin Rhee
+ */
+class ChangeLog implements SQLiteUpdateListener, SQLiteCommitListener {
+  /**
+   * Kind of change made to a row.
+   */
+  enum Op {
+    INSERT, UPDATE, DELETE
+  }
+
+  /**
+   * One change to one row.
+   */
+  static final class Entry {
+    private final long version;
+    private final Op op;
+    private final long rowid;
+
+    /**
+     * Constructs a change.
+     *
+     * @param version version of the table the change was made in
+     * @param op kind of change
+     * @param rowid rowid of the changed row
+     */
+    Entry(long version, Op op, long rowid) {
+      this.version = version;
+      this.op = op;
+      this.rowid = rowid;
+    }
+
+    /**
+     * Returns the version of the table the change was made in.
+     *
+     * @return version
+     */
+    long getVersion() {
+      return version;
+    }
+
+    /**
+     * Returns the kind of change.
+     *
+     * @return kind of change
+     */
+    Op getOp() {
+      return op;
+    }
+
+    /**
+     * Returns the rowid of the changed row.
+     *
+     * @return rowid
+     */
+    long getRowid() {
+      return rowid;
+    }
+  }
+
+  /**
+   * Changes of one table, oldest first.
+   */
+  private static final class TableLog {
+    private long version;
+    // clients at this version or later can be brought up to date from the entries alone
+    private long floor;
+    private final Deque<Entry> entries = new ArrayDeque<>();
+  }
+
+  // versions are only comparable within one log, so clients send back the id they were given
+  private final String id = Long.toHexString(ThreadLocalRandom.current().nextLong());
+  private final int capacity;
+  private final Map<String, TableLog> tables = new ConcurrentHashMap<>();
+  // only touched by the thread holding the write connection
+  private final List<String[]> pending = new ArrayList<>();
+  private final List<String[]> committed = new ArrayList<>();
+
+  /**
+   * Constructs an empty change log.
+   *
+   * @param capacity number of changes kept for each table
+   */
+  ChangeLog(int capacity) {
+    this.capacity = capacity;
+  }
+
+  /**
+   * Returns the random id of the log.
+   *
+   * @return id of the log
+   */
+  String getId() {
+    return id;
+  }
+
+  @Override
+  public void onUpdate(Type type, String database, String table, long rowid) {
+    if (table.startsWith(SearchIndex.PREFIX) || table.startsWith("sqlite_")) {
+      return;
+    }
+    pending.add(new String[] {table, type.name(), Long.toString(rowid)});
+  }
+
+  @Override
+  public void onCommit() {
+    committed.addAll(pending);
+    pending.clear();
+  }
+
+  @Override
+  public void onRollback() {
+    pending.clear();
+  }
+
+  /**
+   * Adds the changes of every transaction committed since the last call to the log. Called by
+   * the thread holding the write connection once its writes have finished, so that a client told
+   * about a version can already read the rows of that version.
+   *
+   * @return names of the tables that changed
+   */
+  List<String> publish() {
+    Map<String, List<String[]>> byTable = new LinkedHashMap<>();
+    for (String[] change : committed) {
+      byTable.computeIfAbsent(change[0], t -> new ArrayList<>()).add(change);
+    }
+    committed.clear();
+    pending.clear();
+
+    for (Map.Entry<String, List<String[]>> entry : byTable.entrySet()) {
+      TableLog log = tables.computeIfAbsent(entry.getKey(), t -> new TableLog());
+      synchronized (log) {
+        log.version++;
+        for (String[] change : entry.getValue()) {
+          log.entries.addLast(new Entry(log.version, Op.valueOf(change[1]),
+              Long.parseLong(change[2])));
+        }
+        while (log.entries.size() > capacity) {
+          log.floor = Math.max(log.floor, log.entries.removeFirst().getVersion());
+        }
+      }
+    }
+    return new ArrayList<>(byTable.keySet());
+  }
+
+  /**
+   * Gives a table a new version from which its changes were not logged, such as after its schema
+   * changed, so that every client reads it again.
+   *
+   * @param table name of the table
+   */
+  void reset(String table) {
+    TableLog log = tables.computeIfAbsent(table, t -> new TableLog());
+    synchronized (log) {
+      log.version++;
+      log.floor = log.version;
+      log.entries.clear();
+    }
+  }
+
+  /**
+   * Returns the current version of a table.
+   *
+   * @param table name of the table
+   * @return version, starting at 0 when the database is loaded
+   */
+  long getVersion(String table) {
+    TableLog log = tables.get(table);
+    if (log == null) {
+      return 0;
+    }
+    synchronized (log) {
+      return log.version;
+    }
+  }
+
+  /**
+   * Returns the changes made to a table after a version.
+   *
+   * @param table name of the table
+   * @param since version the client has
+   * @return changes after the version, oldest first, or null if they are no longer all logged
+   */
+  List<Entry> since(String table, long since) {
+    TableLog log = tables.get(table);
+    if (log == null) {
+      return since == 0 ? List.of() : null;
+    }
+    synchronized (log) {
+      if (since < log.floor || since > log.version) {
+        return null;
+      }
+      List<Entry> changes = new ArrayList<>();
+      for (Entry entry : log.entries) {
+        if (entry.getVersion() > since) {
+          changes.add(entry);
+        }
+      }
+      return changes;
+    }
+  }
+}
@@ -0,0 +1,206 @@
+package edu.brown.cs.student.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.BitSet;
+
+/**
+ * One column of a query result, stored as a single array of values plus a null bitmap rather than
+ * as one String per cell.
+ * @author Justin Rhee
+ */
+abstract class Column {
+  private static final int INITIAL_CAPACITY = 16;
+  private static final int NULL_BITMAP_BYTES_PER_ROW = 8;
+
+  private final BitSet nulls = new BitSet();
+  private int size;
+
+  /**
+   * Creates an empty column suited to a JDBC column type.
+   *
+   * @param sqlType column type from java.sql.Types
+   * @return empty column
+   */
+  static Column forSqlType(int sqlType) {
+    switch (sqlType) {
+      case Types.INTEGER:
+      case Types.BIGINT:
+      case Types.SMALLINT:
+      case Types.TINYINT:
+      case Types.BOOLEAN:
+        return new LongColumn(INITIAL_CAPACITY);
+      case Types.REAL:
+      case Types.FLOAT:
+      case Types.DOUBLE:
+        return new DoubleColumn(INITIAL_CAPACITY);
+      default:
+        return new StringColumn(INITIAL_CAPACITY);
+    }
+  }
+
+  /**
+   * Appends the value in the current row of a result set to the end of the column.
+   *
+   * @param rs result set positioned on a row
+   * @param index index of the column in the result set, starting from 1
+   * @return false if the value does not fit the type of this column, in which case nothing was
+   *         appended
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  boolean append(ResultSet rs, int index) throws SQLException {
+    return this.append(this.read(rs, index));
+  }
+
+  /**
+   * Appends a value to the end of the column.
+   *
+   * @param value value to append, or null
+   * @return false if the value does not fit the type of this column, in which case nothing was
+   *         appended
+   */
+  boolean append(Object value) {
+    if (value == null) {
+      this.ensureCapacity(size + 1);
+      nulls.set(size);
+      size++;
+      return true;
+    }
+    if (!this.appendValue(value, size)) {
+      return false;
+    }
+    size++;
+    return true;
+  }
+
+  /**
+   * Returns the number of values in the column.
+   *
+   * @return number of values in the column
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns whether the value at a row is null.
+   *
+   * @param row index of the row
+   * @return whether the value is null
+   */
+  boolean isNull(int row) {
+    return nulls.get(row);
+  }
+
+  /**
+   * Returns the value at a row as a String, or null if the value is null.
+   *
+   * @param row index of the row
+   * @return the value as a String
+   */
+  String getString(int row) {
+    return this.isNull(row) ? null : this.format(row);
+  }
+
+  /**
+   * Returns an estimate of the heap memory held by the column, in bytes.
+   *
+   * @return estimated size in bytes
+   */
+  long estimateBytes() {
+    return (long) nulls.size() / NULL_BITMAP_BYTES_PER_ROW + this.valueBytes();
+  }
+
+  /**
+   * Copies some rows of the column, in a given order, into a new column of the same type.
+   *
+   * @param rows indices of rows
+   * @param from position in rows of the first row to copy
+   * @param to position in rows after the last row to copy
+   * @return new column holding the copied rows
+   */
+  Column select(int[] rows, int from, int to) {
+    Column copy = this.emptyCopy(Math.max(to - from, 1));
+    for (int i = from; i < to; i++) {
+      copy.append(this.isNull(rows[i]) ? null : this.getValue(rows[i]));
+    }
+    copy.trim();
+    return copy;
+  }
+
+  /**
+   * Reads the value of a column in the current row of a result set.
+   *
+   * @param rs result set positioned on a row
+   * @param index index of the column in the result set, starting from 1
+   * @return the value, or null
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  Object read(ResultSet rs, int index) throws SQLException {
+    return rs.getObject(index);
+  }
+
+  /**
+   * Shrinks the backing storage of the column to its size once no more values will be appended.
+   */
+  abstract void trim();
+
+  /**
+   * Stores a non-null value at a row.
+   *
+   * @param value value read from the result set
+   * @param row index of the row to store
+   * @return false if the value does not fit the type of this column
+   */
+  abstract boolean appendValue(Object value, int row);
+
+  /**
+   * Makes room for at least a given number of values.
+   *
+   * @param capacity number of values to make room for
+   */
+  abstract void ensureCapacity(int capacity);
+
+  /**
+   * Returns a non-null value, boxed in the type the column accepts in append.
+   *
+   * @param row index of the row
+   * @return the value
+   */
+  abstract Object getValue(int row);
+
+  /**
+   * Creates an empty column of the same type.
+   *
+   * @param capacity initial capacity
+   * @return empty column
+   */
+  abstract Column emptyCopy(int capacity);
+
+  /**
+   * Formats a non-null value as a String.
+   *
+   * @param row index of the row
+   * @return the value as a String
+   */
+  abstract String format(int row);
+
+  /**
+   * Returns the size of the backing storage in bytes.
+   *
+   * @return size of the backing storage in bytes
+   */
+  abstract long valueBytes();
+
+  /**
+   * Returns a capacity large enough for a given number of values, growing geometrically.
+   *
+   * @param current current capacity
+   * @param needed number of values needed
+   * @return new capacity
+   */
+  static int grow(int current, int needed) {
+    return Math.max(needed, current + (current >> 1) + 1);
+  }
+}
@@ -0,0 +1,264 @@
+package edu.brown.cs.student.database;
+
+import edu.brown.cs.student.metrics.Metrics;
+import org.sqlite.SQLiteCommitListener;
+import org.sqlite.SQLiteConfig;
+import org.sqlite.SQLiteConnection;
+import org.sqlite.SQLiteUpdateListener;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pool of connections to one SQLite database: a fixed set of read-only connections that can be
+ * used concurrently, and a single write connection that is handed to one thread at a time.
+ * @author Justin Rhee
+ */
+public class ConnectionPool {
+  private static final long NANOS_PER_MICRO = 1000;
+
+  private final List<Connection> readConnections = new ArrayList<>();
+  private final Map<Connection, StatementCache> statementCaches = new IdentityHashMap<>();
+  private final StatementCache.Stats statementStats = new StatementCache.Stats();
+  private final BlockingQueue<Connection> idleReaders;
+  private final Connection writeConnection;
+  private final ReentrantLock writeLock = new ReentrantLock(true);
+  private final int acquireTimeoutMillis;
+  private volatile boolean closed = false;
+
+  private final LongAdder readAcquisitions = new LongAdder();
+  private final LongAdder readWaits = new LongAdder();
+  private final LongAdder writeAcquisitions = new LongAdder();
+  private final LongAdder writeWaits = new LongAdder();
+  private final LongAdder acquireNanos = new LongAdder();
+  private final AtomicLong maxAcquireNanos = new AtomicLong();
+
+  /**
+   * Opens the connections of a pool.
+   *
+   * @param filename path to a SQL database
+   * @param config settings for the pool
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  public ConnectionPool(String filename, ProxyConfig config) throws SQLException {
+    String urlToDB = "jdbc:sqlite:" + filename;
+    this.acquireTimeoutMillis = config.getAcquireTimeoutMillis();
+
+    SQLiteConfig writeConfig = new SQLiteConfig();
+    writeConfig.enforceForeignKeys(true);
+    writeConfig.setBusyTimeout(config.getBusyTimeoutMillis());
+    if (config.isWalMode()) {
+      // WAL has to be switched on before the read-only connections open the file
+      writeConfig.setJournalMode(SQLiteConfig.JournalMode.WAL);
+    }
+    this.writeConnection = writeConfig.createConnection(urlToDB);
+    Metrics.OPEN_CONNECTIONS.increment();
+    statementCaches.put(writeConnection,
+        new StatementCache(writeConnection, config.getStatementCacheSize(), statementStats));
+
+    SQLiteConfig readConfig = new SQLiteConfig();
+    readConfig.setReadOnly(true);
+    readConfig.setBusyTimeout(config.getBusyTimeoutMillis());
+    this.idleReaders = new ArrayBlockingQueue<>(config.getReadPoolSize());
+    try {
+      for (int i = 0; i < config.getReadPoolSize(); i++) {
+        Connection conn = readConfig.createConnection(urlToDB);
+        Metrics.OPEN_CONNECTIONS.increment();
+        readConnections.add(conn);
+        statementCaches.put(conn,
+            new StatementCache(conn, config.getStatementCacheSize(), statementStats));
+        idleReaders.add(conn);
+      }
+    } catch (SQLException e) {
+      this.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Borrows a read-only connection, waiting if all of them are in use.
+   *
+   * @return borrowed connection, to be closed when done
+   * @throws SQLException if no connection is free before the timeout, or the pool is closed
+   */
+  public PooledConnection acquireRead() throws SQLException {
+    this.checkOpen();
+    long start = System.nanoTime();
+    Connection conn = idleReaders.poll();
+    if (conn == null) {
+      readWaits.increment();
+      try {
+        conn = idleReaders.poll(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for a connection");
+      }
+      if (conn == null) {
+        throw new SQLException("Timed out waiting for a connection");
+      }
+    }
+    readAcquisitions.increment();
+    this.recordAcquire(start);
+    return new PooledConnection(this, conn, statementCaches.get(conn), false);
+  }
+
+  /**
+   * Borrows the write connection, waiting for any other writer to finish with it.
+   *
+   * @return borrowed connection, to be closed when done
+   * @throws SQLException if the connection is not free before the timeout, or the pool is closed
+   */
+  public PooledConnection acquireWrite() throws SQLException {
+    this.checkOpen();
+    long start = System.nanoTime();
+    if (!writeLock.tryLock()) {
+      writeWaits.increment();
+      try {
+        if (!writeLock.tryLock(acquireTimeoutMillis, TimeUnit.MILLISECONDS)) {
+          throw new SQLException("Timed out waiting for the write connection");
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new SQLException("Interrupted while waiting for the write connection");
+      }
+    }
+    writeAcquisitions.increment();
+    this.recordAcquire(start);
+    return new PooledConnection(this, writeConnection, statementCaches.get(writeConnection),
+        true);
+  }
+
+  /**
+   * Returns a borrowed connection to the pool.
+   *
+   * @param lease borrowed connection
+   */
+  void release(PooledConnection lease) {
+    if (lease.isWrite()) {
+      writeLock.unlock();
+    } else if (closed) {
+      this.closeConnection(lease.getConnection());
+    } else {
+      idleReaders.add(lease.getConnection());
+      if (closed) {
+        this.closeIdle();
+      }
+    }
+  }
+
+  /**
+   * Registers listeners that SQLite calls for every row changed through the write connection and
+   * for every transaction it commits or rolls back. They run on the thread holding the write
+   * connection.
+   *
+   * @param update listener for changed rows
+   * @param commit listener for the end of transactions
+   * @throws SQLException if the write connection is not a SQLite connection
+   */
+  void addWriteListeners(SQLiteUpdateListener update, SQLiteCommitListener commit)
+      throws SQLException {
+    SQLiteConnection conn = writeConnection.unwrap(SQLiteConnection.class);
+    conn.addUpdateListener(update);
+    conn.addCommitListener(commit);
+  }
+
+  /**
+   * Closes the pool. Idle connections are closed right away and borrowed ones once they are
+   * handed back.
+   */
+  public void close() {
+    closed = true;
+    this.closeIdle();
+    if (writeConnection != null) {
+      writeLock.lock();
+      try {
+        this.closeConnection(writeConnection);
+      } finally {
+        writeLock.unlock();
+      }
+    }
+  }
+
+  /**
+   * Closes every idle read connection.
+   */
+  private void closeIdle() {
+    Connection conn = idleReaders.poll();
+    while (conn != null) {
+      this.closeConnection(conn);
+      conn = idleReaders.poll();
+    }
+  }
+
+  /**
+   * Returns statistics about the pool: its size, how often connections were borrowed, how often
+   * a caller had to wait, and how long borrowing took.
+   *
+   * @return map of statistic names to values
+   */
+  public Map<String, Number> getStats() {
+    long acquisitions = readAcquisitions.sum() + writeAcquisitions.sum();
+    Map<String, Number> stats = new LinkedHashMap<>();
+    stats.put("read_pool_size", readConnections.size());
+    stats.put("idle_readers", idleReaders.size());
+    stats.put("read_acquisitions", readAcquisitions.sum());
+    stats.put("read_waits", readWaits.sum());
+    stats.put("write_acquisitions", writeAcquisitions.sum());
+    stats.put("write_waits", writeWaits.sum());
+    stats.put("avg_acquire_micros",
+        acquisitions == 0 ? 0 : acquireNanos.sum() / acquisitions / NANOS_PER_MICRO);
+    stats.put("max_acquire_micros", maxAcquireNanos.get() / NANOS_PER_MICRO);
+    statementStats.addTo(stats);
+    return stats;
+  }
+
+  /**
+   * Records how long it took to borrow a connection.
+   *
+   * @param start time borrowing started, from System.nanoTime
+   */
+  private void recordAcquire(long start) {
+    long elapsed = System.nanoTime() - start;
+    acquireNanos.add(elapsed);
+    maxAcquireNanos.accumulateAndGet(elapsed, Math::max);
+  }
+
+  /**
+   * Checks that the pool has not been closed.
+   *
+   * @throws SQLException if the pool has been closed
+   */
+  private void checkOpen() throws SQLException {
+    if (closed) {
+      throw new SQLException("Database closed");
+    }
+  }
+
+  /**
+   * Closes the cached statements of a connection and then the connection, ignoring any error.
+   *
+   * @param conn connection to close
+   */
+  private void closeConnection(Connection conn) {
+    statementCaches.get(conn).clear();
+    try {
+      if (!conn.isClosed()) {
+        Metrics.OPEN_CONNECTIONS.decrement();
+      }
+      conn.close();
+    } catch (SQLException e) {
+      System.out.println("ERROR: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,348 @@
+package edu.brown.cs.student.database;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the rows of a CSV file in chunks, parsing chunks on several threads while the rows
+ * already parsed are being written.
+ *
+ * <p>One thread reads the file and cuts it into chunks of whole records, which may span lines
+ * when a quoted field holds a line break. Each chunk is parsed on a pool of parser threads, and
+ * the parsed chunks are handed out in file order. At most a few chunks per parser are read ahead,
+ * so a file of any size is read in bounded memory. Fields follow RFC 4180: they are separated by
+ * commas, and a field in double quotes may hold commas, line breaks and doubled quotes.
+ * @author Justin Rhee
+ */
+final class CsvReader implements AutoCloseable {
+  /** Name of the file next to a CSV file that gives the kind of each column. */
+  static final String HEADER_TYPES_FILE = "header_types.csv";
+  private static final int CHUNK_ROWS = 4096;
+  private static final int CHUNKS_PER_PARSER = 2;
+  private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+  // handed out after the last chunk
+  private static final CompletableFuture<List<String[]>> END =
+      CompletableFuture.completedFuture(null);
+
+  private final BufferedReader reader;
+  private final List<String> header;
+  private final ExecutorService parsers;
+  private final BlockingQueue<CompletableFuture<List<String[]>>> chunks;
+  private final Thread readThread;
+
+  /**
+   * Opens a CSV file, reads its header and starts reading its rows in the background.
+   *
+   * @param path path to the CSV file
+   * @param threads number of threads parsing chunks
+   * @throws IOException if the file cannot be read or is empty
+   */
+  CsvReader(String path, int threads) throws IOException {
+    if (!new File(path).isFile()) {
+      throw new FileNotFoundException("No such CSV file: " + path);
+    }
+    reader = Files.newBufferedReader(new File(path).toPath(), StandardCharsets.UTF_8);
+    String first = this.readRecord();
+    if (first == null) {
+      reader.close();
+      throw new IOException("CSV file is empty");
+    }
+    // a byte order mark is not part of the first column name
+    if (first.startsWith("\uFEFF")) {
+      first = first.substring(1);
+    }
+    List<String> names = new ArrayList<>();
+    for (String name : parseRecord(first)) {
+      names.add(name == null ? "" : name);
+    }
+    header = List.copyOf(names);
+
+    parsers = Executors.newFixedThreadPool(threads, r -> {
+      Thread thread = new Thread(r, "csv-" + THREAD_IDS.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    });
+    chunks = new ArrayBlockingQueue<>(threads * CHUNKS_PER_PARSER);
+    readThread = new Thread(this::readChunks, "csv-reader-" + THREAD_IDS.incrementAndGet());
+    readThread.setDaemon(true);
+    readThread.start();
+  }
+
+  /**
+   * Returns the column names in the header of the file.
+   *
+   * @return column names
+   */
+  List<String> getHeader() {
+    return header;
+  }
+
+  /**
+   * Returns the next chunk of parsed rows, waiting for it to be parsed if it is not yet.
+   *
+   * @return rows of the chunk, each with one value per column, or null after the last chunk
+   * @throws IOException if the file cannot be read
+   * @throws SQLException if a row does not have one value per column
+   */
+  List<String[]> next() throws IOException, SQLException {
+    try {
+      CompletableFuture<List<String[]>> chunk = chunks.take();
+      if (chunk == END) {
+        // left in place, so that later calls also find the end
+        chunks.put(END);
+      }
+      return chunk.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Import was interrupted");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IllegalStateException && cause.getCause() instanceof SQLException) {
+        throw (SQLException) cause.getCause();
+      }
+      throw new IOException(e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  /**
+   * Reads the file into chunks and queues them to be parsed, on the read thread.
+   */
+  private void readChunks() {
+    try {
+      long rowNumber = 1;
+      while (true) {
+        List<String> records = new ArrayList<>(CHUNK_ROWS);
+        String record;
+        while (records.size() < CHUNK_ROWS && (record = this.readRecord()) != null) {
+          if (!record.isEmpty()) {
+            records.add(record);
+          }
+        }
+        if (records.isEmpty()) {
+          break;
+        }
+        long firstRow = rowNumber;
+        rowNumber += records.size();
+        chunks.put(CompletableFuture.supplyAsync(() -> this.parseChunk(records, firstRow),
+            parsers));
+      }
+      chunks.put(END);
+    } catch (IOException e) {
+      try {
+        chunks.put(CompletableFuture.failedFuture(e));
+      } catch (InterruptedException interrupted) {
+        return;
+      }
+    } catch (InterruptedException e) {
+      // closed before the whole file was read
+      return;
+    }
+  }
+
+  /**
+   * Reads one record, joining lines while a quoted field is still open.
+   *
+   * @return the text of the record, or null at the end of the file
+   * @throws IOException if the file cannot be read
+   */
+  private String readRecord() throws IOException {
+    String line = reader.readLine();
+    if (line == null) {
+      return null;
+    }
+    StringBuilder record = null;
+    int quotes = countQuotes(line);
+    while (quotes % 2 != 0) {
+      String more = reader.readLine();
+      if (more == null) {
+        break;
+      }
+      if (record == null) {
+        record = new StringBuilder(line);
+      }
+      record.append('\n').append(more);
+      quotes += countQuotes(more);
+    }
+    return record == null ? line : record.toString();
+  }
+
+  /**
+   * Counts the double quotes in a line.
+   *
+   * @param line line of the file
+   * @return number of double quotes
+   */
+  private static int countQuotes(String line) {
+    int count = 0;
+    for (int i = 0; i < line.length(); i++) {
+      if (line.charAt(i) == '"') {
+        count++;
+      }
+    }
+    return count;
+  }
+
+  /**
+   * Parses the records of a chunk, on a parser thread.
+   *
+   * @param records text of each record
+   * @param firstRow number of the first record in the file, counting from 1 after the header
+   * @return values of each record
+   */
+  private List<String[]> parseChunk(List<String> records, long firstRow) {
+    List<String[]> rows = new ArrayList<>(records.size());
+    for (int i = 0; i < records.size(); i++) {
+      String[] row = parseRecord(records.get(i));
+      if (row.length != header.size()) {
+        // unchecked here, and unwrapped again by next
+        throw new IllegalStateException(new SQLException("Row " + (firstRow + i) + " has "
+            + row.length + " values, but the header has " + header.size()));
+      }
+      rows.add(row);
+    }
+    return rows;
+  }
+
+  /**
+   * Splits a record into its values. An empty value is null unless it is in quotes, so that a
+   * missing value can be told apart from an empty string.
+   *
+   * @param record text of the record
+   * @return values, with quotes removed
+   */
+  static String[] parseRecord(String record) {
+    List<String> values = new ArrayList<>();
+    StringBuilder value = new StringBuilder();
+    boolean quoted = false;
+    boolean wasQuoted = false;
+    int i = 0;
+    while (i < record.length()) {
+      char c = record.charAt(i);
+      if (quoted) {
+        if (c == '"' && i + 1 < record.length() && record.charAt(i + 1) == '"') {
+          value.append('"');
+          i++;
+        } else if (c == '"') {
+          quoted = false;
+        } else {
+          value.append(c);
+        }
+      } else if (c == '"') {
+        quoted = true;
+        wasQuoted = true;
+      } else if (c == ',') {
+        values.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+        value.setLength(0);
+        wasQuoted = false;
+      } else if (c != '\r') {
+        value.append(c);
+      }
+      i++;
+    }
+    values.add(value.length() == 0 && !wasQuoted ? null : value.toString());
+    return values.toArray(new String[0]);
+  }
+
+  /**
+   * Reads the kinds of columns from a file of column names and descriptions, such as the
+   * header_types.csv of the sample data. Quantitative columns are given NUMERIC affinity, so that
+   * numbers are stored as numbers, and qualitative ones TEXT. Descriptions are compared ignoring
+   * case and spaces.
+   *
+   * @param file path to the file
+   * @return declared type of each column the file describes, empty if the file does not exist
+   * @throws IOException if the file exists but cannot be read
+   */
+  static Map<String, String> readHeaderTypes(File file) throws IOException {
+    Map<String, String> types = new HashMap<>();
+    if (!file.isFile()) {
+      return types;
+    }
+    List<String> lines = Files.readAllLines(file.toPath(), StandardCharsets.UTF_8);
+    // the first line names the columns of the file itself
+    for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+      String[] values = parseRecord(line);
+      if (values.length < 2 || values[0] == null || values[1] == null) {
+        continue;
+      }
+      String kind = values[1].replaceAll("\\s", "").toLowerCase(Locale.ROOT);
+      if (kind.equals("quantitative")) {
+        types.put(values[0].trim(), "NUMERIC");
+      } else if (kind.equals("qualitative")) {
+        types.put(values[0].trim(), "TEXT");
+      }
+    }
+    return types;
+  }
+
+  /**
+   * Infers the type of a column from some of its values: INTEGER if every value is a whole
+   * number, REAL if every value is a number, and TEXT otherwise. Empty and null values are
+   * ignored.
+   *
+   * @param rows rows to look at
+   * @param column index of the column
+   * @return declared type for the column
+   */
+  static String inferType(List<String[]> rows, int column) {
+    boolean integer = true;
+    boolean real = true;
+    boolean any = false;
+    for (String[] row : rows) {
+      String value = row[column] == null ? "" : row[column].trim();
+      if (value.isEmpty()) {
+        continue;
+      }
+      any = true;
+      if (integer) {
+        try {
+          Long.parseLong(value);
+          continue;
+        } catch (NumberFormatException e) {
+          integer = false;
+        }
+      }
+      try {
+        Double.parseDouble(value);
+      } catch (NumberFormatException e) {
+        real = false;
+        break;
+      }
+    }
+    if (!any || !real) {
+      return "TEXT";
+    }
+    return integer ? "INTEGER" : "REAL";
+  }
+
+  /**
+   * Stops reading and parsing, and closes the file.
+   */
+  @Override
+  public void close() {
+    readThread.interrupt();
+    parsers.shutdownNow();
+    try {
+      reader.close();
+    } catch (IOException e) {
+      System.out.println("ERROR: Could not close CSV file: " + e.getMessage());
+    }
+  }
+}
@@ -1,49 +1,96 @@
 package edu.brown.cs.student.database;
 
+import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
 import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+import edu.brown.cs.student.api.ContentEncoding;
+import edu.brown.cs.student.metrics.Metrics;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.BatchUpdateException;
 import java.sql.Connection;
-import java.sql.DriverManager;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
-import java.sql.Statement;
 import java.sql.ResultSet;
-import java.util.Arrays;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.regex.Pattern;
 
 /**
  * Database proxy class. Acts as a proxy between a SQL database.
  * @author Justin Rhee
  */
 public class DatabaseProxy implements IDatabaseProxy {
-  private Connection conn;
-  private Map<String, String> permissions;
+  private final ProxyConfig config;
+  private volatile ConnectionPool pool;
+  private volatile Map<String, String> permissions;
   private static final String DEFAULT_PERMISSION = "RW";
-  private List<String> tableNames;
-  private static final Map<String, String> SQL_COMMAND_PERMISSIONS = new HashMap<>() {
-    {
-      put("SELECT", "R");
-      put("INSERT", "W");
-      put("DROP", "RW");
-      put("UPDATE", "RW");
-      put("DELETE", "RW");
-      put("ALTER", "RW");
-      put("JOIN", "R");
-      put("TRUNCATE", "RW");
-    }
-  };
+  private volatile List<String> tableNames;
 
-  private final LoadingCache<String, QueryOutput> cache;
-  private static final int MAXIMUM_CACHE_SIZE = 10;
+  private final LoadingCache<QueryKey, QueryOutput> cache;
+  private final QueryExecutor queries;
+  // the byte budget is split evenly between this many segments of the cache
+  private static final int CACHE_CONCURRENCY = 4;
+  private static final int KEY_OVERHEAD_BYTES = 64;
+  private static final double NANOS_PER_MILLI = 1e6;
+  private static final double NANOS_PER_SECOND = 1e9;
+  private static final String ROWID_COLUMN = "rowid";
+  /** Name of the field that carries the rowid of each row read through the proxy. */
+  public static final String ROWID_FIELD = "_rowid";
+  private static final int STREAM_FETCH_SIZE = 1000;
+  private static final int MAX_BATCH_SIZE = 1000;
+  private final Map<String, Boolean> hasRowid = new ConcurrentHashMap<>();
+  private static final Pattern NUMERIC_TYPE = Pattern.compile("INT|REAL|FLOA|DOUB|NUM|DEC|BOOL");
+  private volatile TableDependencies dependencies;
+  private volatile DatabaseSchema schema;
+  private final TableCacheStats tableStats = new TableCacheStats();
+  private final Cache<String, EncodedResponse> responses;
+  private final Map<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+  // counted before stale results are dropped, unlike tableVersions, so a read that overlaps a
+  // write sees the count move however the two interleave
+  private final Map<String, AtomicLong> tableWrites = new ConcurrentHashMap<>();
+  private final AtomicLong schemaWrites = new AtomicLong();
+  private final AtomicLong writes = new AtomicLong();
+  private volatile String epoch;
+  private volatile SearchIndex searchIndex;
+  private volatile ChangeLog changeLog;
+  private final List<ChangeListener> listeners = new CopyOnWriteArrayList<>();
+  // clients behind by more rows than this read the whole table rather than the changes
+  private static final int MAX_CHANGED_ROWS = 10000;
+  // how long a read waits for memory held by other queries to come free before it is refused
+  private static final long ADMISSION_WAIT_MILLIS = 1000;
+  // CSV files are parsed on every core but the one inserting the rows
+  private static final int IMPORT_THREADS =
+      Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+  private static final int IMPORT_TRANSACTION_ROWS = 100000;
 
   /**
    * Constructs a database proxy from a path to a SQL database.
@@ -55,7 +102,22 @@ public class DatabaseProxy implements IDatabaseProxy {
    */
   public DatabaseProxy(String filename) throws
       ClassNotFoundException, SQLException, FileNotFoundException {
+    this(filename, new ProxyConfig());
+  }
+
+  /**
+   * Constructs a database proxy from a path to a SQL database.
+   *
+   * @param filename path to a SQL database
+   * @param config settings for the proxy
+   * @throws ClassNotFoundException exception thrown by Class.forName
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws FileNotFoundException thrown when file indicated by filepath is not found
+   */
+  public DatabaseProxy(String filename, ProxyConfig config) throws
+      ClassNotFoundException, SQLException, FileNotFoundException {
 
+    this.config = config;
     this.permissions = null;
 
     File f = new File(filename);
@@ -63,14 +125,34 @@ public class DatabaseProxy implements IDatabaseProxy {
       throw new FileNotFoundException("File not found");
     }
 
-    cache = CacheBuilder.newBuilder().maximumSize(MAXIMUM_CACHE_SIZE).build(new CacheLoader<>() {
+    CacheBuilder<QueryKey, QueryOutput> builder = CacheBuilder.newBuilder()
+        .concurrencyLevel(CACHE_CONCURRENCY)
+        .maximumWeight(config.getCacheMaxBytes())
+        .weigher(DatabaseProxy::weigh)
+        .removalListener(DatabaseProxy::countRemoval)
+        .recordStats();
+    if (config.getCacheExpireAfterAccessSeconds() > 0) {
+      builder.expireAfterAccess(config.getCacheExpireAfterAccessSeconds(), TimeUnit.SECONDS);
+    }
+    responses = CacheBuilder.newBuilder()
+        .concurrencyLevel(CACHE_CONCURRENCY)
+        .maximumWeight(config.getResponseCacheMaxBytes())
+        .weigher((String key, EncodedResponse response) ->
+            (int) Math.min(Integer.MAX_VALUE, response.estimateBytes()))
+        .build();
+    queries = new QueryExecutor(config.getReadPoolSize() + 1, config.getMaxQueuedQueries(),
+        config.getQueryTimeoutMillis());
+    cache = builder.build(new CacheLoader<>() {
       @Override
-      public QueryOutput load(@NonNull String query) {
-        try {
-          return new QueryOutput(conn, query, false);
-        } catch (SQLException e) {
-          return new QueryOutput();
-        }
+      public QueryOutput load(@NonNull QueryKey key) throws SQLException {
+        config.getMemoryBudget().admit(ADMISSION_WAIT_MILLIS);
+        return queries.run(query -> {
+          try (PooledConnection lease = pool.acquireRead();
+               QueryExecutor.Guard guard = query.guard(lease)) {
+            return DatabaseProxy.this.execute(guard.lease(), key.getQuery(), key.getParams(),
+                false);
+          }
+        });
       }
     });
 
@@ -78,7 +160,8 @@ public class DatabaseProxy implements IDatabaseProxy {
   }
 
   /**
-   * Connects to a SQL database.
+   * Connects to a SQL database, opening a pool of read-only connections and one write connection.
+   * Any connections to a previously loaded database are closed.
    *
    * @param filename path to a SQL database
    * @throws ClassNotFoundException exception thrown by Class.forName
@@ -86,15 +169,100 @@ public class DatabaseProxy implements IDatabaseProxy {
    */
   public void loadDB(String filename) throws ClassNotFoundException, SQLException {
     Class.forName("org.sqlite.JDBC");
-    String urlToDB = "jdbc:sqlite:" + filename;
-    Connection connTemp = DriverManager.getConnection(urlToDB);
-    Statement stat = connTemp.createStatement();
-    stat.executeUpdate("PRAGMA foreign_keys=ON;");
+    ConnectionPool oldPool = pool;
+    pool = new ConnectionPool(filename, config);
+    ChangeLog log = new ChangeLog(config.getChangeLogSize());
+    pool.addWriteListeners(log, log);
+    changeLog = log;
+    if (oldPool != null) {
+      oldPool.close();
+    }
+
+    cache.invalidateAll();
+    responses.invalidateAll();
+    hasRowid.clear();
+    this.newEpoch();
+    this.permissions = new ConcurrentHashMap<>();
+    this.refreshTables();
+
+    SearchIndex oldIndex = searchIndex;
+    searchIndex = new SearchIndex(pool, this.tableNames);
+    if (oldIndex != null) {
+      oldIndex.cancel();
+    }
+  }
+
+  /**
+   * Starts building full-text search indexes for the text columns of every table in the
+   * background. Indexes are stored in the database and kept up to date by triggers, so this
+   * changes the database file.
+   */
+  public void buildSearchIndex() {
+    searchIndex.start();
+  }
+
+  /**
+   * Returns how far the search indexes have been built.
+   *
+   * @return map of table names to their state, indexed rows and total rows
+   */
+  public Map<String, Map<String, Object>> getSearchProgress() {
+    return searchIndex.getProgress();
+  }
+
+  /**
+   * Returns one page of the rows of a table that contain every word of a search, best matches
+   * first. Each word also matches words that start with it.
+   *
+   * @param table name of the table
+   * @param text words to search for
+   * @param column column to search in, or null to search every text column
+   * @param offset number of matching rows to skip
+   * @param pageSize maximum number of rows in the page
+   * @return page of matching rows, with offsets as cursors
+   * @throws SQLException if the table cannot be searched yet, or by invalid SQL operations
+   */
+  public TablePage search(String table, String text, String column, long offset, int pageSize)
+      throws SQLException {
+    this.checkReadable(table);
+    List<String> columns = searchIndex.readyColumns(table);
+    if (column != null && !columns.contains(column)) {
+      throw new SQLException("Column is not searchable");
+    }
+    String match = SearchIndex.matchQuery(text, column);
+    if (match == null || pageSize <= 0 || offset < 0) {
+      throw new SQLException("Invalid search");
+    }
+
+    String index = quote(SearchIndex.indexName(table));
+    String query = "SELECT " + quote(table) + ".* FROM " + index + " JOIN " + quote(table)
+        + " ON " + quote(table) + ".rowid = " + index + ".rowid WHERE " + index + " MATCH ?"
+        + " ORDER BY " + index + ".rank LIMIT " + pageSize + " OFFSET ?";
+    QueryOutput rows = this.executeQuery(query, List.of(match, offset));
+    QueryOutput count = this.executeQuery(
+        "SELECT COUNT(*) FROM " + index + " WHERE " + index + " MATCH ?", List.of(match));
+    return new TablePage(rows, false, offset, pageSize, Long.parseLong(count.getString(0, 0)));
+  }
+
+  /**
+   * Sets the check queries run from the current thread use to find out whether the client they
+   * work for has gone away, so that they can be cancelled instead of finishing for nobody.
+   *
+   * @param check returns true once the client has disconnected, or null for no check
+   */
+  public static void setClientCheck(BooleanSupplier check) {
+    QueryExecutor.setAbandonedCheck(check);
+  }
 
-    conn = connTemp;
-    this.permissions = new HashMap<>();
-    this.tableNames = new ArrayList<>();
-    this.setDefaultPermissions();
+  /**
+   * Closes every connection to the database.
+   */
+  public void close() {
+    searchIndex.cancel();
+    queries.shutdown();
+    pool.close();
+    cache.invalidateAll();
+    responses.invalidateAll();
   }
 
   /**
@@ -105,18 +273,7 @@ public class DatabaseProxy implements IDatabaseProxy {
    * @throws SQLException exception thrown by invalid SQL operations
    */
   public QueryOutput executeQuery(String query) throws SQLException {
-    this.checkPermissions(query);
-    if (this.checkWrite(query)) {
-      cache.invalidateAll(); // invalidates cached data due to update on database
-      return new QueryOutput(conn, query, true);
-    } else {
-      QueryOutput output = cache.getUnchecked(query);
-      if (!output.getIsValid()) {
-        cache.invalidate(query);
-        throw new SQLException("SQL Exception");
-      }
-      return output;
-    }
+    return this.executeQuery(query, List.of());
   }
 
   /**
@@ -124,24 +281,982 @@ public class DatabaseProxy implements IDatabaseProxy {
    * @author Bumjin
    *
    * @param query SQL query to execute
-   * @param params the SQL parameters to be set in the query string
+   * @param params the SQL parameters to be set in the query string; Longs are bound as integers
    * @return ResultSet of the query
    * @throws SQLException exception thrown by invalid SQL operations
    */
-  public QueryOutput executeQuery(String query, List<String> params)
+  public QueryOutput executeQuery(String query, List<?> params)
+      throws SQLException {
+    SqlStatement statement = SqlStatement.of(query);
+    this.checkPermissions(statement);
+    if (statement.isWrite()) {
+      // the cache is invalidated on the query thread, so it happens even if the caller gave up
+      return queries.run(running -> {
+        List<String> published = new ArrayList<>();
+        try (PooledConnection lease = pool.acquireWrite()) {
+          try (QueryExecutor.Guard guard = running.guard(lease)) {
+            return this.execute(guard.lease(), query, params, true);
+          } finally {
+            published.addAll(changeLog.publish());
+          }
+        } finally {
+          // invalidated after the write so that no read can cache the old rows in between
+          this.invalidateAfterWrite(statement, published);
+        }
+      });
+    } else {
+      QueryKey key = new QueryKey(query, params, dependencies.referencedTables(statement));
+      return this.readCached(key);
+    }
+  }
+
+  /**
+   * Invalidates the cached reads that a write may have made stale: those that read a table the
+   * write changed, and those whose tables are unknown. Schema changes invalidate everything and
+   * reload the list of tables.
+   *
+   * @param statement SQL write statement that was executed
+   * @param published tables whose changes the write added to the change log
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private void invalidateAfterWrite(SqlStatement statement, List<String> published)
+      throws SQLException {
+    boolean isDDL = statement.isSchemaChange();
+    Set<String> modified = isDDL ? null : dependencies.modifiedTables(statement);
+    this.invalidate(modified, isDDL, published);
+  }
+
+  /**
+   * Invalidates the cached reads of some tables, and those whose tables are unknown, then tells
+   * the change listeners which table versions moved.
+   *
+   * @param modified tables that were changed, or null if any table may have changed
+   * @param isDDL whether the schema changed, in which case the list of tables is reloaded
+   * @param published tables whose changes the write added to the change log
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private void invalidate(Set<String> modified, boolean isDDL, List<String> published)
       throws SQLException {
-    this.checkPermissions(query);
-    if (this.checkWrite(query)) {
-      cache.invalidateAll(); // invalidates cached data due to update on database
-      return new QueryOutput(conn, query, params, true);
+    writes.incrementAndGet();
+    if (modified == null) {
+      schemaWrites.incrementAndGet();
+    } else {
+      for (String table : modified) {
+        tableWrites.computeIfAbsent(table, t -> new AtomicLong()).incrementAndGet();
+      }
+    }
+    List<QueryKey> stale = new ArrayList<>();
+    for (QueryKey key : cache.asMap().keySet()) {
+      if (modified == null || key.getTables().isEmpty()) {
+        stale.add(key);
+        tableStats.recordInvalidation(key.getTables());
+      } else if (!Collections.disjoint(key.getTables(), modified)) {
+        stale.add(key);
+        Set<String> changed = new HashSet<>(key.getTables());
+        changed.retainAll(modified);
+        tableStats.recordInvalidation(changed);
+      }
+    }
+    cache.invalidateAll(stale);
+
+    // versions move only after the stale results are gone, so a new version never tags old rows
+    if (modified == null) {
+      this.newEpoch();
+    } else {
+      for (String table : modified) {
+        tableVersions.computeIfAbsent(table, t -> new AtomicLong()).incrementAndGet();
+      }
+    }
+
+    Set<String> changed = new LinkedHashSet<>(published);
+    if (isDDL) {
+      hasRowid.clear();
+      this.refreshTables();
+      for (String table : tableNames) {
+        changeLog.reset(table);
+        changed.add(table);
+      }
+    } else {
+      // SQLite reports no row changes for tables without a rowid
+      for (String table : modified == null ? tableNames : modified) {
+        if (!this.hasRowid(table)) {
+          changeLog.reset(table);
+          changed.add(table);
+        }
+      }
+    }
+
+    if (!changed.isEmpty()) {
+      Set<String> tables = Collections.unmodifiableSet(changed);
+      for (ChangeListener listener : listeners) {
+        listener.tablesChanged(tables);
+      }
+    }
+  }
+
+  /**
+   * Adds a listener told about the tables whose version changes after each write.
+   *
+   * @param listener listener to add
+   */
+  public void addChangeListener(ChangeListener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Removes a listener added with addChangeListener.
+   *
+   * @param listener listener to remove
+   */
+  public void removeChangeListener(ChangeListener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * Returns the rows of a table that were inserted, updated or deleted after a version. The
+   * changes are read from the change log, so they include writes made by any query, and rows
+   * changed several times are only sent once, with their current values. A client that has no
+   * version, has a version from another change log, or is further behind than the log reaches is
+   * told to read the whole table again; it should take the version from that response before
+   * reading the table, so that no change is missed.
+   *
+   * @param table name of the table
+   * @param since version the client has, or null if it has none
+   * @param epoch id of the change log the version came from, or null to skip the check
+   * @return changed rows and the version they bring the client up to
+   * @throws SQLException if the table doesn't exist or cannot be read
+   */
+  public TableChanges getChanges(String table, Long since, String epoch) throws SQLException {
+    this.checkReadable(table);
+    ChangeLog log = changeLog;
+    // taken before the log is read, so any change the entries miss is sent again next time
+    long version = log.getVersion(table);
+    List<ChangeLog.Entry> entries = null;
+    if (since != null && (epoch == null || epoch.equals(log.getId()))) {
+      entries = log.since(table, since);
+    }
+    Map<Long, ChangeLog.Op> lastOps = new LinkedHashMap<>();
+    if (entries != null) {
+      for (ChangeLog.Entry entry : entries) {
+        lastOps.put(entry.getRowid(), entry.getOp());
+      }
+    }
+    if (entries == null || lastOps.size() > MAX_CHANGED_ROWS) {
+      return TableChanges.fullReload(table, log.getId(), version);
+    }
+
+    List<Long> deleted = new ArrayList<>();
+    List<Long> changed = new ArrayList<>();
+    for (Map.Entry<Long, ChangeLog.Op> entry : lastOps.entrySet()) {
+      (entry.getValue() == ChangeLog.Op.DELETE ? deleted : changed).add(entry.getKey());
+    }
+    // one statement whatever the number of rows, so the statement cache is not flooded
+    String query = "SELECT " + ROWID_COLUMN + ", * FROM " + quote(table) + " WHERE "
+        + ROWID_COLUMN + " IN (SELECT value FROM json_each(?))";
+    if (changed.isEmpty()) {
+      return new TableChanges(table, log.getId(), version, null, deleted);
+    }
+    QueryOutput upserted = queries.run(running -> {
+      try (PooledConnection lease = pool.acquireRead();
+           QueryExecutor.Guard guard = running.guard(lease)) {
+        return this.execute(guard.lease(), query, List.of(changed.toString()), false);
+      }
+    });
+    Set<Long> found = new HashSet<>();
+    for (int row = 0; row < upserted.getRowCount(); row++) {
+      found.add(Long.parseLong(upserted.getString(row, 0)));
+    }
+    for (Long rowid : changed) {
+      if (!found.contains(rowid)) {
+        deleted.add(rowid);
+      }
+    }
+    return new TableChanges(table, log.getId(), version, upserted, deleted);
+  }
+
+  /**
+   * Loads the rows of a CSV file into a table, creating the table from the header of the file if
+   * it does not exist. The types of new columns come from a header_types.csv file next to the CSV
+   * file if it describes them, and are inferred from the first rows otherwise; a qualitative
+   * column whose first values are all whole numbers is still made an INTEGER column. An empty
+   * value is imported as NULL, unless it is in quotes.
+   *
+   * <p>The file is parsed on several threads while rows are inserted through one prepared
+   * statement in JDBC batches, committing every 100000 rows so that other writes are not held off
+   * for the whole load. If the import fails, the transactions committed before the failure are
+   * kept. Indexes asked for are built once every row is in, which is faster than keeping them up
+   * to date during the load, and the table is then analyzed so that the query planner and the
+   * row estimates of the schema see its new size.
+   *
+   * @param csvPath path to the CSV file, whose first line names the columns
+   * @param table name of the table to load into
+   * @param indexColumns columns to index after the load, each in an index of its own
+   * @return the table, the number of rows imported, the seconds taken, rows per second and the
+   *     names of the indexes built
+   * @throws IOException if the file cannot be read
+   * @throws SQLException if a row does not fit the table or the table cannot be written
+   */
+  public Map<String, Object> importCsv(String csvPath, String table, List<String> indexColumns)
+      throws IOException, SQLException {
+    long start = System.nanoTime();
+    long count = 0;
+    try (CsvReader csv = new CsvReader(csvPath, IMPORT_THREADS)) {
+      List<String> header = csv.getHeader();
+      List<String[]> rows = csv.next();
+      for (String column : indexColumns) {
+        if (!header.contains(column)) {
+          throw new SQLException("CSV file has no column " + column);
+        }
+      }
+      TableSchema existing = this.getSchema().getTable(table);
+      if (existing == null) {
+        File types = new File(new File(csvPath).getAbsoluteFile().getParentFile(),
+            CsvReader.HEADER_TYPES_FILE);
+        this.executeQuery(createTable(table, header, CsvReader.readHeaderTypes(types), rows));
+      } else {
+        for (String column : header) {
+          if (!existing.getColumnNames().contains(column)) {
+            throw new SQLException("Table " + table + " has no column " + column);
+          }
+        }
+      }
+
+      List<String> columns = new ArrayList<>();
+      for (String column : header) {
+        columns.add(quote(column));
+      }
+      String insert = "INSERT INTO " + quote(table) + " (" + String.join(", ", columns)
+          + ") VALUES (" + String.join(", ", Collections.nCopies(header.size(), "?")) + ")";
+      SqlStatement statement = SqlStatement.of(insert);
+      this.checkPermissions(statement);
+
+      while (rows != null) {
+        int inserted = 0;
+        List<String> published = new ArrayList<>();
+        try (PooledConnection lease = pool.acquireWrite()) {
+          Connection conn = lease.getConnection();
+          conn.setAutoCommit(false);
+          try {
+            PreparedStatement stmt = lease.prepare(insert);
+            while (rows != null && inserted < IMPORT_TRANSACTION_ROWS) {
+              for (String[] row : rows) {
+                for (int i = 0; i < row.length; i++) {
+                  stmt.setString(i + 1, row[i]);
+                }
+                stmt.addBatch();
+              }
+              stmt.executeBatch();
+              inserted += rows.size();
+              rows = csv.next();
+            }
+            conn.commit();
+          } catch (SQLException | IOException e) {
+            conn.rollback();
+            throw e;
+          } finally {
+            conn.setAutoCommit(true);
+            published.addAll(changeLog.publish());
+          }
+        } finally {
+          this.invalidate(dependencies.modifiedTables(statement), false, published);
+        }
+        count += inserted;
+      }
+    }
+
+    List<String> indexes = new ArrayList<>();
+    if (!indexColumns.isEmpty()) {
+      List<String> published = new ArrayList<>();
+      try (PooledConnection lease = pool.acquireWrite();
+           Statement stat = lease.getConnection().createStatement()) {
+        try {
+          for (String column : indexColumns) {
+            String index = table + "_" + column;
+            stat.executeUpdate("CREATE INDEX IF NOT EXISTS " + quote(index) + " ON "
+                + quote(table) + " (" + quote(column) + ")");
+            indexes.add(index);
+          }
+          stat.executeUpdate("ANALYZE " + quote(table));
+        } finally {
+          published.addAll(changeLog.publish());
+        }
+      } finally {
+        this.invalidate(null, true, published);
+      }
+    }
+
+    double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+    Map<String, Object> result = new LinkedHashMap<>();
+    result.put("table", table);
+    result.put("rows", count);
+    result.put("seconds", seconds);
+    result.put("rows_per_second", seconds > 0 ? Math.round(count / seconds) : count);
+    result.put("indexes", indexes);
+    return result;
+  }
+
+  /**
+   * Builds the statement creating a table for the columns of a CSV file.
+   *
+   * @param table name of the table
+   * @param header names of the columns
+   * @param types declared types of the columns that have one given
+   * @param rows first rows of the file, from which types are inferred, or null
+   * @return CREATE TABLE statement
+   */
+  private static String createTable(String table, List<String> header, Map<String, String> types,
+                                    List<String[]> rows) {
+    List<String> columns = new ArrayList<>();
+    for (int i = 0; i < header.size(); i++) {
+      String inferred = rows == null ? "TEXT" : CsvReader.inferType(rows, i);
+      String type = types.get(header.get(i));
+      // qualitative columns such as ids may still hold whole numbers, which sort as numbers
+      if (type == null || type.equals("TEXT") && inferred.equals("INTEGER")) {
+        type = inferred;
+      }
+      columns.add(quote(header.get(i)) + " " + type);
+    }
+    return "CREATE TABLE " + quote(table) + " (" + String.join(", ", columns) + ")";
+  }
+
+  /**
+   * Runs a list of mutations in one transaction on the write connection. Consecutive mutations
+   * with the same statement are sent to SQLite as one JDBC batch, and the cache is invalidated
+   * once at the end rather than after every row. If any mutation fails, none of them take effect.
+   *
+   * @param mutations inserts, updates and deletes to run, in order
+   * @return number of rows changed by each mutation
+   * @throws BatchException if a mutation is not permitted or fails
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  public int[] executeBatch(List<Mutation> mutations) throws SQLException {
+    for (int i = 0; i < mutations.size(); i++) {
+      Mutation mutation = mutations.get(i);
+      String permission = this.permissions.get(mutation.getTable());
+      if (permission == null) {
+        throw new BatchException(i, "Table doesn't exist");
+      }
+      if (!permission.equals("RW") && !permission.equals(mutation.getPermission())) {
+        throw new BatchException(i, "Wrong permissions");
+      }
+    }
+
+    return queries.run(running -> this.writeBatch(mutations, running));
+  }
+
+  /**
+   * Runs a list of mutations in one transaction on the write connection, then invalidates the
+   * cache, on a query thread.
+   *
+   * @param mutations inserts, updates and deletes to run, in order
+   * @param running handle through which the transaction can be interrupted
+   * @return number of rows changed by each mutation
+   * @throws BatchException if a mutation fails
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private int[] writeBatch(List<Mutation> mutations, QueryExecutor.Query running)
+      throws SQLException {
+    int[] counts = new int[mutations.size()];
+    boolean changed = false;
+    List<String> published = new ArrayList<>();
+    try (PooledConnection lease = pool.acquireWrite();
+         QueryExecutor.Guard guard = running.guard(lease)) {
+      Connection conn = guard.lease().getConnection();
+      conn.setAutoCommit(false);
+      try {
+        int start = 0;
+        while (start < mutations.size()) {
+          String query = mutations.get(start).getQuery();
+          int end = start;
+          while (end < mutations.size() && end - start < MAX_BATCH_SIZE
+              && mutations.get(end).getQuery().equals(query)) {
+            end++;
+          }
+          this.executeRun(guard.lease(), mutations, start, end, counts);
+          start = end;
+        }
+        conn.commit();
+        changed = true;
+      } catch (SQLException e) {
+        conn.rollback();
+        throw e;
+      } finally {
+        conn.setAutoCommit(true);
+        published.addAll(changeLog.publish());
+      }
+    } finally {
+      if (changed) {
+        Set<String> statements = new HashSet<>();
+        for (Mutation mutation : mutations) {
+          statements.add(mutation.getQuery());
+        }
+        Set<String> modified = new HashSet<>();
+        for (String query : statements) {
+          Set<String> tables = dependencies.modifiedTables(SqlStatement.of(query));
+          if (tables == null) {
+            modified = null;
+            break;
+          }
+          modified.addAll(tables);
+        }
+        this.invalidate(modified, false, published);
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Runs consecutive mutations that share a statement as one JDBC batch.
+   *
+   * @param lease write connection
+   * @param mutations every mutation of the batch
+   * @param start index of the first mutation to run
+   * @param end index after the last mutation to run
+   * @param counts array to store the number of rows changed by each mutation in
+   * @throws BatchException if a mutation fails
+   */
+  private void executeRun(PooledConnection lease, List<Mutation> mutations, int start, int end,
+                          int[] counts) throws BatchException {
+    String query = mutations.get(start).getQuery();
+    try {
+      PreparedStatement stmt = lease.prepare(query);
+      for (int i = start; i < end; i++) {
+        List<String> params = mutations.get(i).getParams();
+        for (int p = 0; p < params.size(); p++) {
+          stmt.setString(p + 1, params.get(p));
+        }
+        stmt.addBatch();
+      }
+      int[] runCounts = stmt.executeBatch();
+      System.arraycopy(runCounts, 0, counts, start, runCounts.length);
+    } catch (BatchUpdateException e) {
+      lease.discard(query);
+      int[] done = e.getUpdateCounts();
+      throw new BatchException(start + (done == null ? 0 : done.length), e.getMessage());
+    } catch (SQLException e) {
+      lease.discard(query);
+      throw new BatchException(start, e.getMessage());
+    }
+  }
+
+  /**
+   * Runs a read query and hands its ResultSet to a consumer without caching or materializing the
+   * rows, so results of any size can be streamed out in constant memory. Like any other query, it
+   * runs on the query executor, so it waits for a free slot, is interrupted once it runs past the
+   * query time limit, and is cancelled if the client disconnects.
+   *
+   * @param query SQL query to execute
+   * @param params the SQL parameters to be set in the query string
+   * @param consumer reads the rows of the result
+   * @throws SQLException exception thrown by invalid SQL operations, if the query is a write, or
+   *     if it times out
+   * @throws IOException exception thrown by the consumer
+   */
+  public void streamQuery(String query, List<String> params, ResultSetConsumer consumer)
+      throws SQLException, IOException {
+    this.checkStreamable(query);
+    try {
+      queries.run(running -> {
+        try (PooledConnection lease = pool.acquireRead();
+             QueryExecutor.Guard guard = running.guard(lease)) {
+          this.stream(guard.lease(), query, params, consumer);
+          return null;
+        } catch (IOException e) {
+          throw new UncheckedIOException(e);
+        }
+      });
+    } catch (UncheckedIOException e) {
+      throw e.getCause();
+    }
+  }
+
+  /**
+   * Checks that a query is a read the proxy's permissions allow.
+   *
+   * @param query SQL query to check
+   * @throws SQLException if the query is a write or touches a table it may not read
+   */
+  private void checkStreamable(String query) throws SQLException {
+    SqlStatement statement = SqlStatement.of(query);
+    this.checkPermissions(statement);
+    if (statement.isWrite()) {
+      throw new SQLException("Only read queries can be streamed");
+    }
+  }
+
+  /**
+   * Runs a read query on a leased connection and hands its ResultSet to a consumer.
+   *
+   * @param lease connection to run the query on
+   * @param query SQL query to execute
+   * @param params the SQL parameters to be set in the query string
+   * @param consumer reads the rows of the result
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException exception thrown by the consumer
+   */
+  private void stream(PooledConnection lease, String query, List<String> params,
+      ResultSetConsumer consumer) throws SQLException, IOException {
+    long start = System.nanoTime();
+    PreparedStatement stmt = lease.prepare(query);
+    Metrics.QUERY_PREPARE.recordSince(start);
+    for (int i = 0; i < params.size(); i++) {
+      stmt.setString(i + 1, params.get(i));
+    }
+    stmt.setFetchSize(STREAM_FETCH_SIZE);
+    start = System.nanoTime();
+    try (ResultSet rs = stmt.executeQuery()) {
+      Metrics.QUERY_EXECUTE.recordSince(start);
+      // the rows are stepped through as they are written, so reading them counts as serializing
+      start = System.nanoTime();
+      consumer.accept(rs);
+      Metrics.QUERY_SERIALIZE.recordSince(start);
+    } catch (SQLException e) {
+      lease.discard(query);
+      throw e;
+    }
+  }
+
+  /**
+   * Writes every row of a table to a stream. The rows are read forward-only from one read
+   * connection and written as they arrive, bypassing the result cache and the query executor,
+   * so a table of any size is exported in constant memory at the speed of the stream. This is the
+   * only read that is not held to the query time limit.
+   *
+   * @param table name of the table
+   * @param format format to write in
+   * @param out stream to write to, which is flushed but not closed
+   * @return number of rows written
+   * @throws SQLException if the table does not exist or cannot be read
+   * @throws IOException exception thrown by the output stream
+   */
+  public long exportTable(String table, ExportWriter.Format format, OutputStream out)
+      throws SQLException, IOException {
+    TableSchema info = this.getSchema().getTable(table);
+    if (info == null) {
+      throw new SQLException("Table doesn't exist");
+    }
+    String query = ExportWriter.selectAll(format, table, info.getColumnNames());
+    this.checkStreamable(query);
+    ExportWriter writer = new ExportWriter(out, format);
+    long[] rows = new long[1];
+    // the one read kept off the query executor: an export runs as long as the client takes to
+    // download it, which no query time limit could allow for
+    try (PooledConnection lease = pool.acquireRead()) {
+      this.stream(lease, query, List.of(), rs -> rows[0] = writer.write(rs));
+    }
+    Metrics.ROWS_RETURNED.add(rows[0]);
+    return rows[0];
+  }
+
+  /**
+   * Writes every row of a table as JSON, straight from the database to a stream, without caching
+   * the rows or holding them in memory. As in getEncodedTable, each row carries its rowid as
+   * ROWID_FIELD if the table has one, and the rows must all be written within the query time
+   * limit.
+   *
+   * @param table name of the table
+   * @param writer writer to write the rows with
+   * @return number of rows written
+   * @throws SQLException if the table does not exist or cannot be read
+   * @throws IOException exception thrown by the output stream
+   */
+  public int streamTable(String table, JsonStreamWriter writer)
+      throws SQLException, IOException {
+    this.checkReadable(table);
+    int[] rows = new int[1];
+    this.streamQuery(this.selectAll(table), List.of(), rs -> rows[0] = writer.write(rs));
+    Metrics.ROWS_RETURNED.add(rows[0]);
+    return rows[0];
+  }
+
+  /**
+   * Executes a query with a statement from a connection's statement cache. A statement that fails
+   * is dropped from the cache rather than reused. The results of a read are held to the limits of
+   * the proxy's settings while they are read.
+   *
+   * @param lease borrowed connection to run the query on
+   * @param query SQL query to execute
+   * @param params the SQL parameters to be set in the query string
+   * @param isWrite whether the query is a write
+   * @return output of the query
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private QueryOutput execute(PooledConnection lease, String query, List<?> params,
+                              boolean isWrite) throws SQLException {
+    // the memory reserved while reading is given back once the results are complete, and from
+    // then on is counted by the cache's own budget
+    try (QueryBudget budget = isWrite ? null : new QueryBudget(config.getMaxResultRows(),
+        config.getMaxResultBytes(), config.getMemoryBudget())) {
+      long start = System.nanoTime();
+      PreparedStatement stmt = lease.prepare(query);
+      Metrics.QUERY_PREPARE.recordSince(start);
+      return new QueryOutput(stmt, params, isWrite, budget);
+    } catch (SQLException e) {
+      lease.discard(query);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the cached output of a read query, loading it on a miss. A write that commits while
+   * the query is loading cannot see the entry to invalidate it, so an output loaded across a
+   * write to one of its tables is returned but dropped from the cache.
+   *
+   * @param key query and parameters to read
+   * @return output of the query
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private QueryOutput readCached(QueryKey key) throws SQLException {
+    long generation = this.writeGeneration(key.getTables());
+    // peeking through the map view leaves the cache's own hit and miss counts to getUnchecked
+    if (cache.asMap().containsKey(key)) {
+      tableStats.recordHit(key.getTables());
+      Metrics.CACHE_HITS.increment();
+    } else {
+      tableStats.recordMiss(key.getTables());
+      Metrics.CACHE_MISSES.increment();
+    }
+    QueryOutput output;
+    try {
+      output = cache.get(key);
+    } catch (ExecutionException e) {
+      // failed loads are not cached
+      throw (SQLException) e.getCause();
+    }
+    if (this.writeGeneration(key.getTables()) != generation) {
+      cache.asMap().remove(key, output);
+    }
+    return output;
+  }
+
+  /**
+   * Returns a count that moves whenever a write may change some tables. Each count it adds up
+   * only grows, so the sum changes whenever one of them does.
+   *
+   * @param tables tables that are read, empty if unknown
+   * @return number of writes that may have changed the tables
+   */
+  private long writeGeneration(Set<String> tables) {
+    if (tables.isEmpty()) {
+      return writes.get();
+    }
+    long generation = schemaWrites.get();
+    for (String table : tables) {
+      AtomicLong count = tableWrites.get(table);
+      generation += count == null ? 0 : count.get();
+    }
+    return generation;
+  }
+
+  /**
+   * Starts a new epoch of table versions, which changes the version of every table at once. The
+   * epoch is random so that versions from an earlier run or database are not mistaken for these.
+   */
+  private void newEpoch() {
+    epoch = Long.toHexString(ThreadLocalRandom.current().nextLong());
+    tableVersions.clear();
+  }
+
+  /**
+   * Returns a strong entity tag for a whole table, which changes whenever the table is written.
+   *
+   * @param table name of the table
+   * @param compact whether the tag is for the compact format
+   * @return entity tag, in quotes
+   * @throws SQLException if the table doesn't exist or cannot be read
+   */
+  public String getTableETag(String table, boolean compact) throws SQLException {
+    this.checkReadable(table);
+    AtomicLong version = tableVersions.computeIfAbsent(table, t -> new AtomicLong());
+    return "\"" + epoch + "-" + version.get() + (compact ? "-c" : "-r") + "\"";
+  }
+
+  /**
+   * Returns a whole table serialized as JSON. The bytes are cached until the table is written,
+   * so repeated requests for an unchanged table are neither read nor serialized again. The table
+   * is read on the query executor like any other query, under the same time limit.
+   *
+   * @param table name of the table
+   * @param compact whether to use the compact format of JsonStreamWriter
+   * @return serialized table with its entity tag
+   * @throws SQLException exception thrown by invalid SQL operations, if the table is larger than
+   *     the results of one query may be, or if reading it times out
+   * @throws IOException exception thrown while serializing
+   */
+  public EncodedResponse getEncodedTable(String table, boolean compact)
+      throws SQLException, IOException {
+    // the tag is taken before reading, so a concurrent write can only make it too old
+    String etag = this.getTableETag(table, compact);
+    String key = responseKey(table, compact);
+    EncodedResponse cached = responses.getIfPresent(key);
+    if (cached != null && cached.getETag().equals(etag)) {
+      return cached;
+    }
+
+    config.getMemoryBudget().admit(ADMISSION_WAIT_MILLIS);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    JsonStreamWriter writer = new JsonStreamWriter(bytes, compact);
+    // the encoded table is held in memory until it is sent, so it counts against the budget
+    try (QueryBudget budget = new QueryBudget(config.getMaxResultRows(),
+        config.getMaxResultBytes(), config.getMemoryBudget())) {
+      writer.setBudget(budget, bytes::size);
+      int[] rows = new int[1];
+      this.streamQuery(this.selectAll(table), List.of(), rs -> rows[0] = writer.write(rs));
+      writer.flush();
+      Metrics.ROWS_RETURNED.add(rows[0]);
+      EncodedResponse encoded = new EncodedResponse(bytes.toByteArray(), etag);
+      responses.put(key, encoded);
+      return encoded;
+    }
+  }
+
+  /**
+   * Returns a table serialized by getEncodedTable, compressed with a content encoding. The
+   * compressed bytes are kept with the cached table, so it is only compressed once.
+   *
+   * @param encoded serialized table returned by getEncodedTable
+   * @param table name of the table
+   * @param compact whether the table is in the compact format
+   * @param encoding encoding to compress with
+   * @return compressed body; must not be modified
+   */
+  public byte[] getCompressedTable(EncodedResponse encoded, String table, boolean compact,
+      ContentEncoding encoding) {
+    long before = encoded.estimateBytes();
+    byte[] body = encoded.getCompressed(encoding, config.getCompressionLevel());
+    if (encoded.estimateBytes() != before) {
+      // the cache weighs an entry only when it is stored, so it is stored again to count the
+      // compressed bytes
+      responses.asMap().replace(responseKey(table, compact), encoded, encoded);
+    }
+    return body;
+  }
+
+  /**
+   * Returns the key a serialized table is cached under.
+   *
+   * @param table name of the table
+   * @param compact whether the table is in the compact format
+   * @return key in the response cache
+   */
+  private static String responseKey(String table, boolean compact) {
+    return table + (compact ? "-c" : "-r");
+  }
+
+  /**
+   * Checks that a table exists and that its permissions allow it to be read.
+   *
+   * @param table name of the table
+   * @throws SQLException if the table doesn't exist or is write-only
+   */
+  private void checkReadable(String table) throws SQLException {
+    if (!this.tableNames.contains(table)) {
+      throw new SQLException("Table doesn't exist");
+    }
+    if ("W".equals(this.permissions.get(table))) {
+      throw new SQLException("Wrong permissions");
+    }
+  }
+
+  /**
+   * Returns one page of a table, ordered by rowid. Only the page is read from the database and
+   * cached, so tables of any size can be scrolled through without holding them in memory.
+   *
+   * @param table name of the table to read
+   * @param cursor rowid of the last row of the previous page, or null for the first page
+   * @param pageSize maximum number of rows in the page
+   * @return the requested page
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  public TablePage getPage(String table, Long cursor, int pageSize) throws SQLException {
+    this.checkReadable(table);
+    if (pageSize <= 0) {
+      throw new SQLException("Page size must be positive");
+    }
+
+    if (this.hasRowid(table)) {
+      String query = "SELECT " + ROWID_COLUMN + ", * FROM " + quote(table)
+          + " WHERE " + ROWID_COLUMN + " > ? ORDER BY " + ROWID_COLUMN + " LIMIT " + pageSize;
+      long start = cursor == null ? Long.MIN_VALUE : cursor;
+      QueryOutput rows = this.executeQuery(query, List.of(start));
+      return new TablePage(rows, true, 0, pageSize, this.getRowCount(table));
     } else {
-      QueryOutput output = cache.getUnchecked(query);
-      if (!output.getIsValid()) {
-        cache.invalidate(query);
-        throw new SQLException("SQL Exception");
+      // WITHOUT ROWID tables have no stable key to seek on, so the cursor is a row offset instead
+      long offset = cursor == null ? 0 : cursor;
+      String query = "SELECT * FROM " + quote(table) + " LIMIT " + pageSize + " OFFSET ?";
+      QueryOutput rows = this.executeQuery(query, List.of(offset));
+      return new TablePage(rows, false, offset, pageSize, this.getRowCount(table));
+    }
+  }
+
+  /**
+   * Returns one page of a table sorted by some of its columns, starting at a row offset. If the
+   * first sort column leads an index and every sort column holds numbers, SQLite sorts with the
+   * index. Otherwise the cached table is sorted in memory and the order is kept with it, so later
+   * pages and repeated sorts only copy out the rows of the page.
+   *
+   * @param table name of the table
+   * @param keys columns to sort by, most significant first
+   * @param offset number of sorted rows to skip
+   * @param pageSize maximum number of rows in the page
+   * @return page of the sorted table, with offsets as cursors
+   * @throws SQLException exception thrown by invalid SQL operations, or if a column doesn't exist
+   */
+  public TablePage getSortedPage(String table, List<SortKey> keys, long offset, int pageSize)
+      throws SQLException {
+    this.checkReadable(table);
+    if (keys.isEmpty() || pageSize <= 0 || offset < 0) {
+      throw new SQLException("Invalid sort");
+    }
+
+    Map<String, Boolean> numeric = this.numericColumns(table);
+    boolean indexed = Boolean.TRUE.equals(numeric.get(keys.get(0).getColumn()))
+        && keys.stream().allMatch(key -> numeric.containsKey(key.getColumn()));
+    if (indexed) {
+      List<String> order = new ArrayList<>();
+      for (SortKey key : keys) {
+        order.add(key.toString());
+      }
+      // ties are broken by rowid to match the stable in-memory sort
+      if (this.hasRowid(table)) {
+        order.add(ROWID_COLUMN);
+      }
+      String query = this.selectAll(table) + " ORDER BY " + String.join(", ", order)
+          + " LIMIT " + pageSize + " OFFSET ?";
+      QueryOutput rows = this.executeQuery(query, List.of(offset));
+      return new TablePage(rows, false, offset, pageSize, this.getRowCount(table));
+    }
+
+    QueryOutput all = this.executeQuery(this.selectAll(table));
+    int[] order = all.getSortOrder(keys);
+    int from = (int) Math.min(offset, order.length);
+    int to = (int) Math.min((long) from + pageSize, order.length);
+    return new TablePage(all.select(order, from, to), false, offset, pageSize, order.length);
+  }
+
+  /**
+   * Finds the columns of a table that SQLite sorts as numbers, and which of them lead an index.
+   *
+   * @param table name of the table
+   * @return map of the names of numeric columns to whether an index starts with them
+   */
+  private Map<String, Boolean> numericColumns(String table) {
+    TableSchema info = schema.getTable(table);
+    if (info == null) {
+      return Map.of();
+    }
+    Map<String, Boolean> columns = new HashMap<>();
+    for (TableSchema.ColumnSchema column : info.getColumns()) {
+      if (NUMERIC_TYPE.matcher(column.getType().toUpperCase(Locale.ROOT)).find()) {
+        columns.put(column.getName(), false);
+      }
+    }
+    for (TableSchema.IndexSchema index : info.getIndexes()) {
+      String first = index.getColumns().isEmpty() ? null : index.getColumns().get(0);
+      if (columns.containsKey(first)) {
+        columns.put(first, true);
+      }
+    }
+    return columns;
+  }
+
+  /**
+   * Returns the number of rows in a table. The count is cached until the next write.
+   *
+   * @param table name of the table to count
+   * @return number of rows in the table
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  public long getRowCount(String table) throws SQLException {
+    this.checkReadable(table);
+    QueryOutput count = this.executeQuery("SELECT COUNT(*) FROM " + quote(table));
+    return Long.parseLong(count.getString(0, 0));
+  }
+
+  /**
+   * Builds a query reading every row of a table, with the rowid as the first column, named
+   * ROWID_FIELD, if the table has one.
+   *
+   * @param table name of the table
+   * @return SELECT query over the whole table
+   */
+  private String selectAll(String table) {
+    if (this.hasRowid(table)) {
+      return "SELECT " + ROWID_COLUMN + " AS " + ROWID_FIELD + ", * FROM " + quote(table);
+    }
+    return "SELECT * FROM " + quote(table);
+  }
+
+  /**
+   * Returns the columns that identify a row of a table: the rowid if the table has one, and its
+   * primary key otherwise.
+   *
+   * @param table name of the table
+   * @return names of the key columns, or an empty list if rows can only be told apart by all
+   *     their values
+   */
+  public List<String> getRowKey(String table) {
+    if (this.hasRowid(table)) {
+      return List.of(ROWID_COLUMN);
+    }
+    return this.primaryKey(table);
+  }
+
+  /**
+   * Picks the values that identify a row, so that an update or delete of it can find the row
+   * through the table's rowid or primary key index instead of comparing every column. A row read
+   * through the proxy carries its rowid as ROWID_FIELD; a row without it is found by its primary
+   * key if it has every key column, and by all of its values otherwise.
+   *
+   * @param table name of the table
+   * @param row values of the row by column name
+   * @return values by column name to match the row on
+   */
+  public Map<String, String> identifyRow(String table, Map<String, String> row) {
+    String rowid = row.get(ROWID_FIELD);
+    if (rowid != null && this.hasRowid(table)) {
+      return Map.of(ROWID_COLUMN, rowid);
+    }
+    List<String> key = this.primaryKey(table);
+    if (!key.isEmpty() && row.keySet().containsAll(key)) {
+      Map<String, String> values = new HashMap<>();
+      for (String column : key) {
+        values.put(column, row.get(column));
       }
-      return output;
+      return values;
     }
+    Map<String, String> values = new HashMap<>(row);
+    values.remove(ROWID_FIELD);
+    return values;
+  }
+
+  /**
+   * Finds the primary key columns of a table from its schema.
+   *
+   * @param table name of the table
+   * @return names of the primary key columns in key order, or an empty list if it has none
+   */
+  private List<String> primaryKey(String table) {
+    TableSchema info = schema.getTable(table);
+    return info == null ? List.of() : info.getPrimaryKey();
+  }
+
+  /**
+   * Checks whether a table has a rowid that pages can be keyed on.
+   *
+   * @param table name of the table to check
+   * @return whether the table has a rowid
+   */
+  private boolean hasRowid(String table) {
+    return hasRowid.computeIfAbsent(table, t -> {
+      try (PooledConnection lease = pool.acquireRead()) {
+        lease.getConnection()
+            .prepareStatement("SELECT " + ROWID_COLUMN + " FROM " + quote(t) + " LIMIT 0").close();
+        return true;
+      } catch (SQLException e) {
+        return false;
+      }
+    });
   }
 
   /**
@@ -187,91 +1302,153 @@ public class DatabaseProxy implements IDatabaseProxy {
   }
 
   /**
-   * Sets table permissions to the default permission.
+   * Reads the schema of the database and how its tables depend on each other. New tables are
+   * given the default permission, and tables that no longer exist lose theirs.
    *
    * @throws SQLException exception thrown by invalid SQL operations
    */
-  private void setDefaultPermissions() throws SQLException {
-    String[] types = {"TABLE"};
-    ResultSet tables = conn.getMetaData().getTables(null, null, null, types);
-    while (tables.next()) {
-      this.permissions.put(tables.getString("TABLE_NAME"), DEFAULT_PERMISSION);
-      tableNames.add(tables.getString("TABLE_NAME"));
+  private void refreshTables() throws SQLException {
+    Map<String, String> newPermissions = new ConcurrentHashMap<>();
+    try (PooledConnection lease = pool.acquireRead()) {
+      DatabaseSchema newSchema = DatabaseSchema.read(lease.getConnection());
+      for (String table : newSchema.getTableNames()) {
+        newPermissions.put(table, this.permissions.getOrDefault(table, DEFAULT_PERMISSION));
+      }
+      this.dependencies = new TableDependencies(lease.getConnection(), newSchema);
+      this.schema = newSchema;
     }
+    this.permissions = newPermissions;
+    this.tableNames = schema.getTableNames();
   }
 
   /**
-   * Checks if all tables have the correct permissions before executing a provided query.
+   * Returns the schema of the database. The schema is read again only if its schema version
+   * has moved since it was last read, which happens when another connection to the file changed
+   * the schema; every cached read is then dropped as well, since the proxy saw no write.
    *
-   * @param query SQL query to check
-   * @throws SQLException thrown when there is an invalid read or write to a table
+   * @return schema of the database
+   * @throws SQLException exception thrown by invalid SQL operations
    */
-  private void checkPermissions(String query) throws SQLException {
-    Map<String, List<String>> permsToTables = new HashMap<>() {
-      {
-        put("R", new ArrayList<>());
-        put("W", new ArrayList<>());
-        put("RW", new ArrayList<>());
-      }
-    };
+  public DatabaseSchema getSchema() throws SQLException {
+    long version;
+    try (PooledConnection lease = pool.acquireRead()) {
+      version = DatabaseSchema.readVersion(lease.getConnection());
+    }
+    if (version != schema.getVersion()) {
+      this.invalidate(null, true, List.of());
+    }
+    return schema;
+  }
+
+  /**
+   * Returns the cache hits, misses and invalidations of each table.
+   *
+   * @return map of table names to their cache counters
+   */
+  public Map<String, Map<String, Long>> getTableCacheStats() {
+    return tableStats.snapshot();
+  }
 
-    String[] queryArray = parseQuery(query);
-    if (queryArray[0].equals("CREATE")) {
+  /**
+   * Returns statistics about the connection pool.
+   *
+   * @return map of statistic names to values
+   */
+  public Map<String, Number> getPoolStats() {
+    Map<String, Number> stats = new LinkedHashMap<>(pool.getStats());
+    stats.putAll(queries.getStats());
+    return stats;
+  }
+
+  /**
+   * Checks if all tables have the correct permissions before executing a provided query. Each
+   * table needs the permission of the clause it is named in: R after SELECT or JOIN, W after
+   * INSERT, and RW otherwise. Tables with RW permission allow anything.
+   *
+   * @param statement classified SQL statement to check
+   * @throws SQLException thrown when there is an invalid read or write to a table
+   */
+  void checkPermissions(SqlStatement statement) throws SQLException {
+    if (statement.getCommand().equals("CREATE")) {
       return;
     }
-
-    String currentPermission = DEFAULT_PERMISSION;
-    for (String s : queryArray) {
-      if (SQL_COMMAND_PERMISSIONS.containsKey(s)) {
-        currentPermission = SQL_COMMAND_PERMISSIONS.get(s);
+    List<String> references = statement.getReferences();
+    List<String> required = statement.getPermissions();
+    for (int i = 0; i < references.size(); i++) {
+      String table = dependencies.resolve(references.get(i));
+      String permission = table == null ? null : this.permissions.get(table);
+      if (permission == null || permission.equals("RW")) {
         continue;
       }
-      permsToTables.get(currentPermission).add(s);
+      if (!permission.equals(required.get(i))) {
+        throw new SQLException("Wrong permissions");
+      }
     }
+  }
 
-    for (Map.Entry<String, List<String>> entry : permsToTables.entrySet()) {
-      String permission = entry.getKey();
-      List<String> tablesToCheck = entry.getValue();
-      for (String table : tablesToCheck) {
-        if (this.permissions.get(table) == null || this.permissions.get(table).equals("RW")) {
-          continue;
-        }
-        if (!this.permissions.get(table).equals(permission)) {
-          throw new SQLException("Wrong permissions");
-        }
-      }
+  /**
+   * Quotes an identifier such as a table name so it can be used in a SQL query.
+   *
+   * @param identifier identifier to quote
+   * @return quoted identifier
+   */
+  public static String quote(String identifier) {
+    return "\"" + identifier.replace("\"", "\"\"") + "\"";
+  }
+
+  /**
+   * Counts results dropped from the query cache, as evictions if the cache dropped them to stay
+   * within its limits, or as invalidations if they were dropped because they went stale.
+   *
+   * @param removal the dropped results and why they were dropped
+   */
+  private static void countRemoval(RemovalNotification<QueryKey, QueryOutput> removal) {
+    if (removal.wasEvicted()) {
+      Metrics.CACHE_EVICTIONS.increment();
+    } else if (removal.getCause() == RemovalCause.EXPLICIT) {
+      Metrics.CACHE_INVALIDATIONS.increment();
     }
   }
 
   /**
-   * Checks if a query requires write permissions.
+   * Estimates the heap memory held by a cache entry.
    *
-   * @param query SQL query to check
+   * @param key query and parameters of the entry
+   * @param output output of the query
+   * @return estimated size in bytes
    */
-  private boolean checkWrite(String query) {
-    String[] queryArray = parseQuery(query);
-    for (String s : queryArray) {
-      if (SQL_COMMAND_PERMISSIONS.containsKey(s)) {
-        String requiredPermission = SQL_COMMAND_PERMISSIONS.get(s);
-        if (requiredPermission.equals("W") || requiredPermission.equals("RW")) {
-          return true;
-        }
-      }
+  private static int weigh(QueryKey key, QueryOutput output) {
+    long bytes = KEY_OVERHEAD_BYTES + 2L * key.getQuery().length() + output.estimateBytes();
+    for (Object param : key.getParams()) {
+      bytes += 2L * String.valueOf(param).length();
     }
-    return false;
+    return (int) Math.min(Integer.MAX_VALUE, bytes);
   }
 
   /**
-   * Parses a SQL query into a String array.
+   * Returns statistics about the result cache.
    *
-   * @param query SQL query to parse.
-   * @return String array representing the provided SQL query
+   * @return map of statistic names to values
    */
-  private String[] parseQuery(String query) {
-    String regex = "[\\s,]";
-    return Arrays.stream(query.split(regex))
-        .filter(str -> str != null && str.length() > 0)
-        .toArray(String[]::new);
+  public Map<String, Object> getCacheStats() {
+    long bytes = 0;
+    int entries = 0;
+    for (Map.Entry<QueryKey, QueryOutput> entry : cache.asMap().entrySet()) {
+      bytes += weigh(entry.getKey(), entry.getValue());
+      entries++;
+    }
+    CacheStats stats = cache.stats();
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("entries", entries);
+    map.put("bytes", bytes);
+    map.put("max_bytes", config.getCacheMaxBytes());
+    map.put("expire_after_access_seconds", config.getCacheExpireAfterAccessSeconds());
+    map.put("hits", stats.hitCount());
+    map.put("misses", stats.missCount());
+    map.put("hit_rate", stats.hitRate());
+    map.put("evictions", stats.evictionCount());
+    map.put("average_load_millis", stats.averageLoadPenalty() / NANOS_PER_MILLI);
+    return map;
   }
 
   /**
@@ -279,6 +1456,7 @@ public class DatabaseProxy implements IDatabaseProxy {
    */
   public void clearCache() {
     cache.invalidateAll();
+    responses.invalidateAll();
   }
 
   /**
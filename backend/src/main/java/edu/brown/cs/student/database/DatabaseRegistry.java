@@ -0,0 +1,172 @@
+package edu.brown.cs.student.database;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.LoadingCache;
+import com.google.common.cache.RemovalListener;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+
+/**
+ * Registry of open databases, keyed by the canonical path of their file, so that every user of
+ * the same file shares one proxy, with one pool of connections and one cache.
+ *
+ * <p>Only a bounded number of databases are kept open. The least recently used one is closed
+ * when another has to be opened, and any database that has not been used for a while is closed
+ * as well. A closed database is opened again the next time it is asked for, with an empty cache
+ * and default permissions.
+ * @author Justin Rhee
+ */
+public class DatabaseRegistry {
+  private static final long CLEANUP_SECONDS = 60;
+
+  private final LoadingCache<String, DatabaseProxy> proxies;
+  private final int maxOpen;
+  private final long idleSeconds;
+  private final LongAdder opened = new LongAdder();
+  private final LongAdder closed = new LongAdder();
+  private final ScheduledExecutorService sweeper;
+
+  /**
+   * Constructs an empty registry.
+   *
+   * @param config settings for the proxies the registry opens
+   * @param maxOpen maximum number of databases kept open at once
+   * @param idleSeconds seconds after which an unused database is closed, or 0 to keep it open
+   * @param onOpen called with the canonical path and proxy of every database opened
+   */
+  public DatabaseRegistry(ProxyConfig config, int maxOpen, long idleSeconds,
+                          BiConsumer<String, DatabaseProxy> onOpen) {
+    this.maxOpen = Math.max(1, maxOpen);
+    this.idleSeconds = idleSeconds;
+    RemovalListener<String, DatabaseProxy> onRemoval = removal -> {
+      closed.increment();
+      removal.getValue().close();
+    };
+    CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder()
+        .maximumSize(this.maxOpen);
+    if (idleSeconds > 0) {
+      builder.expireAfterAccess(idleSeconds, TimeUnit.SECONDS);
+    }
+    proxies = builder.removalListener(onRemoval).build(new CacheLoader<>() {
+      @Override
+      public DatabaseProxy load(@NonNull String path)
+          throws SQLException, FileNotFoundException, ClassNotFoundException {
+        DatabaseProxy proxy = new DatabaseProxy(path, config);
+        opened.increment();
+        onOpen.accept(path, proxy);
+        return proxy;
+      }
+    });
+
+    if (idleSeconds > 0) {
+      // the cache only expires entries when it is used, so idle databases are swept regularly
+      sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "database-registry");
+        thread.setDaemon(true);
+        return thread;
+      });
+      sweeper.scheduleAtFixedRate(proxies::cleanUp, CLEANUP_SECONDS, CLEANUP_SECONDS,
+          TimeUnit.SECONDS);
+    } else {
+      sweeper = null;
+    }
+  }
+
+  /**
+   * Returns the canonical path of a database file, which identifies it in the registry.
+   *
+   * @param path path to a SQL database
+   * @return canonical path of the database
+   * @throws FileNotFoundException if there is no file at the path
+   */
+  public static String canonicalPath(String path) throws FileNotFoundException {
+    File file = new File(path);
+    if (!file.exists()) {
+      throw new FileNotFoundException("File not found");
+    }
+    try {
+      return file.getCanonicalPath();
+    } catch (IOException e) {
+      throw new FileNotFoundException(e.getMessage());
+    }
+  }
+
+  /**
+   * Returns the proxy of a database, opening it if it is not open.
+   *
+   * @param path path to a SQL database
+   * @return shared proxy of the database
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws FileNotFoundException thrown when file indicated by filepath is not found
+   * @throws ClassNotFoundException exception thrown by Class.forName
+   */
+  public DatabaseProxy get(String path)
+      throws SQLException, FileNotFoundException, ClassNotFoundException {
+    try {
+      return proxies.get(canonicalPath(path));
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof FileNotFoundException) {
+        throw (FileNotFoundException) cause;
+      } else if (cause instanceof ClassNotFoundException) {
+        throw (ClassNotFoundException) cause;
+      }
+      throw new SQLException(cause);
+    }
+  }
+
+  /**
+   * Returns the proxy of a database if it is open, without opening it.
+   *
+   * @param path path to a SQL database
+   * @return shared proxy of the database, or null if it is not open
+   */
+  public DatabaseProxy getIfOpen(String path) {
+    try {
+      return proxies.getIfPresent(canonicalPath(path));
+    } catch (FileNotFoundException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Closes every open database and stops sweeping idle ones. Databases can still be opened
+   * afterwards, but they are only closed when the registry is full or closeAll is called again.
+   */
+  public void closeAll() {
+    if (sweeper != null) {
+      sweeper.shutdownNow();
+    }
+    proxies.invalidateAll();
+  }
+
+  /**
+   * Returns statistics about the registry.
+   *
+   * @return map of statistic names to values
+   */
+  public Map<String, Number> getStats() {
+    Map<String, Number> stats = new LinkedHashMap<>();
+    stats.put("open", proxies.size());
+    stats.put("max_open", maxOpen);
+    stats.put("idle_seconds", idleSeconds);
+    stats.put("opened", opened.sum());
+    stats.put("closed", closed.sum());
+    return stats;
+  }
+}
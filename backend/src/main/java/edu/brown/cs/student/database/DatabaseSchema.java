@@ -0,0 +1,190 @@
+package edu.brown.cs.student.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Schema of the tables of a database, as of one value of its schema version.
+ *
+ * <p>SQLite increments PRAGMA schema_version whenever the schema changes, by any connection to
+ * the file, so comparing it with the version the schema was read at tells whether the schema is
+ * still current without reading it again. Row counts are estimates from sqlite_stat1 where
+ * ANALYZE has been run and from the largest rowid otherwise, both of which are read without
+ * scanning the table; they are not kept up to date by writes.
+ * @author Justin Rhee
+ */
+public final class DatabaseSchema {
+  private final long version;
+  private final Map<String, TableSchema> tables;
+
+  /**
+   * Constructs a schema.
+   *
+   * @param version schema version it was read at
+   * @param tables schemas of the tables by name, in table order
+   */
+  private DatabaseSchema(long version, Map<String, TableSchema> tables) {
+    this.version = version;
+    this.tables = tables;
+  }
+
+  /**
+   * Reads the current schema version of a database.
+   *
+   * @param conn connection to the database
+   * @return value of PRAGMA schema_version
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  static long readVersion(Connection conn) throws SQLException {
+    try (Statement stat = conn.createStatement();
+         ResultSet version = stat.executeQuery("PRAGMA schema_version")) {
+      return version.getLong(1);
+    }
+  }
+
+  /**
+   * Reads the schema of every table in a database, leaving out the tables of search indexes.
+   *
+   * @param conn connection to the database
+   * @return schema of the database
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  static DatabaseSchema read(Connection conn) throws SQLException {
+    // read first, so a change made while reading shows up as a newer version on the next check
+    long version = readVersion(conn);
+
+    List<String> names = new ArrayList<>();
+    String[] types = {"TABLE"};
+    try (ResultSet tables = conn.getMetaData().getTables(null, null, null, types)) {
+      while (tables.next()) {
+        String table = tables.getString("TABLE_NAME");
+        if (!table.startsWith(SearchIndex.PREFIX)) {
+          names.add(table);
+        }
+      }
+    }
+
+    Map<String, TableSchema> tables = new LinkedHashMap<>();
+    try (Statement stat = conn.createStatement()) {
+      Map<String, Long> analyzed = readStatistics(stat);
+      for (String table : names) {
+        Long estimate = analyzed.get(table);
+        if (estimate == null) {
+          estimate = largestRowid(stat, table);
+        }
+        tables.put(table, TableSchema.read(stat, table, estimate));
+      }
+    }
+    return new DatabaseSchema(version, tables);
+  }
+
+  /**
+   * Reads the row counts that ANALYZE stored in sqlite_stat1, if it has been run.
+   *
+   * @param stat statement on a connection to the database
+   * @return number of rows of each analyzed table
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private static Map<String, Long> readStatistics(Statement stat) throws SQLException {
+    Map<String, Long> counts = new HashMap<>();
+    try (ResultSet exists = stat.executeQuery(
+        "SELECT 1 FROM sqlite_master WHERE type = 'table' AND name = 'sqlite_stat1'")) {
+      if (!exists.next()) {
+        return counts;
+      }
+    }
+    // the first number of each row is the number of rows in the table
+    try (ResultSet stats = stat.executeQuery("SELECT tbl, stat FROM sqlite_stat1")) {
+      while (stats.next()) {
+        String value = stats.getString("stat");
+        if (value == null || value.isEmpty()) {
+          continue;
+        }
+        try {
+          long rows = Long.parseLong(value.split(" ", 2)[0]);
+          counts.merge(stats.getString("tbl"), rows, Math::max);
+        } catch (NumberFormatException e) {
+          continue;
+        }
+      }
+    }
+    return counts;
+  }
+
+  /**
+   * Estimates the rows of a table by its largest rowid, which is found from the end of the
+   * table's b-tree without a scan. It counts every row when none have been deleted.
+   *
+   * @param stat statement on a connection to the database
+   * @param table name of the table
+   * @return largest rowid, or null if the table has no rowid
+   */
+  private static Long largestRowid(Statement stat, String table) {
+    String query = "SELECT max(rowid) FROM " + DatabaseProxy.quote(table);
+    try (ResultSet max = stat.executeQuery(query)) {
+      return max.getLong(1);
+    } catch (SQLException e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns the schema version the schema was read at.
+   *
+   * @return value of PRAGMA schema_version when it was read
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the names of the tables.
+   *
+   * @return table names, in table order
+   */
+  public List<String> getTableNames() {
+    return List.copyOf(tables.keySet());
+  }
+
+  /**
+   * Returns the schema of a table.
+   *
+   * @param table name of the table
+   * @return its schema, or null if there is no such table
+   */
+  public TableSchema getTable(String table) {
+    return tables.get(table);
+  }
+
+  /**
+   * Returns the schemas of every table.
+   *
+   * @return table schemas, in table order
+   */
+  public List<TableSchema> getTables() {
+    return List.copyOf(tables.values());
+  }
+
+  /**
+   * Converts the schema to a map that can be written as JSON.
+   *
+   * @return map of the schema version and the schema of each table
+   */
+  public Map<String, Object> toMap() {
+    List<Map<String, Object>> tableMaps = new ArrayList<>();
+    for (TableSchema table : tables.values()) {
+      tableMaps.add(table.toMap());
+    }
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("version", version);
+    map.put("tables", tableMaps);
+    return map;
+  }
+}
@@ -0,0 +1,73 @@
+package edu.brown.cs.student.database;
+
+import java.util.Arrays;
+
+/**
+ * Column of floating point values, stored in a double[].
+ * @author Justin Rhee
+ */
+class DoubleColumn extends Column {
+  private double[] values;
+
+  /**
+   * Constructs an empty column.
+   *
+   * @param capacity initial capacity
+   */
+  DoubleColumn(int capacity) {
+    this.values = new double[capacity];
+  }
+
+  /**
+   * Returns the value at a row. The result is meaningless if the value is null.
+   *
+   * @param row index of the row
+   * @return the value
+   */
+  double getDouble(int row) {
+    return values[row];
+  }
+
+  @Override
+  boolean appendValue(Object value, int row) {
+    // integers in a REAL column would print differently as doubles, so they are kept as text
+    if (!(value instanceof Double || value instanceof Float)) {
+      return false;
+    }
+    this.ensureCapacity(row + 1);
+    values[row] = ((Number) value).doubleValue();
+    return true;
+  }
+
+  @Override
+  void ensureCapacity(int capacity) {
+    if (capacity > values.length) {
+      values = Arrays.copyOf(values, grow(values.length, capacity));
+    }
+  }
+
+  @Override
+  void trim() {
+    values = Arrays.copyOf(values, this.size());
+  }
+
+  @Override
+  Object getValue(int row) {
+    return values[row];
+  }
+
+  @Override
+  Column emptyCopy(int capacity) {
+    return new DoubleColumn(capacity);
+  }
+
+  @Override
+  String format(int row) {
+    return RealFormat.format(values[row]);
+  }
+
+  @Override
+  long valueBytes() {
+    return (long) values.length * Double.BYTES;
+  }
+}
@@ -0,0 +1,75 @@
+package edu.brown.cs.student.database;
+
+import edu.brown.cs.student.api.ContentEncoding;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Class to represent the serialized body of a response, kept so that it can be sent again
+ * without reading or serializing the table a second time. The body compressed with each content
+ * encoding is made the first time a client asks for that encoding, through
+ * DatabaseProxy.getCompressedTable, and kept with the body.
+ * @author Justin Rhee
+ */
+public class EncodedResponse {
+  private static final int OBJECT_OVERHEAD_BYTES = 64;
+
+  private final byte[] body;
+  private final String etag;
+  private final Map<ContentEncoding, byte[]> compressed = new ConcurrentHashMap<>();
+
+  /**
+   * Constructs an encoded response.
+   *
+   * @param body serialized body of the response
+   * @param etag strong entity tag of the body, in quotes
+   */
+  public EncodedResponse(byte[] body, String etag) {
+    this.body = body;
+    this.etag = etag;
+  }
+
+  /**
+   * Returns the serialized body of the response.
+   *
+   * @return body of the response; must not be modified
+   */
+  public byte[] getBody() {
+    return body;
+  }
+
+  /**
+   * Returns the entity tag of the response.
+   *
+   * @return entity tag, in quotes
+   */
+  public String getETag() {
+    return etag;
+  }
+
+  /**
+   * Returns the body of the response compressed with a content encoding. The level is only used
+   * the first time the body is compressed with the encoding; later calls return the same bytes.
+   *
+   * @param encoding encoding to compress with
+   * @param level compression level, from ContentEncoding.MIN_LEVEL to MAX_LEVEL
+   * @return compressed body of the response; must not be modified
+   */
+  byte[] getCompressed(ContentEncoding encoding, int level) {
+    return compressed.computeIfAbsent(encoding, e -> e.compress(body, level));
+  }
+
+  /**
+   * Returns an estimate of the heap memory held by the response, in bytes.
+   *
+   * @return estimated size in bytes
+   */
+  long estimateBytes() {
+    long bytes = OBJECT_OVERHEAD_BYTES + body.length;
+    for (byte[] encoded : compressed.values()) {
+      bytes += encoded.length;
+    }
+    return bytes;
+  }
+}
@@ -0,0 +1,337 @@
+package edu.brown.cs.student.database;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Writes query results to an output stream as CSV, newline-delimited JSON or a compact binary
+ * format, one row at a time, so that tables of any size are exported in constant memory.
+ *
+ * <p>CSV has a header line of column names and quotes values only when they hold a comma, quote or
+ * line break; NULL is written as an empty value, and an empty string as "" so that it reads back
+ * as one. NDJSON has one object per row keyed by column
+ * name, with integers and reals as JSON numbers and NULL as null. The binary format keeps the
+ * storage class of every value. All of its numbers are big-endian:
+ * <pre>
+ * "TVX1", int32 column count, then per column: int32 byte length, UTF-8 name
+ * per row: byte 1, then per value a type byte and its data:
+ *   0 NULL, 1 INTEGER int64, 2 REAL float64,
+ *   3 TEXT int32 length + UTF-8, 4 BLOB int32 length + bytes
+ * byte 0 after the last row
+ * </pre>
+ * @author Justin Rhee
+ */
+public class ExportWriter {
+  /**
+   * Format to export in.
+   */
+  public enum Format {
+    CSV("text/csv; charset=utf-8", "csv"),
+    NDJSON("application/x-ndjson", "ndjson"),
+    BINARY("application/octet-stream", "bin");
+
+    private final String contentType;
+    private final String extension;
+
+    /**
+     * Constructs a format.
+     *
+     * @param contentType media type of the output
+     * @param extension usual file extension of the output
+     */
+    Format(String contentType, String extension) {
+      this.contentType = contentType;
+      this.extension = extension;
+    }
+
+    /**
+     * Returns the media type of the output.
+     *
+     * @return media type
+     */
+    public String getContentType() {
+      return contentType;
+    }
+
+    /**
+     * Returns the usual file extension of the output.
+     *
+     * @return extension without the dot
+     */
+    public String getExtension() {
+      return extension;
+    }
+
+    /**
+     * Finds a format by name or file extension, ignoring case.
+     *
+     * @param name name of the format, such as csv, ndjson or binary, or its extension
+     * @return the format, or null if there is none by that name
+     */
+    public static Format of(String name) {
+      String lower = name.toLowerCase(Locale.ROOT);
+      for (Format format : values()) {
+        if (format.name().toLowerCase(Locale.ROOT).equals(lower)
+            || format.extension.equals(lower)) {
+          return format;
+        }
+      }
+      return lower.equals("jsonl") ? NDJSON : null;
+    }
+  }
+
+  // name of the single column of a query whose rows SQLite has already written as JSON
+  private static final String NDJSON_COLUMN = "_ndjson";
+  private static final byte[] MAGIC = "TVX1".getBytes(StandardCharsets.US_ASCII);
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final byte ROW = 1;
+  private static final byte END = 0;
+  private static final byte NULL = 0;
+  private static final byte INTEGER = 1;
+  private static final byte REAL = 2;
+  private static final byte TEXT = 3;
+  private static final byte BLOB = 4;
+
+  private final DataOutputStream out;
+  private final Format format;
+
+  /**
+   * Constructs a writer.
+   *
+   * @param out stream to write to, which is flushed but not closed
+   * @param format format to write in
+   */
+  public ExportWriter(OutputStream out, Format format) {
+    this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+    this.format = format;
+  }
+
+  /**
+   * Builds the query reading every row of a table for export in a format. For NDJSON, SQLite
+   * writes each row as a JSON object itself, which is faster than reading the values one at a
+   * time; BLOBs, which JSON cannot hold, are written as hex strings.
+   *
+   * @param format format to export in
+   * @param table name of the table
+   * @param columns names of the columns of the table
+   * @return SELECT query whose rows write can export
+   */
+  static String selectAll(Format format, String table, List<String> columns) {
+    if (format != Format.NDJSON || columns.isEmpty()) {
+      return "SELECT * FROM " + DatabaseProxy.quote(table);
+    }
+    List<String> fields = new ArrayList<>();
+    for (String column : columns) {
+      String quoted = DatabaseProxy.quote(column);
+      fields.add("'" + column.replace("'", "''") + "', CASE typeof(" + quoted
+          + ") WHEN 'blob' THEN hex(" + quoted + ") ELSE " + quoted + " END");
+    }
+    return "SELECT json_object(" + String.join(", ", fields) + ") AS " + NDJSON_COLUMN
+        + " FROM " + DatabaseProxy.quote(table);
+  }
+
+  /**
+   * Writes every remaining row of a ResultSet, then flushes the stream.
+   *
+   * @param rs result set to write
+   * @return number of rows written
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException exception thrown by the output stream
+   */
+  public long write(ResultSet rs) throws SQLException, IOException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    String[] names = new String[metaData.getColumnCount()];
+    for (int i = 0; i < names.length; i++) {
+      names[i] = metaData.getColumnName(i + 1);
+    }
+
+    long rows;
+    switch (format) {
+      case CSV:
+        rows = this.writeCsv(rs, names);
+        break;
+      case NDJSON:
+        rows = this.writeNdjson(rs, names);
+        break;
+      default:
+        rows = this.writeBinary(rs, names);
+    }
+    out.flush();
+    return rows;
+  }
+
+  /**
+   * Writes rows as CSV.
+   *
+   * @param rs result set to write
+   * @param names column names
+   * @return number of rows written
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException exception thrown by the output stream
+   */
+  private long writeCsv(ResultSet rs, String[] names) throws SQLException, IOException {
+    for (int i = 0; i < names.length; i++) {
+      if (i > 0) {
+        out.write(',');
+      }
+      this.writeCsvValue(names[i].getBytes(StandardCharsets.UTF_8));
+    }
+    out.write('\n');
+    long rows = 0;
+    while (rs.next()) {
+      for (int i = 0; i < names.length; i++) {
+        if (i > 0) {
+          out.write(',');
+        }
+        // the UTF-8 bytes SQLite holds are copied as they are, without decoding them to a String
+        byte[] value = rs.getBytes(i + 1);
+        if (value != null) {
+          this.writeCsvValue(value);
+        }
+      }
+      out.write('\n');
+      rows++;
+    }
+    return rows;
+  }
+
+  /**
+   * Writes one CSV value, in quotes if it is empty or holds a comma, quote or line break.
+   *
+   * @param value UTF-8 bytes of the value
+   * @throws IOException exception thrown by the output stream
+   */
+  private void writeCsvValue(byte[] value) throws IOException {
+    boolean quote = value.length == 0;
+    for (int i = 0; i < value.length && !quote; i++) {
+      byte b = value[i];
+      quote = b == ',' || b == '"' || b == '\n' || b == '\r';
+    }
+    if (!quote) {
+      out.write(value);
+      return;
+    }
+    out.write('"');
+    int start = 0;
+    for (int i = 0; i < value.length; i++) {
+      if (value[i] == '"') {
+        // the quote is written twice: once here, once with the rest of the run after it
+        out.write(value, start, i - start + 1);
+        start = i;
+      }
+    }
+    out.write(value, start, value.length - start);
+    out.write('"');
+  }
+
+  /**
+   * Writes rows as newline-delimited JSON objects.
+   *
+   * @param rs result set to write
+   * @param names column names
+   * @return number of rows written
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException exception thrown by the output stream
+   */
+  private long writeNdjson(ResultSet rs, String[] names) throws SQLException, IOException {
+    long rows = 0;
+    if (names.length == 1 && names[0].equals(NDJSON_COLUMN)) {
+      while (rs.next()) {
+        out.write(rs.getBytes(1));
+        out.write('\n');
+        rows++;
+      }
+      return rows;
+    }
+
+    byte[][] prefixes = new byte[names.length][];
+    for (int i = 0; i < names.length; i++) {
+      String prefix = (i == 0 ? "{" : ",") + JsonStreamWriter.quote(names[i]) + ":";
+      prefixes[i] = prefix.getBytes(StandardCharsets.UTF_8);
+    }
+    while (rs.next()) {
+      for (int i = 0; i < names.length; i++) {
+        out.write(prefixes[i]);
+        Object value = rs.getObject(i + 1);
+        String json;
+        if (value == null) {
+          json = "null";
+        } else if (value instanceof Integer || value instanceof Long) {
+          json = value.toString();
+        } else if (value instanceof Double && Double.isFinite((Double) value)) {
+          json = value.toString();
+        } else {
+          json = JsonStreamWriter.quote(rs.getString(i + 1));
+        }
+        out.write(json.getBytes(StandardCharsets.UTF_8));
+      }
+      out.write(names.length == 0 ? "{}\n".getBytes(StandardCharsets.UTF_8)
+          : "}\n".getBytes(StandardCharsets.UTF_8));
+      rows++;
+    }
+    return rows;
+  }
+
+  /**
+   * Writes rows in the binary format.
+   *
+   * @param rs result set to write
+   * @param names column names
+   * @return number of rows written
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException exception thrown by the output stream
+   */
+  private long writeBinary(ResultSet rs, String[] names) throws SQLException, IOException {
+    out.write(MAGIC);
+    out.writeInt(names.length);
+    for (String name : names) {
+      this.writeBytes(name.getBytes(StandardCharsets.UTF_8));
+    }
+    long rows = 0;
+    while (rs.next()) {
+      out.writeByte(ROW);
+      for (int i = 0; i < names.length; i++) {
+        // SQLite types values, not columns, so each value is written as what it is
+        Object value = rs.getObject(i + 1);
+        if (value == null) {
+          out.writeByte(NULL);
+        } else if (value instanceof Integer || value instanceof Long) {
+          out.writeByte(INTEGER);
+          out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Double || value instanceof Float) {
+          out.writeByte(REAL);
+          out.writeDouble(((Number) value).doubleValue());
+        } else if (value instanceof byte[]) {
+          out.writeByte(BLOB);
+          this.writeBytes((byte[]) value);
+        } else {
+          out.writeByte(TEXT);
+          this.writeBytes(value.toString().getBytes(StandardCharsets.UTF_8));
+        }
+      }
+      rows++;
+    }
+    out.writeByte(END);
+    return rows;
+  }
+
+  /**
+   * Writes bytes after their length.
+   *
+   * @param bytes bytes to write
+   * @throws IOException exception thrown by the output stream
+   */
+  private void writeBytes(byte[] bytes) throws IOException {
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+}
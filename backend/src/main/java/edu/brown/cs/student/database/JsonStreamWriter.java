@@ -0,0 +1,295 @@
+package edu.brown.cs.student.database;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.function.LongSupplier;
+
+/**
+ * Writes query results as JSON straight to an output stream, one row at a time, so that no
+ * complete copy of the output is ever held in memory.
+ *
+ * <p>Rows are written either as an array of objects keyed by column name, which is the shape
+ * returned by {@link QueryOutput#toJSON()}, or in a compact shape where the column names are
+ * written once: {"columns": [...], "rows": [[...], ...]}. As in toJSON, a null value is left out
+ * of an object row, while a compact row keeps it as null so that its values stay in column order,
+ * and the rowid a row carries as DatabaseProxy.ROWID_FIELD is a number.
+ * @author Justin Rhee
+ */
+public class JsonStreamWriter {
+  private static final int BUFFER_SIZE = 16 * 1024;
+  private static final int FIRST_PRINTABLE = 0x20;
+  private static final char LINE_SEPARATOR = '\u2028';
+  private static final char PARAGRAPH_SEPARATOR = '\u2029';
+
+  // rows written between checks of the budget
+  private static final int BUDGET_CHECK_ROWS = 256;
+
+  private final Writer out;
+  private final boolean compact;
+  private QueryBudget budget;
+  private LongSupplier bytesWritten;
+
+  /**
+   * Constructs a writer.
+   *
+   * @param out stream to write the JSON to
+   * @param compact whether to write column names once rather than in every row
+   */
+  public JsonStreamWriter(OutputStream out, boolean compact) {
+    this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8),
+        BUFFER_SIZE);
+    this.compact = compact;
+  }
+
+  /**
+   * Holds the rows written from a ResultSet to a budget, so that results too large for memory
+   * are stopped while they are written into an in-memory stream.
+   *
+   * @param queryBudget limits on the results
+   * @param written returns how many bytes the underlying stream holds so far
+   */
+  void setBudget(QueryBudget queryBudget, LongSupplier written) {
+    this.budget = queryBudget;
+    this.bytesWritten = written;
+  }
+
+  /**
+   * Writes every remaining row of a ResultSet.
+   *
+   * @param rs result set to write
+   * @return number of rows written
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException exception thrown by the output stream
+   */
+  public int write(ResultSet rs) throws SQLException, IOException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    String[] keys = new String[metaData.getColumnCount()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = metaData.getColumnName(i + 1);
+    }
+
+    String[] prefixes = this.start(keys);
+    int rows = 0;
+    while (rs.next()) {
+      this.startRow(rows);
+      boolean empty = true;
+      for (int i = 0; i < prefixes.length; i++) {
+        empty = this.writeField(prefixes[i], keys[i], rs.getString(i + 1), empty);
+      }
+      this.endRow();
+      rows++;
+      if (budget != null && rows % BUDGET_CHECK_ROWS == 0) {
+        budget.check(rows, bytesWritten.getAsLong());
+      }
+    }
+    this.end();
+    if (budget != null) {
+      budget.check(rows, bytesWritten.getAsLong());
+    }
+    return rows;
+  }
+
+  /**
+   * Writes every row of the output of a read query.
+   *
+   * @param output output of a read query
+   * @return number of rows written
+   * @throws IOException exception thrown by the output stream
+   */
+  public int write(QueryOutput output) throws IOException {
+    String[] names = output.getColumnNames().toArray(new String[0]);
+    String[] prefixes = this.start(names);
+    int rows = output.getRowCount();
+    for (int row = 0; row < rows; row++) {
+      this.startRow(row);
+      boolean empty = true;
+      for (int i = 0; i < prefixes.length; i++) {
+        empty = this.writeField(prefixes[i], names[i], output.getString(row, i), empty);
+      }
+      this.endRow();
+    }
+    this.end();
+    return rows;
+  }
+
+  /**
+   * Flushes everything written so far to the output stream.
+   *
+   * @throws IOException exception thrown by the output stream
+   */
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  /**
+   * Writes the opening of the document and returns what to write before each value of a row.
+   *
+   * @param names column names
+   * @return text to write before the value of each column
+   * @throws IOException exception thrown by the output stream
+   */
+  private String[] start(String[] names) throws IOException {
+    String[] prefixes = new String[names.length];
+    if (compact) {
+      out.write("{\"columns\":[");
+      for (int i = 0; i < names.length; i++) {
+        if (i > 0) {
+          out.write(',');
+        }
+        this.writeValue(names[i]);
+        prefixes[i] = "";
+      }
+      out.write("],\"rows\":[");
+    } else {
+      // the escaped key is built once per column instead of once per cell
+      for (int i = 0; i < names.length; i++) {
+        prefixes[i] = quote(names[i]) + ":";
+      }
+      out.write('[');
+    }
+    return prefixes;
+  }
+
+  /**
+   * Writes the opening of a row.
+   *
+   * @param index index of the row
+   * @throws IOException exception thrown by the output stream
+   */
+  private void startRow(int index) throws IOException {
+    if (index > 0) {
+      out.write(',');
+    }
+    out.write(compact ? '[' : '{');
+  }
+
+  /**
+   * Writes the closing of a row.
+   *
+   * @throws IOException exception thrown by the output stream
+   */
+  private void endRow() throws IOException {
+    out.write(compact ? ']' : '}');
+  }
+
+  /**
+   * Writes the closing of the document and flushes it.
+   *
+   * @throws IOException exception thrown by the output stream
+   */
+  private void end() throws IOException {
+    out.write(compact ? "]}" : "]");
+    out.flush();
+  }
+
+  /**
+   * Writes one value of a row, after a comma if anything has been written in the row already. A
+   * null value is skipped in an object row, and a rowid is written as a number.
+   *
+   * @param prefix text to write before the value
+   * @param column name of the value's column
+   * @param value value to write, or null
+   * @param empty whether nothing has been written in the row yet
+   * @return whether nothing has been written in the row yet, after this value
+   * @throws IOException exception thrown by the output stream
+   */
+  private boolean writeField(String prefix, String column, String value, boolean empty)
+      throws IOException {
+    if (value == null && !compact) {
+      return empty;
+    }
+    if (!empty) {
+      out.write(',');
+    }
+    out.write(prefix);
+    Object json = QueryOutput.jsonValue(column, value);
+    if (json instanceof Long) {
+      out.write(json.toString());
+    } else {
+      this.writeValue(value);
+    }
+    return false;
+  }
+
+  /**
+   * Writes a value as a JSON string, or as null.
+   *
+   * @param value value to write
+   * @throws IOException exception thrown by the output stream
+   */
+  private void writeValue(String value) throws IOException {
+    if (value == null) {
+      out.write("null");
+    } else {
+      escape(value, out);
+    }
+  }
+
+  /**
+   * Quotes and escapes a String as a JSON string.
+   *
+   * @param value String to quote
+   * @return JSON string
+   */
+  static String quote(String value) {
+    StringWriter sw = new StringWriter(value.length() + 2);
+    try {
+      escape(value, sw);
+    } catch (IOException e) {
+      throw new IllegalStateException(e); // StringWriter never throws
+    }
+    return sw.toString();
+  }
+
+  /**
+   * Writes a String as a quoted, escaped JSON string.
+   *
+   * @param value String to write
+   * @param dest destination to write to
+   * @throws IOException exception thrown by the destination
+   */
+  private static void escape(String value, Writer dest) throws IOException {
+    dest.write('"');
+    int start = 0;
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      String replacement;
+      switch (c) {
+        case '"':
+          replacement = "\\\"";
+          break;
+        case '\\':
+          replacement = "\\\\";
+          break;
+        case '\n':
+          replacement = "\\n";
+          break;
+        case '\r':
+          replacement = "\\r";
+          break;
+        case '\t':
+          replacement = "\\t";
+          break;
+        default:
+          if (c >= FIRST_PRINTABLE && c != LINE_SEPARATOR && c != PARAGRAPH_SEPARATOR) {
+            continue;
+          }
+          replacement = String.format("\\u%04x", (int) c);
+      }
+      // unescaped runs are copied in one call rather than a char at a time
+      dest.write(value, start, i - start);
+      dest.write(replacement);
+      start = i + 1;
+    }
+    dest.write(value, start, value.length() - start);
+    dest.write('"');
+  }
+}
@@ -0,0 +1,72 @@
+package edu.brown.cs.student.database;
+
+import java.util.Arrays;
+
+/**
+ * Column of integer values, stored in a long[].
+ * @author Justin Rhee
+ */
+class LongColumn extends Column {
+  private long[] values;
+
+  /**
+   * Constructs an empty column.
+   *
+   * @param capacity initial capacity
+   */
+  LongColumn(int capacity) {
+    this.values = new long[capacity];
+  }
+
+  /**
+   * Returns the value at a row. The result is meaningless if the value is null.
+   *
+   * @param row index of the row
+   * @return the value
+   */
+  long getLong(int row) {
+    return values[row];
+  }
+
+  @Override
+  boolean appendValue(Object value, int row) {
+    if (!(value instanceof Integer || value instanceof Long)) {
+      return false;
+    }
+    this.ensureCapacity(row + 1);
+    values[row] = ((Number) value).longValue();
+    return true;
+  }
+
+  @Override
+  void ensureCapacity(int capacity) {
+    if (capacity > values.length) {
+      values = Arrays.copyOf(values, grow(values.length, capacity));
+    }
+  }
+
+  @Override
+  void trim() {
+    values = Arrays.copyOf(values, this.size());
+  }
+
+  @Override
+  Object getValue(int row) {
+    return values[row];
+  }
+
+  @Override
+  Column emptyCopy(int capacity) {
+    return new LongColumn(capacity);
+  }
+
+  @Override
+  String format(int row) {
+    return Long.toString(values[row]);
+  }
+
+  @Override
+  long valueBytes() {
+    return (long) values.length * Long.BYTES;
+  }
+}
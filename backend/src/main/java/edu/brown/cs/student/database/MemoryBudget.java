@@ -0,0 +1,101 @@
+package edu.brown.cs.student.database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Memory set aside for the results of queries while they are read, shared by every database
+ * opened with the same settings. Queries reserve memory as their results grow. A new query waits
+ * a moment for memory when the budget is used up and is refused if none comes free, and a
+ * running query whose results no longer fit is stopped, so overload ends in errors the client can
+ * retry rather than in an OutOfMemoryError.
+ * @author Justin Rhee
+ */
+class MemoryBudget {
+  private static final int RETRY_AFTER_SECONDS = 1;
+
+  private final long maxBytes;
+  private long usedBytes;
+  private long refused;
+
+  /**
+   * Constructs an unused budget.
+   *
+   * @param maxBytes bytes that results of running queries may hold in total
+   */
+  MemoryBudget(long maxBytes) {
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the bytes that results of running queries may hold in total.
+   *
+   * @return size of the budget in bytes
+   */
+  long getMaxBytes() {
+    return maxBytes;
+  }
+
+  /**
+   * Waits until some of the budget is free, so that a new query may start.
+   *
+   * @param waitMillis how long to wait for memory to come free
+   * @throws OverloadException if the budget stayed used up
+   */
+  synchronized void admit(long waitMillis) throws OverloadException {
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitMillis);
+    while (usedBytes >= maxBytes) {
+      long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+      if (remaining <= 0) {
+        refused++;
+        throw new OverloadException("Too much memory is held by running queries",
+            RETRY_AFTER_SECONDS);
+      }
+      try {
+        this.wait(remaining);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new OverloadException("Interrupted while waiting for memory", RETRY_AFTER_SECONDS);
+      }
+    }
+  }
+
+  /**
+   * Reserves memory for a query whose results grew.
+   *
+   * @param bytes bytes to reserve
+   * @throws OverloadException if the bytes do not fit in what is left of the budget
+   */
+  synchronized void reserve(long bytes) throws OverloadException {
+    if (usedBytes + bytes > maxBytes) {
+      refused++;
+      throw new OverloadException("Too much memory is held by running queries",
+          RETRY_AFTER_SECONDS);
+    }
+    usedBytes += bytes;
+  }
+
+  /**
+   * Gives back memory reserved by a query.
+   *
+   * @param bytes bytes to give back
+   */
+  synchronized void release(long bytes) {
+    usedBytes -= bytes;
+    this.notifyAll();
+  }
+
+  /**
+   * Returns statistics about the budget.
+   *
+   * @return map of statistic names to values
+   */
+  synchronized Map<String, Number> getStats() {
+    Map<String, Number> stats = new LinkedHashMap<>();
+    stats.put("in_flight_bytes", usedBytes);
+    stats.put("max_in_flight_bytes", maxBytes);
+    stats.put("refused_queries", refused);
+    return stats;
+  }
+}
@@ -0,0 +1,178 @@
+package edu.brown.cs.student.database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Class to represent one insert, update or delete of a row, as a parameterized SQL statement.
+ * Columns are always listed in the same order, so mutations of the same columns share a statement
+ * and can be batched together.
+ * @author Justin Rhee
+ */
+public final class Mutation {
+  private final String table;
+  private final String query;
+  private final List<String> params;
+  private final String permission;
+
+  /**
+   * Constructs a mutation.
+   *
+   * @param table name of the table written to
+   * @param query SQL statement
+   * @param params parameters bound to the statement, in order
+   * @param permission permission the table needs, as in DatabaseProxy
+   */
+  private Mutation(String table, String query, List<String> params, String permission) {
+    this.table = table;
+    this.query = query;
+    this.params = List.copyOf(params);
+    this.permission = permission;
+  }
+
+  /**
+   * Creates a mutation that inserts a row.
+   *
+   * @param table name of the table
+   * @param row values of the new row by column name
+   * @return the insert
+   */
+  public static Mutation insert(String table, Map<String, String> row) {
+    if (row.isEmpty()) {
+      return new Mutation(table, "INSERT INTO " + DatabaseProxy.quote(table) + " DEFAULT VALUES",
+          List.of(), "W");
+    }
+    List<String> columns = new ArrayList<>();
+    List<String> placeholders = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    for (Map.Entry<String, String> entry : new TreeMap<>(row).entrySet()) {
+      columns.add(DatabaseProxy.quote(entry.getKey()));
+      placeholders.add("?");
+      params.add(entry.getValue());
+    }
+    String query = "INSERT INTO " + DatabaseProxy.quote(table) + " (" + String.join(", ", columns)
+        + ") VALUES (" + String.join(", ", placeholders) + ")";
+    return new Mutation(table, query, params, "W");
+  }
+
+  /**
+   * Creates a mutation that updates the rows matching every given value, such as the values
+   * picked by DatabaseProxy.identifyRow.
+   *
+   * @param table name of the table
+   * @param oldRow values identifying the rows to update, by column name
+   * @param newRow new values by column name
+   * @return the update
+   * @throws IllegalArgumentException if either row is empty
+   */
+  public static Mutation update(String table, Map<String, String> oldRow,
+                                Map<String, String> newRow) {
+    if (oldRow.isEmpty() || newRow.isEmpty()) {
+      throw new IllegalArgumentException("Rows to update must not be empty");
+    }
+    List<String> assignments = new ArrayList<>();
+    List<String> params = new ArrayList<>();
+    for (Map.Entry<String, String> entry : new TreeMap<>(newRow).entrySet()) {
+      assignments.add(DatabaseProxy.quote(entry.getKey()) + " = ?");
+      params.add(entry.getValue());
+    }
+    String query = "UPDATE " + DatabaseProxy.quote(table) + " SET "
+        + String.join(", ", assignments) + where(oldRow, params);
+    return new Mutation(table, query, params, "RW");
+  }
+
+  /**
+   * Creates a mutation that deletes the rows matching every given value, such as the values
+   * picked by DatabaseProxy.identifyRow.
+   *
+   * @param table name of the table
+   * @param row values identifying the rows to delete, by column name
+   * @return the delete
+   * @throws IllegalArgumentException if the row is empty
+   */
+  public static Mutation delete(String table, Map<String, String> row) {
+    if (row.isEmpty()) {
+      throw new IllegalArgumentException("Row to delete must not be empty");
+    }
+    List<String> params = new ArrayList<>();
+    String query = "DELETE FROM " + DatabaseProxy.quote(table) + where(row, params);
+    return new Mutation(table, query, params, "RW");
+  }
+
+  /**
+   * Finds the values of an edited row that differ from the row before the edit, so that an update
+   * only writes the cells that changed. The rowid carried by rows read through the proxy is never
+   * a change.
+   *
+   * @param oldRow values before the edit by column name
+   * @param newRow values after the edit by column name
+   * @return the new values that changed, by column name
+   */
+  public static Map<String, String> changedValues(Map<String, String> oldRow,
+                                                  Map<String, String> newRow) {
+    Map<String, String> changed = new TreeMap<>();
+    for (Map.Entry<String, String> entry : newRow.entrySet()) {
+      if (!entry.getKey().equals(DatabaseProxy.ROWID_FIELD)
+          && (!oldRow.containsKey(entry.getKey())
+          || !Objects.equals(oldRow.get(entry.getKey()), entry.getValue()))) {
+        changed.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return changed;
+  }
+
+  /**
+   * Builds a WHERE clause matching every value of a row.
+   *
+   * @param row values by column name
+   * @param params list to add the values to, in order
+   * @return the WHERE clause, with a leading space
+   */
+  private static String where(Map<String, String> row, List<String> params) {
+    List<String> conditions = new ArrayList<>();
+    for (Map.Entry<String, String> entry : new TreeMap<>(row).entrySet()) {
+      conditions.add(DatabaseProxy.quote(entry.getKey()) + " = ?");
+      params.add(entry.getValue());
+    }
+    return " WHERE " + String.join(" AND ", conditions);
+  }
+
+  /**
+   * Returns the name of the table written to.
+   *
+   * @return name of the table
+   */
+  public String getTable() {
+    return table;
+  }
+
+  /**
+   * Returns the SQL statement.
+   *
+   * @return SQL statement
+   */
+  public String getQuery() {
+    return query;
+  }
+
+  /**
+   * Returns the parameters bound to the statement.
+   *
+   * @return parameters, in order
+   */
+  public List<String> getParams() {
+    return params;
+  }
+
+  /**
+   * Returns the permission the table needs for this mutation.
+   *
+   * @return W for inserts, RW for updates and deletes
+   */
+  String getPermission() {
+    return permission;
+  }
+}
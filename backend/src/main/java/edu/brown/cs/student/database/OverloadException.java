@@ -0,0 +1,34 @@
+package edu.brown.cs.student.database;
+
+import java.sql.SQLException;
+
+/**
+ * Exception thrown when a query is refused because the server is busy, either because too many
+ * queries are waiting or because the results of running queries already use the memory set
+ * aside for them. Retrying later may succeed.
+ * @author Justin Rhee
+ */
+public class OverloadException extends SQLException {
+  private static final long serialVersionUID = 1L;
+  private final int retryAfterSeconds;
+
+  /**
+   * Constructs an overload exception.
+   *
+   * @param message why the query was refused
+   * @param retryAfterSeconds seconds after which the query may be retried
+   */
+  public OverloadException(String message, int retryAfterSeconds) {
+    super(message);
+    this.retryAfterSeconds = retryAfterSeconds;
+  }
+
+  /**
+   * Returns how long to wait before retrying the query.
+   *
+   * @return seconds after which the query may be retried
+   */
+  public int getRetryAfterSeconds() {
+    return retryAfterSeconds;
+  }
+}
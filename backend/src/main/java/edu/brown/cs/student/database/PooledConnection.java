@@ -0,0 +1,86 @@
+package edu.brown.cs.student.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A connection borrowed from a {@link ConnectionPool}. Closing it hands the connection back to
+ * the pool rather than closing the underlying connection. Only the first close hands it back.
+ * @author Justin Rhee
+ */
+public class PooledConnection implements AutoCloseable {
+  private final ConnectionPool pool;
+  private final Connection conn;
+  private final StatementCache statements;
+  private final boolean isWrite;
+  private final AtomicBoolean released = new AtomicBoolean();
+
+  /**
+   * Constructs a borrowed connection.
+   *
+   * @param pool pool the connection belongs to
+   * @param conn underlying connection
+   * @param statements cache of the statements prepared on the connection
+   * @param isWrite whether this is the write connection
+   */
+  PooledConnection(ConnectionPool pool, Connection conn, StatementCache statements,
+                   boolean isWrite) {
+    this.pool = pool;
+    this.conn = conn;
+    this.statements = statements;
+    this.isWrite = isWrite;
+  }
+
+  /**
+   * Returns the underlying connection.
+   *
+   * @return connection to the database
+   */
+  public Connection getConnection() {
+    return conn;
+  }
+
+  /**
+   * Returns a prepared statement for a query from the connection's statement cache. The
+   * statement has no parameters bound and must not be closed by the caller, though any ResultSet
+   * it produces must be.
+   *
+   * @param query SQL query
+   * @return prepared statement
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  public PreparedStatement prepare(String query) throws SQLException {
+    return statements.prepare(query);
+  }
+
+  /**
+   * Closes and forgets the cached statement for a query, for example after it failed.
+   *
+   * @param query SQL query
+   */
+  public void discard(String query) {
+    statements.invalidate(query);
+  }
+
+  /**
+   * Hands the connection back to the pool, unless it was handed back already.
+   */
+  @Override
+  public void close() {
+    // a second release would queue a reader twice or unlock the write lock held by another lease
+    if (released.compareAndSet(false, true)) {
+      pool.release(this);
+    }
+  }
+
+  /**
+   * Returns whether this is the write connection.
+   *
+   * @return whether this is the write connection
+   */
+  boolean isWrite() {
+    return isWrite;
+  }
+}
@@ -0,0 +1,425 @@
+package edu.brown.cs.student.database;
+
+import edu.brown.cs.student.api.ContentEncoding;
+
+import java.util.Map;
+
+/**
+ * Settings for a database proxy. The defaults match a proxy used from tests or the REPL; the
+ * server overrides them from its command line options.
+ * @author Justin Rhee
+ */
+public class ProxyConfig {
+  private static final int DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 30000;
+  private static final int DEFAULT_BUSY_TIMEOUT_MILLIS = 5000;
+  // streamed responses hold a connection while they are sent, so even one core needs a few
+  private static final int MIN_READ_POOL_SIZE = 4;
+  private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+  // an eighth of the heap, but never less than enough for a few sample tables
+  private static final long MIN_CACHE_BYTES = 16L * 1024 * 1024;
+  private static final int CACHE_HEAP_FRACTION = 8;
+  private static final int DEFAULT_CHANGE_LOG_SIZE = 10000;
+  private static final int DEFAULT_MAX_OPEN_DATABASES = 16;
+  private static final long DEFAULT_DATABASE_IDLE_SECONDS = 600;
+  private static final int DEFAULT_MAX_QUEUED_QUERIES = 1000;
+  // one query may hold a quarter of the heap, and all running queries together half of it
+  private static final int RESULT_HEAP_FRACTION = 4;
+  private static final int IN_FLIGHT_HEAP_FRACTION = 2;
+  // zlib's own default, which compresses JSON nearly as well as level 9 in a fraction of the time
+  private static final int DEFAULT_COMPRESSION_LEVEL = 6;
+  // below about a kilobyte the saving is smaller than the time to compress and inflate
+  private static final int DEFAULT_COMPRESSION_MIN_BYTES = 1024;
+
+  private int readPoolSize = Math.max(MIN_READ_POOL_SIZE,
+      Runtime.getRuntime().availableProcessors());
+  private boolean walMode = false;
+  private boolean searchIndex = false;
+  private int acquireTimeoutMillis = DEFAULT_ACQUIRE_TIMEOUT_MILLIS;
+  private int busyTimeoutMillis = DEFAULT_BUSY_TIMEOUT_MILLIS;
+  private int statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+  private long cacheMaxBytes = Math.max(MIN_CACHE_BYTES,
+      Runtime.getRuntime().maxMemory() / CACHE_HEAP_FRACTION);
+  private long cacheExpireAfterAccessSeconds = 0;
+  private long responseCacheMaxBytes = Math.max(MIN_CACHE_BYTES,
+      Runtime.getRuntime().maxMemory() / CACHE_HEAP_FRACTION);
+  private int changeLogSize = DEFAULT_CHANGE_LOG_SIZE;
+  private int maxOpenDatabases = DEFAULT_MAX_OPEN_DATABASES;
+  private long databaseIdleSeconds = DEFAULT_DATABASE_IDLE_SECONDS;
+  private long queryTimeoutMillis = 0;
+  private int maxQueuedQueries = DEFAULT_MAX_QUEUED_QUERIES;
+  private int maxResultRows = 0;
+  private long maxResultBytes = Runtime.getRuntime().maxMemory() / RESULT_HEAP_FRACTION;
+  private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+  private int compressionMinBytes = DEFAULT_COMPRESSION_MIN_BYTES;
+  private MemoryBudget memoryBudget =
+      new MemoryBudget(Runtime.getRuntime().maxMemory() / IN_FLIGHT_HEAP_FRACTION);
+
+  /**
+   * Returns the number of read-only connections kept open.
+   *
+   * @return number of read connections
+   */
+  public int getReadPoolSize() {
+    return readPoolSize;
+  }
+
+  /**
+   * Sets the number of read-only connections kept open.
+   *
+   * @param readPoolSize number of read connections, at least 1
+   */
+  public void setReadPoolSize(int readPoolSize) {
+    this.readPoolSize = Math.max(1, readPoolSize);
+  }
+
+  /**
+   * Returns whether the database is switched to write-ahead logging when it is loaded.
+   *
+   * @return whether WAL mode is used
+   */
+  public boolean isWalMode() {
+    return walMode;
+  }
+
+  /**
+   * Sets whether the database is switched to write-ahead logging when it is loaded. WAL lets
+   * readers run while a write is in progress, but it is a persistent change to the database file.
+   *
+   * @param walMode whether WAL mode is used
+   */
+  public void setWalMode(boolean walMode) {
+    this.walMode = walMode;
+  }
+
+  /**
+   * Returns how long to wait for a free connection before giving up.
+   *
+   * @return timeout in milliseconds
+   */
+  public int getAcquireTimeoutMillis() {
+    return acquireTimeoutMillis;
+  }
+
+  /**
+   * Sets how long to wait for a free connection before giving up.
+   *
+   * @param acquireTimeoutMillis timeout in milliseconds
+   */
+  public void setAcquireTimeoutMillis(int acquireTimeoutMillis) {
+    this.acquireTimeoutMillis = acquireTimeoutMillis;
+  }
+
+  /**
+   * Returns how long SQLite waits on a locked database before failing a statement.
+   *
+   * @return timeout in milliseconds
+   */
+  public int getBusyTimeoutMillis() {
+    return busyTimeoutMillis;
+  }
+
+  /**
+   * Sets how long SQLite waits on a locked database before failing a statement.
+   *
+   * @param busyTimeoutMillis timeout in milliseconds
+   */
+  public void setBusyTimeoutMillis(int busyTimeoutMillis) {
+    this.busyTimeoutMillis = busyTimeoutMillis;
+  }
+
+  /**
+   * Returns how many prepared statements are kept open per connection.
+   *
+   * @return size of each connection's statement cache
+   */
+  public int getStatementCacheSize() {
+    return statementCacheSize;
+  }
+
+  /**
+   * Sets how many prepared statements are kept open per connection.
+   *
+   * @param statementCacheSize size of each connection's statement cache, at least 1
+   */
+  public void setStatementCacheSize(int statementCacheSize) {
+    this.statementCacheSize = Math.max(1, statementCacheSize);
+  }
+
+  /**
+   * Returns the estimated number of bytes of query results the cache may hold.
+   *
+   * @return cache budget in bytes
+   */
+  public long getCacheMaxBytes() {
+    return cacheMaxBytes;
+  }
+
+  /**
+   * Sets the estimated number of bytes of query results the cache may hold. A result larger
+   * than a quarter of the budget is not cached, so it cannot push out many small ones.
+   *
+   * @param cacheMaxBytes cache budget in bytes, at least 0
+   */
+  public void setCacheMaxBytes(long cacheMaxBytes) {
+    this.cacheMaxBytes = Math.max(0, cacheMaxBytes);
+  }
+
+  /**
+   * Returns how long a cached result may go unread before it is dropped.
+   *
+   * @return expiry in seconds, or 0 if results do not expire
+   */
+  public long getCacheExpireAfterAccessSeconds() {
+    return cacheExpireAfterAccessSeconds;
+  }
+
+  /**
+   * Sets how long a cached result may go unread before it is dropped.
+   *
+   * @param cacheExpireAfterAccessSeconds expiry in seconds, or 0 if results do not expire
+   */
+  public void setCacheExpireAfterAccessSeconds(long cacheExpireAfterAccessSeconds) {
+    this.cacheExpireAfterAccessSeconds = Math.max(0, cacheExpireAfterAccessSeconds);
+  }
+
+  /**
+   * Returns the number of bytes of serialized tables kept for sending again.
+   *
+   * @return budget of the response cache in bytes
+   */
+  public long getResponseCacheMaxBytes() {
+    return responseCacheMaxBytes;
+  }
+
+  /**
+   * Sets the number of bytes of serialized tables kept for sending again.
+   *
+   * @param responseCacheMaxBytes budget of the response cache in bytes, at least 0
+   */
+  public void setResponseCacheMaxBytes(long responseCacheMaxBytes) {
+    this.responseCacheMaxBytes = Math.max(0, responseCacheMaxBytes);
+  }
+
+  /**
+   * Returns whether full-text search indexes are built when a database is opened by the server.
+   *
+   * @return whether search indexes are built
+   */
+  public boolean isSearchIndex() {
+    return searchIndex;
+  }
+
+  /**
+   * Sets whether full-text search indexes are built when a database is opened by the server.
+   * The indexes and the triggers that maintain them are stored in the database file.
+   *
+   * @param searchIndex whether search indexes are built
+   */
+  public void setSearchIndex(boolean searchIndex) {
+    this.searchIndex = searchIndex;
+  }
+
+  /**
+   * Returns the number of row changes kept for each table for clients to catch up from.
+   *
+   * @return number of changes kept per table
+   */
+  public int getChangeLogSize() {
+    return changeLogSize;
+  }
+
+  /**
+   * Sets the number of row changes kept for each table for clients to catch up from. Clients
+   * further behind than this read the whole table again.
+   *
+   * @param changeLogSize number of changes kept per table, at least 0
+   */
+  public void setChangeLogSize(int changeLogSize) {
+    this.changeLogSize = Math.max(0, changeLogSize);
+  }
+
+  /**
+   * Returns the number of databases the server keeps open at once.
+   *
+   * @return maximum number of open databases
+   */
+  public int getMaxOpenDatabases() {
+    return maxOpenDatabases;
+  }
+
+  /**
+   * Sets the number of databases the server keeps open at once. Opening another closes the least
+   * recently used one.
+   *
+   * @param maxOpenDatabases maximum number of open databases, at least 1
+   */
+  public void setMaxOpenDatabases(int maxOpenDatabases) {
+    this.maxOpenDatabases = Math.max(1, maxOpenDatabases);
+  }
+
+  /**
+   * Returns how long the server keeps a database open after it was last used.
+   *
+   * @return time in seconds, or 0 if databases are only closed to make room for others
+   */
+  public long getDatabaseIdleSeconds() {
+    return databaseIdleSeconds;
+  }
+
+  /**
+   * Sets how long the server keeps a database open after it was last used.
+   *
+   * @param databaseIdleSeconds time in seconds, or 0 to only close databases to make room for
+   *                            others
+   */
+  public void setDatabaseIdleSeconds(long databaseIdleSeconds) {
+    this.databaseIdleSeconds = Math.max(0, databaseIdleSeconds);
+  }
+
+  /**
+   * Returns how long a query may run before it is interrupted.
+   *
+   * @return time limit in milliseconds, or 0 for none
+   */
+  public long getQueryTimeoutMillis() {
+    return queryTimeoutMillis;
+  }
+
+  /**
+   * Sets how long a query may run before it is interrupted and fails.
+   *
+   * @param queryTimeoutMillis time limit in milliseconds, or 0 for none
+   */
+  public void setQueryTimeoutMillis(long queryTimeoutMillis) {
+    this.queryTimeoutMillis = Math.max(0, queryTimeoutMillis);
+  }
+
+  /**
+   * Returns how many queries of one database may wait for a connection before more are refused.
+   *
+   * @return maximum number of waiting queries
+   */
+  public int getMaxQueuedQueries() {
+    return maxQueuedQueries;
+  }
+
+  /**
+   * Sets how many queries of one database may wait for a connection before more are refused.
+   *
+   * @param maxQueuedQueries maximum number of waiting queries, at least 1
+   */
+  public void setMaxQueuedQueries(int maxQueuedQueries) {
+    this.maxQueuedQueries = Math.max(1, maxQueuedQueries);
+  }
+
+  /**
+   * Returns the maximum number of rows a read may return.
+   *
+   * @return maximum number of rows, or 0 for no limit
+   */
+  public int getMaxResultRows() {
+    return maxResultRows;
+  }
+
+  /**
+   * Sets the maximum number of rows a read may return. A read with more rows fails.
+   *
+   * @param maxResultRows maximum number of rows, or 0 for no limit
+   */
+  public void setMaxResultRows(int maxResultRows) {
+    this.maxResultRows = Math.max(0, maxResultRows);
+  }
+
+  /**
+   * Returns the maximum estimated size of the results of a read.
+   *
+   * @return maximum size in bytes, or 0 for no limit
+   */
+  public long getMaxResultBytes() {
+    return maxResultBytes;
+  }
+
+  /**
+   * Sets the maximum estimated size of the results of a read. A read with larger results fails.
+   *
+   * @param maxResultBytes maximum size in bytes, or 0 for no limit
+   */
+  public void setMaxResultBytes(long maxResultBytes) {
+    this.maxResultBytes = Math.max(0, maxResultBytes);
+  }
+
+  /**
+   * Returns the memory that the results of running reads may hold in total.
+   *
+   * @return size of the budget in bytes
+   */
+  public long getInFlightMaxBytes() {
+    return memoryBudget.getMaxBytes();
+  }
+
+  /**
+   * Sets the memory that the results of running reads may hold in total, across every proxy
+   * opened with these settings. Reads beyond it wait briefly and are then refused.
+   *
+   * @param inFlightMaxBytes size of the budget in bytes, at least 1
+   */
+  public void setInFlightMaxBytes(long inFlightMaxBytes) {
+    memoryBudget = new MemoryBudget(Math.max(1, inFlightMaxBytes));
+  }
+
+  /**
+   * Returns the level responses are compressed at.
+   *
+   * @return compression level
+   */
+  public int getCompressionLevel() {
+    return compressionLevel;
+  }
+
+  /**
+   * Sets the level responses are compressed at, from 1, the fastest, to 9, the smallest.
+   *
+   * @param compressionLevel compression level, clamped to 1 to 9
+   */
+  public void setCompressionLevel(int compressionLevel) {
+    this.compressionLevel = Math.max(ContentEncoding.MIN_LEVEL,
+        Math.min(ContentEncoding.MAX_LEVEL, compressionLevel));
+  }
+
+  /**
+   * Returns the size below which responses are sent uncompressed.
+   *
+   * @return minimum size in bytes
+   */
+  public int getCompressionMinBytes() {
+    return compressionMinBytes;
+  }
+
+  /**
+   * Sets the size below which responses are sent uncompressed, even to clients that accept a
+   * compressed response.
+   *
+   * @param compressionMinBytes minimum size in bytes, or 0 to compress every response
+   */
+  public void setCompressionMinBytes(int compressionMinBytes) {
+    this.compressionMinBytes = Math.max(0, compressionMinBytes);
+  }
+
+  /**
+   * Returns the memory budget shared by the proxies opened with these settings.
+   *
+   * @return the shared memory budget
+   */
+  MemoryBudget getMemoryBudget() {
+    return memoryBudget;
+  }
+
+  /**
+   * Returns statistics about the memory held by running reads.
+   *
+   * @return map of statistic names to values
+   */
+  public Map<String, Number> getMemoryStats() {
+    return memoryBudget.getStats();
+  }
+}
@@ -0,0 +1,60 @@
+package edu.brown.cs.student.database;
+
+/**
+ * Limits on the results of one query, checked as its rows are read. Memory for the results is
+ * reserved from the shared budget in steps as they grow, and given back when the budget is
+ * closed, once the results have been handed on.
+ * @author Justin Rhee
+ */
+class QueryBudget implements AutoCloseable {
+  // reserving in steps keeps the shared budget's lock out of the way of reading rows
+  private static final long RESERVE_STEP_BYTES = 1024 * 1024;
+
+  private final int maxRows;
+  private final long maxBytes;
+  private final MemoryBudget memory;
+  private long reserved;
+
+  /**
+   * Constructs the budget of one query.
+   *
+   * @param maxRows maximum number of rows, or 0 for no limit
+   * @param maxBytes maximum estimated size of the results in bytes, or 0 for no limit
+   * @param memory shared budget to reserve memory from, or null to reserve none
+   */
+  QueryBudget(int maxRows, long maxBytes, MemoryBudget memory) {
+    this.maxRows = maxRows;
+    this.maxBytes = maxBytes;
+    this.memory = memory;
+  }
+
+  /**
+   * Checks the results read so far against the limits, reserving memory if they grew.
+   *
+   * @param rows number of rows read
+   * @param bytes estimated size of the rows in bytes
+   * @throws QueryLimitException if the results are larger than one query may hold
+   * @throws OverloadException if the shared budget has no room for the results
+   */
+  void check(int rows, long bytes) throws QueryLimitException, OverloadException {
+    if (maxRows > 0 && rows > maxRows) {
+      throw new QueryLimitException("Query returned more than " + maxRows + " rows");
+    }
+    if (maxBytes > 0 && bytes > maxBytes) {
+      throw new QueryLimitException("Query returned more than " + maxBytes + " bytes");
+    }
+    if (memory != null && bytes > reserved) {
+      long step = Math.max(RESERVE_STEP_BYTES, bytes - reserved);
+      memory.reserve(step);
+      reserved += step;
+    }
+  }
+
+  @Override
+  public void close() {
+    if (memory != null && reserved > 0) {
+      memory.release(reserved);
+      reserved = 0;
+    }
+  }
+}
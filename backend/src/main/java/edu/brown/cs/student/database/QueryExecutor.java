@@ -0,0 +1,258 @@
+package edu.brown.cs.student.database;
+
+import org.sqlite.SQLiteConnection;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Bounded pool of threads that run the SQLite work of one database proxy, with a time limit on
+ * each query and cancellation when the client that asked for it goes away.
+ *
+ * <p>The pool has one thread per connection, so work beyond what the connections can serve waits
+ * in a bounded queue rather than holding more threads. SQLite runs in native code, which would
+ * pin a virtual thread to its carrier, so it always runs on these platform threads; the thread
+ * that submitted the work only waits, which is cheap when it is virtual. A query that runs past
+ * its time limit, or whose client disconnected, is stopped with sqlite3_interrupt, which makes it
+ * fail and roll back.
+ * @author Justin Rhee
+ */
+class QueryExecutor {
+  private static final long POLL_MILLIS = 100;
+  private static final long KEEP_ALIVE_SECONDS = 60;
+  private static final int RETRY_AFTER_SECONDS = 1;
+  // tells the thread handling a request whether its client is gone
+  private static final ThreadLocal<BooleanSupplier> ABANDONED = new ThreadLocal<>();
+  private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+  private final ThreadPoolExecutor workers;
+  private final long timeoutMillis;
+
+  /**
+   * Work to run with a connection.
+   *
+   * @param <T> type of the result
+   */
+  interface Work<T> {
+    /**
+     * Runs the work.
+     *
+     * @param query handle used to make the connection the work runs on interruptible
+     * @return result of the work
+     * @throws SQLException exception thrown by invalid SQL operations
+     */
+    T run(Query query) throws SQLException;
+  }
+
+  /**
+   * Handle of one submitted piece of work, through which it can be interrupted.
+   */
+  static final class Query {
+    private Connection connection;
+    private boolean cancelled;
+
+    /**
+     * Makes a connection interruptible until the returned guard is closed. The work reaches the
+     * connection through the guard, and the guard must be closed before the connection is handed
+     * back to the pool, so that a late cancellation never interrupts work of another query.
+     *
+     * @param lease connection the work runs on
+     * @return guard holding the connection, to close when the work is done with it
+     * @throws SQLException if the work was already cancelled
+     */
+    synchronized Guard guard(PooledConnection lease) throws SQLException {
+      if (cancelled) {
+        throw new SQLException("Query was cancelled");
+      }
+      connection = lease.getConnection();
+      return new Guard(this, lease);
+    }
+
+    /**
+     * Ends the interruptible part of the work.
+     */
+    private synchronized void release() {
+      connection = null;
+    }
+
+    /**
+     * Interrupts the work, and stops any work it starts later.
+     */
+    synchronized void cancel() {
+      cancelled = true;
+      if (connection != null) {
+        try {
+          connection.unwrap(SQLiteConnection.class).getDatabase().interrupt();
+        } catch (SQLException e) {
+          System.out.println("ERROR: Could not interrupt query: " + e.getMessage());
+        }
+      }
+    }
+  }
+
+  /**
+   * A connection that can be interrupted by its query until the guard is closed.
+   */
+  static final class Guard implements AutoCloseable {
+    private final Query query;
+    private final PooledConnection lease;
+
+    /**
+     * Constructs a guard.
+     *
+     * @param query handle of the work
+     * @param lease connection the work runs on
+     */
+    private Guard(Query query, PooledConnection lease) {
+      this.query = query;
+      this.lease = lease;
+    }
+
+    /**
+     * Returns the connection the work runs on.
+     *
+     * @return borrowed connection, interruptible while the guard is open
+     */
+    PooledConnection lease() {
+      return lease;
+    }
+
+    /**
+     * Ends the interruptible part of the work.
+     */
+    @Override
+    public void close() {
+      query.release();
+    }
+  }
+
+  /**
+   * Constructs an executor.
+   *
+   * @param threads number of threads, which should match the number of connections
+   * @param maxQueued maximum number of pieces of work waiting for a thread
+   * @param timeoutMillis time limit of each piece of work in milliseconds, or 0 for none
+   */
+  QueryExecutor(int threads, int maxQueued, long timeoutMillis) {
+    this.timeoutMillis = timeoutMillis;
+    workers = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+        new LinkedBlockingQueue<>(maxQueued), r -> {
+          Thread thread = new Thread(r, "query-" + THREAD_IDS.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+    // an idle database holds no threads
+    workers.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Sets the check the current thread uses to find out whether the client it works for has gone
+   * away, so that its queries can be cancelled.
+   *
+   * @param check returns true once the client has disconnected, or null for no check
+   */
+  static void setAbandonedCheck(BooleanSupplier check) {
+    if (check == null) {
+      ABANDONED.remove();
+    } else {
+      ABANDONED.set(check);
+    }
+  }
+
+  /**
+   * Runs work on a pool thread and waits for its result.
+   *
+   * @param work work to run
+   * @param <T> type of the result
+   * @return result of the work
+   * @throws SQLTimeoutException if the work ran past its time limit and was cancelled
+   * @throws OverloadException if too much work is waiting
+   * @throws SQLException if the work failed or the client went away
+   */
+  <T> T run(Work<T> work) throws SQLException {
+    Query query = new Query();
+    Future<T> future;
+    try {
+      future = workers.submit(() -> work.run(query));
+    } catch (RejectedExecutionException e) {
+      throw new OverloadException("Too many queries are waiting", RETRY_AFTER_SECONDS);
+    }
+
+    long start = System.nanoTime();
+    BooleanSupplier abandoned = ABANDONED.get();
+    try {
+      while (true) {
+        try {
+          return future.get(POLL_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+          if (timeoutMillis > 0 && elapsed >= timeoutMillis) {
+            this.cancel(query, future);
+            throw new SQLTimeoutException("Query timed out after " + timeoutMillis + " ms");
+          }
+          if (abandoned != null && abandoned.getAsBoolean()) {
+            this.cancel(query, future);
+            throw new SQLException("Client disconnected");
+          }
+        }
+      }
+    } catch (InterruptedException e) {
+      this.cancel(query, future);
+      Thread.currentThread().interrupt();
+      throw new SQLException("Interrupted while waiting for a query");
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof SQLException) {
+        throw (SQLException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      } else if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      throw new SQLException(cause);
+    }
+  }
+
+  /**
+   * Cancels work, whether it is running or still waiting for a thread.
+   *
+   * @param query handle of the work
+   * @param future result of the work
+   */
+  private void cancel(Query query, Future<?> future) {
+    query.cancel();
+    future.cancel(false);
+  }
+
+  /**
+   * Returns the number of threads running work and of pieces of work waiting for a thread.
+   *
+   * @return map of statistic names to values
+   */
+  Map<String, Number> getStats() {
+    Map<String, Number> stats = new LinkedHashMap<>();
+    stats.put("active_queries", workers.getActiveCount());
+    stats.put("queued_queries", workers.getQueue().size());
+    stats.put("query_timeout_millis", timeoutMillis);
+    return stats;
+  }
+
+  /**
+   * Stops accepting work. Work already submitted still runs.
+   */
+  void shutdown() {
+    workers.shutdown();
+  }
+}
@@ -0,0 +1,78 @@
+package edu.brown.cs.student.database;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Cache key for a read query: the SQL text together with its bound parameters. The key also
+ * carries the tables the query reads, which are not part of its identity.
+ * @author Justin Rhee
+ */
+final class QueryKey {
+  private final String query;
+  private final List<?> params;
+  private final Set<String> tables;
+
+  /**
+   * Constructs a cache key.
+   *
+   * @param query SQL query
+   * @param params parameters bound to the query, in order
+   * @param tables tables the query reads
+   */
+  QueryKey(String query, List<?> params, Set<String> tables) {
+    this.query = query;
+    this.params = List.copyOf(params);
+    this.tables = Set.copyOf(tables);
+  }
+
+  /**
+   * Returns the SQL query.
+   *
+   * @return SQL query
+   */
+  String getQuery() {
+    return query;
+  }
+
+  /**
+   * Returns the bound parameters.
+   *
+   * @return bound parameters
+   */
+  List<?> getParams() {
+    return params;
+  }
+
+  /**
+   * Returns the tables the query reads.
+   *
+   * @return tables the query reads, empty if unknown
+   */
+  Set<String> getTables() {
+    return tables;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof QueryKey)) {
+      return false;
+    }
+    QueryKey other = (QueryKey) o;
+    return query.equals(other.query) && params.equals(other.params);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(query, params);
+  }
+
+  @Override
+  public String toString() {
+    return params.isEmpty() ? query : query + " " + params;
+  }
+}
@@ -0,0 +1,21 @@
+package edu.brown.cs.student.database;
+
+import java.sql.SQLException;
+
+/**
+ * Exception thrown when the results of a query grow past the rows or bytes a single query may
+ * hold. The query is stopped while its results are read, before they can exhaust memory.
+ * @author Justin Rhee
+ */
+public class QueryLimitException extends SQLException {
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Constructs a limit exception.
+   *
+   * @param message which limit was exceeded
+   */
+  public QueryLimitException(String message) {
+    super(message);
+  }
+}
@@ -1,5 +1,6 @@
 package edu.brown.cs.student.database;
 
+import edu.brown.cs.student.metrics.Metrics;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -7,21 +8,33 @@ import org.json.JSONObject;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Objects;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
 
 /**
- * Class to represent the output of a SQL query. (deprecated)
+ * Class to represent the output of a SQL query. Read results are stored column by column, with
+ * integer and real columns kept in primitive arrays.
  * @author Justin Rhee
  */
 public class QueryOutput {
+  // rows read between checks of a query's budget
+  private static final int BUDGET_CHECK_ROWS = 256;
+  private static final Pattern INTEGER = Pattern.compile("-?[0-9]{1,19}");
+
   private final boolean isWrite;
   private int linesAffected;
-  private List<List<String>> queryResults;
+  private String[] columnNames;
+  private Column[] columns;
+  private int numRows;
   private final boolean isValid;
+  private final Map<List<SortKey>, int[]> sortOrders = new ConcurrentHashMap<>();
 
   /**
    * Default constructor.
@@ -29,7 +42,8 @@ public class QueryOutput {
   public QueryOutput() {
     this.isWrite = false;
     this.linesAffected = 0;
-    this.queryResults = null;
+    this.columnNames = null;
+    this.columns = null;
     this.isValid = false;
   }
 
@@ -42,14 +56,7 @@ public class QueryOutput {
    * @throws SQLException exception thrown by invalid SQL operations
    */
   public QueryOutput(Connection conn, String query, boolean isWrite) throws SQLException {
-    this.isWrite = isWrite;
-    if (this.isWrite) {
-      linesAffected = conn.prepareStatement(query).executeUpdate();
-    } else {
-      ResultSet output = conn.prepareStatement(query).executeQuery();
-      queryResults = resultSetToList(output);
-    }
-    this.isValid = true;
+    this(conn, query, List.of(), isWrite);
   }
 
   /**
@@ -57,53 +64,229 @@ public class QueryOutput {
    *
    * @param conn connection to SQL database
    * @param query SQL query to execute
-   * @param params the String[] of arguments to be inserted into the query
+   * @param params arguments to be inserted into the query: Longs are bound as integers and
+   *     anything else as text
    * @param isWrite check if SQL query requires write access
    * @throws SQLException exception thrown by invalid SQL operations
    */
-  public QueryOutput(Connection conn, String query, List<String> params, boolean isWrite)
+  public QueryOutput(Connection conn, String query, List<?> params, boolean isWrite)
       throws SQLException {
     this.isWrite = isWrite;
-    if (this.isWrite) {
-      PreparedStatement prepStatement = conn.prepareStatement(query);
-      for (int i = 0; i < params.size(); i++) {
-        prepStatement.setString(i + 1, params.get(i));
+    long start = System.nanoTime();
+    try (PreparedStatement prepStatement = conn.prepareStatement(query)) {
+      Metrics.QUERY_PREPARE.recordSince(start);
+      this.execute(prepStatement, params, null);
+    }
+    this.isValid = true;
+  }
+
+  /**
+   * Constructor to create a QueryOutput object from an already prepared statement, such as one
+   * from a statement cache. The statement is left open for reuse.
+   *
+   * @param prepStatement prepared statement of the SQL query to execute
+   * @param params arguments to be inserted into the query: Longs are bound as integers and
+   *     anything else as text
+   * @param isWrite check if SQL query requires write access
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  public QueryOutput(PreparedStatement prepStatement, List<?> params, boolean isWrite)
+      throws SQLException {
+    this(prepStatement, params, isWrite, null);
+  }
+
+  /**
+   * Constructor to create a QueryOutput object from an already prepared statement, stopping the
+   * query if its results grow past a budget. The statement is left open for reuse.
+   *
+   * @param prepStatement prepared statement of the SQL query to execute
+   * @param params arguments to be inserted into the query: Longs are bound as integers and
+   *     anything else as text
+   * @param isWrite check if SQL query requires write access
+   * @param budget limits on the results, or null for none
+   * @throws SQLException exception thrown by invalid SQL operations, or if the results are over
+   *     the budget
+   */
+  QueryOutput(PreparedStatement prepStatement, List<?> params, boolean isWrite,
+              QueryBudget budget) throws SQLException {
+    this.isWrite = isWrite;
+    this.execute(prepStatement, params, budget);
+    this.isValid = true;
+  }
+
+  /**
+   * Constructor to create a QueryOutput object from columns that have already been read.
+   *
+   * @param columnNames names of the columns
+   * @param columns the columns
+   * @param numRows number of rows in each column
+   */
+  private QueryOutput(String[] columnNames, Column[] columns, int numRows) {
+    this.isWrite = false;
+    this.columnNames = columnNames;
+    this.columns = columns;
+    this.numRows = numRows;
+    this.isValid = true;
+  }
+
+  /**
+   * Binds parameters to a prepared statement and executes it, closing any ResultSet it produces.
+   *
+   * @param prepStatement prepared statement of the SQL query to execute
+   * @param params arguments to be inserted into the query: Longs are bound as integers and
+   *     anything else as text
+   * @param budget limits on the results, or null for none
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private void execute(PreparedStatement prepStatement, List<?> params, QueryBudget budget)
+      throws SQLException {
+    for (int i = 0; i < params.size(); i++) {
+      Object param = params.get(i);
+      if (param instanceof Long) {
+        prepStatement.setLong(i + 1, (Long) param);
+      } else {
+        prepStatement.setString(i + 1, Objects.toString(param, null));
       }
+    }
+    long start = System.nanoTime();
+    if (this.isWrite) {
       linesAffected = prepStatement.executeUpdate();
+      Metrics.QUERY_EXECUTE.recordSince(start);
     } else {
-      ResultSet output = conn.prepareStatement(query).executeQuery();
-      queryResults = resultSetToList(output);
+      try (ResultSet output = prepStatement.executeQuery()) {
+        Metrics.QUERY_EXECUTE.recordSince(start);
+        start = System.nanoTime();
+        readColumns(output, budget);
+        Metrics.QUERY_MATERIALIZE.recordSince(start);
+        Metrics.ROWS_RETURNED.add(numRows);
+      }
     }
-    this.isValid = true;
   }
 
   /**
-   * Converts a ResultSet to a List of Lists of Strings.
+   * Reads a ResultSet column by column. Each column is stored according to the type reported by
+   * ResultSetMetaData, and falls back to text if a value of another type turns up in it.
    *
    * @param rs result set
-   * @return List of Lists of Strings from the result set
+   * @param budget limits on the results, checked every few rows, or null for none
    * @throws SQLException exception thrown by invalid SQL operations
    */
-  private List<List<String>> resultSetToList(ResultSet rs) throws SQLException {
-
-    List<List<String>> output = new ArrayList<>();
-    List<String> curRow = new ArrayList<>();
-
-    int numCols = rs.getMetaData().getColumnCount();
-    for (int i = 1; i <= numCols; i++) {
-      curRow.add(rs.getMetaData().getColumnName(i));
+  private void readColumns(ResultSet rs, QueryBudget budget) throws SQLException {
+    ResultSetMetaData metaData = rs.getMetaData();
+    int numCols = metaData.getColumnCount();
+    columnNames = new String[numCols];
+    columns = new Column[numCols];
+    for (int i = 0; i < numCols; i++) {
+      columnNames[i] = metaData.getColumnName(i + 1);
+      columns[i] = Column.forSqlType(metaData.getColumnType(i + 1));
     }
-    output.add(curRow);
 
     while (rs.next()) {
-      curRow = new ArrayList<>();
-      for (int i = 1; i <= numCols; i++) {
-        curRow.add(rs.getString(i));
+      for (int i = 0; i < numCols; i++) {
+        if (!columns[i].append(rs, i + 1)) {
+          columns[i] = StringColumn.copyOf(columns[i]);
+          columns[i].append(rs, i + 1);
+        }
+      }
+      numRows++;
+      if (budget != null && numRows % BUDGET_CHECK_ROWS == 0) {
+        budget.check(numRows, this.estimateBytes());
       }
-      output.add(curRow);
     }
 
-    return output;
+    for (Column column : columns) {
+      column.trim();
+    }
+    if (budget != null) {
+      budget.check(numRows, this.estimateBytes());
+    }
+  }
+
+  /**
+   * Returns the names of the columns in the results.
+   *
+   * @return list of column names
+   */
+  public List<String> getColumnNames() {
+    return List.of(columnNames);
+  }
+
+  /**
+   * Returns the number of rows in the results.
+   *
+   * @return number of rows
+   */
+  public int getRowCount() {
+    return numRows;
+  }
+
+  /**
+   * Returns the value of a cell as a String.
+   *
+   * @param row index of the row, starting from 0
+   * @param col index of the column, starting from 0
+   * @return the value of the cell, or null if it is null
+   */
+  public String getString(int row, int col) {
+    return columns[col].getString(row);
+  }
+
+  /**
+   * Returns a column of the results.
+   *
+   * @param col index of the column, starting from 0
+   * @return the column
+   */
+  Column getColumn(int col) {
+    return columns[col];
+  }
+
+  /**
+   * Returns the indices of the rows in sorted order. The order is kept with the results, so each
+   * sort of a cached result is only worked out once.
+   *
+   * @param keys columns to sort by, most significant first
+   * @return row indices in sorted order
+   * @throws SQLException if a key names a column that is not in the results
+   */
+  int[] getSortOrder(List<SortKey> keys) throws SQLException {
+    int[] order = sortOrders.get(keys);
+    if (order == null) {
+      order = SortOrder.compute(this, keys);
+      sortOrders.put(List.copyOf(keys), order);
+    }
+    return order;
+  }
+
+  /**
+   * Copies some rows of the results, in a given order, into a new QueryOutput.
+   *
+   * @param rows indices of rows
+   * @param from position in rows of the first row to copy
+   * @param to position in rows after the last row to copy
+   * @return results holding only the copied rows
+   */
+  QueryOutput select(int[] rows, int from, int to) {
+    Column[] selected = new Column[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      selected[i] = columns[i].select(rows, from, to);
+    }
+    return new QueryOutput(columnNames, selected, to - from);
+  }
+
+  /**
+   * Returns an estimate of the heap memory held by the results, in bytes.
+   *
+   * @return estimated size in bytes
+   */
+  public long estimateBytes() {
+    long bytes = 0;
+    if (columns != null) {
+      for (Column column : columns) {
+        bytes += column.estimateBytes();
+      }
+    }
+    return bytes;
   }
 
   /**
@@ -116,9 +299,13 @@ public class QueryOutput {
       return linesAffected + " line(s) affected.";
     } else {
       StringBuilder output = new StringBuilder();
-      for (List<String> row : queryResults) {
-        for (String value : row) {
-          output.append(value).append("\t");
+      for (String name : columnNames) {
+        output.append(name).append("\t");
+      }
+      output.append("\n");
+      for (int row = 0; row < numRows; row++) {
+        for (Column column : columns) {
+          output.append(column.getString(row)).append("\t");
         }
         output.append("\n");
       }
@@ -133,7 +320,16 @@ public class QueryOutput {
    * @return query results as a list.
    */
   public List<List<String>> toList() {
-    return new ArrayList<>(queryResults);
+    List<List<String>> output = new ArrayList<>(numRows + 1);
+    output.add(new ArrayList<>(List.of(columnNames)));
+    for (int row = 0; row < numRows; row++) {
+      List<String> curRow = new ArrayList<>(columns.length);
+      for (Column column : columns) {
+        curRow.add(column.getString(row));
+      }
+      output.add(curRow);
+    }
+    return output;
   }
 
   /**
@@ -142,19 +338,17 @@ public class QueryOutput {
    * @return map of results
    */
   public Map<String, List<String>> toMap() {
-    if (queryResults.size() <= 0) {
+    if (columnNames.length <= 0) {
       return null;
     }
 
     Map<String, List<String>> retMap = new HashMap<>();
-    List<String> colNames = new ArrayList<>(queryResults.get(0));
-    for (String name : colNames) {
-      retMap.put(name, new ArrayList<>());
-    }
-    for (int i = 0; i < queryResults.get(0).size(); i++) {
-      for (int j = 1; j < queryResults.size(); j++) {
-        retMap.get(colNames.get(i)).add(queryResults.get(j).get(i));
+    for (int i = 0; i < columns.length; i++) {
+      List<String> values = new ArrayList<>(numRows);
+      for (int row = 0; row < numRows; row++) {
+        values.add(columns[i].getString(row));
       }
+      retMap.put(columnNames[i], values);
     }
     return retMap;
   }
@@ -166,21 +360,18 @@ public class QueryOutput {
    * @throws JSONException thrown if there is a json exception
    */
   public String toJSONWithKey() throws JSONException {
-    List<String> colNames = new ArrayList<>(queryResults.get(0));
-    List<List<String>> resultsCopy = new ArrayList<>(queryResults);
-
-    String primaryKey = resultsCopy.remove(0).get(0);
+    long start = System.nanoTime();
+    String primaryKey = columnNames[0];
     JSONArray allResults = new JSONArray();
 
-    for (List<String> row : resultsCopy) {
-      JSONObject current = new JSONObject();
+    for (int row = 0; row < numRows; row++) {
+      JSONObject current = this.rowToJSON(row);
       current.put("primary_key", primaryKey);
-      for (int i = 0; i < row.size(); i++) {
-        current.put(colNames.get(i), row.get(i));
-      }
       allResults.put(current);
     }
-    return allResults.toString();
+    String json = allResults.toString();
+    Metrics.QUERY_SERIALIZE.recordSince(start);
+    return json;
   }
 
   /**
@@ -190,19 +381,49 @@ public class QueryOutput {
    * @throws JSONException thrown if there is a json exception
    */
   public String toJSON() throws JSONException {
-    List<String> colNames = new ArrayList<>(queryResults.get(0));
-    List<List<String>> resultsCopy = new ArrayList<>(queryResults);
+    long start = System.nanoTime();
     JSONArray allResults = new JSONArray();
-    resultsCopy.remove(0);
+    for (int row = 0; row < numRows; row++) {
+      allResults.put(this.rowToJSON(row));
+    }
+    String json = allResults.toString();
+    Metrics.QUERY_SERIALIZE.recordSince(start);
+    return json;
+  }
 
-    for (List<String> row : resultsCopy) {
-      JSONObject current = new JSONObject();
-      for (int i = 0; i < row.size(); i++) {
-        current.put(colNames.get(i), row.get(i));
+  /**
+   * Converts one row of the results into a json object keyed by column name.
+   *
+   * @param row index of the row
+   * @return json object of the row
+   * @throws JSONException thrown if there is a json exception
+   */
+  private JSONObject rowToJSON(int row) throws JSONException {
+    JSONObject current = new JSONObject();
+    for (int i = 0; i < columns.length; i++) {
+      current.put(columnNames[i], jsonValue(columnNames[i], columns[i].getString(row)));
+    }
+    return current;
+  }
+
+  /**
+   * Returns a value as it is put in JSON. The rowid a row carries as DatabaseProxy.ROWID_FIELD
+   * is a number, as are the cursors that page by it; every other value is a string.
+   *
+   * @param column name of the value's column
+   * @param value value of the cell, or null
+   * @return Long if the value is a rowid, otherwise the value itself
+   */
+  static Object jsonValue(String column, String value) {
+    if (value != null && column.equals(DatabaseProxy.ROWID_FIELD)
+        && INTEGER.matcher(value).matches()) {
+      try {
+        return Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        // out of range, so it is not a rowid
       }
-      allResults.put(current);
     }
-    return allResults.toString();
+    return value;
   }
 
   /**
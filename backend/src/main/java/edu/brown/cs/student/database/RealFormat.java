@@ -0,0 +1,341 @@
+package edu.brown.cs.student.database;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+
+/**
+ * Writes REAL values as text the way SQLite does, so that values kept as doubles print the same
+ * as values read with ResultSet.getString.
+ *
+ * <p>SQLite formats a REAL with printf's %!.15g: 15 significant digits, trailing zeros dropped
+ * but at least one digit kept after the point, and an exponent of at least two digits once it is
+ * below -4 or above 14, so 0.1 + 0.2 is 0.3, 100 is 100.0 and 1e20 is 1.0e+20. It does the
+ * arithmetic in 80-bit long doubles and rounds by adding 5 in the 16th digit, which for values
+ * that fall within a hair of halfway between two 15-digit numbers can round differently than
+ * exact arithmetic would. Those values are formatted by repeating SQLite's arithmetic; all
+ * others are rounded exactly, which gives the same digits.
+ * @author Justin Rhee
+ */
+final class RealFormat {
+  private static final int DIGITS = 15;
+  private static final int MIN_PLAIN_EXPONENT = -4;
+  private static final int INEXACT_SCALE_EXPONENT = 100;
+  // values closer to halfway than this fraction of the 15th digit are rounded as SQLite does; its
+  // long double arithmetic is off from the exact value by well under a thousandth of that digit,
+  // except from 1e100 on, where it scales by the double nearest 1e100 and is further off
+  private static final BigDecimal TIE_MARGIN = new BigDecimal("0.01");
+  private static final BigDecimal HALF = new BigDecimal("0.5");
+
+  /**
+   * Constructor that is never called, since every member is static.
+   */
+  private RealFormat() {
+  }
+
+  /**
+   * Formats a REAL value as SQLite converts it to text.
+   *
+   * @param value value to format
+   * @return the value as SQLite writes it
+   */
+  static String format(double value) {
+    if (Double.isNaN(value)) {
+      // SQLite stores NaN as NULL, so there is no text of its own to match
+      return "NaN";
+    }
+    if (Double.isInfinite(value)) {
+      return value > 0 ? "Inf" : "-Inf";
+    }
+    if (value == 0) {
+      return "0.0";
+    }
+    String sign = value < 0 ? "-" : "";
+    String shortest = shortDigits(Math.abs(value));
+    if (shortest != null) {
+      return sign + shortest;
+    }
+    BigDecimal exact = new BigDecimal(Math.abs(value));
+    int exponent = exact.precision() - exact.scale() - 1;
+    // the value with its first 15 digits before the point
+    BigDecimal scaled = exact.movePointRight(DIGITS - 1 - exponent);
+    BigDecimal whole = scaled.setScale(0, RoundingMode.FLOOR);
+    BigDecimal fraction = scaled.subtract(whole);
+
+    BigInteger digits;
+    if (exponent < INEXACT_SCALE_EXPONENT
+        && fraction.subtract(HALF).abs().compareTo(TIE_MARGIN) > 0) {
+      digits = fraction.compareTo(HALF) > 0 ? whole.toBigInteger().add(BigInteger.ONE)
+          : whole.toBigInteger();
+    } else {
+      int[] power = new int[1];
+      digits = LongDouble.normalize(Math.abs(value), power).digits();
+      exponent = power[0];
+    }
+    if (digits.compareTo(BigInteger.TEN.pow(DIGITS)) >= 0) {
+      // rounding up carried into another digit, as 9.999...e14 does
+      digits = digits.divide(BigInteger.TEN);
+      exponent++;
+    }
+    return sign + layout(digits.toString(), exponent);
+  }
+
+  /**
+   * Formats a value whose shortest decimal form has at most 15 significant digits. That form is
+   * within an ulp of the value, a fifth of the 15th digit at most, so SQLite's rounding lands on
+   * it; this is the common case, and is much cheaper than rounding the exact value.
+   *
+   * @param value positive finite value
+   * @return the value as SQLite writes it, or null if it needs more than 15 digits, or is
+   *     subnormal or so large that it is not that close
+   */
+  private static String shortDigits(double value) {
+    if (value < Double.MIN_NORMAL) {
+      // the ulp of a subnormal is far coarser than its shortest form suggests
+      return null;
+    }
+    String text = Double.toString(value);
+    int e = text.indexOf('E');
+    String mantissa = e < 0 ? text : text.substring(0, e);
+    int point = mantissa.indexOf('.');
+    String digits = mantissa.substring(0, point) + mantissa.substring(point + 1);
+    int first = 0;
+    while (digits.charAt(first) == '0') {
+      first++;
+    }
+    int last = digits.length();
+    while (digits.charAt(last - 1) == '0') {
+      last--;
+    }
+    int exponent = (e < 0 ? 0 : Integer.parseInt(text.substring(e + 1))) + point - 1 - first;
+    if (last - first > DIGITS || exponent >= INEXACT_SCALE_EXPONENT) {
+      return null;
+    }
+    return layout(digits.substring(first, last), exponent);
+  }
+
+  /**
+   * Lays out 15 significant digits in plain or scientific notation, as %!.15g does.
+   *
+   * @param digits up to 15 digits, the first of them not zero, without a point
+   * @param exponent power of ten of the first digit
+   * @return the formatted number
+   */
+  private static String layout(String digits, int exponent) {
+    String trimmed = digits.replaceFirst("0+$", "");
+    if (exponent < MIN_PLAIN_EXPONENT || exponent >= DIGITS) {
+      String fraction = trimmed.length() > 1 ? trimmed.substring(1) : "0";
+      int magnitude = Math.abs(exponent);
+      return trimmed.charAt(0) + "." + fraction + (exponent < 0 ? "e-" : "e+")
+          + (magnitude < 10 ? "0" : "") + magnitude;
+    }
+    StringBuilder out = new StringBuilder();
+    if (exponent < 0) {
+      out.append("0.");
+      for (int i = -1; i > exponent; i--) {
+        out.append('0');
+      }
+      return out.append(trimmed).toString();
+    }
+    if (trimmed.length() <= exponent + 1) {
+      out.append(trimmed);
+      for (int i = trimmed.length(); i <= exponent; i++) {
+        out.append('0');
+      }
+      return out.append(".0").toString();
+    }
+    return out.append(trimmed, 0, exponent + 1).append('.')
+        .append(trimmed, exponent + 1, trimmed.length()).toString();
+  }
+
+  /**
+   * An x87 80-bit long double, a 64-bit mantissa times a power of two, with the operations
+   * SQLite's printf applies to a REAL before writing out its digits. Every operation rounds its
+   * exact result to 64 bits, to nearest and ties to even, as the hardware does.
+   */
+  private static final class LongDouble {
+    private static final int MANTISSA_BITS = 64;
+    private static final int QUOTIENT_BITS = 2 * MANTISSA_BITS + 2;
+    private static final int MAX_EXPONENT = 350;
+    private static final int SIGNIFICAND_BITS = 52;
+    // the bias of a double's exponent plus its 52 bits after the point
+    private static final int EXPONENT_BIAS = 1075;
+    private static final LongDouble ONE = of(1.0);
+    private static final LongDouble TEN = of(10.0);
+    private static final LongDouble E10 = of(1e10);
+    private static final LongDouble E100 = of(1e100);
+    private static final LongDouble E8 = of(1e8);
+    private static final LongDouble E_MINUS_8 = of(1e-8);
+    private static final LongDouble TENTH = of(0.1);
+    // arRound[4] * 1.0e-10 for a precision of 14 digits after the first, computed as a double
+    private static final LongDouble ROUNDER = of(5.0e-05).times(of(1.0e-10));
+
+    private final BigInteger mantissa;
+    private final int binaryExponent;
+
+    /**
+     * Constructs a long double of a mantissa of exactly 64 bits.
+     *
+     * @param mantissa the mantissa
+     * @param binaryExponent power of two it is multiplied by
+     */
+    private LongDouble(BigInteger mantissa, int binaryExponent) {
+      this.mantissa = mantissa;
+      this.binaryExponent = binaryExponent;
+    }
+
+    /**
+     * Converts a positive double exactly.
+     *
+     * @param value positive finite double
+     * @return the same value as a long double
+     */
+    static LongDouble of(double value) {
+      long bits = Double.doubleToLongBits(value);
+      int biased = (int) (bits >>> SIGNIFICAND_BITS);
+      long significand = bits & ((1L << SIGNIFICAND_BITS) - 1);
+      if (biased != 0) {
+        significand |= 1L << SIGNIFICAND_BITS;
+      }
+      // subnormal doubles are normal long doubles
+      return round(BigInteger.valueOf(significand), Math.max(biased, 1) - EXPONENT_BIAS);
+    }
+
+    /**
+     * Rounds an exact positive value to a 64-bit mantissa.
+     *
+     * @param exact whole number to round
+     * @param power power of two it is multiplied by
+     * @return the nearest long double, ties to even
+     */
+    private static LongDouble round(BigInteger exact, int power) {
+      int extra = exact.bitLength() - MANTISSA_BITS;
+      if (extra <= 0) {
+        return new LongDouble(exact.shiftLeft(-extra), power + extra);
+      }
+      BigInteger kept = exact.shiftRight(extra);
+      BigInteger dropped = exact.subtract(kept.shiftLeft(extra));
+      int half = dropped.compareTo(BigInteger.ONE.shiftLeft(extra - 1));
+      if (half > 0 || half == 0 && kept.testBit(0)) {
+        kept = kept.add(BigInteger.ONE);
+        if (kept.bitLength() > MANTISSA_BITS) {
+          kept = kept.shiftRight(1);
+          extra++;
+        }
+      }
+      return new LongDouble(kept, power + extra);
+    }
+
+    /**
+     * Multiplies two long doubles.
+     *
+     * @param other value to multiply by
+     * @return the rounded product
+     */
+    LongDouble times(LongDouble other) {
+      return round(mantissa.multiply(other.mantissa), binaryExponent + other.binaryExponent);
+    }
+
+    /**
+     * Divides two long doubles.
+     *
+     * @param other value to divide by
+     * @return the rounded quotient
+     */
+    LongDouble dividedBy(LongDouble other) {
+      BigInteger[] quotient = mantissa.shiftLeft(QUOTIENT_BITS).divideAndRemainder(other.mantissa);
+      // a sticky bit below the quotient stands for the remainder, so ties are not mistaken
+      BigInteger sticky = quotient[0].shiftLeft(1)
+          .or(quotient[1].signum() == 0 ? BigInteger.ZERO : BigInteger.ONE);
+      return round(sticky, binaryExponent - other.binaryExponent - QUOTIENT_BITS - 1);
+    }
+
+    /**
+     * Adds two long doubles.
+     *
+     * @param other value to add
+     * @return the rounded sum
+     */
+    LongDouble plus(LongDouble other) {
+      int low = Math.min(binaryExponent, other.binaryExponent);
+      BigInteger sum = mantissa.shiftLeft(binaryExponent - low)
+          .add(other.mantissa.shiftLeft(other.binaryExponent - low));
+      return round(sum, low);
+    }
+
+    /**
+     * Compares two long doubles.
+     *
+     * @param other value to compare to
+     * @return negative, zero or positive as this is less than, equal to or greater than other
+     */
+    int compareTo(LongDouble other) {
+      int low = Math.min(binaryExponent, other.binaryExponent);
+      return mantissa.shiftLeft(binaryExponent - low)
+          .compareTo(other.mantissa.shiftLeft(other.binaryExponent - low));
+    }
+
+    /**
+     * Scales a positive value into [1, 10) and adds the rounder, as SQLite's printf does before
+     * writing out digits, noting the power of ten it was scaled by.
+     *
+     * @param value positive finite value
+     * @param exponent array to store the power of ten in
+     * @return the scaled and rounded value
+     */
+    static LongDouble normalize(double value, int[] exponent) {
+      LongDouble real = of(value);
+      LongDouble scale = ONE;
+      int exp = 0;
+      while (real.compareTo(E100.times(scale)) >= 0 && exp <= MAX_EXPONENT) {
+        scale = scale.times(E100);
+        exp += 100;
+      }
+      while (real.compareTo(E10.times(scale)) >= 0 && exp <= MAX_EXPONENT) {
+        scale = scale.times(E10);
+        exp += 10;
+      }
+      while (real.compareTo(TEN.times(scale)) >= 0 && exp <= MAX_EXPONENT) {
+        scale = scale.times(TEN);
+        exp++;
+      }
+      real = real.dividedBy(scale);
+      while (real.compareTo(E_MINUS_8) < 0) {
+        real = real.times(E8);
+        exp -= 8;
+      }
+      while (real.compareTo(ONE) < 0) {
+        real = real.times(TEN);
+        exp--;
+      }
+      real = real.plus(ROUNDER);
+      if (real.compareTo(TEN) >= 0) {
+        real = real.times(TENTH);
+        exp++;
+      }
+      exponent[0] = exp;
+      return real;
+    }
+
+    /**
+     * Reads off the first 15 digits of a value in [1, 10) as SQLite's et_getdigit does: take the
+     * whole part, subtract it and multiply by ten, rounding each product to 64 bits.
+     *
+     * @return the digits as a whole number
+     */
+    BigInteger digits() {
+      LongDouble value = this;
+      BigInteger digits = BigInteger.ZERO;
+      for (int i = 0; i < DIGITS; i++) {
+        BigInteger digit = value.binaryExponent >= 0 ? value.mantissa.shiftLeft(value.binaryExponent)
+            : value.mantissa.shiftRight(-value.binaryExponent);
+        digits = digits.multiply(BigInteger.TEN).add(digit);
+        BigInteger whole = digit.shiftLeft(Math.max(0, -value.binaryExponent));
+        int power = Math.min(0, value.binaryExponent);
+        BigInteger rest = value.mantissa.shiftLeft(value.binaryExponent - power).subtract(whole);
+        value = round(rest, power).times(TEN);
+      }
+      return digits;
+    }
+  }
+}
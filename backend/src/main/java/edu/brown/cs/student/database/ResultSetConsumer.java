@@ -0,0 +1,21 @@
+package edu.brown.cs.student.database;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Callback that reads a ResultSet while the statement that produced it is still open.
+ * @author Justin Rhee
+ */
+@FunctionalInterface
+public interface ResultSetConsumer {
+  /**
+   * Reads a ResultSet. The ResultSet is closed once this returns.
+   *
+   * @param rs result set of the query
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException exception thrown while writing out the rows
+   */
+  void accept(ResultSet rs) throws SQLException, IOException;
+}
@@ -0,0 +1,436 @@
+package edu.brown.cs.student.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text indexes over the text columns of a database, kept in FTS5 tables named
+ * __fts_&lt;table&gt; next to the tables they index.
+ *
+ * <p>Each index reads its rows from its table rather than storing a copy of them, and triggers on
+ * the table keep it up to date on every insert, update and delete, whichever connection makes
+ * them. Indexes are built in the background, one table at a time and one batch of rows at a
+ * time. An index that an earlier run built to the end is used with the columns it was built
+ * with, and one left half built is built again.
+ * @author Justin Rhee
+ */
+class SearchIndex {
+  static final String PREFIX = "__fts_";
+  private static final int BATCH_ROWS = 5000;
+  // SQLite gives a column text affinity if its type names one of these and not INT
+  private static final Pattern TEXT_TYPE = Pattern.compile("CHAR|CLOB|TEXT");
+
+  /**
+   * State of the index of one table.
+   */
+  enum State {
+    PENDING, BUILDING, READY, FAILED, UNSUPPORTED
+  }
+
+  /**
+   * Progress of the index of one table.
+   */
+  private static final class Progress {
+    private volatile State state = State.PENDING;
+    private volatile long indexedRows;
+    private volatile long totalRows;
+    private volatile List<String> columns = List.of();
+  }
+
+  private final ConnectionPool pool;
+  private final Map<String, Progress> progress = new ConcurrentHashMap<>();
+  private volatile boolean cancelled;
+
+  /**
+   * Constructs the search indexes of some tables. Nothing is built until start is called.
+   *
+   * @param pool connections to the database
+   * @param tableNames names of the tables to index
+   */
+  SearchIndex(ConnectionPool pool, List<String> tableNames) {
+    this.pool = pool;
+    for (String table : tableNames) {
+      if (!table.startsWith("sqlite_")) {
+        progress.put(table, new Progress());
+      }
+    }
+  }
+
+  /**
+   * Returns the name of the index of a table.
+   *
+   * @param table name of the table
+   * @return name of its index
+   */
+  static String indexName(String table) {
+    return PREFIX + table;
+  }
+
+  /**
+   * Starts building the indexes on a background thread.
+   */
+  void start() {
+    Thread builder = new Thread(this::buildAll, "search-index");
+    builder.setDaemon(true);
+    builder.start();
+  }
+
+  /**
+   * Stops building indexes after the batch being indexed, if any, is done. The half built index
+   * is built again the next time the database is loaded.
+   */
+  void cancel() {
+    cancelled = true;
+  }
+
+  /**
+   * Returns the indexed columns of a table whose index is ready.
+   *
+   * @param table name of the table
+   * @return names of the indexed columns
+   * @throws SQLException if the table has no index or its index is not ready
+   */
+  List<String> readyColumns(String table) throws SQLException {
+    Progress tableProgress = progress.get(table);
+    if (tableProgress == null || tableProgress.state == State.UNSUPPORTED) {
+      throw new SQLException("Table has no text columns to search");
+    }
+    if (tableProgress.state != State.READY) {
+      throw new SQLException("Search index is not ready");
+    }
+    return tableProgress.columns;
+  }
+
+  /**
+   * Returns the progress of every index.
+   *
+   * @return map of table names to their state, indexed rows and total rows
+   */
+  Map<String, Map<String, Object>> getProgress() {
+    Map<String, Map<String, Object>> snapshot = new LinkedHashMap<>();
+    for (Map.Entry<String, Progress> entry : progress.entrySet()) {
+      Progress tableProgress = entry.getValue();
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("state", tableProgress.state.name().toLowerCase(Locale.ROOT));
+      map.put("indexed_rows", tableProgress.indexedRows);
+      map.put("total_rows", tableProgress.totalRows);
+      snapshot.put(entry.getKey(), map);
+    }
+    return snapshot;
+  }
+
+  /**
+   * Builds the index of every table in turn.
+   */
+  private void buildAll() {
+    for (Map.Entry<String, Progress> entry : progress.entrySet()) {
+      if (cancelled) {
+        return;
+      }
+      Progress tableProgress = entry.getValue();
+      try {
+        this.build(entry.getKey(), tableProgress);
+      } catch (SQLException e) {
+        tableProgress.state = State.FAILED;
+        System.out.println("ERROR: Could not index " + entry.getKey() + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Builds the index of one table. The index and its triggers are created first, then the rows
+   * are indexed in batches of BATCH_ROWS rowids, each committed on its own so writes can run in
+   * between. Until the last batch, the triggers only keep up the rows below the batches done so
+   * far, and each batch moves that bound up in the same transaction as it indexes its rows, so
+   * every row is indexed exactly once whatever is written while the index is built.
+   *
+   * @param table name of the table
+   * @param tableProgress progress of the table's index
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private void build(String table, Progress tableProgress) throws SQLException {
+    List<String> columns;
+    long minRowid;
+    long maxRowid;
+    try (PooledConnection lease = pool.acquireWrite()) {
+      Connection conn = lease.getConnection();
+      List<String> indexed = indexedColumns(conn, table);
+      if (!indexed.isEmpty()) {
+        if (isComplete(conn, table, indexed)) {
+          tableProgress.columns = indexed;
+          tableProgress.state = State.READY;
+          return;
+        }
+        // left half built, so it is built again from the start
+        inTransaction(conn, drop(table));
+      }
+      columns = textColumns(conn, table);
+      if (columns.isEmpty()) {
+        tableProgress.state = State.UNSUPPORTED;
+        return;
+      }
+      tableProgress.columns = List.copyOf(columns);
+
+      try (Statement stat = conn.createStatement();
+           ResultSet range = stat.executeQuery("SELECT MIN(rowid), MAX(rowid), COUNT(*) FROM "
+               + DatabaseProxy.quote(table))) {
+        range.next();
+        minRowid = range.getLong(1);
+        maxRowid = range.getLong(2);
+        tableProgress.totalRows = range.getLong(3);
+      }
+
+      tableProgress.state = State.BUILDING;
+      List<String> create = new ArrayList<>();
+      create.add("CREATE VIRTUAL TABLE " + DatabaseProxy.quote(indexName(table)) + " USING fts5("
+          + quoteAll(columns, "") + ", content='" + table.replace("'", "''")
+          + "', content_rowid='rowid')");
+      create.addAll(triggers(table, columns, Long.MIN_VALUE));
+      inTransaction(conn, create);
+    }
+
+    String quotedColumns = quoteAll(columns, "");
+    String insert = "INSERT INTO " + DatabaseProxy.quote(indexName(table)) + "(rowid, "
+        + quotedColumns + ") SELECT rowid, " + quotedColumns + " FROM "
+        + DatabaseProxy.quote(table) + " WHERE rowid >= ?";
+    long start = Long.MIN_VALUE;
+    long end = minRowid;
+    boolean last = false;
+    while (!last) {
+      if (cancelled) {
+        return;
+      }
+      // the first batch starts below any rowid and the last has no end, so rows written outside
+      // the range seen at the start are indexed too
+      last = end > maxRowid - BATCH_ROWS;
+      end += BATCH_ROWS;
+      try (PooledConnection lease = pool.acquireWrite()) {
+        Connection conn = lease.getConnection();
+        conn.setAutoCommit(false);
+        try (PreparedStatement batch = conn.prepareStatement(last ? insert
+            : insert + " AND rowid < ?")) {
+          batch.setLong(1, start);
+          if (!last) {
+            batch.setLong(2, end);
+          }
+          long rows = batch.executeUpdate();
+          try (Statement stat = conn.createStatement()) {
+            for (String sql : triggers(table, columns, last ? null : end)) {
+              stat.executeUpdate(sql);
+            }
+          }
+          conn.commit();
+          tableProgress.indexedRows += rows;
+        } catch (SQLException e) {
+          conn.rollback();
+          throw e;
+        } finally {
+          conn.setAutoCommit(true);
+        }
+      }
+      start = end;
+    }
+    tableProgress.state = State.READY;
+  }
+
+  /**
+   * Runs statements in one transaction.
+   *
+   * @param conn connection to run them on
+   * @param statements SQL statements to run in order
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private static void inTransaction(Connection conn, List<String> statements)
+      throws SQLException {
+    conn.setAutoCommit(false);
+    try (Statement stat = conn.createStatement()) {
+      for (String sql : statements) {
+        stat.executeUpdate(sql);
+      }
+      conn.commit();
+    } catch (SQLException e) {
+      conn.rollback();
+      throw e;
+    } finally {
+      conn.setAutoCommit(true);
+    }
+  }
+
+  /**
+   * Reads the columns an existing index of a table was built with.
+   *
+   * @param conn connection to the database
+   * @param table name of the table
+   * @return names of the indexed columns, empty if the table has no index
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private static List<String> indexedColumns(Connection conn, String table)
+      throws SQLException {
+    List<String> columns = new ArrayList<>();
+    try (Statement stat = conn.createStatement();
+         ResultSet info = stat.executeQuery(
+             "PRAGMA table_info(" + DatabaseProxy.quote(indexName(table)) + ")")) {
+      while (info.next()) {
+        columns.add(info.getString("name"));
+      }
+    }
+    return List.copyOf(columns);
+  }
+
+  /**
+   * Checks whether an existing index was built to the end, which is when its triggers keep up
+   * every row of the table.
+   *
+   * @param conn connection to the database
+   * @param table name of the table
+   * @param columns names of the indexed columns
+   * @return whether the index is complete
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private static boolean isComplete(Connection conn, String table, List<String> columns)
+      throws SQLException {
+    List<String> expected = new ArrayList<>();
+    for (String sql : triggers(table, columns, null)) {
+      if (sql.startsWith("CREATE")) {
+        expected.add(sql);
+      }
+    }
+    List<String> actual = new ArrayList<>();
+    try (PreparedStatement stat = conn.prepareStatement(
+        "SELECT sql FROM sqlite_master WHERE type = 'trigger' AND name IN (?, ?, ?)")) {
+      stat.setString(1, indexName(table) + "_ai");
+      stat.setString(2, indexName(table) + "_ad");
+      stat.setString(3, indexName(table) + "_au");
+      try (ResultSet rs = stat.executeQuery()) {
+        while (rs.next()) {
+          actual.add(rs.getString(1));
+        }
+      }
+    }
+    return actual.size() == expected.size() && actual.containsAll(expected);
+  }
+
+  /**
+   * Finds the columns of a table with text affinity, or no declared type.
+   *
+   * @param conn connection to the database
+   * @param table name of the table
+   * @return names of the text columns, empty if the table has none or has no rowid
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  private static List<String> textColumns(Connection conn, String table) throws SQLException {
+    List<String> columns = new ArrayList<>();
+    try (Statement stat = conn.createStatement()) {
+      try (ResultSet info = stat.executeQuery(
+          "PRAGMA table_info(" + DatabaseProxy.quote(table) + ")")) {
+        while (info.next()) {
+          String type = info.getString("type").toUpperCase(Locale.ROOT);
+          if (type.isEmpty() || !type.contains("INT") && TEXT_TYPE.matcher(type).find()) {
+            columns.add(info.getString("name"));
+          }
+        }
+      }
+      try {
+        stat.executeQuery("SELECT rowid FROM " + DatabaseProxy.quote(table) + " LIMIT 0").close();
+      } catch (SQLException e) {
+        // the index is looked up by rowid, which WITHOUT ROWID tables do not have
+        return List.of();
+      }
+    }
+    return columns;
+  }
+
+  /**
+   * Returns the statements that drop an index and its triggers.
+   *
+   * @param table name of the table
+   * @return SQL statements to run in order
+   */
+  private static List<String> drop(String table) {
+    List<String> statements = new ArrayList<>();
+    for (String suffix : List.of("_ai", "_ad", "_au")) {
+      statements.add("DROP TRIGGER IF EXISTS " + DatabaseProxy.quote(indexName(table) + suffix));
+    }
+    statements.add("DROP TABLE IF EXISTS " + DatabaseProxy.quote(indexName(table)));
+    return statements;
+  }
+
+  /**
+   * Returns the statements that replace the triggers keeping the index of a table in sync,
+   * following the external content table pattern of the FTS5 documentation.
+   *
+   * @param table name of the table
+   * @param columns names of the indexed columns
+   * @param bound rowid below which rows are kept up, or null to keep up every row
+   * @return SQL statements to run in order
+   */
+  private static List<String> triggers(String table, List<String> columns, Long bound) {
+    String index = DatabaseProxy.quote(indexName(table));
+    String quotedTable = DatabaseProxy.quote(table);
+    String plain = quoteAll(columns, "");
+    String remove = "INSERT INTO " + index + "(" + index + ", rowid, " + plain
+        + ") SELECT 'delete', old.rowid, " + quoteAll(columns, "old.")
+        + (bound == null ? "" : " WHERE old.rowid < " + bound) + ";";
+    String add = "INSERT INTO " + index + "(rowid, " + plain + ") SELECT new.rowid, "
+        + quoteAll(columns, "new.") + (bound == null ? "" : " WHERE new.rowid < " + bound) + ";";
+    List<String> statements = drop(table);
+    statements.remove(statements.size() - 1);
+    statements.add("CREATE TRIGGER " + DatabaseProxy.quote(indexName(table) + "_ai")
+        + " AFTER INSERT ON " + quotedTable + " BEGIN " + add + " END");
+    statements.add("CREATE TRIGGER " + DatabaseProxy.quote(indexName(table) + "_ad")
+        + " AFTER DELETE ON " + quotedTable + " BEGIN " + remove + " END");
+    statements.add("CREATE TRIGGER " + DatabaseProxy.quote(indexName(table) + "_au")
+        + " AFTER UPDATE ON " + quotedTable + " BEGIN " + remove + " " + add + " END");
+    return statements;
+  }
+
+  /**
+   * Quotes column names and joins them with commas.
+   *
+   * @param columns names of the columns
+   * @param prefix text to put before each quoted name, such as new.
+   * @return comma separated list of quoted names
+   */
+  private static String quoteAll(List<String> columns, String prefix) {
+    List<String> quoted = new ArrayList<>();
+    for (String column : columns) {
+      quoted.add(prefix + DatabaseProxy.quote(column));
+    }
+    return String.join(", ", quoted);
+  }
+
+  /**
+   * Turns text typed by a user into an FTS5 query that matches rows containing every word, or a
+   * word starting with it, so that no input can be a syntax error.
+   *
+   * @param text text to search for
+   * @param column column to search in, or null to search every indexed column
+   * @return FTS5 query, or null if the text has no words
+   */
+  static String matchQuery(String text, String column) {
+    List<String> terms = new ArrayList<>();
+    for (String word : text.trim().split("\\s+")) {
+      if (!word.isEmpty()) {
+        terms.add("\"" + word.replace("\"", "\"\"") + "\"*");
+      }
+    }
+    if (terms.isEmpty()) {
+      return null;
+    }
+    String match = String.join(" ", terms);
+    if (column != null) {
+      match = "\"" + column.replace("\"", "\"\"") + "\" : (" + match + ")";
+    }
+    return match;
+  }
+}
@@ -0,0 +1,63 @@
+package edu.brown.cs.student.database;
+
+import java.util.Objects;
+
+/**
+ * Class to represent one column that a table is sorted by, and in which direction.
+ * @author Justin Rhee
+ */
+public class SortKey {
+  private final String column;
+  private final boolean ascending;
+
+  /**
+   * Constructs a sort key.
+   *
+   * @param column name of the column to sort by
+   * @param ascending whether to sort in ascending order
+   */
+  public SortKey(String column, boolean ascending) {
+    this.column = column;
+    this.ascending = ascending;
+  }
+
+  /**
+   * Returns the name of the column to sort by.
+   *
+   * @return name of the column
+   */
+  public String getColumn() {
+    return column;
+  }
+
+  /**
+   * Returns whether to sort in ascending order.
+   *
+   * @return true if ascending, false if descending
+   */
+  public boolean isAscending() {
+    return ascending;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SortKey)) {
+      return false;
+    }
+    SortKey other = (SortKey) o;
+    return column.equals(other.column) && ascending == other.ascending;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(column, ascending);
+  }
+
+  @Override
+  public String toString() {
+    return DatabaseProxy.quote(column) + (ascending ? " ASC" : " DESC");
+  }
+}
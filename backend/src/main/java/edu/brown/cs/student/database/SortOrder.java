@@ -0,0 +1,189 @@
+package edu.brown.cs.student.database;
+
+import java.math.BigInteger;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Works out the order of the rows of a query result when sorted by some of its columns.
+ *
+ * <p>Values are compared the way the table visualization compares them: a column whose values all
+ * read as numbers is sorted numerically, and any other column is sorted as text. The choice is made
+ * once per column rather than per pair of values, so that the order is consistent. Nulls come
+ * first in ascending order, as they do in SQLite. Rows that compare equal keep their original
+ * order.
+ * @author Justin Rhee
+ */
+final class SortOrder {
+  // what JavaScript's Number() accepts, apart from the empty string which it reads as 0
+  private static final Pattern DECIMAL = Pattern.compile(
+      "[+-]?(?:Infinity|(?:\\d+\\.?\\d*|\\.\\d+)(?:[eE][+-]?\\d+)?)");
+  private static final Pattern HEX = Pattern.compile("0[xX][0-9a-fA-F]+");
+  private static final int INSERTION_SORT_THRESHOLD = 16;
+  private static final int HEX_RADIX = 16;
+
+  /**
+   * Compares two rows by their index.
+   */
+  private interface RowComparator {
+    /**
+     * Compares two rows.
+     *
+     * @param a index of the first row
+     * @param b index of the second row
+     * @return negative, zero or positive as the first row sorts before, with or after the second
+     */
+    int compare(int a, int b);
+  }
+
+  private SortOrder() {
+  }
+
+  /**
+   * Returns the indices of the rows of a query result in sorted order.
+   *
+   * @param output query result to sort
+   * @param keys columns to sort by, most significant first
+   * @return row indices in sorted order
+   * @throws SQLException if a key names a column that is not in the result
+   */
+  static int[] compute(QueryOutput output, List<SortKey> keys) throws SQLException {
+    List<String> names = output.getColumnNames();
+    RowComparator[] comparators = new RowComparator[keys.size()];
+    for (int i = 0; i < keys.size(); i++) {
+      int col = names.indexOf(keys.get(i).getColumn());
+      if (col < 0) {
+        throw new SQLException("Column doesn't exist");
+      }
+      comparators[i] = comparator(output.getColumn(col), output.getRowCount(),
+          keys.get(i).isAscending());
+    }
+    RowComparator comparator = (a, b) -> {
+      for (RowComparator c : comparators) {
+        int result = c.compare(a, b);
+        if (result != 0) {
+          return result;
+        }
+      }
+      return 0;
+    };
+
+    int[] order = new int[output.getRowCount()];
+    for (int i = 0; i < order.length; i++) {
+      order[i] = i;
+    }
+    mergeSort(order, order.clone(), 0, order.length, comparator);
+    return order;
+  }
+
+  /**
+   * Builds the comparator for one column. Text values are decoded once up front rather than on
+   * every comparison.
+   *
+   * @param column column to compare by
+   * @param rows number of rows in the column
+   * @param ascending whether to sort in ascending order
+   * @return comparator of rows by the column
+   */
+  private static RowComparator comparator(Column column, int rows, boolean ascending) {
+    RowComparator values;
+    if (column instanceof LongColumn) {
+      LongColumn longs = (LongColumn) column;
+      values = (a, b) -> Long.compare(longs.getLong(a), longs.getLong(b));
+    } else if (column instanceof DoubleColumn) {
+      DoubleColumn doubles = (DoubleColumn) column;
+      values = (a, b) -> Double.compare(doubles.getDouble(a), doubles.getDouble(b));
+    } else {
+      String[] strings = new String[rows];
+      for (int i = 0; i < rows; i++) {
+        strings[i] = column.getString(i);
+      }
+      double[] numbers = parseNumbers(strings);
+      if (numbers != null) {
+        values = (a, b) -> Double.compare(numbers[a], numbers[b]);
+      } else {
+        values = (a, b) -> strings[a].compareTo(strings[b]);
+      }
+    }
+
+    RowComparator withNulls = (a, b) -> {
+      boolean aNull = column.isNull(a);
+      boolean bNull = column.isNull(b);
+      if (aNull || bNull) {
+        return Boolean.compare(!aNull, !bNull);
+      }
+      return values.compare(a, b);
+    };
+    return ascending ? withNulls : (a, b) -> withNulls.compare(b, a);
+  }
+
+  /**
+   * Reads every non-null value of a text column as a number.
+   *
+   * @param strings values of the column, with nulls
+   * @return the numbers, or null if any value does not read as a number
+   */
+  private static double[] parseNumbers(String[] strings) {
+    double[] numbers = new double[strings.length];
+    for (int i = 0; i < strings.length; i++) {
+      if (strings[i] == null) {
+        continue;
+      }
+      String value = strings[i].strip();
+      if (value.isEmpty()) {
+        numbers[i] = 0;
+      } else if (DECIMAL.matcher(value).matches()) {
+        numbers[i] = Double.parseDouble(value);
+      } else if (HEX.matcher(value).matches()) {
+        numbers[i] = new BigInteger(value.substring(2), HEX_RADIX).doubleValue();
+      } else {
+        return null;
+      }
+    }
+    return numbers;
+  }
+
+  /**
+   * Sorts part of an array of row indices with a stable merge sort.
+   *
+   * @param order array to sort
+   * @param aux scratch array holding the same values as order over the range
+   * @param from start of the range, inclusive
+   * @param to end of the range, exclusive
+   * @param comparator comparator of rows
+   */
+  private static void mergeSort(int[] order, int[] aux, int from, int to,
+                                RowComparator comparator) {
+    if (to - from <= INSERTION_SORT_THRESHOLD) {
+      for (int i = from + 1; i < to; i++) {
+        int row = order[i];
+        int j = i - 1;
+        while (j >= from && comparator.compare(order[j], row) > 0) {
+          order[j + 1] = order[j];
+          j--;
+        }
+        order[j + 1] = row;
+      }
+      return;
+    }
+
+    // the halves are sorted into aux so that they can be merged back into order
+    int mid = (from + to) >>> 1;
+    mergeSort(aux, order, from, mid, comparator);
+    mergeSort(aux, order, mid, to, comparator);
+    if (comparator.compare(aux[mid - 1], aux[mid]) <= 0) {
+      System.arraycopy(aux, from, order, from, to - from);
+      return;
+    }
+    int left = from;
+    int right = mid;
+    for (int i = from; i < to; i++) {
+      if (right >= to || (left < mid && comparator.compare(aux[left], aux[right]) <= 0)) {
+        order[i] = aux[left++];
+      } else {
+        order[i] = aux[right++];
+      }
+    }
+  }
+}
@@ -0,0 +1,272 @@
+package edu.brown.cs.student.database;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Classification of the text of a SQL statement: the command it runs, whether it writes or
+ * changes the schema, and the names it refers to along with the permission each needs.
+ *
+ * <p>The statement is read in one pass by a tokenizer that skips string literals and comments,
+ * unquotes quoted identifiers and follows parentheses, so that words inside literals are never
+ * taken for keywords or tables, and the command of a WITH statement is found after its common
+ * table expressions. Classifications are kept in a shared LRU cache keyed by the SQL text, so
+ * classifying a statement that was seen before is a hash lookup.
+ * @author Justin Rhee
+ */
+final class SqlStatement {
+  private static final int CACHE_SIZE = 4096;
+  private static final Cache<String, SqlStatement> CACHE = CacheBuilder.newBuilder()
+      .maximumSize(CACHE_SIZE)
+      .build();
+
+  // permission a table needs when nothing in the statement says otherwise
+  private static final String DEFAULT_PERMISSION = "RW";
+  // the permission needed by the tables named after each keyword, until the next such keyword
+  private static final Map<String, String> KEYWORD_PERMISSIONS = Map.of(
+      "SELECT", "R",
+      "JOIN", "R",
+      "INSERT", "W",
+      "DROP", "RW",
+      "UPDATE", "RW",
+      "DELETE", "RW",
+      "ALTER", "RW",
+      "TRUNCATE", "RW");
+  private static final Set<String> WRITE_COMMANDS = Set.of("INSERT", "UPDATE", "DELETE",
+      "REPLACE", "CREATE", "DROP", "ALTER", "TRUNCATE", "VACUUM", "REINDEX", "ANALYZE", "ATTACH",
+      "DETACH", "BEGIN", "COMMIT", "END", "ROLLBACK", "SAVEPOINT", "RELEASE");
+  private static final Set<String> DDL_COMMANDS = Set.of("CREATE", "DROP", "ALTER");
+  private static final Set<String> WITH_COMMANDS = Set.of("SELECT", "VALUES", "INSERT", "UPDATE",
+      "DELETE", "REPLACE");
+
+  private final String command;
+  private final boolean write;
+  private final List<String> words;
+  private final List<String> references;
+  private final List<String> permissions;
+
+  /**
+   * Constructs a classification.
+   *
+   * @param command first keyword of the statement, or of its main part for WITH statements
+   * @param write whether the statement must run on the write connection
+   * @param words keywords and names of the statement, in order, with quotes removed
+   * @param references names that may be tables
+   * @param permissions permission each reference needs, in the same order
+   */
+  private SqlStatement(String command, boolean write, List<String> words,
+                       List<String> references, List<String> permissions) {
+    this.command = command;
+    this.write = write;
+    this.words = words;
+    this.references = references;
+    this.permissions = permissions;
+  }
+
+  /**
+   * Returns the classification of a statement, reading it only the first time it is seen.
+   *
+   * @param sql text of the statement
+   * @return its classification
+   */
+  static SqlStatement of(String sql) {
+    try {
+      return CACHE.get(sql, () -> parse(sql));
+    } catch (ExecutionException e) {
+      // parse throws nothing checked
+      throw new IllegalStateException(e.getCause());
+    }
+  }
+
+  /**
+   * Reads a statement.
+   *
+   * @param sql text of the statement
+   * @return its classification
+   */
+  static SqlStatement parse(String sql) {
+    List<String> words = new ArrayList<>();
+    List<String> references = new ArrayList<>();
+    List<String> permissions = new ArrayList<>();
+    String first = null;
+    String command = null;
+    String permission = DEFAULT_PERMISSION;
+    boolean assigns = false;
+    int depth = 0;
+
+    int i = 0;
+    int length = sql.length();
+    while (i < length) {
+      char c = sql.charAt(i);
+      if (Character.isWhitespace(c)) {
+        i++;
+      } else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+        int end = sql.indexOf('\n', i);
+        i = end < 0 ? length : end + 1;
+      } else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+        int end = sql.indexOf("*/", i + 2);
+        i = end < 0 ? length : end + 2;
+      } else if (c == '\'') {
+        i = skipQuoted(sql, i, '\'');
+      } else if (c == '"' || c == '`' || c == '[') {
+        char close = c == '[' ? ']' : c;
+        int end = skipQuoted(sql, i, close);
+        String name = sql.substring(i + 1, Math.max(i + 1, end - 1));
+        if (close != ']') {
+          name = name.replace("" + close + close, "" + close);
+        }
+        words.add(name);
+        references.add(name);
+        permissions.add(permission);
+        i = end;
+      } else if (Character.isLetter(c) || c == '_') {
+        int end = i + 1;
+        while (end < length && isWordPart(sql.charAt(end))) {
+          end++;
+        }
+        String word = sql.substring(i, end);
+        String upper = word.toUpperCase(Locale.ROOT);
+        words.add(word);
+        if (first == null) {
+          first = upper;
+        }
+        boolean main = !first.equals("WITH") || depth == 0 && WITH_COMMANDS.contains(upper);
+        if (command == null && main) {
+          command = upper;
+        }
+        String keywordPermission = KEYWORD_PERMISSIONS.get(upper);
+        if (keywordPermission != null) {
+          permission = keywordPermission;
+        } else {
+          references.add(word);
+          permissions.add(permission);
+        }
+        i = end;
+      } else if (Character.isDigit(c)) {
+        // numbers, including ones like 1e5, are not names
+        int end = i + 1;
+        while (end < length && isWordPart(sql.charAt(end))) {
+          end++;
+        }
+        i = end;
+      } else {
+        if (c == '(') {
+          depth++;
+        } else if (c == ')') {
+          depth--;
+        } else if (c == '=') {
+          assigns = true;
+        }
+        i++;
+      }
+    }
+
+    if (command == null) {
+      command = first == null ? "" : first;
+    }
+    boolean write = WRITE_COMMANDS.contains(command)
+        // PRAGMA name = value sets the pragma, while PRAGMA name(value) only reads it
+        || command.equals("PRAGMA") && assigns;
+    return new SqlStatement(command, write, List.copyOf(words), List.copyOf(references),
+        List.copyOf(permissions));
+  }
+
+  /**
+   * Finds the end of a quoted string or identifier, where a doubled quote stands for itself.
+   *
+   * @param sql text of the statement
+   * @param start index of the opening quote
+   * @param close closing quote character
+   * @return index just after the closing quote, or the length of the text if it is unclosed
+   */
+  private static int skipQuoted(String sql, int start, char close) {
+    int i = start + 1;
+    while (i < sql.length()) {
+      if (sql.charAt(i) == close) {
+        if (close != ']' && i + 1 < sql.length() && sql.charAt(i + 1) == close) {
+          i += 2;
+          continue;
+        }
+        return i + 1;
+      }
+      i++;
+    }
+    return sql.length();
+  }
+
+  /**
+   * Checks whether a character can continue an unquoted word.
+   *
+   * @param c character to check
+   * @return true for letters, digits, underscores and dollar signs
+   */
+  private static boolean isWordPart(char c) {
+    return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+  }
+
+  /**
+   * Returns the command the statement runs, such as SELECT or INSERT. For a WITH statement it is
+   * the command after the common table expressions, and for EXPLAIN it is EXPLAIN.
+   *
+   * @return the command in upper case, or an empty string for an empty statement
+   */
+  String getCommand() {
+    return command;
+  }
+
+  /**
+   * Returns whether the statement has to run on the write connection, because it changes the
+   * database, its schema or its transaction state.
+   *
+   * @return true for writes
+   */
+  boolean isWrite() {
+    return write;
+  }
+
+  /**
+   * Returns whether the statement creates, drops or alters something.
+   *
+   * @return true for schema changes
+   */
+  boolean isSchemaChange() {
+    return DDL_COMMANDS.contains(command);
+  }
+
+  /**
+   * Returns the keywords and names of the statement, in order, with quotes removed and literals
+   * and comments left out.
+   *
+   * @return keywords and names
+   */
+  List<String> getWords() {
+    return words;
+  }
+
+  /**
+   * Returns the names in the statement that may be tables, which is every name that is not a
+   * keyword deciding permissions.
+   *
+   * @return names, in order
+   */
+  List<String> getReferences() {
+    return references;
+  }
+
+  /**
+   * Returns the permission each reference needs: R after SELECT or JOIN, W after INSERT, and RW
+   * after UPDATE, DELETE, DROP and ALTER or before any of them.
+   *
+   * @return permissions, in the order of getReferences
+   */
+  List<String> getPermissions() {
+    return permissions;
+  }
+}
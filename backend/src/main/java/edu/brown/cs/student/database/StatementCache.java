@@ -0,0 +1,120 @@
+package edu.brown.cs.student.database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Least recently used cache of the prepared statements of one connection, keyed by SQL text, so
+ * that queries run again and again are compiled by SQLite only once. Statements are closed when
+ * they are evicted.
+ *
+ * <p>Like the connection it belongs to, a statement cache is only used by one thread at a time.
+ * @author Justin Rhee
+ */
+class StatementCache {
+  private final Connection conn;
+  private final Map<String, PreparedStatement> statements;
+  private final Stats stats;
+
+  /**
+   * Counters shared by the statement caches of a pool.
+   */
+  static class Stats {
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Adds the counters to a map of statistics.
+     *
+     * @param into map to add the counters to
+     */
+    void addTo(Map<String, Number> into) {
+      into.put("statement_cache_hits", hits.sum());
+      into.put("statement_cache_misses", misses.sum());
+      into.put("statement_cache_evictions", evictions.sum());
+    }
+  }
+
+  /**
+   * Constructs an empty statement cache.
+   *
+   * @param conn connection the statements are prepared on
+   * @param maximumSize maximum number of statements kept open
+   * @param stats counters to record hits, misses and evictions in
+   */
+  StatementCache(Connection conn, int maximumSize, Stats stats) {
+    this.conn = conn;
+    this.stats = stats;
+    this.statements = new LinkedHashMap<>(maximumSize, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<String, PreparedStatement> eldest) {
+        if (size() > maximumSize) {
+          stats.evictions.increment();
+          closeQuietly(eldest.getValue());
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  /**
+   * Returns a prepared statement for a query, with no parameters bound.
+   *
+   * @param query SQL query
+   * @return prepared statement, which must not be closed by the caller
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  PreparedStatement prepare(String query) throws SQLException {
+    PreparedStatement stmt = statements.get(query);
+    if (stmt != null && !stmt.isClosed()) {
+      stats.hits.increment();
+      stmt.clearParameters();
+      return stmt;
+    }
+    stats.misses.increment();
+    stmt = conn.prepareStatement(query);
+    statements.put(query, stmt);
+    return stmt;
+  }
+
+  /**
+   * Closes and forgets the statement for a query, for example after it failed.
+   *
+   * @param query SQL query
+   */
+  void invalidate(String query) {
+    PreparedStatement stmt = statements.remove(query);
+    if (stmt != null) {
+      closeQuietly(stmt);
+    }
+  }
+
+  /**
+   * Closes every cached statement.
+   */
+  void clear() {
+    for (PreparedStatement stmt : statements.values()) {
+      closeQuietly(stmt);
+    }
+    statements.clear();
+  }
+
+  /**
+   * Closes a statement, ignoring any error.
+   *
+   * @param stmt statement to close
+   */
+  private static void closeQuietly(PreparedStatement stmt) {
+    try {
+      stmt.close();
+    } catch (SQLException e) {
+      System.out.println("ERROR: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,44 @@
+package edu.brown.cs.student.database;
+
+import edu.brown.cs.student.api.Handler;
+
+import java.util.Map;
+
+import static edu.brown.cs.student.repl.ParseCommand.parseInput;
+
+/**
+ * Class for inspecting the result cache from a static context.
+ */
+public abstract class StaticCache {
+  /**
+   * Prints statistics about the result cache of the loaded database, or clears it.
+   *
+   * @param args represents the arguments that may be necessary for command execution. Parsing of
+   *             the arguments should occur in the instance of the REPLCommand.
+   */
+  public static void execute(String args) {
+    DatabaseProxy db = Handler.getDB();
+    if (db == null) {
+      System.out.println("ERROR: No database loaded");
+      return;
+    }
+    String[] params = parseInput(args);
+    String action = params.length == 0 ? "stats" : params[0];
+    switch (action) {
+      case "stats":
+        for (Map.Entry<String, Object> entry : db.getCacheStats().entrySet()) {
+          System.out.println(entry.getKey() + ": " + entry.getValue());
+        }
+        for (Map.Entry<String, Map<String, Long>> entry : db.getTableCacheStats().entrySet()) {
+          System.out.println(entry.getKey() + ": " + entry.getValue());
+        }
+        break;
+      case "clear":
+        db.clearCache();
+        System.out.println("Cache cleared");
+        break;
+      default:
+        System.out.println("ERROR: Usage: cache <stats|clear>");
+    }
+  }
+}
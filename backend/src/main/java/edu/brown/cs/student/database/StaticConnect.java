@@ -20,8 +20,7 @@ public abstract class StaticConnect {
   public static void execute(String args) {
     try {
       String[] params = parseInput(args);
-      Handler.setDB(new DatabaseProxy(params[0]), true);
-      Handler.setDBPath(params[0]);
+      Handler.openDB(params[0], true);
     } catch (SQLException | ClassNotFoundException | FileNotFoundException
         | IndexOutOfBoundsException e) {
       System.out.println("ERROR: " + e.getMessage());
@@ -18,6 +18,9 @@ public class StaticDBPCommands implements CommandContainer {
   public StaticDBPCommands() {
     commands.put("connect", new StaticConnectWrapper());
     commands.put("run", new StaticRunWrapper());
+    commands.put("cache", new StaticCacheWrapper());
+    commands.put("import", new StaticImportWrapper());
+    commands.put("export", new StaticExportWrapper());
   }
 
   /**
@@ -68,4 +71,52 @@ public class StaticDBPCommands implements CommandContainer {
       StaticRun.execute(args);
     }
   }
+
+  /**
+   * Static wrapper class for cache command.
+   */
+  private static class StaticCacheWrapper implements REPLCommand {
+    /**
+     * Prints statistics about the result cache, or clears it.
+     *
+     * @param args represents the arguments that may be necessary for command execution. Parsing of
+     *             the arguments should occur in the instance of the REPLCommand.
+     */
+    @Override
+    public void execute(String args) {
+      StaticCache.execute(args);
+    }
+  }
+
+  /**
+   * Static wrapper class for import command.
+   */
+  private static class StaticImportWrapper implements REPLCommand {
+    /**
+     * Imports a CSV file into a table of the loaded database.
+     *
+     * @param args represents the arguments that may be necessary for command execution. Parsing of
+     *             the arguments should occur in the instance of the REPLCommand.
+     */
+    @Override
+    public void execute(String args) {
+      StaticImport.execute(args);
+    }
+  }
+
+  /**
+   * Static wrapper class for export command.
+   */
+  private static class StaticExportWrapper implements REPLCommand {
+    /**
+     * Writes a table of the loaded database to a file.
+     *
+     * @param args represents the arguments that may be necessary for command execution. Parsing of
+     *             the arguments should occur in the instance of the REPLCommand.
+     */
+    @Override
+    public void execute(String args) {
+      StaticExport.execute(args);
+    }
+  }
 }
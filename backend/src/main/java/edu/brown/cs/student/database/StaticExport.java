@@ -0,0 +1,62 @@
+package edu.brown.cs.student.database;
+
+import edu.brown.cs.student.api.Handler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.sql.SQLException;
+
+import static edu.brown.cs.student.repl.ParseCommand.parseInput;
+
+/**
+ * Class for exporting tables of the loaded database to files from a static context.
+ */
+public abstract class StaticExport {
+  private static final double NANOS_PER_SECOND = 1e9;
+  private static final double BYTES_PER_MB = 1024 * 1024;
+
+  /**
+   * Writes a table to a file, in the format given or else the one its extension names, and
+   * prints how long it took.
+   *
+   * @param args represents the arguments that may be necessary for command execution. Parsing of
+   *             the arguments should occur in the instance of the REPLCommand.
+   */
+  public static void execute(String args) {
+    DatabaseProxy db = Handler.getDB();
+    if (db == null) {
+      System.out.println("ERROR: No database loaded");
+      return;
+    }
+    String[] params = parseInput(args);
+    if (params.length < 2) {
+      System.out.println("ERROR: Usage: export <table> <file> [csv|ndjson|binary]");
+      return;
+    }
+    File file = new File(params[1]);
+    String name;
+    if (params.length > 2) {
+      name = params[2];
+    } else {
+      int dot = file.getName().lastIndexOf('.');
+      name = dot < 0 ? "csv" : file.getName().substring(dot + 1);
+    }
+    ExportWriter.Format format = ExportWriter.Format.of(name);
+    if (format == null) {
+      System.out.println("ERROR: Unknown export format: " + name);
+      return;
+    }
+
+    long start = System.nanoTime();
+    try (OutputStream out = new FileOutputStream(file)) {
+      long rows = db.exportTable(params[0], format, out);
+      double seconds = (System.nanoTime() - start) / NANOS_PER_SECOND;
+      System.out.println(String.format("Exported %d rows of %s to %s in %.2f s (%.1f MB/s)",
+          rows, params[0], file.getPath(), seconds, file.length() / BYTES_PER_MB / seconds));
+    } catch (IOException | SQLException e) {
+      System.out.println("ERROR: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package edu.brown.cs.student.database;
+
+import edu.brown.cs.student.api.Handler;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static edu.brown.cs.student.repl.ParseCommand.parseInput;
+
+/**
+ * Class for importing CSV files into the loaded database from a static context.
+ */
+public abstract class StaticImport {
+  /**
+   * Imports a CSV file into a table, then builds indexes on any columns named after the table,
+   * and prints how long it took.
+   *
+   * @param args represents the arguments that may be necessary for command execution. Parsing of
+   *             the arguments should occur in the instance of the REPLCommand.
+   */
+  public static void execute(String args) {
+    DatabaseProxy db = Handler.getDB();
+    if (db == null) {
+      System.out.println("ERROR: No database loaded");
+      return;
+    }
+    String[] params = parseInput(args);
+    if (params.length < 2) {
+      System.out.println("ERROR: Usage: import <csv> <table> [index columns...]");
+      return;
+    }
+    List<String> indexColumns = Arrays.asList(params).subList(2, params.length);
+    try {
+      Map<String, Object> result = db.importCsv(params[0], params[1], indexColumns);
+      System.out.println(String.format("Imported %d rows into %s in %.2f s (%d rows/s)",
+          (long) result.get("rows"), params[1], (double) result.get("seconds"),
+          (long) result.get("rows_per_second")));
+      List<?> indexes = (List<?>) result.get("indexes");
+      if (!indexes.isEmpty()) {
+        System.out.println("Built indexes " + indexes);
+      }
+    } catch (IOException | SQLException e) {
+      System.out.println("ERROR: " + e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package edu.brown.cs.student.database;
+
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+
+/**
+ * Column of text values. All values are stored back to back as UTF-8 in one byte[], with an int[]
+ * of offsets marking where each value starts.
+ * @author Justin Rhee
+ */
+class StringColumn extends Column {
+  private static final int AVERAGE_VALUE_BYTES = 16;
+
+  private byte[] data;
+  private int[] offsets;
+  private int dataSize;
+
+  /**
+   * Constructs an empty column.
+   *
+   * @param capacity initial capacity
+   */
+  StringColumn(int capacity) {
+    this.data = new byte[capacity * AVERAGE_VALUE_BYTES];
+    this.offsets = new int[capacity + 1];
+  }
+
+  /**
+   * Copies a column of another type into a new text column.
+   *
+   * @param other column to copy
+   * @return text column holding the same values
+   */
+  static StringColumn copyOf(Column other) {
+    StringColumn copy = new StringColumn(Math.max(other.size(), 1));
+    for (int i = 0; i < other.size(); i++) {
+      copy.append(other.getString(i));
+    }
+    return copy;
+  }
+
+  @Override
+  Object read(ResultSet rs, int index) throws SQLException {
+    return rs.getString(index);
+  }
+
+  @Override
+  boolean appendValue(Object value, int row) {
+    byte[] bytes = value.toString().getBytes(StandardCharsets.UTF_8);
+    this.ensureCapacity(row + 1);
+    if (dataSize + bytes.length > data.length) {
+      data = Arrays.copyOf(data, grow(data.length, dataSize + bytes.length));
+    }
+    System.arraycopy(bytes, 0, data, dataSize, bytes.length);
+    dataSize += bytes.length;
+    offsets[row + 1] = dataSize;
+    return true;
+  }
+
+  @Override
+  void ensureCapacity(int capacity) {
+    if (capacity + 1 > offsets.length) {
+      offsets = Arrays.copyOf(offsets, grow(offsets.length, capacity + 1));
+    }
+    // null values take no bytes, so they end where they start
+    offsets[capacity] = dataSize;
+  }
+
+  @Override
+  void trim() {
+    data = Arrays.copyOf(data, dataSize);
+    offsets = Arrays.copyOf(offsets, this.size() + 1);
+  }
+
+  @Override
+  Object getValue(int row) {
+    return this.format(row);
+  }
+
+  @Override
+  Column emptyCopy(int capacity) {
+    return new StringColumn(capacity);
+  }
+
+  @Override
+  String format(int row) {
+    return new String(data, offsets[row], offsets[row + 1] - offsets[row], StandardCharsets.UTF_8);
+  }
+
+  @Override
+  long valueBytes() {
+    return data.length + (long) offsets.length * Integer.BYTES;
+  }
+}
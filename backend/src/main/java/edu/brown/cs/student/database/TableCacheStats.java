@@ -0,0 +1,74 @@
+package edu.brown.cs.student.database;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-table counters of cache hits, misses and invalidations.
+ * @author Justin Rhee
+ */
+class TableCacheStats {
+  private final Map<String, LongAdder[]> counters = new ConcurrentHashMap<>();
+  private static final int HITS = 0;
+  private static final int MISSES = 1;
+  private static final int INVALIDATIONS = 2;
+
+  /**
+   * Records a cache hit on a read of some tables.
+   *
+   * @param tables tables the read depends on
+   */
+  void recordHit(Iterable<String> tables) {
+    this.increment(tables, HITS);
+  }
+
+  /**
+   * Records a cache miss on a read of some tables.
+   *
+   * @param tables tables the read depends on
+   */
+  void recordMiss(Iterable<String> tables) {
+    this.increment(tables, MISSES);
+  }
+
+  /**
+   * Records that a cached read was invalidated by a write to some tables.
+   *
+   * @param tables tables the write changed that the read depends on
+   */
+  void recordInvalidation(Iterable<String> tables) {
+    this.increment(tables, INVALIDATIONS);
+  }
+
+  /**
+   * Returns the counters of every table.
+   *
+   * @return map of table names to their hits, misses and invalidations
+   */
+  Map<String, Map<String, Long>> snapshot() {
+    Map<String, Map<String, Long>> snapshot = new TreeMap<>();
+    for (Map.Entry<String, LongAdder[]> entry : counters.entrySet()) {
+      LongAdder[] values = entry.getValue();
+      snapshot.put(entry.getKey(), Map.of(
+          "hits", values[HITS].sum(),
+          "misses", values[MISSES].sum(),
+          "invalidations", values[INVALIDATIONS].sum()));
+    }
+    return snapshot;
+  }
+
+  /**
+   * Increments one counter of each of some tables.
+   *
+   * @param tables tables whose counter to increment
+   * @param counter index of the counter
+   */
+  private void increment(Iterable<String> tables, int counter) {
+    for (String table : tables) {
+      counters.computeIfAbsent(table, t -> new LongAdder[] {
+          new LongAdder(), new LongAdder(), new LongAdder()})[counter].increment();
+    }
+  }
+}
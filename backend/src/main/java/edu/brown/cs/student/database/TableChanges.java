@@ -0,0 +1,143 @@
+package edu.brown.cs.student.database;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Class to represent the rows of a table that changed after a version, or that a client has to
+ * read the whole table again because those changes are no longer known.
+ * @author Justin Rhee
+ */
+public class TableChanges {
+  private final String table;
+  private final String epoch;
+  private final long version;
+  private final boolean fullReload;
+  private final QueryOutput upserted;
+  private final List<Long> deleted;
+
+  /**
+   * Constructs the changes of a table.
+   *
+   * @param table name of the table
+   * @param epoch id of the change log the version belongs to
+   * @param version version of the table the changes bring a client up to
+   * @param upserted current values of the inserted and updated rows, rowid first; null if there
+   *                 are none
+   * @param deleted rowids of the deleted rows
+   */
+  public TableChanges(String table, String epoch, long version, QueryOutput upserted,
+                      List<Long> deleted) {
+    this(table, epoch, version, false, upserted, deleted);
+  }
+
+  /**
+   * Constructs the changes of a table.
+   *
+   * @param table name of the table
+   * @param epoch id of the change log the version belongs to
+   * @param version version of the table
+   * @param fullReload whether the whole table has to be read again
+   * @param upserted current values of the inserted and updated rows, or null
+   * @param deleted rowids of the deleted rows
+   */
+  private TableChanges(String table, String epoch, long version, boolean fullReload,
+                       QueryOutput upserted, List<Long> deleted) {
+    this.table = table;
+    this.epoch = epoch;
+    this.version = version;
+    this.fullReload = fullReload;
+    this.upserted = upserted;
+    this.deleted = deleted;
+  }
+
+  /**
+   * Creates the response for a client that has to read the whole table again.
+   *
+   * @param table name of the table
+   * @param epoch id of the change log the version belongs to
+   * @param version version of the table the client will have once it has read the table
+   * @return changes telling the client to read the whole table
+   */
+  public static TableChanges fullReload(String table, String epoch, long version) {
+    return new TableChanges(table, epoch, version, true, null, List.of());
+  }
+
+  /**
+   * Returns whether the client has to read the whole table again.
+   *
+   * @return whether the changes are unknown
+   */
+  public boolean isFullReload() {
+    return fullReload;
+  }
+
+  /**
+   * Returns the id of the change log the version belongs to.
+   *
+   * @return id of the change log
+   */
+  public String getEpoch() {
+    return epoch;
+  }
+
+  /**
+   * Returns the version of the table the changes bring a client up to.
+   *
+   * @return version of the table
+   */
+  public long getVersion() {
+    return version;
+  }
+
+  /**
+   * Returns the number of inserted and updated rows.
+   *
+   * @return number of upserted rows
+   */
+  public int upsertedCount() {
+    return upserted == null ? 0 : upserted.getRowCount();
+  }
+
+  /**
+   * Returns the rowids of the deleted rows.
+   *
+   * @return rowids of the deleted rows
+   */
+  public List<Long> getDeleted() {
+    return deleted;
+  }
+
+  /**
+   * Converts the changes into a json string. Upserted rows carry their rowid as _rowid.
+   *
+   * @return json string
+   * @throws JSONException thrown if there is a json exception
+   */
+  public String toJSON() throws JSONException {
+    JSONObject changes = new JSONObject();
+    changes.put("table", table);
+    changes.put("epoch", epoch);
+    changes.put("version", version);
+    changes.put("full_reload", fullReload);
+
+    JSONArray rows = new JSONArray();
+    if (upserted != null) {
+      List<String> colNames = upserted.getColumnNames();
+      for (int row = 0; row < upserted.getRowCount(); row++) {
+        JSONObject current = new JSONObject();
+        current.put(DatabaseProxy.ROWID_FIELD, Long.parseLong(upserted.getString(row, 0)));
+        for (int i = 1; i < colNames.size(); i++) {
+          current.put(colNames.get(i), upserted.getString(row, i));
+        }
+        rows.put(current);
+      }
+    }
+    changes.put("upserted", rows);
+    changes.put("deleted", new JSONArray(deleted));
+    return changes.toString();
+  }
+}
@@ -0,0 +1,139 @@
+package edu.brown.cs.student.database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Works out which tables of a database a query reads and which a write modifies, so that a
+ * write only has to invalidate the cached reads of the tables it changed.
+ *
+ * <p>A write also changes every table that a foreign key cascades into from the tables it
+ * modifies. Writes to a table with triggers are treated as changing the whole database, since a
+ * trigger can write anywhere, except for the triggers that keep search indexes up to date.
+ * @author Justin Rhee
+ */
+class TableDependencies {
+  private static final Set<String> SKIPPED_KEYWORDS = Set.of("OR", "ROLLBACK", "ABORT", "REPLACE",
+      "FAIL", "IGNORE");
+
+  private final Map<String, String> tablesByLowerName = new HashMap<>();
+  private final Map<String, Set<String>> cascades = new HashMap<>();
+  private final Set<String> triggered = new HashSet<>();
+
+  /**
+   * Reads the triggers of a database, and takes its tables and foreign keys from its schema.
+   *
+   * @param conn connection to the database
+   * @param schema schema of the database
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  TableDependencies(Connection conn, DatabaseSchema schema) throws SQLException {
+    try (Statement stat = conn.createStatement()) {
+      for (String table : schema.getTableNames()) {
+        tablesByLowerName.put(table.toLowerCase(Locale.ROOT), table);
+        // a search index reads its rows from its table, so it counts as that table
+        tablesByLowerName.put(SearchIndex.indexName(table).toLowerCase(Locale.ROOT), table);
+      }
+      for (TableSchema table : schema.getTables()) {
+        for (TableSchema.ForeignKey key : table.getForeignKeys()) {
+          String parent = this.resolve(key.getTable());
+          if (parent != null) {
+            cascades.computeIfAbsent(parent, p -> new HashSet<>()).add(table.getName());
+          }
+        }
+      }
+      // the triggers of search indexes only write to the indexes, so they are left out
+      try (ResultSet triggers = stat.executeQuery(
+          "SELECT tbl_name FROM sqlite_master WHERE type = 'trigger' AND substr(name, 1, "
+              + SearchIndex.PREFIX.length() + ") != '" + SearchIndex.PREFIX + "'")) {
+        while (triggers.next()) {
+          String table = this.resolve(triggers.getString(1));
+          if (table != null) {
+            triggered.add(table);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the tables of the database that a statement refers to.
+   *
+   * @param statement classified SQL statement
+   * @return names of the tables referred to, which is empty if there are none
+   */
+  Set<String> referencedTables(SqlStatement statement) {
+    Set<String> tables = new HashSet<>();
+    for (String name : statement.getWords()) {
+      String table = this.resolve(name);
+      if (table != null) {
+        tables.add(table);
+      }
+    }
+    return tables;
+  }
+
+  /**
+   * Returns the tables that a write changes, including tables that foreign keys cascade into.
+   *
+   * @param statement classified SQL write statement
+   * @return names of the tables changed, or null if the write may change any table
+   */
+  Set<String> modifiedTables(SqlStatement statement) {
+    List<String> names = statement.getWords();
+    Set<String> targets = new HashSet<>();
+    for (int i = 0; i < names.size() - 1; i++) {
+      String keyword = names.get(i).toUpperCase(Locale.ROOT);
+      boolean isTarget = keyword.equals("INTO") || keyword.equals("UPDATE")
+          || keyword.equals("FROM") && i > 0 && names.get(i - 1).equalsIgnoreCase("DELETE");
+      if (!isTarget) {
+        continue;
+      }
+      int next = i + 1;
+      while (next < names.size() - 1
+          && SKIPPED_KEYWORDS.contains(names.get(next).toUpperCase(Locale.ROOT))) {
+        next++;
+      }
+      String table = this.resolve(names.get(next));
+      if (table != null) {
+        targets.add(table);
+      }
+    }
+    if (targets.isEmpty()) {
+      return null;
+    }
+
+    Set<String> modified = new HashSet<>();
+    Deque<String> toVisit = new ArrayDeque<>(targets);
+    while (!toVisit.isEmpty()) {
+      String table = toVisit.pop();
+      if (triggered.contains(table)) {
+        return null;
+      }
+      if (modified.add(table)) {
+        toVisit.addAll(cascades.getOrDefault(table, Set.of()));
+      }
+    }
+    return modified;
+  }
+
+  /**
+   * Returns the name of the table with a given name, ignoring case.
+   *
+   * @param name name as written in a query
+   * @return name of the table, or null if there is no such table
+   */
+  String resolve(String name) {
+    return tablesByLowerName.get(name.toLowerCase(Locale.ROOT));
+  }
+}
@@ -0,0 +1,105 @@
+package edu.brown.cs.student.database;
+
+import edu.brown.cs.student.metrics.Metrics;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.List;
+
+/**
+ * Class to represent one page of a table, along with the cursor to fetch the next page.
+ * @author Justin Rhee
+ */
+public class TablePage {
+  private final QueryOutput rows;
+  private final boolean keyedByRowid;
+  private final long offset;
+  private final int pageSize;
+  private final long totalRows;
+
+  /**
+   * Constructs a page of a table.
+   *
+   * @param output output of the page query; when keyed by rowid, the first column is the rowid
+   * @param keyedByRowid whether the page was read by seeking on rowid rather than by offset
+   * @param offset offset of the first row in the page, used when not keyed by rowid
+   * @param pageSize maximum number of rows in the page
+   * @param totalRows total number of rows in the table
+   */
+  public TablePage(QueryOutput output, boolean keyedByRowid, long offset, int pageSize,
+                   long totalRows) {
+    this.rows = output;
+    this.keyedByRowid = keyedByRowid;
+    this.offset = offset;
+    this.pageSize = pageSize;
+    this.totalRows = totalRows;
+  }
+
+  /**
+   * Returns the number of rows in the page.
+   *
+   * @return number of rows in the page
+   */
+  public int size() {
+    return rows.getRowCount();
+  }
+
+  /**
+   * Returns the total number of rows in the table.
+   *
+   * @return total number of rows in the table
+   */
+  public long getTotalRows() {
+    return totalRows;
+  }
+
+  /**
+   * Returns the cursor to pass back to fetch the next page.
+   *
+   * @return cursor of the next page, or null if this is the last page
+   */
+  public Long getNextCursor() {
+    if (this.size() < pageSize || !keyedByRowid && offset + this.size() >= totalRows) {
+      return null;
+    }
+    if (keyedByRowid) {
+      return Long.parseLong(rows.getString(rows.getRowCount() - 1, 0));
+    }
+    return offset + pageSize;
+  }
+
+  /**
+   * Converts the page into a json string holding the rows, the next cursor and the row count.
+   * Rows of tables with a rowid carry it as _rowid, which identifies them in updates and deletes.
+   *
+   * @return json string
+   * @throws JSONException thrown if there is a json exception
+   */
+  public String toJSON() throws JSONException {
+    long start = System.nanoTime();
+    int firstCol = keyedByRowid ? 1 : 0;
+    List<String> colNames = rows.getColumnNames();
+    JSONArray pageRows = new JSONArray();
+    for (int row = 0; row < rows.getRowCount(); row++) {
+      JSONObject current = new JSONObject();
+      if (keyedByRowid) {
+        current.put(DatabaseProxy.ROWID_FIELD, Long.parseLong(rows.getString(row, 0)));
+      }
+      for (int i = firstCol; i < colNames.size(); i++) {
+        String name = colNames.get(i);
+        current.put(name, QueryOutput.jsonValue(name, rows.getString(row, i)));
+      }
+      pageRows.put(current);
+    }
+
+    Long nextCursor = this.getNextCursor();
+    JSONObject page = new JSONObject();
+    page.put("rows", pageRows);
+    page.put("next_cursor", nextCursor == null ? JSONObject.NULL : nextCursor);
+    page.put("total_rows", totalRows);
+    String json = page.toString();
+    Metrics.QUERY_SERIALIZE.recordSince(start);
+    return json;
+  }
+}
@@ -0,0 +1,320 @@
+package edu.brown.cs.student.database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Schema of one table: its columns and their declared types, its primary key, foreign keys and
+ * indexes, and an estimate of how many rows it has.
+ * @author Justin Rhee
+ */
+public final class TableSchema {
+  private final String name;
+  private final List<ColumnSchema> columns;
+  private final List<String> primaryKey;
+  private final List<ForeignKey> foreignKeys;
+  private final List<IndexSchema> indexes;
+  private final Long rowEstimate;
+
+  /**
+   * Constructs a table schema.
+   *
+   * @param name name of the table
+   * @param columns columns in table order
+   * @param primaryKey names of the primary key columns in key order
+   * @param foreignKeys foreign keys of the table
+   * @param indexes indexes on the table
+   * @param rowEstimate estimated number of rows, or null if it is unknown
+   */
+  private TableSchema(String name, List<ColumnSchema> columns, List<String> primaryKey,
+                      List<ForeignKey> foreignKeys, List<IndexSchema> indexes, Long rowEstimate) {
+    this.name = name;
+    this.columns = columns;
+    this.primaryKey = primaryKey;
+    this.foreignKeys = foreignKeys;
+    this.indexes = indexes;
+    this.rowEstimate = rowEstimate;
+  }
+
+  /**
+   * Reads the schema of a table.
+   *
+   * @param stat statement on a connection to the database
+   * @param table name of the table
+   * @param rowEstimate estimated number of rows, or null if it is unknown
+   * @return schema of the table
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  static TableSchema read(Statement stat, String table, Long rowEstimate) throws SQLException {
+    String quoted = DatabaseProxy.quote(table);
+
+    List<ColumnSchema> columns = new ArrayList<>();
+    Map<Integer, String> key = new TreeMap<>();
+    try (ResultSet info = stat.executeQuery("PRAGMA table_info(" + quoted + ")")) {
+      while (info.next()) {
+        ColumnSchema column = new ColumnSchema(info.getString("name"), info.getString("type"),
+            info.getBoolean("notnull"), info.getString("dflt_value"), info.getInt("pk"));
+        columns.add(column);
+        if (column.primaryKeyPosition > 0) {
+          key.put(column.primaryKeyPosition, column.name);
+        }
+      }
+    }
+
+    // a foreign key over several columns has one row per column, all with the same id
+    Map<Integer, ForeignKey> foreignKeys = new TreeMap<>();
+    try (ResultSet keys = stat.executeQuery("PRAGMA foreign_key_list(" + quoted + ")")) {
+      while (keys.next()) {
+        String parent = keys.getString("table");
+        ForeignKey foreignKey =
+            foreignKeys.computeIfAbsent(keys.getInt("id"), id -> new ForeignKey(parent));
+        foreignKey.from.add(keys.getString("from"));
+        foreignKey.to.add(keys.getString("to"));
+      }
+    }
+
+    List<IndexSchema> indexes = new ArrayList<>();
+    try (ResultSet list = stat.executeQuery("PRAGMA index_list(" + quoted + ")")) {
+      while (list.next()) {
+        indexes.add(new IndexSchema(list.getString("name"), list.getBoolean("unique"),
+            list.getString("origin")));
+      }
+    }
+    for (IndexSchema index : indexes) {
+      String query = "PRAGMA index_info(" + DatabaseProxy.quote(index.name) + ")";
+      try (ResultSet info = stat.executeQuery(query)) {
+        while (info.next()) {
+          index.columns.add(info.getString("name"));
+        }
+      }
+    }
+
+    return new TableSchema(table, List.copyOf(columns), List.copyOf(key.values()),
+        List.copyOf(foreignKeys.values()), List.copyOf(indexes), rowEstimate);
+  }
+
+  /**
+   * Returns the name of the table.
+   *
+   * @return name of the table
+   */
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * Returns the columns of the table.
+   *
+   * @return columns in table order
+   */
+  public List<ColumnSchema> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Returns the names of the columns of the table.
+   *
+   * @return column names in table order
+   */
+  public List<String> getColumnNames() {
+    List<String> names = new ArrayList<>();
+    for (ColumnSchema column : columns) {
+      names.add(column.name);
+    }
+    return names;
+  }
+
+  /**
+   * Returns the primary key of the table.
+   *
+   * @return names of the primary key columns in key order, or an empty list if it has none
+   */
+  public List<String> getPrimaryKey() {
+    return primaryKey;
+  }
+
+  /**
+   * Returns the foreign keys of the table.
+   *
+   * @return foreign keys
+   */
+  public List<ForeignKey> getForeignKeys() {
+    return foreignKeys;
+  }
+
+  /**
+   * Returns the indexes on the table, including those SQLite makes for primary keys and unique
+   * constraints.
+   *
+   * @return indexes
+   */
+  public List<IndexSchema> getIndexes() {
+    return indexes;
+  }
+
+  /**
+   * Returns an estimate of the number of rows in the table when the schema was read.
+   *
+   * @return estimated number of rows, or null if it is unknown
+   */
+  public Long getRowEstimate() {
+    return rowEstimate;
+  }
+
+  /**
+   * Converts the schema to a map that can be written as JSON.
+   *
+   * @return map of the parts of the schema
+   */
+  public Map<String, Object> toMap() {
+    List<Map<String, Object>> columnMaps = new ArrayList<>();
+    for (ColumnSchema column : columns) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("name", column.name);
+      map.put("type", column.type);
+      map.put("not_null", column.notNull);
+      map.put("default", column.defaultValue);
+      map.put("primary_key", column.primaryKeyPosition);
+      columnMaps.add(map);
+    }
+    List<Map<String, Object>> foreignKeyMaps = new ArrayList<>();
+    for (ForeignKey foreignKey : foreignKeys) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("columns", foreignKey.from);
+      map.put("table", foreignKey.table);
+      map.put("references", foreignKey.to);
+      foreignKeyMaps.add(map);
+    }
+    List<Map<String, Object>> indexMaps = new ArrayList<>();
+    for (IndexSchema index : indexes) {
+      Map<String, Object> map = new LinkedHashMap<>();
+      map.put("name", index.name);
+      map.put("unique", index.unique);
+      map.put("origin", index.origin);
+      map.put("columns", index.columns);
+      indexMaps.add(map);
+    }
+
+    Map<String, Object> map = new LinkedHashMap<>();
+    map.put("name", name);
+    map.put("columns", columnMaps);
+    map.put("primary_key", primaryKey);
+    map.put("foreign_keys", foreignKeyMaps);
+    map.put("indexes", indexMaps);
+    map.put("row_estimate", rowEstimate);
+    return map;
+  }
+
+  /**
+   * A column of a table.
+   */
+  public static final class ColumnSchema {
+    private final String name;
+    private final String type;
+    private final boolean notNull;
+    private final String defaultValue;
+    private final int primaryKeyPosition;
+
+    /**
+     * Constructs a column.
+     *
+     * @param name name of the column
+     * @param type declared type, which is empty if none was declared
+     * @param notNull whether the column is NOT NULL
+     * @param defaultValue SQL text of the default value, or null if it has none
+     * @param primaryKeyPosition position in the primary key counting from 1, or 0 if not in it
+     */
+    private ColumnSchema(String name, String type, boolean notNull, String defaultValue,
+                         int primaryKeyPosition) {
+      this.name = name;
+      this.type = type == null ? "" : type;
+      this.notNull = notNull;
+      this.defaultValue = defaultValue;
+      this.primaryKeyPosition = primaryKeyPosition;
+    }
+
+    /**
+     * Returns the name of the column.
+     *
+     * @return name of the column
+     */
+    public String getName() {
+      return name;
+    }
+
+    /**
+     * Returns the type the column was declared with.
+     *
+     * @return declared type, which is empty if none was declared
+     */
+    public String getType() {
+      return type;
+    }
+  }
+
+  /**
+   * A foreign key from some columns of a table to those of another.
+   */
+  public static final class ForeignKey {
+    private final List<String> from = new ArrayList<>();
+    private final String table;
+    private final List<String> to = new ArrayList<>();
+
+    /**
+     * Constructs a foreign key, whose columns are added while it is read.
+     *
+     * @param table name of the referenced table
+     */
+    private ForeignKey(String table) {
+      this.table = table;
+    }
+
+    /**
+     * Returns the name of the table the key refers to.
+     *
+     * @return name of the referenced table
+     */
+    public String getTable() {
+      return table;
+    }
+  }
+
+  /**
+   * An index on some columns of a table.
+   */
+  public static final class IndexSchema {
+    private final String name;
+    private final boolean unique;
+    private final String origin;
+    private final List<String> columns = new ArrayList<>();
+
+    /**
+     * Constructs an index, whose columns are added while it is read.
+     *
+     * @param name name of the index
+     * @param unique whether the index is unique
+     * @param origin c if made by CREATE INDEX, u for a UNIQUE constraint, pk for a primary key
+     */
+    private IndexSchema(String name, boolean unique, String origin) {
+      this.name = name;
+      this.unique = unique;
+      this.origin = origin;
+    }
+
+    /**
+     * Returns the columns of the index.
+     *
+     * @return names of the indexed columns in index order, with null for an expression
+     */
+    public List<String> getColumns() {
+      return Collections.unmodifiableList(columns);
+    }
+  }
+}
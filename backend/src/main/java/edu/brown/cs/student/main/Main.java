@@ -1,21 +1,44 @@
 package edu.brown.cs.student.main;
 
+import com.google.gson.Gson;
+import edu.brown.cs.student.api.Batch;
 import edu.brown.cs.student.api.Delete;
+import edu.brown.cs.student.api.Export;
+import edu.brown.cs.student.api.GetChanges;
 import edu.brown.cs.student.api.GetDB;
+import edu.brown.cs.student.api.GetEvents;
 import edu.brown.cs.student.api.GetLoaded;
+import edu.brown.cs.student.api.GetMetrics;
+import edu.brown.cs.student.api.GetSchema;
+import edu.brown.cs.student.api.GetSearchStatus;
+import edu.brown.cs.student.api.GetStats;
 import edu.brown.cs.student.api.GetTable;
 import edu.brown.cs.student.api.GetTableDep;
+import edu.brown.cs.student.api.Import;
 import edu.brown.cs.student.api.Insert;
+import edu.brown.cs.student.api.RequestMetrics;
+import edu.brown.cs.student.api.ResponseCompression;
+import edu.brown.cs.student.api.Search;
 import edu.brown.cs.student.api.Update;
 import edu.brown.cs.student.api.Demo;
+import edu.brown.cs.student.api.Handler;
+import edu.brown.cs.student.database.OverloadException;
+import edu.brown.cs.student.database.ProxyConfig;
+import edu.brown.cs.student.database.QueryLimitException;
 import edu.brown.cs.student.database.StaticDBPCommands;
+import edu.brown.cs.student.metrics.Metrics;
 import edu.brown.cs.student.repl.CommandContainer;
 import edu.brown.cs.student.repl.REPL;
 import joptsimple.OptionParser;
 import joptsimple.OptionSet;
 import spark.Spark;
+import spark.embeddedserver.EmbeddedServers;
+import spark.embeddedserver.jetty.EmbeddedJettyFactory;
 
 import java.io.IOException;
+import java.sql.SQLTimeoutException;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * The Main class of our project. This is where execution begins.
@@ -25,6 +48,11 @@ import java.io.IOException;
 public final class Main {
 
   private static final int DEFAULT_PORT = 4567;
+  private static final long BYTES_PER_MB = 1024 * 1024;
+  private static final int DEFAULT_QUERY_TIMEOUT_SECONDS = 30;
+  private static final long MILLIS_PER_SECOND = 1000;
+  private static final int SERVICE_UNAVAILABLE = 503;
+  private static final int PAYLOAD_TOO_LARGE = 413;
 
   /**
    * The initial method called when execution begins.
@@ -45,11 +73,74 @@ public final class Main {
     OptionParser parser = new OptionParser();
     parser.accepts("gui");
     parser.accepts("port").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_PORT);
+    parser.accepts("wal");
+    parser.accepts("search-index");
+    parser.accepts("read-pool-size").withRequiredArg().ofType(Integer.class);
+    parser.accepts("cache-mb").withRequiredArg().ofType(Integer.class);
+    parser.accepts("cache-expire-seconds").withRequiredArg().ofType(Integer.class);
+    parser.accepts("change-log-size").withRequiredArg().ofType(Integer.class);
+    parser.accepts("max-open-dbs").withRequiredArg().ofType(Integer.class);
+    parser.accepts("db-idle-seconds").withRequiredArg().ofType(Integer.class);
+    parser.accepts("query-timeout-seconds").withRequiredArg().ofType(Integer.class)
+        .defaultsTo(DEFAULT_QUERY_TIMEOUT_SECONDS);
+    parser.accepts("max-queued-queries").withRequiredArg().ofType(Integer.class);
+    parser.accepts("virtual-threads");
+    parser.accepts("max-result-rows").withRequiredArg().ofType(Integer.class);
+    parser.accepts("max-result-mb").withRequiredArg().ofType(Integer.class);
+    parser.accepts("in-flight-mb").withRequiredArg().ofType(Integer.class);
+    parser.accepts("compression-level").withRequiredArg().ofType(Integer.class);
+    parser.accepts("compression-min-bytes").withRequiredArg().ofType(Integer.class);
 
     OptionSet options = parser.parse(args);
 
+    ProxyConfig config = new ProxyConfig();
+    config.setWalMode(options.has("wal"));
+    config.setSearchIndex(options.has("search-index"));
+    if (options.has("read-pool-size")) {
+      config.setReadPoolSize((int) options.valueOf("read-pool-size"));
+    }
+    if (options.has("cache-mb")) {
+      config.setCacheMaxBytes((int) options.valueOf("cache-mb") * BYTES_PER_MB);
+    }
+    if (options.has("cache-expire-seconds")) {
+      config.setCacheExpireAfterAccessSeconds((int) options.valueOf("cache-expire-seconds"));
+    }
+    if (options.has("change-log-size")) {
+      config.setChangeLogSize((int) options.valueOf("change-log-size"));
+    }
+    if (options.has("max-open-dbs")) {
+      config.setMaxOpenDatabases((int) options.valueOf("max-open-dbs"));
+    }
+    if (options.has("db-idle-seconds")) {
+      config.setDatabaseIdleSeconds((int) options.valueOf("db-idle-seconds"));
+    }
+    if (options.has("gui")) {
+      // a query left running after its client gave up only slows down everyone else
+      config.setQueryTimeoutMillis(
+          (int) options.valueOf("query-timeout-seconds") * MILLIS_PER_SECOND);
+    }
+    if (options.has("max-queued-queries")) {
+      config.setMaxQueuedQueries((int) options.valueOf("max-queued-queries"));
+    }
+    if (options.has("max-result-rows")) {
+      config.setMaxResultRows((int) options.valueOf("max-result-rows"));
+    }
+    if (options.has("max-result-mb")) {
+      config.setMaxResultBytes((int) options.valueOf("max-result-mb") * BYTES_PER_MB);
+    }
+    if (options.has("in-flight-mb")) {
+      config.setInFlightMaxBytes((int) options.valueOf("in-flight-mb") * BYTES_PER_MB);
+    }
+    if (options.has("compression-level")) {
+      config.setCompressionLevel((int) options.valueOf("compression-level"));
+    }
+    if (options.has("compression-min-bytes")) {
+      config.setCompressionMinBytes((int) options.valueOf("compression-min-bytes"));
+    }
     if (options.has("gui")) {
-      runSparkServer((int) options.valueOf("port"));
+      startServer((int) options.valueOf("port"), config, options.has("virtual-threads"));
+    } else {
+      Handler.setConfig(config);
     }
 
     try {
@@ -57,13 +148,47 @@ public final class Main {
       CommandContainer dbCommands = new StaticDBPCommands();
       repl.addCommand("connect", dbCommands);
       repl.addCommand("run", dbCommands);
+      repl.addCommand("cache", dbCommands);
+      repl.addCommand("import", dbCommands);
+      repl.addCommand("export", dbCommands);
       repl.startREPL();
     } catch (IOException e) {
       System.out.println("ERROR: Input error");
     }
   }
 
-  private static void runSparkServer(int port) {
+  /**
+   * Starts the Spark server without the REPL, and waits until it accepts requests. Used by
+   * main with --gui, and by programs that drive the server themselves, such as the load test.
+   *
+   * @param port port to listen on
+   * @param config settings for the databases the server opens
+   * @param virtualThreads whether to handle requests on virtual threads where available
+   */
+  public static void startServer(int port, ProxyConfig config, boolean virtualThreads) {
+    Handler.setConfig(config);
+    runSparkServer(port, virtualThreads);
+    Spark.awaitInitialization();
+  }
+
+  /**
+   * Stops the Spark server started by startServer, and waits until it has stopped.
+   */
+  public static void stopServer() {
+    Spark.stop();
+    Spark.awaitStop();
+  }
+
+  private static void runSparkServer(int port, boolean virtualThreads) {
+    if (virtualThreads) {
+      VirtualThreadPool pool = VirtualThreadPool.create();
+      if (pool == null) {
+        System.out.println("ERROR: Virtual threads need Java 21, using platform threads");
+      } else {
+        EmbeddedServers.add(EmbeddedServers.Identifiers.JETTY,
+            new EmbeddedJettyFactory().withThreadPool(pool));
+      }
+    }
     Spark.port(port);
     Spark.externalStaticFileLocation("src/main/resources/static");
 
@@ -82,17 +207,67 @@ public final class Main {
       return "OK";
     });
 
-    Spark.before((request, response) -> response.header("Access-Control-Allow-Origin", "*"));
+    RequestMetrics requestMetrics = new RequestMetrics(Metrics.REGISTRY, Set.of("/get_loaded",
+        "/demo", "/stats", "/metrics", "/schema", "/export", "/search_status", "/changes",
+        "/events", "/search", "/get_table", "/get_db", "/delete", "/insert", "/update", "/batch",
+        "/import"));
+    Spark.before(requestMetrics::start);
+    Spark.before((request, response) -> {
+      response.header("Access-Control-Allow-Origin", "*");
+      Handler.bindSession(request, response);
+    });
+    Spark.afterAfter(new ResponseCompression());
+    // after compression, so that the size recorded is the size sent
+    Spark.afterAfter(requestMetrics::record);
+    Spark.afterAfter((request, response) -> Handler.unbindSession());
+
+    // refused and oversized queries are the client's to retry or narrow, not server errors
+    Spark.exception(OverloadException.class, (e, request, response) -> {
+      response.status(SERVICE_UNAVAILABLE);
+      response.header("Retry-After", String.valueOf(e.getRetryAfterSeconds()));
+      response.type("application/json");
+      response.body(errorBody(e.getMessage()));
+    });
+    Spark.exception(QueryLimitException.class, (e, request, response) -> {
+      response.status(PAYLOAD_TOO_LARGE);
+      response.type("application/json");
+      response.body(errorBody(e.getMessage()));
+    });
+    Spark.exception(SQLTimeoutException.class, (e, request, response) -> {
+      response.status(SERVICE_UNAVAILABLE);
+      response.type("application/json");
+      response.body(errorBody(e.getMessage()));
+    });
 
     // Put Routes Here
     Spark.get("/get_loaded", new GetLoaded());
     Spark.get("/demo", new Demo());
+    Spark.get("/stats", new GetStats());
+    Spark.get("/metrics", new GetMetrics());
+    Spark.get("/schema", new GetSchema());
+    Spark.get("/export", new Export());
+    Spark.get("/search_status", new GetSearchStatus());
+    Spark.get("/changes", new GetChanges());
+    Spark.get("/events", new GetEvents());
+    Spark.post("/search", new Search());
     Spark.post("/get_table", new GetTable());
     //Spark.post("/get_table_old", new GetTableDep());
     Spark.post("/get_db", new GetDB());
     Spark.post("/delete", new Delete());
     Spark.post("/insert", new Insert());
     Spark.post("/update", new Update());
+    Spark.post("/batch", new Batch());
+    Spark.post("/import", new Import());
     Spark.init();
   }
+
+  /**
+   * Builds the JSON body of an error response.
+   *
+   * @param message what went wrong
+   * @return JSON object holding the message
+   */
+  private static String errorBody(String message) {
+    return new Gson().toJson(Map.of("error", message));
+  }
 }
@@ -0,0 +1,105 @@
+package edu.brown.cs.student.main;
+
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread pool for the server that runs every task on a new virtual thread, so a request that
+ * waits for a query holds no platform thread and the number of requests in flight is not capped
+ * by the size of a pool. The queries themselves are bounded by each database's query executor.
+ *
+ * <p>Virtual threads only exist from Java 21, and this project is compiled for an older release,
+ * so the executor is looked up at runtime. Use {@link #create()} and fall back to Jetty's own pool
+ * when it returns null.
+ * @author Justin Rhee
+ */
+final class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool, TryExecutor {
+  private final ExecutorService executor;
+  private final AtomicInteger running = new AtomicInteger();
+
+  /**
+   * Constructs a pool.
+   *
+   * @param executor executor that starts a virtual thread per task
+   */
+  private VirtualThreadPool(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Creates a pool if the running Java supports virtual threads.
+   *
+   * @return the pool, or null if virtual threads are not supported
+   */
+  static VirtualThreadPool create() {
+    try {
+      Object executor = Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+      return new VirtualThreadPool((ExecutorService) executor);
+    } catch (ReflectiveOperationException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public void execute(Runnable task) {
+    running.incrementAndGet();
+    try {
+      executor.execute(() -> {
+        try {
+          task.run();
+        } finally {
+          running.decrementAndGet();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      running.decrementAndGet();
+      throw e;
+    }
+  }
+
+  @Override
+  public boolean tryExecute(Runnable task) {
+    // a new virtual thread is always available, so tasks never have to wait for one
+    try {
+      this.execute(task);
+      return true;
+    } catch (RejectedExecutionException e) {
+      return false;
+    }
+  }
+
+  @Override
+  public void join() throws InterruptedException {
+    while (!executor.awaitTermination(1, TimeUnit.DAYS)) {
+      continue;
+    }
+  }
+
+  @Override
+  public int getThreads() {
+    return running.get();
+  }
+
+  @Override
+  public int getIdleThreads() {
+    return 0;
+  }
+
+  @Override
+  public boolean isLowOnThreads() {
+    return false;
+  }
+
+  @Override
+  protected void doStop() throws Exception {
+    executor.shutdown();
+    super.doStop();
+  }
+}
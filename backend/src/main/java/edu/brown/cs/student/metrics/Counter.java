@@ -0,0 +1,43 @@
+package edu.brown.cs.student.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A count that only goes up, such as a number of requests. Incrementing it from many threads
+ * neither blocks nor allocates.
+ * @author Justin Rhee
+ */
+public final class Counter {
+  private final LongAdder count = new LongAdder();
+
+  /**
+   * Constructs a counter, which is registered by MetricsRegistry.
+   */
+  Counter() {
+  }
+
+  /**
+   * Adds one to the count.
+   */
+  public void increment() {
+    count.increment();
+  }
+
+  /**
+   * Adds to the count.
+   *
+   * @param amount amount to add, which must not be negative
+   */
+  public void add(long amount) {
+    count.add(amount);
+  }
+
+  /**
+   * Returns the count.
+   *
+   * @return sum of everything added
+   */
+  public long get() {
+    return count.sum();
+  }
+}
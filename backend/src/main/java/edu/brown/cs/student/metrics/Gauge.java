@@ -0,0 +1,41 @@
+package edu.brown.cs.student.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A value that goes up and down, such as a number of open connections. Changing it from many
+ * threads neither blocks nor allocates.
+ * @author Justin Rhee
+ */
+public final class Gauge {
+  private final LongAdder value = new LongAdder();
+
+  /**
+   * Constructs a gauge, which is registered by MetricsRegistry.
+   */
+  Gauge() {
+  }
+
+  /**
+   * Adds one to the value.
+   */
+  public void increment() {
+    value.increment();
+  }
+
+  /**
+   * Subtracts one from the value.
+   */
+  public void decrement() {
+    value.decrement();
+  }
+
+  /**
+   * Returns the value.
+   *
+   * @return current value
+   */
+  public long get() {
+    return value.sum();
+  }
+}
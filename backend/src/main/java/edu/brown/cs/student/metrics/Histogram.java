@@ -0,0 +1,93 @@
+package edu.brown.cs.student.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of observed values, such as latencies, counted in fixed buckets. Values are
+ * recorded as whole numbers in a base unit, such as nanoseconds, and written out in another,
+ * such as seconds, so that recording neither blocks, allocates nor does floating point math.
+ * @author Justin Rhee
+ */
+public final class Histogram {
+  private final long[] upperBounds;
+  // one more than the bounds, for the values above the last of them
+  private final LongAdder[] buckets;
+  private final LongAdder sum = new LongAdder();
+  private final double unitsPerExported;
+
+  /**
+   * Constructs a histogram, which is registered by MetricsRegistry.
+   *
+   * @param upperBounds inclusive upper bound of each bucket in recorded units, ascending
+   * @param unitsPerExported recorded units in one exported unit, such as 1e9 for nanoseconds
+   *     exported as seconds
+   */
+  Histogram(long[] upperBounds, double unitsPerExported) {
+    this.upperBounds = upperBounds.clone();
+    this.buckets = new LongAdder[upperBounds.length + 1];
+    for (int i = 0; i < buckets.length; i++) {
+      buckets[i] = new LongAdder();
+    }
+    this.unitsPerExported = unitsPerExported;
+  }
+
+  /**
+   * Records one value.
+   *
+   * @param value value in recorded units
+   */
+  public void record(long value) {
+    int i = 0;
+    while (i < upperBounds.length && value > upperBounds[i]) {
+      i++;
+    }
+    buckets[i].increment();
+    sum.add(value);
+  }
+
+  /**
+   * Records the time since a start time, in nanoseconds.
+   *
+   * @param startNanos start time, from System.nanoTime
+   */
+  public void recordSince(long startNanos) {
+    this.record(System.nanoTime() - startNanos);
+  }
+
+  /**
+   * Returns the number of values recorded.
+   *
+   * @return number of values
+   */
+  public long getCount() {
+    long count = 0;
+    for (LongAdder bucket : buckets) {
+      count += bucket.sum();
+    }
+    return count;
+  }
+
+  /**
+   * Writes the histogram in the Prometheus text format: a cumulative count per bucket, then the
+   * sum and count of all values.
+   *
+   * @param out builder to write to
+   * @param name name of the metric family
+   * @param labels labels of this histogram, formatted by MetricsRegistry.labels, or empty
+   */
+  void write(StringBuilder out, String name, String labels) {
+    String separator = labels.isEmpty() ? "" : ",";
+    long cumulative = 0;
+    for (int i = 0; i < buckets.length; i++) {
+      cumulative += buckets[i].sum();
+      String bound = i < upperBounds.length
+          ? MetricsRegistry.formatValue(upperBounds[i] / unitsPerExported) : "+Inf";
+      out.append(name).append("_bucket{").append(labels).append(separator)
+          .append("le=\"").append(bound).append("\"} ").append(cumulative).append('\n');
+    }
+    String braces = labels.isEmpty() ? "" : "{" + labels + "}";
+    out.append(name).append("_sum").append(braces).append(' ')
+        .append(MetricsRegistry.formatValue(sum.sum() / unitsPerExported)).append('\n');
+    out.append(name).append("_count").append(braces).append(' ').append(cumulative).append('\n');
+  }
+}
@@ -0,0 +1,78 @@
+package edu.brown.cs.student.metrics;
+
+/**
+ * The registry of the server and the metrics recorded outside of request handling, looked up
+ * once so that the code recording them only touches the metric itself.
+ * @author Justin Rhee
+ */
+public final class Metrics {
+  /** Registry of every metric of the server, written out by the /metrics route. */
+  public static final MetricsRegistry REGISTRY = new MetricsRegistry();
+
+  /** Recorded units of latency histograms, which are exported in seconds. */
+  public static final double NANOS_PER_SECOND = 1e9;
+
+  /** Bucket bounds of latency histograms, from 10 microseconds to 10 seconds, in nanoseconds. */
+  public static final long[] LATENCY_BUCKETS = {
+    10_000L, 25_000L, 50_000L, 100_000L, 250_000L, 500_000L,
+    1_000_000L, 2_500_000L, 5_000_000L, 10_000_000L, 25_000_000L, 50_000_000L,
+    100_000_000L, 250_000_000L, 500_000_000L,
+    1_000_000_000L, 2_500_000_000L, 5_000_000_000L, 10_000_000_000L
+  };
+
+  /** Bucket bounds of size histograms, from 256 bytes to 16 MiB. */
+  public static final long[] SIZE_BUCKETS = {
+    256L, 1L << 10, 4L << 10, 16L << 10, 64L << 10, 256L << 10, 1L << 20, 4L << 20, 16L << 20
+  };
+
+  /** Reads of the query cache that found the results cached. */
+  public static final Counter CACHE_HITS = REGISTRY.counter("query_cache_hits_total",
+      "Reads answered from the query cache.");
+  /** Reads of the query cache that had to run the query. */
+  public static final Counter CACHE_MISSES = REGISTRY.counter("query_cache_misses_total",
+      "Reads that ran their query because the results were not cached.");
+  /** Results dropped from the query cache to stay within its size or age. */
+  public static final Counter CACHE_EVICTIONS = REGISTRY.counter("query_cache_evictions_total",
+      "Results dropped from the query cache to stay within its size or age limits.");
+  /** Results dropped from the query cache because a write or reload made them stale. */
+  public static final Counter CACHE_INVALIDATIONS = REGISTRY.counter(
+      "query_cache_invalidations_total",
+      "Results dropped from the query cache because a write or reload made them stale.");
+
+  private static final String PHASE_NAME = "sqlite_query_phase_seconds";
+  private static final String PHASE_HELP = "Time spent in each phase of a SQLite query: "
+      + "preparing the statement, executing it, reading its rows into memory and serializing "
+      + "them.";
+  /** Time spent preparing statements, or taking them from a statement cache. */
+  public static final Histogram QUERY_PREPARE = phase("prepare");
+  /** Time spent executing statements, up to their first row. */
+  public static final Histogram QUERY_EXECUTE = phase("execute");
+  /** Time spent reading the rows of results into memory. */
+  public static final Histogram QUERY_MATERIALIZE = phase("materialize");
+  /** Time spent serializing results, including stepping through the rows of streamed ones. */
+  public static final Histogram QUERY_SERIALIZE = phase("serialize");
+
+  /** Rows returned by queries. */
+  public static final Counter ROWS_RETURNED = REGISTRY.counter("sqlite_rows_returned_total",
+      "Rows returned by SQLite queries.");
+  /** Connections to SQLite databases that are open. */
+  public static final Gauge OPEN_CONNECTIONS = REGISTRY.gauge("sqlite_open_connections",
+      "Connections to SQLite databases that are open.");
+
+  /**
+   * Constructor that is never called, since every member is static.
+   */
+  private Metrics() {
+  }
+
+  /**
+   * Returns the histogram of one phase of a query.
+   *
+   * @param phase name of the phase
+   * @return histogram of the phase, in nanoseconds
+   */
+  private static Histogram phase(String phase) {
+    return REGISTRY.histogram(PHASE_NAME, PHASE_HELP, LATENCY_BUCKETS, NANOS_PER_SECOND,
+        "phase", phase);
+  }
+}
@@ -0,0 +1,189 @@
+package edu.brown.cs.student.metrics;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the metrics of the server and writes them in the Prometheus text exposition format.
+ *
+ * <p>Metrics are grouped into families by name, with one metric in a family per set of label
+ * values. Looking a metric up allocates, so code that records often looks its metrics up once
+ * and keeps them; recording to a metric it holds neither blocks nor allocates.
+ * @author Justin Rhee
+ */
+public final class MetricsRegistry {
+  private final ConcurrentMap<String, Family> families = new ConcurrentSkipListMap<>();
+
+  /**
+   * The metrics of one name, with their help text and type.
+   */
+  private static final class Family {
+    private final String help;
+    private final String type;
+    // sorted by labels, so the output is in the same order every time
+    private final ConcurrentMap<String, Object> metrics = new ConcurrentSkipListMap<>();
+
+    /**
+     * Constructs a family.
+     *
+     * @param help description of the metric
+     * @param type Prometheus type of the metric
+     */
+    Family(String help, String type) {
+      this.help = help;
+      this.type = type;
+    }
+  }
+
+  /**
+   * Returns a counter, registering it the first time it is asked for.
+   *
+   * @param name name of the counter, which should end in _total
+   * @param help description of the counter
+   * @param labels label names and values, alternating
+   * @return the counter of the name and labels
+   */
+  public Counter counter(String name, String help, String... labels) {
+    return this.register(name, help, "counter", labels, Counter.class, Counter::new);
+  }
+
+  /**
+   * Returns a gauge, registering it the first time it is asked for.
+   *
+   * @param name name of the gauge
+   * @param help description of the gauge
+   * @param labels label names and values, alternating
+   * @return the gauge of the name and labels
+   */
+  public Gauge gauge(String name, String help, String... labels) {
+    return this.register(name, help, "gauge", labels, Gauge.class, Gauge::new);
+  }
+
+  /**
+   * Returns a histogram, registering it the first time it is asked for. Every histogram of a
+   * name should have the same buckets.
+   *
+   * @param name name of the histogram, ending in its exported unit such as _seconds
+   * @param help description of the histogram
+   * @param upperBounds inclusive upper bound of each bucket in recorded units, ascending
+   * @param unitsPerExported recorded units in one exported unit, such as 1e9 for nanoseconds
+   *     exported as seconds
+   * @param labels label names and values, alternating
+   * @return the histogram of the name and labels
+   */
+  public Histogram histogram(String name, String help, long[] upperBounds,
+                             double unitsPerExported, String... labels) {
+    return this.register(name, help, "histogram", labels, Histogram.class,
+        () -> new Histogram(upperBounds, unitsPerExported));
+  }
+
+  /**
+   * Finds or adds the metric of a name and labels.
+   *
+   * @param name name of the family
+   * @param help description of the family
+   * @param type Prometheus type of the family
+   * @param labels label names and values, alternating
+   * @param kind class of the metric
+   * @param factory makes the metric if there is none yet
+   * @param <T> type of the metric
+   * @return the metric
+   * @throws IllegalArgumentException if the name is registered with another type, or the labels
+   *     are not in pairs
+   */
+  private <T> T register(String name, String help, String type, String[] labels, Class<T> kind,
+                         Supplier<T> factory) {
+    Family family = families.computeIfAbsent(name, n -> new Family(help, type));
+    if (!family.type.equals(type)) {
+      throw new IllegalArgumentException(name + " is already a " + family.type);
+    }
+    Object metric = family.metrics.computeIfAbsent(labels(labels), l -> factory.get());
+    return kind.cast(metric);
+  }
+
+  /**
+   * Writes every metric in the Prometheus text exposition format, version 0.0.4.
+   *
+   * @return the metrics, one sample per line
+   */
+  public String scrape() {
+    StringBuilder out = new StringBuilder();
+    for (Map.Entry<String, Family> entry : families.entrySet()) {
+      String name = entry.getKey();
+      Family family = entry.getValue();
+      out.append("# HELP ").append(name).append(' ').append(escapeHelp(family.help)).append('\n');
+      out.append("# TYPE ").append(name).append(' ').append(family.type).append('\n');
+      for (Map.Entry<String, Object> metric : family.metrics.entrySet()) {
+        String labels = metric.getKey();
+        Object value = metric.getValue();
+        if (value instanceof Histogram) {
+          ((Histogram) value).write(out, name, labels);
+          continue;
+        }
+        out.append(name);
+        if (!labels.isEmpty()) {
+          out.append('{').append(labels).append('}');
+        }
+        long sample = value instanceof Counter ? ((Counter) value).get() : ((Gauge) value).get();
+        out.append(' ').append(sample).append('\n');
+      }
+    }
+    return out.toString();
+  }
+
+  /**
+   * Formats label names and values as they appear between the braces of a sample.
+   *
+   * @param labels label names and values, alternating
+   * @return labels such as method="GET",route="/get_table", or empty if there are none
+   * @throws IllegalArgumentException if the labels are not in pairs
+   */
+  static String labels(String... labels) {
+    if (labels.length % 2 != 0) {
+      throw new IllegalArgumentException("Labels must be name and value pairs");
+    }
+    StringBuilder out = new StringBuilder();
+    for (int i = 0; i < labels.length; i += 2) {
+      if (i > 0) {
+        out.append(',');
+      }
+      out.append(labels[i]).append("=\"");
+      String value = labels[i + 1];
+      for (int j = 0; j < value.length(); j++) {
+        char c = value.charAt(j);
+        if (c == '\\' || c == '"') {
+          out.append('\\').append(c);
+        } else if (c == '\n') {
+          out.append("\\n");
+        } else {
+          out.append(c);
+        }
+      }
+      out.append('"');
+    }
+    return out.toString();
+  }
+
+  /**
+   * Escapes help text, in which only backslashes and line breaks are special.
+   *
+   * @param help description of a metric
+   * @return the escaped description
+   */
+  private static String escapeHelp(String help) {
+    return help.replace("\\", "\\\\").replace("\n", "\\n");
+  }
+
+  /**
+   * Formats a sample value in plain decimal notation, leaving off the fraction of whole numbers.
+   *
+   * @param value value to format
+   * @return the value as Prometheus parses it
+   */
+  static String formatValue(double value) {
+    return BigDecimal.valueOf(value).stripTrailingZeros().toPlainString();
+  }
+}
@@ -0,0 +1,55 @@
+package edu.brown.cs.student.api;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ContentEncodingTest {
+  @Test
+  public void testNegotiate() {
+    assertNull(ContentEncoding.negotiate(null));
+    assertNull(ContentEncoding.negotiate(""));
+    assertNull(ContentEncoding.negotiate("identity, br"));
+    assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("gzip, deflate, br"));
+    assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("deflate, GZIP"));
+    assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("x-gzip"));
+    assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("deflate"));
+    assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0.5, deflate"));
+    assertEquals(ContentEncoding.DEFLATE, ContentEncoding.negotiate("gzip;q=0, *"));
+    assertEquals(ContentEncoding.GZIP, ContentEncoding.negotiate("*;q=0.1"));
+    assertNull(ContentEncoding.negotiate("gzip;q=0, deflate;q=0"));
+    assertNull(ContentEncoding.negotiate("*;q=0"));
+    assertNull(ContentEncoding.negotiate("gzip;q=zero"));
+  }
+
+  @Test
+  public void testCompress() throws IOException {
+    StringBuilder json = new StringBuilder("[");
+    for (int i = 0; i < 1000; i++) {
+      json.append("{\"id\":").append(i).append(",\"name\":\"Name ").append(i).append("\"},");
+    }
+    byte[] body = json.append("{}]").toString().getBytes(StandardCharsets.UTF_8);
+
+    for (int level = ContentEncoding.MIN_LEVEL; level <= ContentEncoding.MAX_LEVEL; level++) {
+      byte[] gzipped = ContentEncoding.GZIP.compress(body, level);
+      assertTrue(gzipped.length < body.length / 4);
+      try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+        assertArrayEquals(body, gzip.readAllBytes());
+      }
+    }
+
+    byte[] deflated = ContentEncoding.DEFLATE.compress(body, 6);
+    try (InflaterInputStream zlib = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+      assertArrayEquals(body, zlib.readAllBytes());
+    }
+  }
+}
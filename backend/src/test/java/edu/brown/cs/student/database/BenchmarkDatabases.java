@@ -0,0 +1,97 @@
+package edu.brown.cs.student.database;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Generated databases for the benchmarks. Each has a table people of the given number of rows,
+ * shaped like the names table of the sample data with a numeric column added, and a table other
+ * of a hundred rows. The values depend only on the row, so every run reads the same data. A
+ * database is generated once and kept in target/benchmark-data for later runs.
+ * @author Justin Rhee
+ */
+final class BenchmarkDatabases {
+  private static final File DIRECTORY = new File("target/benchmark-data");
+  private static final int OTHER_ROWS = 100;
+  private static final int BATCH_ROWS = 10000;
+
+  /**
+   * Not instantiated.
+   */
+  private BenchmarkDatabases() {
+  }
+
+  /**
+   * Returns the path of a generated database, generating it if it does not exist yet.
+   *
+   * @param rows number of rows in the people table
+   * @return path to the database file, which benchmarks must not write to
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  static synchronized String path(int rows) throws SQLException {
+    File file = new File(DIRECTORY, "people-" + rows + ".sqlite3");
+    if (file.isFile()) {
+      return file.getPath();
+    }
+    DIRECTORY.mkdirs();
+    // written under another name first, so that an interrupted run leaves no partial database
+    File partial = new File(DIRECTORY, file.getName() + ".partial");
+    partial.delete();
+    try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + partial.getPath());
+         Statement stat = conn.createStatement()) {
+      stat.executeUpdate("CREATE TABLE people (id INTEGER PRIMARY KEY, name TEXT, email TEXT, "
+          + "score REAL)");
+      stat.executeUpdate("CREATE TABLE other (id INTEGER PRIMARY KEY, label TEXT)");
+      conn.setAutoCommit(false);
+      try (PreparedStatement insert =
+               conn.prepareStatement("INSERT INTO people VALUES (?, ?, ?, ?)")) {
+        for (int i = 1; i <= rows; i++) {
+          insert.setInt(1, i);
+          insert.setString(2, "Person " + i);
+          insert.setString(3, "person" + i + "@example.com");
+          insert.setDouble(4, (i * 7919 % 10000) / 100.0);
+          insert.addBatch();
+          if (i % BATCH_ROWS == 0) {
+            insert.executeBatch();
+          }
+        }
+        insert.executeBatch();
+      }
+      try (PreparedStatement insert = conn.prepareStatement("INSERT INTO other VALUES (?, ?)")) {
+        for (int i = 1; i <= OTHER_ROWS; i++) {
+          insert.setInt(1, i);
+          insert.setString(2, "Label " + i);
+          insert.addBatch();
+        }
+        insert.executeBatch();
+      }
+      conn.commit();
+    }
+    if (!partial.renameTo(file)) {
+      throw new SQLException("Could not write benchmark database " + file);
+    }
+    return file.getPath();
+  }
+
+  /**
+   * Copies a generated database to a temporary file, for benchmarks that write to it.
+   *
+   * @param rows number of rows in the people table
+   * @return path to the copy, which is deleted when the JVM exits
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException if the copy cannot be written
+   */
+  static String copy(int rows) throws SQLException, IOException {
+    File copy = File.createTempFile("benchmark", ".sqlite3");
+    copy.deleteOnExit();
+    Files.copy(new File(path(rows)).toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    return copy.getPath();
+  }
+}
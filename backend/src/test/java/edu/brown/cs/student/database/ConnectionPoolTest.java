@@ -0,0 +1,99 @@
+package edu.brown.cs.student.database;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectionPoolTest {
+  private static String copyDatabase() throws IOException {
+    File copy = File.createTempFile("pool", ".sqlite3");
+    copy.deleteOnExit();
+    Files.copy(new File("data/proj1_rec_data/sql/data.sqlite3").toPath(), copy.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    return copy.getPath();
+  }
+
+  @Test
+  public void testReadAndWrite() throws IOException, SQLException {
+    ProxyConfig config = new ProxyConfig();
+    config.setReadPoolSize(2);
+    config.setWalMode(true);
+    ConnectionPool pool = new ConnectionPool(copyDatabase(), config);
+
+    try (PooledConnection writer = pool.acquireWrite();
+         ResultSet rs = writer.getConnection().createStatement()
+             .executeQuery("PRAGMA journal_mode")) {
+      assertEquals("wal", rs.getString(1));
+    }
+    try (PooledConnection first = pool.acquireRead();
+         PooledConnection second = pool.acquireRead()) {
+      assertThrows(SQLException.class, () -> first.getConnection().createStatement()
+          .executeUpdate("DELETE FROM names"));
+      assertNotSame(first.getConnection(), second.getConnection());
+      assertEquals(0, pool.getStats().get("idle_readers"));
+    }
+    assertEquals(2, pool.getStats().get("idle_readers"));
+    assertEquals(2L, pool.getStats().get("read_acquisitions"));
+
+    pool.close();
+    assertThrows(SQLException.class, pool::acquireRead);
+  }
+
+  @Test
+  public void testCloseTwice() throws IOException, SQLException, InterruptedException {
+    ProxyConfig config = new ProxyConfig();
+    config.setReadPoolSize(2);
+    config.setAcquireTimeoutMillis(100);
+    ConnectionPool pool = new ConnectionPool(copyDatabase(), config);
+
+    PooledConnection reader = pool.acquireRead();
+    reader.close();
+    reader.close();
+    assertEquals(2, pool.getStats().get("idle_readers"));
+
+    PooledConnection writer = pool.acquireWrite();
+    writer.close();
+    try (PooledConnection next = pool.acquireWrite()) {
+      assertSame(writer.getConnection(), next.getConnection());
+      // closing the earlier lease again must not free the write connection held by the next one
+      writer.close();
+      FutureTask<PooledConnection> other = new FutureTask<>(pool::acquireWrite);
+      new Thread(other).start();
+      ExecutionException e = assertThrows(ExecutionException.class, other::get);
+      assertTrue(e.getCause() instanceof SQLException);
+    }
+    pool.close();
+  }
+
+  @Test
+  public void testStatementCache() throws IOException, SQLException {
+    ProxyConfig config = new ProxyConfig();
+    config.setReadPoolSize(1);
+    config.setStatementCacheSize(1);
+    ConnectionPool pool = new ConnectionPool(copyDatabase(), config);
+
+    try (PooledConnection reader = pool.acquireRead()) {
+      PreparedStatement first = reader.prepare("SELECT * FROM names WHERE id = ?");
+      assertSame(first, reader.prepare("SELECT * FROM names WHERE id = ?"));
+      reader.prepare("SELECT * FROM skills");
+      assertTrue(first.isClosed());
+    }
+    assertEquals(1L, pool.getStats().get("statement_cache_hits"));
+    assertEquals(1L, pool.getStats().get("statement_cache_evictions"));
+    pool.close();
+  }
+}
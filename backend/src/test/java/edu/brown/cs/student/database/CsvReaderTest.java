@@ -0,0 +1,78 @@
+package edu.brown.cs.student.database;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+
+public class CsvReaderTest {
+  @Test
+  public void testParseRecord() {
+    // a value left empty is null, while an empty value in quotes is an empty string
+    assertArrayEquals(new String[] {"1", "a", null}, CsvReader.parseRecord("1,a,"));
+    assertArrayEquals(new String[] {null, "", "x"}, CsvReader.parseRecord(",\"\",x"));
+    assertArrayEquals(new String[] {"x,y", "say \"hi\"", "two\nlines"},
+        CsvReader.parseRecord("\"x,y\",\"say \"\"hi\"\"\",\"two\nlines\""));
+  }
+
+  @Test
+  public void testReadChunks() throws IOException, SQLException {
+    File file = File.createTempFile("rows", ".csv");
+    file.deleteOnExit();
+    StringBuilder text = new StringBuilder("id,note\r\n");
+    for (int i = 0; i < 10000; i++) {
+      text.append(i).append(i == 5000 ? ",\"line\nbreak\"" : ",n").append("\r\n");
+    }
+    Files.writeString(file.toPath(), text, StandardCharsets.UTF_8);
+
+    List<String[]> rows = new ArrayList<>();
+    try (CsvReader csv = new CsvReader(file.getPath(), 3)) {
+      assertEquals(List.of("id", "note"), csv.getHeader());
+      List<String[]> chunk;
+      while ((chunk = csv.next()) != null) {
+        rows.addAll(chunk);
+      }
+      assertNull(csv.next());
+    }
+    // chunks come back in file order
+    assertEquals(10000, rows.size());
+    for (int i = 0; i < rows.size(); i++) {
+      assertEquals(Integer.toString(i), rows.get(i)[0]);
+    }
+    assertEquals("line\nbreak", rows.get(5000)[1]);
+  }
+
+  @Test
+  public void testBadRow() throws IOException {
+    File file = File.createTempFile("bad", ".csv");
+    file.deleteOnExit();
+    Files.writeString(file.toPath(), "a,b\n1,2\n3\n", StandardCharsets.UTF_8);
+    try (CsvReader csv = new CsvReader(file.getPath(), 1)) {
+      SQLException e = assertThrows(SQLException.class, csv::next);
+      assertEquals("Row 2 has 1 values, but the header has 2", e.getMessage());
+    }
+  }
+
+  @Test
+  public void testTypes() throws IOException {
+    Map<String, String> types =
+        CsvReader.readHeaderTypes(new File("data/proj1_rec_data/csv/header_types.csv"));
+    assertEquals("NUMERIC", types.get("years_experience"));
+    assertEquals("TEXT", types.get("nationality"));
+    List<String[]> rows = List.of(new String[] {"1", "1.5", "x"}, new String[] {"", "2", "3"});
+    assertEquals("INTEGER", CsvReader.inferType(rows, 0));
+    assertEquals("REAL", CsvReader.inferType(rows, 1));
+    assertEquals("TEXT", CsvReader.inferType(rows, 2));
+  }
+}
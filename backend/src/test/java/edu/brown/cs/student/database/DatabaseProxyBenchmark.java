@@ -0,0 +1,114 @@
+package edu.brown.cs.student.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks DatabaseProxy.executeQuery on tables of 1k, 100k and 1M rows: a read of the whole
+ * table served from the cache, the same read after the cache is cleared, and a one-row write,
+ * which invalidates the cached reads of its table and scans those of other tables.
+ * @author Justin Rhee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class DatabaseProxyBenchmark {
+  private static final String READ = "SELECT * FROM people";
+  private static final String WRITE = "UPDATE people SET score = score + 1 WHERE id = ?";
+  // cached reads of the other table, which every write has to look at and keep
+  private static final int OTHER_READS = 1000;
+  private static final long CACHE_BYTES = 1L << 30;
+
+  @Param({"1000", "100000", "1000000"})
+  private int rows;
+
+  private DatabaseProxy dbp;
+
+  /**
+   * Opens a copy of the generated database with a cache large enough for the whole table.
+   *
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException if the database cannot be copied
+   * @throws ClassNotFoundException if the SQLite driver is missing
+   */
+  @Setup
+  public void setUp() throws SQLException, IOException, ClassNotFoundException {
+    ProxyConfig config = new ProxyConfig();
+    config.setCacheMaxBytes(CACHE_BYTES);
+    dbp = new DatabaseProxy(BenchmarkDatabases.copy(rows), config);
+  }
+
+  /**
+   * Fills the cache with a read of the table and reads of the other table before each iteration.
+   *
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  @Setup(Level.Iteration)
+  public void fillCache() throws SQLException {
+    dbp.executeQuery(READ);
+    for (int i = 1; i <= OTHER_READS; i++) {
+      dbp.executeQuery("SELECT * FROM other WHERE id = ?", List.of(String.valueOf(i)));
+    }
+  }
+
+  /**
+   * Closes the database.
+   */
+  @TearDown
+  public void tearDown() {
+    dbp.close();
+  }
+
+  /**
+   * Reads the whole table from the cache.
+   *
+   * @return the cached output
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  @Benchmark
+  public QueryOutput cacheHit() throws SQLException {
+    return dbp.executeQuery(READ);
+  }
+
+  /**
+   * Reads the whole table from the database, after clearing the cache.
+   *
+   * @return the output read
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  @Benchmark
+  public QueryOutput cacheMiss() throws SQLException {
+    dbp.clearCache();
+    return dbp.executeQuery(READ);
+  }
+
+  /**
+   * Writes one row, publishing the change and invalidating the cached reads it made stale.
+   *
+   * @return the output of the write
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  @Benchmark
+  public QueryOutput write() throws SQLException {
+    return dbp.executeQuery(WRITE, List.of("1"));
+  }
+}
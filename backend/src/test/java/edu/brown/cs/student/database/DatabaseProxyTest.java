@@ -1,16 +1,54 @@
 package edu.brown.cs.student.database;
 
+import edu.brown.cs.student.api.ContentEncoding;
 import edu.brown.cs.student.api.Insert;
 import edu.brown.cs.student.api.Update;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.SQLTimeoutException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class DatabaseProxyTest {
+  private static String copyDatabase() throws IOException {
+    File copy = File.createTempFile("proxy", ".sqlite3");
+    copy.deleteOnExit();
+    Files.copy(new File("data/proj1_rec_data/sql/data.sqlite3").toPath(), copy.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    return copy.getPath();
+  }
+
   @Test
   public void testLoadAndExecute() throws SQLException, FileNotFoundException, ClassNotFoundException {
     DatabaseProxy dbp = new DatabaseProxy("data/proj1_rec_data/sql/data.sqlite3");
@@ -37,6 +75,496 @@ public class DatabaseProxyTest {
     assertThrows(SQLException.class, () -> dbp.executeQuery("SELECT * FROM names LIMIT 1"));
   }
 
+  @Test
+  public void testGetPage() throws SQLException, FileNotFoundException, ClassNotFoundException {
+    DatabaseProxy dbp = new DatabaseProxy("data/proj1_rec_data/sql/data.sqlite3");
+    TablePage first = dbp.getPage("names", null, 25);
+    assertEquals(25, first.size());
+    assertEquals(60, first.getTotalRows());
+    TablePage second = dbp.getPage("names", first.getNextCursor(), 25);
+    assertEquals(25, second.size());
+    TablePage last = dbp.getPage("names", second.getNextCursor(), 25);
+    assertEquals(10, last.size());
+    assertNull(last.getNextCursor());
+    assertThrows(SQLException.class, () -> dbp.getPage("tim", null, 25));
+  }
+
+  @Test
+  public void testTableInvalidation() throws SQLException, IOException, ClassNotFoundException {
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase());
+
+    dbp.executeQuery("SELECT * FROM names WHERE id = 1");
+    dbp.executeQuery("SELECT * FROM skills WHERE id = 1");
+    dbp.executeQuery("UPDATE names SET name = 'Tim' WHERE id = 1");
+    assertEquals("Tim", dbp.executeQuery("SELECT * FROM names WHERE id = 1").getString(0, 1));
+    dbp.executeQuery("SELECT * FROM skills WHERE id = 1");
+
+    Map<String, Map<String, Long>> stats = dbp.getTableCacheStats();
+    assertEquals(Long.valueOf(2), stats.get("names").get("misses"));
+    assertEquals(Long.valueOf(1), stats.get("names").get("invalidations"));
+    assertEquals(Long.valueOf(1), stats.get("skills").get("hits"));
+    assertEquals(Long.valueOf(0), stats.get("skills").get("invalidations"));
+
+    dbp.executeQuery("CREATE TABLE extra (id INTEGER)");
+    assertEquals(5, dbp.getTableNames().size());
+    assertEquals(Long.valueOf(1), dbp.getTableCacheStats().get("skills").get("invalidations"));
+    dbp.close();
+  }
+
+  @Test
+  public void testCacheBudget() throws SQLException, FileNotFoundException, ClassNotFoundException {
+    ProxyConfig config = new ProxyConfig();
+    config.setCacheMaxBytes(64 * 1024);
+    DatabaseProxy dbp = new DatabaseProxy("data/proj1_rec_data/sql/data.sqlite3", config);
+
+    dbp.executeQuery("SELECT * FROM names WHERE id = 1");
+    dbp.executeQuery("SELECT * FROM names WHERE id = 1");
+    // the whole table weighs more than a segment of the budget, so it is not kept
+    dbp.executeQuery("SELECT * FROM names, skills");
+    dbp.executeQuery("SELECT * FROM names WHERE id = 1");
+
+    Map<String, Object> stats = dbp.getCacheStats();
+    assertEquals(1, stats.get("entries"));
+    assertEquals(2L, stats.get("hits"));
+    assertEquals(2L, stats.get("misses"));
+    assertTrue((long) stats.get("bytes") <= 64 * 1024);
+    dbp.clearCache();
+    assertEquals(0, dbp.getCacheStats().get("entries"));
+    dbp.close();
+  }
+
+  @Test
+  public void testEncodedTable() throws SQLException, IOException, ClassNotFoundException {
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase());
+    EncodedResponse names = dbp.getEncodedTable("names", true);
+    EncodedResponse skills = dbp.getEncodedTable("skills", false);
+    assertSame(names, dbp.getEncodedTable("names", true));
+    assertEquals(names.getETag(), dbp.getTableETag("names", true));
+    assertNotEquals(names.getETag(), dbp.getTableETag("names", false));
+    assertTrue(new String(names.getBody(), StandardCharsets.UTF_8)
+        .startsWith("{\"columns\":[\"_rowid\",\"id\",\"name\",\"email\"]"));
+
+    byte[] gzipped = names.getCompressed(ContentEncoding.GZIP, 6);
+    try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(gzipped))) {
+      assertArrayEquals(names.getBody(), gzip.readAllBytes());
+    }
+    assertSame(gzipped, names.getCompressed(ContentEncoding.GZIP, 6));
+    byte[] deflated = names.getCompressed(ContentEncoding.DEFLATE, 1);
+    try (InflaterInputStream zlib = new InflaterInputStream(new ByteArrayInputStream(deflated))) {
+      assertArrayEquals(names.getBody(), zlib.readAllBytes());
+    }
+
+    dbp.executeQuery("UPDATE names SET name = 'Tim' WHERE id = 1");
+    assertNotEquals(names.getETag(), dbp.getTableETag("names", true));
+    assertEquals(skills.getETag(), dbp.getTableETag("skills", false));
+    assertNotSame(names, dbp.getEncodedTable("names", true));
+    assertSame(skills, dbp.getEncodedTable("skills", false));
+    dbp.close();
+
+    // compressed bodies count against the response cache, so a table that only fits there
+    // uncompressed is evicted once it is compressed
+    ProxyConfig config = new ProxyConfig();
+    config.setResponseCacheMaxBytes(4 * (names.estimateBytes() - gzipped.length
+        - deflated.length + 100));
+    DatabaseProxy small = new DatabaseProxy(copyDatabase(), config);
+    EncodedResponse cached = small.getEncodedTable("names", true);
+    assertSame(cached, small.getEncodedTable("names", true));
+    small.getCompressedTable(cached, "names", true, ContentEncoding.GZIP);
+    assertNotSame(cached, small.getEncodedTable("names", true));
+    small.close();
+  }
+
+  @Test
+  public void testSortedPage() throws SQLException, IOException, ClassNotFoundException,
+      JSONException {
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase());
+    List<SortKey> byName = List.of(new SortKey("name", true));
+    TablePage first = dbp.getSortedPage("names", byName, 0, 25);
+    assertEquals(Long.valueOf(25), first.getNextCursor());
+    assertEquals(60, first.getTotalRows());
+    TablePage last = dbp.getSortedPage("names", byName, 50, 25);
+    assertEquals(10, last.size());
+    assertNull(last.getNextCursor());
+
+    // with an index on id, SQLite does the sorting
+    dbp.executeQuery("CREATE INDEX names_id ON names (id)");
+    TablePage byId = dbp.getSortedPage("names", List.of(new SortKey("id", false)), 0, 2);
+    JSONObject json = new JSONObject(byId.toJSON());
+    assertEquals("60", json.getJSONArray("rows").getJSONObject(0).getString("id"));
+    assertThrows(SQLException.class,
+        () -> dbp.getSortedPage("names", List.of(new SortKey("tim", true)), 0, 2));
+    dbp.close();
+  }
+
+  @Test
+  public void testSearch() throws SQLException, IOException, ClassNotFoundException,
+      JSONException, InterruptedException {
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase());
+    assertThrows(SQLException.class, () -> dbp.search("names", "petr", null, 0, 10));
+    dbp.buildSearchIndex();
+    while (!"ready".equals(dbp.getSearchProgress().get("names").get("state"))) {
+      Thread.sleep(10);
+    }
+    assertEquals(60L, dbp.getSearchProgress().get("names").get("indexed_rows"));
+    assertEquals(List.of("interests", "names", "skills", "traits"), dbp.getTableNames());
+
+    // words match as prefixes, so petr also finds Petric
+    assertEquals(2, dbp.search("names", "petr", null, 0, 10).getTotalRows());
+    assertEquals(1, new JSONObject(dbp.search("names", "petr", null, 1, 10).toJSON())
+        .getJSONArray("rows").length());
+    TablePage page = dbp.search("names", "petr dill", null, 0, 10);
+    assertEquals(1, page.getTotalRows());
+    JSONObject row = new JSONObject(page.toJSON()).getJSONArray("rows").getJSONObject(0);
+    assertEquals("Petr Dillingstone", row.getString("name"));
+    assertEquals(0, dbp.search("names", "petr dill", "email", 0, 10).getTotalRows());
+
+    // the index follows writes, which still only invalidate the table written to
+    dbp.executeQuery("SELECT * FROM skills WHERE id = 1");
+    dbp.executeQuery("UPDATE names SET name = 'Tim Nelson' WHERE id = 1");
+    assertEquals(0, dbp.search("names", "petr dill", null, 0, 10).getTotalRows());
+    assertEquals(1, dbp.search("names", "nels", null, 0, 10).getTotalRows());
+    assertEquals(Long.valueOf(0), dbp.getTableCacheStats().get("skills").get("invalidations"));
+    dbp.close();
+  }
+
+  private static void awaitIndex(DatabaseProxy dbp, String table) throws InterruptedException {
+    while (!"ready".equals(dbp.getSearchProgress().get(table).get("state"))) {
+      Thread.sleep(10);
+    }
+  }
+
+  @Test
+  public void testSearchIndexBuild() throws SQLException, IOException, ClassNotFoundException,
+      InterruptedException {
+    String path = copyDatabase();
+    DatabaseProxy dbp = new DatabaseProxy(path);
+    List<Mutation> mutations = new ArrayList<>();
+    for (int i = 0; i < 12000; i++) {
+      mutations.add(Mutation.insert("names", Map.of("id", String.valueOf(1000 + i),
+          "name", "Row " + i)));
+    }
+    dbp.executeBatch(mutations);
+    // the rows are indexed over several batches
+    dbp.buildSearchIndex();
+    awaitIndex(dbp, "names");
+    assertEquals(12060L, dbp.getSearchProgress().get("names").get("indexed_rows"));
+    assertEquals(12000, dbp.search("names", "row", null, 0, 10).getTotalRows());
+    dbp.executeQuery("ALTER TABLE names ADD COLUMN nickname TEXT");
+    dbp.close();
+
+    // an existing index is searched by the columns it was built with
+    dbp = new DatabaseProxy(path);
+    dbp.buildSearchIndex();
+    awaitIndex(dbp, "names");
+    assertEquals(0L, dbp.getSearchProgress().get("names").get("indexed_rows"));
+    DatabaseProxy reopened = dbp;
+    assertThrows(SQLException.class, () -> reopened.search("names", "x", "nickname", 0, 10));
+    assertEquals(1, dbp.search("names", "row 11999", null, 0, 10).getTotalRows());
+    dbp.close();
+
+    // an index missing a trigger was left half built, so it is built again
+    try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+         Statement stat = conn.createStatement()) {
+      stat.executeUpdate("DROP TRIGGER " + DatabaseProxy.quote("__fts_names_au"));
+    }
+    dbp = new DatabaseProxy(path);
+    dbp.buildSearchIndex();
+    awaitIndex(dbp, "names");
+    assertEquals(12060L, dbp.getSearchProgress().get("names").get("indexed_rows"));
+    dbp.search("names", "x", "nickname", 0, 10);
+    dbp.executeQuery("UPDATE names SET name = 'Tim Nelson' WHERE id = 1000");
+    assertEquals(11999, dbp.search("names", "row", null, 0, 10).getTotalRows());
+    assertEquals(1, dbp.search("names", "nelson", "name", 0, 10).getTotalRows());
+    dbp.close();
+  }
+
+  @Test
+  public void testExecuteBatch() throws SQLException, IOException, ClassNotFoundException {
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase());
+    assertEquals(60, dbp.getRowCount("names"));
+
+    List<Mutation> mutations = new ArrayList<>();
+    for (int i = 0; i < 20000; i++) {
+      mutations.add(Mutation.insert("names", Map.of("id", String.valueOf(1000 + i),
+          "name", "Row " + i)));
+    }
+    mutations.add(Mutation.update("names", Map.of("id", "1"), Map.of("name", "Tim")));
+    mutations.add(Mutation.delete("names", Map.of("id", "2")));
+    int[] counts = dbp.executeBatch(mutations);
+    assertEquals(20002, counts.length);
+    assertEquals(1, counts[0]);
+    assertEquals(1, counts[20000]);
+    assertEquals(1, counts[20001]);
+    assertEquals(20059, dbp.getRowCount("names"));
+
+    // a failure rolls back the operations before it
+    List<Mutation> failing = List.of(
+        Mutation.delete("names", Map.of("name", "Tim")),
+        Mutation.insert("names", Map.of("tim", "1")));
+    BatchException e = assertThrows(BatchException.class, () -> dbp.executeBatch(failing));
+    assertEquals(1, e.getIndex());
+    assertEquals(20059, dbp.getRowCount("names"));
+
+    dbp.changePermissions("skills", "R");
+    e = assertThrows(BatchException.class,
+        () -> dbp.executeBatch(List.of(Mutation.delete("skills", Map.of("id", "1")))));
+    assertEquals(0, e.getIndex());
+    dbp.close();
+  }
+
+  @Test
+  public void testChanges()
+      throws SQLException, IOException, ClassNotFoundException, JSONException {
+    ProxyConfig config = new ProxyConfig();
+    config.setChangeLogSize(4);
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase(), config);
+    TableChanges changes = dbp.getChanges("names", null, null);
+    assertTrue(changes.isFullReload());
+    assertEquals(0, changes.getVersion());
+    JSONObject json = new JSONObject(changes.toJSON());
+    String epoch = json.getString("epoch");
+
+    long deletedRowid = Long.parseLong(
+        dbp.executeQuery("SELECT rowid FROM names WHERE id = 2").getString(0, 0));
+    dbp.executeBatch(List.of(
+        Mutation.insert("names", Map.of("id", "1000", "name", "New")),
+        Mutation.delete("names", Map.of("id", "2"))));
+    dbp.executeQuery("UPDATE names SET name = ? WHERE id = ?", List.of("Tim", "1"));
+    dbp.executeQuery("UPDATE names SET name = ? WHERE id = ?", List.of("Timothy", "1"));
+
+    changes = dbp.getChanges("names", 0L, epoch);
+    assertFalse(changes.isFullReload());
+    assertEquals(3, changes.getVersion());
+    assertEquals(2, changes.upsertedCount());
+    assertEquals(List.of(deletedRowid), changes.getDeleted());
+    json = new JSONObject(changes.toJSON());
+    Map<String, String> names = new HashMap<>();
+    for (int i = 0; i < json.getJSONArray("upserted").length(); i++) {
+      JSONObject row = json.getJSONArray("upserted").getJSONObject(i);
+      names.put(row.getString("id"), row.getString("name"));
+    }
+    assertEquals(Map.of("1", "Timothy", "1000", "New"), names);
+
+    changes = dbp.getChanges("names", 2L, epoch);
+    assertEquals(1, changes.upsertedCount());
+    assertTrue(changes.getDeleted().isEmpty());
+    changes = dbp.getChanges("names", 3L, epoch);
+    assertEquals(0, changes.upsertedCount());
+    assertFalse(changes.isFullReload());
+
+    // a stale epoch, or a version older than the log reaches, needs the whole table
+    assertTrue(dbp.getChanges("names", 3L, "stale").isFullReload());
+    dbp.executeQuery("UPDATE names SET name = ? WHERE id <= ?", List.of("Same", "10"));
+    assertTrue(dbp.getChanges("names", 3L, epoch).isFullReload());
+    assertFalse(dbp.getChanges("names", 4L, epoch).isFullReload());
+
+    // a schema change resets every table
+    dbp.executeQuery("ALTER TABLE names ADD COLUMN nickname TEXT");
+    changes = dbp.getChanges("names", 4L, epoch);
+    assertTrue(changes.isFullReload());
+    assertEquals(5, changes.getVersion());
+    dbp.close();
+  }
+
+  @Test
+  public void testChangeListener() throws SQLException, IOException, ClassNotFoundException {
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase());
+    List<Set<String>> notified = new ArrayList<>();
+    dbp.addChangeListener(notified::add);
+
+    dbp.executeQuery("UPDATE names SET name = ? WHERE id = ?", List.of("Tim", "1"));
+    dbp.executeBatch(List.of(Mutation.delete("skills", Map.of("id", "1")),
+        Mutation.insert("traits", Map.of("id", "1000"))));
+    // writes that change no rows move no version
+    dbp.executeQuery("DELETE FROM names WHERE id = ?", List.of("-1"));
+    dbp.executeQuery("SELECT * FROM names");
+    assertEquals(List.of(Set.of("names"), Set.of("skills", "traits")), notified);
+
+    dbp.executeQuery("CREATE TABLE extra (id INTEGER)");
+    assertTrue(notified.get(2).containsAll(Set.of("names", "skills", "traits", "extra")));
+    dbp.close();
+  }
+
+  @Test
+  public void testQueryTimeout() throws SQLException, IOException, ClassNotFoundException {
+    ProxyConfig config = new ProxyConfig();
+    config.setQueryTimeoutMillis(200);
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase(), config);
+    String slow = "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n) "
+        + "SELECT COUNT(*) FROM n";
+    long start = System.nanoTime();
+    assertThrows(SQLTimeoutException.class, () -> dbp.executeQuery(slow));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    // streamed reads are held to the same limit
+    start = System.nanoTime();
+    assertThrows(SQLTimeoutException.class,
+        () -> dbp.streamQuery(slow, List.of(), rs -> rs.next()));
+    assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    assertThrows(IOException.class, () -> dbp.streamQuery("SELECT 1", List.of(), rs -> {
+      throw new IOException("Broken pipe");
+    }));
+
+    // the interrupted connection goes back to the pool and serves the next query
+    QueryOutput output = dbp.executeQuery("SELECT COUNT(*) FROM names");
+    assertEquals(1, output.getRowCount());
+    dbp.close();
+  }
+
+  @Test
+  public void testReadDuringWrite() throws Exception {
+    ProxyConfig config = new ProxyConfig();
+    config.setWalMode(true);
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase(), config);
+    // the read's snapshot is taken before the write commits, and it finishes after
+    String slow = "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n WHERE i < 1000000)"
+        + " SELECT name, (SELECT COUNT(*) FROM n) FROM names WHERE id = 1";
+    FutureTask<QueryOutput> read = new FutureTask<>(() -> dbp.executeQuery(slow));
+    new Thread(read).start();
+    Thread.sleep(100);
+    dbp.executeQuery("UPDATE names SET name = 'Tim' WHERE id = 1");
+    assertEquals("Petr Dillingstone", read.get().getString(0, 0));
+    // the old rows were not cached over the write
+    assertEquals("Tim", dbp.executeQuery(slow).getString(0, 0));
+    dbp.close();
+  }
+
+  @Test
+  public void testResultLimits() throws SQLException, IOException, ClassNotFoundException {
+    ProxyConfig config = new ProxyConfig();
+    config.setMaxResultRows(2);
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase(), config);
+    assertThrows(QueryLimitException.class, () -> dbp.executeQuery("SELECT * FROM names"));
+    assertEquals(2, dbp.executeQuery("SELECT * FROM names LIMIT 2").getRowCount());
+    assertThrows(QueryLimitException.class, () -> dbp.getEncodedTable("names", false));
+    dbp.close();
+
+    config = new ProxyConfig();
+    config.setInFlightMaxBytes(1024);
+    DatabaseProxy small = new DatabaseProxy(copyDatabase(), config);
+    assertThrows(OverloadException.class, () -> small.executeQuery("SELECT * FROM names"));
+    // memory reserved by the refused query was given back
+    assertEquals(0L, config.getMemoryStats().get("in_flight_bytes"));
+    assertEquals(1L, config.getMemoryStats().get("refused_queries"));
+    small.close();
+  }
+
+  @Test
+  public void testRowKey() throws SQLException, IOException, ClassNotFoundException,
+      JSONException {
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase());
+    assertEquals(List.of("rowid"), dbp.getRowKey("names"));
+    JSONObject first = new JSONObject(dbp.getPage("names", null, 1).toJSON())
+        .getJSONArray("rows").getJSONObject(0);
+    // rowids of the sample table do not match its ids
+    assertEquals(2, first.getLong("_rowid"));
+    assertEquals(1, first.getLong("id"));
+    // the rowid is a number on every path, and only a rowid is
+    JSONObject sorted = new JSONObject(dbp.getSortedPage("names",
+        List.of(new SortKey("name", true)), 0, 1).toJSON()).getJSONArray("rows").getJSONObject(0);
+    assertTrue(sorted.get("_rowid") instanceof Number);
+    assertTrue(sorted.get("id") instanceof String);
+    JSONObject indexed = new JSONObject(dbp.getSortedPage("names",
+        List.of(new SortKey("id", true)), 0, 1).toJSON()).getJSONArray("rows").getJSONObject(0);
+    assertEquals(2, indexed.get("_rowid"));
+    JSONArray read = new JSONArray(dbp.executeQuery(
+        "SELECT rowid AS _rowid, 'x' AS name FROM names LIMIT 1").toJSON());
+    assertEquals(2, read.getJSONObject(0).get("_rowid"));
+    read = new JSONArray(dbp.executeQuery("SELECT 'x' AS _rowid").toJSON());
+    assertEquals("x", read.getJSONObject(0).get("_rowid"));
+
+    // a row read through the proxy is found by its rowid alone
+    Map<String, String> oldRow = Map.of("_rowid", "2", "id", "1", "name", "Petr Dillingstone");
+    Map<String, String> newRow = Map.of("_rowid", "2", "id", "1", "name", "Tim");
+    assertEquals(Map.of("rowid", "2"), dbp.identifyRow("names", oldRow));
+    assertEquals(Map.of("name", "Tim"), Mutation.changedValues(oldRow, newRow));
+    Mutation update = Mutation.update("names", dbp.identifyRow("names", oldRow),
+        Mutation.changedValues(oldRow, newRow));
+    assertEquals(1, dbp.executeBatch(List.of(update))[0]);
+    assertEquals("Tim", dbp.executeQuery("SELECT name FROM names WHERE id = 1").getString(0, 0));
+    assertEquals(Map.of("id", "1"), dbp.identifyRow("names", Map.of("id", "1")));
+
+    dbp.executeQuery("CREATE TABLE pairs (a TEXT, b TEXT, c TEXT, PRIMARY KEY (b, a)) "
+        + "WITHOUT ROWID");
+    dbp.executeQuery("INSERT INTO pairs VALUES ('x', 'y', 'z')");
+    assertEquals(List.of("b", "a"), dbp.getRowKey("pairs"));
+    assertEquals(Map.of("a", "x", "b", "y"),
+        dbp.identifyRow("pairs", Map.of("a", "x", "b", "y", "c", "z")));
+    assertEquals(1, dbp.executeBatch(List.of(Mutation.delete("pairs",
+        dbp.identifyRow("pairs", Map.of("a", "x", "b", "y", "c", "z")))))[0]);
+    dbp.close();
+  }
+
+  @Test
+  public void testSchema() throws SQLException, IOException, ClassNotFoundException {
+    String path = copyDatabase();
+    DatabaseProxy dbp = new DatabaseProxy(path);
+    DatabaseSchema schema = dbp.getSchema();
+    assertEquals(dbp.getTableNames(), schema.getTableNames());
+    assertEquals(List.of("id", "name", "email"),
+        schema.getTable("names").getColumnNames());
+    assertEquals(Long.valueOf(dbp.getRowCount("names") + 1),
+        schema.getTable("names").getRowEstimate());
+    // nothing changed, so the schema is not read again
+    assertSame(schema, dbp.getSchema());
+
+    dbp.executeQuery("CREATE TABLE owners (id INTEGER PRIMARY KEY, name TEXT NOT NULL)");
+    dbp.executeQuery("CREATE TABLE pets (id INTEGER, owner INTEGER REFERENCES owners(id), "
+        + "PRIMARY KEY (id))");
+    dbp.executeQuery("CREATE INDEX pets_owner ON pets (owner)");
+    TableSchema pets = dbp.getSchema().getTable("pets");
+    assertTrue(dbp.getSchema().getVersion() > schema.getVersion());
+    assertEquals(List.of("id"), pets.getPrimaryKey());
+    assertEquals("owners", pets.getForeignKeys().get(0).getTable());
+    assertEquals(List.of("owner"), pets.getIndexes().get(0).getColumns());
+    assertEquals("INTEGER", pets.getColumns().get(1).getType());
+
+    // a schema change made by another connection is seen through the schema version
+    try (Connection conn = DriverManager.getConnection("jdbc:sqlite:" + path);
+         Statement stat = conn.createStatement()) {
+      stat.executeUpdate("CREATE TABLE outside (x)");
+    }
+    assertTrue(dbp.getSchema().getTableNames().contains("outside"));
+    assertTrue(dbp.getTableNames().contains("outside"));
+    dbp.close();
+  }
+
+  @Test
+  public void testImportCsv() throws SQLException, IOException, ClassNotFoundException {
+    DatabaseProxy dbp = new DatabaseProxy(copyDatabase());
+    Map<String, Object> result = dbp.importCsv(
+        "data/proj1_rec_data/csv/proj1_sprint2_big_1.csv", "people", List.of("nationality"));
+    assertEquals(500L, result.get("rows"));
+    assertEquals(List.of("people_nationality"), result.get("indexes"));
+    assertEquals(500, dbp.getRowCount("people"));
+    // types come from header_types.csv next to the file
+    TableSchema people = dbp.getSchema().getTable("people");
+    assertEquals("NUMERIC", people.getColumns().get(8).getType());
+    assertEquals("INTEGER", people.getColumns().get(0).getType());
+    assertEquals("TEXT", people.getColumns().get(1).getType());
+    assertEquals(Long.valueOf(500), people.getRowEstimate());
+    assertEquals("integer",
+        dbp.executeQuery("SELECT typeof(years_experience) FROM people LIMIT 1").getString(0, 0));
+
+    // rows are appended to a table that already exists
+    long traits = dbp.getRowCount("traits");
+    dbp.importCsv("data/proj1_rec_data/csv/proj1_sprint2_small_2.csv", "traits", List.of());
+    assertEquals(traits + 140, dbp.getRowCount("traits"));
+    assertThrows(SQLException.class, () -> dbp.importCsv(
+        "data/proj1_rec_data/csv/proj1_sprint2_small_4.csv", "names", List.of()));
+
+    // empty values are NULL unless quoted, and a missing index column creates no table
+    File csv = File.createTempFile("blanks", ".csv");
+    csv.deleteOnExit();
+    Files.writeString(csv.toPath(), "a,b\n1,\n2,\"\"\n");
+    assertThrows(SQLException.class, () -> dbp.importCsv(csv.getPath(), "blanks", List.of("c")));
+    assertNull(dbp.getSchema().getTable("blanks"));
+    dbp.importCsv(csv.getPath(), "blanks", List.of());
+    QueryOutput blanks = dbp.executeQuery("SELECT typeof(b) FROM blanks ORDER BY a");
+    assertEquals("null", blanks.getString(0, 0));
+    assertEquals("text", blanks.getString(1, 0));
+    dbp.close();
+  }
+
   @Test
   public void misc() throws SQLException {
     Update update = new Update();
@@ -0,0 +1,78 @@
+package edu.brown.cs.student.database;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+
+public class DatabaseRegistryTest {
+  private static String copyDatabase() throws IOException {
+    File copy = File.createTempFile("registry", ".sqlite3");
+    copy.deleteOnExit();
+    Files.copy(new File("data/proj1_rec_data/sql/data.sqlite3").toPath(), copy.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    return copy.getPath();
+  }
+
+  @Test
+  public void testSharingAndEviction()
+      throws IOException, SQLException, ClassNotFoundException {
+    List<String> opened = new ArrayList<>();
+    DatabaseRegistry registry = new DatabaseRegistry(new ProxyConfig(), 1, 0,
+        (path, dbp) -> opened.add(path));
+    String first = copyDatabase();
+    String second = copyDatabase();
+
+    // the same file is shared however its path is written
+    DatabaseProxy proxy = registry.get(first);
+    File file = new File(first);
+    assertSame(proxy, registry.get(file.getParent() + "/./" + file.getName()));
+    assertEquals(List.of(DatabaseRegistry.canonicalPath(first)), opened);
+
+    // opening a second database closes the least recently used one
+    DatabaseProxy other = registry.get(second);
+    assertNull(registry.getIfOpen(first));
+    assertThrows(SQLException.class, () -> proxy.executeQuery("SELECT * FROM names"));
+    assertEquals(1L, registry.getStats().get("open"));
+
+    // and it is opened again when it is next asked for
+    DatabaseProxy reopened = registry.get(first);
+    assertNotSame(proxy, reopened);
+    assertEquals(60, reopened.getRowCount("names"));
+    assertThrows(SQLException.class, () -> other.executeQuery("SELECT * FROM names"));
+    assertEquals(3, opened.size());
+
+    assertThrows(FileNotFoundException.class, () -> registry.get("data/missing.sqlite3"));
+    registry.closeAll();
+    assertEquals(0L, registry.getStats().get("open"));
+  }
+
+  private static long sweepers() {
+    return Thread.getAllStackTraces().keySet().stream()
+        .filter(thread -> thread.getName().equals("database-registry")).count();
+  }
+
+  @Test
+  public void testCloseAllStopsSweeper() throws InterruptedException {
+    long before = sweepers();
+    DatabaseRegistry registry = new DatabaseRegistry(new ProxyConfig(), 1, 60, (path, dbp) -> { });
+    assertEquals(before + 1, sweepers());
+    registry.closeAll();
+    for (int i = 0; i < 100 && sweepers() > before; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(before, sweepers());
+  }
+}
@@ -0,0 +1,116 @@
+package edu.brown.cs.student.database;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class ExportWriterTest {
+  private static final String VALUES = "SELECT 1 AS i, 2.5 AS r, 'a,\"b\"' AS t, NULL AS n, "
+      + "x'0102' AS b";
+
+  private static DatabaseProxy copyDatabase() throws IOException, SQLException,
+      ClassNotFoundException {
+    File copy = File.createTempFile("export", ".sqlite3");
+    copy.deleteOnExit();
+    Files.copy(new File("data/proj1_rec_data/sql/data.sqlite3").toPath(), copy.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    return new DatabaseProxy(copy.getPath());
+  }
+
+  private static byte[] export(DatabaseProxy dbp, ExportWriter.Format format)
+      throws SQLException, IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ExportWriter writer = new ExportWriter(out, format);
+    dbp.streamQuery(VALUES, List.of(), writer::write);
+    return out.toByteArray();
+  }
+
+  @Test
+  public void testCsvAndNdjson() throws SQLException, IOException, ClassNotFoundException {
+    DatabaseProxy dbp = copyDatabase();
+    assertEquals("i,r,t,n,b\n1,2.5,\"a,\"\"b\"\"\",,\u0001\u0002\n",
+        new String(export(dbp, ExportWriter.Format.CSV), StandardCharsets.UTF_8));
+    assertEquals("{\"i\":1,\"r\":2.5,\"t\":\"a,\\\"b\\\"\",\"n\":null,\"b\":\"\\u0001\\u0002\"}\n",
+        new String(export(dbp, ExportWriter.Format.NDJSON), StandardCharsets.UTF_8));
+    // an empty string is quoted, so that it does not read back as NULL
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    dbp.streamQuery("SELECT NULL AS n, '' AS e", List.of(),
+        new ExportWriter(out, ExportWriter.Format.CSV)::write);
+    assertEquals("n,e\n,\"\"\n", out.toString(StandardCharsets.UTF_8));
+    dbp.close();
+  }
+
+  @Test
+  public void testBinary() throws SQLException, IOException, ClassNotFoundException {
+    DatabaseProxy dbp = copyDatabase();
+    DataInputStream in = new DataInputStream(
+        new ByteArrayInputStream(export(dbp, ExportWriter.Format.BINARY)));
+    byte[] magic = new byte[4];
+    in.readFully(magic);
+    assertEquals("TVX1", new String(magic, StandardCharsets.US_ASCII));
+    assertEquals(5, in.readInt());
+    for (String name : List.of("i", "r", "t", "n", "b")) {
+      byte[] bytes = new byte[in.readInt()];
+      in.readFully(bytes);
+      assertEquals(name, new String(bytes, StandardCharsets.UTF_8));
+    }
+    assertEquals(1, in.readByte());
+    assertEquals(1, in.readByte());
+    assertEquals(1, in.readLong());
+    assertEquals(2, in.readByte());
+    assertEquals(2.5, in.readDouble(), 0);
+    assertEquals(3, in.readByte());
+    byte[] text = new byte[in.readInt()];
+    in.readFully(text);
+    assertEquals("a,\"b\"", new String(text, StandardCharsets.UTF_8));
+    assertEquals(0, in.readByte());
+    assertEquals(4, in.readByte());
+    byte[] blob = new byte[in.readInt()];
+    in.readFully(blob);
+    assertArrayEquals(new byte[] {1, 2}, blob);
+    assertEquals(0, in.readByte());
+    assertEquals(-1, in.read());
+    dbp.close();
+  }
+
+  @Test
+  public void testExportTable() throws SQLException, IOException, ClassNotFoundException {
+    DatabaseProxy dbp = copyDatabase();
+    File file = File.createTempFile("names", ".csv");
+    file.deleteOnExit();
+    try (OutputStream out = new FileOutputStream(file)) {
+      assertEquals(dbp.getRowCount("names"),
+          dbp.exportTable("names", ExportWriter.Format.CSV, out));
+    }
+    // an exported table reads back in the same
+    dbp.importCsv(file.getPath(), "names_copy", List.of());
+    assertEquals("0", dbp.executeQuery("SELECT COUNT(*) FROM (SELECT * FROM names EXCEPT "
+        + "SELECT * FROM names_copy)").getString(0, 0));
+    ByteArrayOutputStream ndjson = new ByteArrayOutputStream();
+    dbp.exportTable("names", ExportWriter.Format.NDJSON, ndjson);
+    assertTrue(ndjson.toString(StandardCharsets.UTF_8).startsWith("{\"id\":1,"
+        + "\"name\":\"Petr Dillingstone\",\"email\":\"pdillingstone0@nationalgeographic.com\"}\n"));
+    assertThrows(SQLException.class,
+        () -> dbp.exportTable("nope", ExportWriter.Format.CSV, OutputStream.nullOutputStream()));
+    assertEquals(ExportWriter.Format.NDJSON, ExportWriter.Format.of("jsonl"));
+    assertNull(ExportWriter.Format.of("xml"));
+    dbp.close();
+  }
+}
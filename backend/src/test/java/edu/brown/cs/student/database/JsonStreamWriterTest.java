@@ -0,0 +1,88 @@
+package edu.brown.cs.student.database;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
+
+public class JsonStreamWriterTest {
+  @Test
+  public void testWriteRows() throws SQLException, ClassNotFoundException, FileNotFoundException,
+      IOException {
+    DatabaseProxy dbp = new DatabaseProxy("data/proj1_rec_data/sql/data.sqlite3");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JsonStreamWriter(out, false).write(dbp.executeQuery("SELECT * FROM names LIMIT 1"));
+    assertEquals("[{\"id\":\"1\",\"name\":\"Petr Dillingstone\","
+            + "\"email\":\"pdillingstone0@nationalgeographic.com\"}]",
+        out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testStreamCompact() throws SQLException, ClassNotFoundException,
+      FileNotFoundException, IOException {
+    DatabaseProxy dbp = new DatabaseProxy("data/proj1_rec_data/sql/data.sqlite3");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    JsonStreamWriter writer = new JsonStreamWriter(out, true);
+    dbp.streamQuery("SELECT id, name FROM names LIMIT 2", List.of(), writer::write);
+    assertEquals("{\"columns\":[\"id\",\"name\"],"
+            + "\"rows\":[[\"1\",\"Petr Dillingstone\"],[\"2\",\"Gerri Enterle\"]]}",
+        out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testNulls() throws SQLException, ClassNotFoundException, FileNotFoundException,
+      IOException {
+    DatabaseProxy dbp = new DatabaseProxy("data/proj1_rec_data/sql/data.sqlite3");
+    String query = "SELECT NULL AS a, '1' AS b, NULL AS c, '2' AS d, NULL AS e";
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    new JsonStreamWriter(out, false).write(dbp.executeQuery(query));
+    assertEquals("[{\"b\":\"1\",\"d\":\"2\"}]", out.toString(StandardCharsets.UTF_8));
+
+    out.reset();
+    dbp.streamQuery(query, List.of(), new JsonStreamWriter(out, false)::write);
+    assertEquals("[{\"b\":\"1\",\"d\":\"2\"}]", out.toString(StandardCharsets.UTF_8));
+
+    out.reset();
+    dbp.streamQuery(query, List.of(), new JsonStreamWriter(out, true)::write);
+    assertEquals("{\"columns\":[\"a\",\"b\",\"c\",\"d\",\"e\"],"
+        + "\"rows\":[[null,\"1\",null,\"2\",null]]}", out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testStreamTable() throws SQLException, ClassNotFoundException,
+      FileNotFoundException, IOException {
+    DatabaseProxy dbp = new DatabaseProxy("data/proj1_rec_data/sql/data.sqlite3");
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    assertEquals(60, dbp.streamTable("names", new JsonStreamWriter(out, true)));
+    assertTrue(out.toString(StandardCharsets.UTF_8)
+        .startsWith("{\"columns\":[\"_rowid\",\"id\",\"name\",\"email\"],"
+            + "\"rows\":[[2,\"1\",\"Petr Dillingstone\","));
+
+    // the streamed rows match the cached encoding of the whole table
+    out.reset();
+    dbp.streamTable("names", new JsonStreamWriter(out, false));
+    String rows = out.toString(StandardCharsets.UTF_8);
+    assertTrue(rows.startsWith("[{\"_rowid\":2,\"id\":\"1\",\"name\":"));
+    assertEquals(new String(dbp.getEncodedTable("names", false).getBody(),
+        StandardCharsets.UTF_8), rows);
+
+    JsonStreamWriter writer = new JsonStreamWriter(new ByteArrayOutputStream(), false);
+    assertThrows(SQLException.class, () -> dbp.streamTable("names; DELETE FROM names", writer));
+    assertThrows(SQLException.class, () -> dbp.streamTable("names\" WHERE \"1", writer));
+    dbp.changePermissions("names", "W");
+    assertThrows(SQLException.class, () -> dbp.streamTable("names", writer));
+  }
+
+  @Test
+  public void testQuote() {
+    assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", JsonStreamWriter.quote("a\"b\\c\nd\u0001"));
+  }
+}
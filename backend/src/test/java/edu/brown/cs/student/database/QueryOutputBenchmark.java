@@ -0,0 +1,117 @@
+package edu.brown.cs.student.database;
+
+import org.json.JSONException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks reading a whole table into a QueryOutput and converting it to each of its output
+ * forms, for tables of 1k, 100k and 1M rows.
+ * @author Justin Rhee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class QueryOutputBenchmark {
+  private static final String QUERY = "SELECT * FROM people";
+
+  @Param({"1000", "100000", "1000000"})
+  private int rows;
+
+  private Connection conn;
+  private QueryOutput output;
+
+  /**
+   * Opens the generated database and reads the table once, for the conversion benchmarks.
+   *
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  @Setup
+  public void setUp() throws SQLException {
+    conn = DriverManager.getConnection("jdbc:sqlite:" + BenchmarkDatabases.path(rows));
+    output = new QueryOutput(conn, QUERY, false);
+  }
+
+  /**
+   * Closes the database.
+   *
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  @TearDown
+  public void tearDown() throws SQLException {
+    conn.close();
+  }
+
+  /**
+   * Runs the query and reads every row of its ResultSet into columns.
+   *
+   * @return the output read
+   * @throws SQLException exception thrown by invalid SQL operations
+   */
+  @Benchmark
+  public QueryOutput read() throws SQLException {
+    return new QueryOutput(conn, QUERY, false);
+  }
+
+  /**
+   * Converts the output to a JSON array of row objects.
+   *
+   * @return the JSON
+   * @throws JSONException thrown if JSON error
+   */
+  @Benchmark
+  public String toJSON() throws JSONException {
+    return output.toJSON();
+  }
+
+  /**
+   * Converts the output to a JSON object of rows keyed by their first column.
+   *
+   * @return the JSON
+   * @throws JSONException thrown if JSON error
+   */
+  @Benchmark
+  public String toJSONWithKey() throws JSONException {
+    return output.toJSONWithKey();
+  }
+
+  /**
+   * Converts the output to a map of rows keyed by their first column.
+   *
+   * @return the map
+   */
+  @Benchmark
+  public Map<String, List<String>> toMap() {
+    return output.toMap();
+  }
+
+  /**
+   * Converts the output to the tab-separated text the REPL prints.
+   *
+   * @return the text
+   */
+  @Benchmark
+  public String toText() {
+    return output.toString();
+  }
+}
@@ -4,13 +4,22 @@ import org.json.JSONException;
 import org.junit.Test;
 
 import java.io.FileNotFoundException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertThrows;
+import static org.junit.Assert.assertTrue;
 
 public class QueryOutputTest {
 
@@ -69,4 +78,75 @@ public class QueryOutputTest {
             "\"email\":\"pdillingstone0@nationalgeographic.com\"}]",
         output.toJSONWithKey());
   }
+
+  @Test
+  public void testColumnTypes() throws SQLException {
+    Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+    Statement stat = conn.createStatement();
+    stat.executeUpdate("CREATE TABLE t (n INTEGER, r REAL, s TEXT, mixed INTEGER)");
+    stat.executeUpdate("INSERT INTO t VALUES (1, 2.5, 'one', 3), (NULL, NULL, NULL, 'four')");
+    QueryOutput output = new QueryOutput(conn, "SELECT * FROM t", false);
+    assertTrue(output.getColumn(0) instanceof LongColumn);
+    assertTrue(output.getColumn(1) instanceof DoubleColumn);
+    assertTrue(output.getColumn(2) instanceof StringColumn);
+    assertTrue(output.getColumn(3) instanceof StringColumn);
+    assertEquals("[[n, r, s, mixed], [1, 2.5, one, 3], [null, null, null, four]]",
+        output.toList().toString());
+    assertEquals(2, output.getRowCount());
+    assertNull(output.getString(1, 0));
+  }
+
+  @Test
+  public void testBindParams() throws SQLException, ClassNotFoundException,
+      FileNotFoundException {
+    DatabaseProxy dbp = new DatabaseProxy("data/proj1_rec_data/sql/data.sqlite3");
+    QueryOutput output = dbp.executeQuery("SELECT typeof(?), typeof(?)", List.of(5L, "5"));
+    assertEquals("[[typeof(?), typeof(?)], [integer, text]]", output.toList().toString());
+  }
+
+  @Test
+  public void testRealText() throws SQLException {
+    Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+    Statement stat = conn.createStatement();
+    stat.executeUpdate("CREATE TABLE t (r REAL)");
+    stat.executeUpdate("INSERT INTO t VALUES (0.1 + 0.2), (1e20), (100), (-1.5e-7), "
+        + "(193770185837490.5), (1.7976931348623157e308), (4.9e-324)");
+    QueryOutput output = new QueryOutput(conn, "SELECT r FROM t", false);
+    assertTrue(output.getColumn(0) instanceof DoubleColumn);
+    assertEquals("[[r], [0.3], [1.0e+20], [100.0], [-1.5e-07], [193770185837490.0], "
+        + "[1.79769313486232e+308], [4.94065645841247e-324]]", output.toList().toString());
+
+    // the same text SQLite gives a streamed read, which takes each value with getString
+    try (ResultSet rs = stat.executeQuery("SELECT r FROM t")) {
+      for (int row = 0; rs.next(); row++) {
+        assertEquals(rs.getString(1), output.getString(row, 0));
+      }
+    }
+  }
+
+  @Test
+  public void testSortOrder() throws SQLException {
+    Connection conn = DriverManager.getConnection("jdbc:sqlite::memory:");
+    Statement stat = conn.createStatement();
+    stat.executeUpdate("CREATE TABLE t (num TEXT, word TEXT, n INTEGER)");
+    stat.executeUpdate("INSERT INTO t VALUES ('10', 'b', 1), ('9', 'a', 2), (NULL, 'b', 3), "
+        + "(' 2 ', 'B', 2)");
+    QueryOutput output = new QueryOutput(conn, "SELECT * FROM t", false);
+
+    // numeric text is sorted as numbers, and nulls come first
+    int[] order = output.getSortOrder(List.of(new SortKey("num", true)));
+    assertArrayEquals(new int[] {2, 3, 1, 0}, order);
+    assertSame(order, output.getSortOrder(List.of(new SortKey("num", true))));
+    assertArrayEquals(new int[] {0, 1, 3, 2},
+        output.getSortOrder(List.of(new SortKey("num", false))));
+    // other text is sorted lexicographically, with ties in their original order
+    assertArrayEquals(new int[] {3, 1, 0, 2},
+        output.getSortOrder(List.of(new SortKey("word", true))));
+    assertArrayEquals(new int[] {2, 0, 1, 3},
+        output.getSortOrder(List.of(new SortKey("word", false), new SortKey("n", false))));
+
+    QueryOutput page = output.select(order, 1, 3);
+    assertEquals("[[num, word, n], [ 2 , B, 2], [9, a, 2]]", page.toList().toString());
+    assertThrows(SQLException.class, () -> output.getSortOrder(List.of(new SortKey("x", true))));
+  }
 }
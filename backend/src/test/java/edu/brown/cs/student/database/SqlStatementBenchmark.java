@@ -0,0 +1,113 @@
+package edu.brown.cs.student.database;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the checks run before every query: classifying the SQL, with and without the
+ * memoized statements, and checking the permissions of the tables it names.
+ * @author Justin Rhee
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SqlStatementBenchmark {
+  private static final String READ = "SELECT p.name, o.label FROM people AS p "
+      + "JOIN other AS o ON o.id = p.id WHERE p.score > ? ORDER BY p.name LIMIT 100";
+  private static final String WRITE = "UPDATE people SET score = score + 1 WHERE id IN "
+      + "(SELECT id FROM other WHERE label = 'Label 1')";
+
+  private DatabaseProxy dbp;
+  private SqlStatement read;
+  private SqlStatement write;
+
+  /**
+   * Opens the smallest generated database with permissions that each check has to compare.
+   *
+   * @throws SQLException exception thrown by invalid SQL operations
+   * @throws IOException if the database cannot be copied
+   * @throws ClassNotFoundException if the SQLite driver is missing
+   */
+  @Setup
+  public void setUp() throws SQLException, IOException, ClassNotFoundException {
+    dbp = new DatabaseProxy(BenchmarkDatabases.copy(1000));
+    dbp.changePermissions("people", "RW");
+    dbp.changePermissions("other", "R");
+    read = SqlStatement.parse(READ);
+    write = SqlStatement.parse(WRITE);
+  }
+
+  /**
+   * Closes the database.
+   */
+  @TearDown
+  public void tearDown() {
+    dbp.close();
+  }
+
+  /**
+   * Classifies a read with a join.
+   *
+   * @return the classified statement
+   */
+  @Benchmark
+  public SqlStatement parseRead() {
+    return SqlStatement.parse(READ);
+  }
+
+  /**
+   * Classifies a write with a subquery.
+   *
+   * @return the classified statement
+   */
+  @Benchmark
+  public SqlStatement parseWrite() {
+    return SqlStatement.parse(WRITE);
+  }
+
+  /**
+   * Looks up a read that has already been classified.
+   *
+   * @return the memoized statement
+   */
+  @Benchmark
+  public SqlStatement memoizedRead() {
+    return SqlStatement.of(READ);
+  }
+
+  /**
+   * Checks the permissions of the tables a read names.
+   *
+   * @throws SQLException thrown when there is an invalid read or write to a table
+   */
+  @Benchmark
+  public void checkReadPermissions() throws SQLException {
+    dbp.checkPermissions(read);
+  }
+
+  /**
+   * Checks the permissions of the tables a write names.
+   *
+   * @throws SQLException thrown when there is an invalid read or write to a table
+   */
+  @Benchmark
+  public void checkWritePermissions() throws SQLException {
+    dbp.checkPermissions(write);
+  }
+}
@@ -0,0 +1,61 @@
+package edu.brown.cs.student.database;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SqlStatementTest {
+  @Test
+  public void testClassify() {
+    SqlStatement select = SqlStatement.parse("SELECT * FROM names JOIN skills ON names.id = 1");
+    assertEquals("SELECT", select.getCommand());
+    assertFalse(select.isWrite());
+
+    assertTrue(SqlStatement.parse("insert into names values (1)").isWrite());
+    assertTrue(SqlStatement.parse("CREATE TABLE t (a)").isSchemaChange());
+    assertTrue(SqlStatement.parse("PRAGMA journal_mode = WAL").isWrite());
+    assertFalse(SqlStatement.parse("PRAGMA table_info(names)").isWrite());
+    assertFalse(SqlStatement.parse("EXPLAIN DELETE FROM names").isWrite());
+
+    // the command of a WITH statement comes after its common table expressions
+    SqlStatement with = SqlStatement.parse(
+        "WITH old AS (SELECT id FROM names) DELETE FROM skills WHERE id IN old");
+    assertEquals("DELETE", with.getCommand());
+    assertTrue(with.isWrite());
+    assertEquals("SELECT", SqlStatement.parse(
+        "WITH RECURSIVE n(i) AS (SELECT 1 UNION ALL SELECT i + 1 FROM n) SELECT i FROM n")
+        .getCommand());
+  }
+
+  @Test
+  public void testLiteralsAndComments() {
+    SqlStatement statement = SqlStatement.parse(
+        "SELECT \"we\"\"ird\", [br acket], `tick` -- DELETE FROM names\n"
+            + "FROM names /* DROP TABLE names */ WHERE name = 'it''s; DELETE'");
+    assertFalse(statement.isWrite());
+    assertEquals(List.of("SELECT", "we\"ird", "br acket", "tick", "FROM", "names", "WHERE",
+        "name"), statement.getWords());
+  }
+
+  @Test
+  public void testPermissions() {
+    SqlStatement statement = SqlStatement.parse(
+        "INSERT INTO names SELECT * FROM skills JOIN traits ON 1");
+    List<String> references = statement.getReferences();
+    List<String> permissions = statement.getPermissions();
+    assertEquals("W", permissions.get(references.indexOf("names")));
+    assertEquals("R", permissions.get(references.indexOf("skills")));
+    assertEquals("R", permissions.get(references.indexOf("traits")));
+  }
+
+  @Test
+  public void testMemoized() {
+    String sql = "SELECT * FROM names WHERE id = ?";
+    assertSame(SqlStatement.of(sql), SqlStatement.of(new String(sql)));
+  }
+}
@@ -0,0 +1,511 @@
+package edu.brown.cs.student.loadtest;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import edu.brown.cs.student.database.ProxyConfig;
+import edu.brown.cs.student.main.Main;
+import joptsimple.OptionException;
+import joptsimple.OptionParser;
+import joptsimple.OptionSet;
+import org.HdrHistogram.Histogram;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the Spark server. It starts the server on a local port, or uses one already
+ * running, and sends a mix of get_db, get_table, insert, update and delete requests at a fixed
+ * rate from a pool of concurrent clients, then reports the throughput and the latency
+ * percentiles of each kind of request.
+ *
+ * <p>Requests are sent on a schedule, not one after another: request i is due at i / rate
+ * seconds, whether or not the earlier ones have completed. Latencies are measured from when each
+ * request was due, so when the server falls behind, the time requests spend waiting for a client
+ * is counted instead of silently lowering the rate. The time from sending to the response is
+ * reported too, for comparison.
+ *
+ * <p>Run it with "mvn -Ploadtest test", passing options in loadtest.args.
+ * @author Justin Rhee
+ */
+public final class LoadGenerator {
+  private static final int DEFAULT_PORT = 4590;
+  private static final String DEFAULT_DB = "data/proj1_rec_data/sql/data.sqlite3";
+  private static final String DEFAULT_MIX = "get_table=60,update=15,insert=10,delete=10,get_db=5";
+  private static final String SESSION = "loadtest";
+  private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+  private static final double MICROS_PER_MILLI = 1000.0;
+  private static final int REQUEST_TIMEOUT_SECONDS = 60;
+  private static final int DRAIN_TIMEOUT_SECONDS = 120;
+  // a response this long or longer is a result, not the -1 or error of a failed request
+  private static final int MAX_ERROR_BODY = 64;
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  private final HttpClient client;
+  private final URI base;
+  private final Workload workload;
+  private final Map<Operation, OperationStats> stats = new EnumMap<>(Operation.class);
+  private final boolean compressed;
+  private final AtomicLong lastDone = new AtomicLong();
+
+  /**
+   * Constructs a load generator.
+   *
+   * @param client client to send requests with
+   * @param base URI of the server
+   * @param workload requests to send
+   * @param compressed whether to ask for compressed responses
+   */
+  private LoadGenerator(HttpClient client, URI base, Workload workload, boolean compressed) {
+    this.client = client;
+    this.base = base;
+    this.workload = workload;
+    this.compressed = compressed;
+    for (Operation operation : Operation.values()) {
+      stats.put(operation, new OperationStats());
+    }
+  }
+
+  /**
+   * Runs the load test.
+   *
+   * @param args command line options; --help lists them
+   */
+  public static void main(String[] args) {
+    OptionParser parser = new OptionParser();
+    parser.accepts("help");
+    parser.accepts("port").withRequiredArg().ofType(Integer.class).defaultsTo(DEFAULT_PORT);
+    parser.accepts("url").withRequiredArg();
+    parser.accepts("db").withRequiredArg().defaultsTo(DEFAULT_DB);
+    parser.accepts("table").withRequiredArg().defaultsTo("names");
+    parser.accepts("rate").withRequiredArg().ofType(Double.class).defaultsTo(200.0);
+    parser.accepts("duration-seconds").withRequiredArg().ofType(Integer.class).defaultsTo(30);
+    parser.accepts("warmup-seconds").withRequiredArg().ofType(Integer.class).defaultsTo(5);
+    parser.accepts("clients").withRequiredArg().ofType(Integer.class).defaultsTo(32);
+    parser.accepts("mix").withRequiredArg().defaultsTo(DEFAULT_MIX);
+    parser.accepts("seed-rows").withRequiredArg().ofType(Integer.class).defaultsTo(500);
+    parser.accepts("page-size").withRequiredArg().ofType(Integer.class).defaultsTo(0);
+    parser.accepts("compressed");
+    parser.accepts("histogram-dir").withRequiredArg();
+
+    boolean started = false;
+    try {
+      OptionSet options = parser.parse(args);
+      if (options.has("help")) {
+        parser.printHelpOn(System.out);
+        return;
+      }
+      Map<Operation, Integer> mix = parseMix((String) options.valueOf("mix"));
+      double rate = (double) options.valueOf("rate");
+      int clients = (int) options.valueOf("clients");
+      if (rate <= 0 || clients <= 0) {
+        throw new IllegalArgumentException("rate and clients must be positive");
+      }
+
+      // without a url, the server is started here, on a copy of the database it may write to
+      String db = (String) options.valueOf("db");
+      URI base;
+      if (options.has("url")) {
+        base = URI.create((String) options.valueOf("url"));
+      } else {
+        db = copyDatabase(db);
+        int port = (int) options.valueOf("port");
+        Main.startServer(port, new ProxyConfig(), false);
+        started = true;
+        base = URI.create("http://localhost:" + port);
+      }
+
+      HttpClient client = HttpClient.newBuilder()
+          .connectTimeout(Duration.ofSeconds(REQUEST_TIMEOUT_SECONDS))
+          .executor(Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "loadtest-http");
+            thread.setDaemon(true);
+            return thread;
+          }))
+          .build();
+      LoadGenerator generator = prepare(client, base, db, (String) options.valueOf("table"),
+          (int) options.valueOf("page-size"), options.has("compressed"),
+          (int) options.valueOf("seed-rows"));
+      int warmup = (int) options.valueOf("warmup-seconds");
+      int duration = (int) options.valueOf("duration-seconds");
+      long elapsed = generator.run(mix, rate, clients, warmup, duration);
+
+      System.out.printf("Load test of %s: %s requests/s for %d s after %d s of warmup, %d "
+          + "clients, mix %s%n", base, format(rate), duration, warmup, clients,
+          options.valueOf("mix"));
+      generator.report(System.out, elapsed, rate);
+      if (options.has("histogram-dir")) {
+        generator.writeHistograms(new File((String) options.valueOf("histogram-dir")));
+      }
+    } catch (OptionException | IllegalArgumentException | IOException e) {
+      System.out.println("ERROR: " + e.getMessage());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      System.out.println("ERROR: Load test was interrupted");
+    } finally {
+      if (started) {
+        Main.stopServer();
+      }
+    }
+    // the server leaves threads behind that would keep the JVM running
+    System.exit(0);
+  }
+
+  /**
+   * Parses a mix of operations, such as get_table=60,update=20,insert=20.
+   *
+   * @param mix comma-separated operation names with relative weights
+   * @return weight of each operation in the mix
+   */
+  static Map<Operation, Integer> parseMix(String mix) {
+    Map<Operation, Integer> weights = new EnumMap<>(Operation.class);
+    for (String part : mix.split(",")) {
+      String[] pair = part.split("=");
+      Operation operation = Operation.of(pair[0]);
+      if (operation == null || pair.length != 2) {
+        throw new IllegalArgumentException("Unknown operation in mix: " + part);
+      }
+      int weight = Integer.parseInt(pair[1].trim());
+      if (weight < 0) {
+        throw new IllegalArgumentException("Negative weight in mix: " + part);
+      }
+      weights.merge(operation, weight, Integer::sum);
+    }
+    if (weights.values().stream().mapToInt(Integer::intValue).sum() == 0) {
+      throw new IllegalArgumentException("Mix has no operations");
+    }
+    return weights;
+  }
+
+  /**
+   * Copies a database to a temporary file, so that the load test does not change it.
+   *
+   * @param path path to the database
+   * @return absolute path to the copy, which is deleted when the JVM exits
+   * @throws IOException if the database does not exist or cannot be copied
+   */
+  private static String copyDatabase(String path) throws IOException {
+    File original = new File(path);
+    if (!original.isFile()) {
+      throw new FileNotFoundException("No such database: " + path);
+    }
+    File copy = File.createTempFile("loadtest", ".sqlite3");
+    copy.deleteOnExit();
+    Files.copy(original.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    return copy.getAbsolutePath();
+  }
+
+  /**
+   * Loads the database on the server, reads the columns of the table and inserts the rows that
+   * updates and deletes start from. None of these requests are measured.
+   *
+   * @param client client to send requests with
+   * @param base URI of the server
+   * @param db path of the database, as the server sees it
+   * @param table name of the table to read and write
+   * @param pageSize rows per page read by get_table, or 0 to read the whole table
+   * @param compressed whether to ask for compressed responses
+   * @param seedRows number of rows to insert before the test
+   * @return a load generator ready to run
+   * @throws IOException if a request fails
+   * @throws InterruptedException if interrupted while waiting for a response
+   */
+  private static LoadGenerator prepare(HttpClient client, URI base, String db, String table,
+                                       int pageSize, boolean compressed, int seedRows)
+      throws IOException, InterruptedException {
+    Workload loader = new Workload(db, table, List.of(), List.of(), pageSize);
+    LoadGenerator setup = new LoadGenerator(client, base, loader, false);
+    Workload.Call load = loader.next(Operation.GET_DB);
+    HttpResponse<String> loaded = client.send(setup.request(load), HttpResponse.BodyHandlers
+        .ofString());
+    if (loaded.statusCode() != 200 || !loaded.body().contains(table)) {
+      throw new IOException("Could not load table " + table + " from " + db + ": "
+          + loaded.body());
+    }
+
+    URI schemaUri = base.resolve("/schema?table="
+        + URLEncoder.encode(table, StandardCharsets.UTF_8));
+    HttpResponse<String> schema = client.send(HttpRequest.newBuilder(schemaUri)
+        .header("X-Session-Id", SESSION).build(), HttpResponse.BodyHandlers.ofString());
+    List<String> columns = new ArrayList<>();
+    List<String> types = new ArrayList<>();
+    JsonArray columnArray = JsonParser.parseString(schema.body()).getAsJsonObject()
+        .getAsJsonObject("table").getAsJsonArray("columns");
+    for (JsonElement element : columnArray) {
+      JsonObject column = element.getAsJsonObject();
+      columns.add(column.get("name").getAsString());
+      types.add(column.get("type").getAsString());
+    }
+
+    Workload workload = new Workload(db, table, columns, types, pageSize);
+    LoadGenerator generator = new LoadGenerator(client, base, workload, compressed);
+    for (int i = 0; i < seedRows; i++) {
+      Workload.Call insert = workload.next(Operation.INSERT);
+      HttpResponse<String> inserted = client.send(generator.request(insert),
+          HttpResponse.BodyHandlers.ofString());
+      boolean ok = inserted.statusCode() == 200 && inserted.body().equals("1");
+      if (!ok) {
+        throw new IOException("Could not insert into " + table + ": " + inserted.body());
+      }
+      workload.completed(insert, true);
+    }
+    return generator;
+  }
+
+  /**
+   * Builds the HTTP request of a call.
+   *
+   * @param call the call
+   * @return POST request to the route of its operation
+   */
+  private HttpRequest request(Workload.Call call) {
+    HttpRequest.Builder builder = HttpRequest.newBuilder(base.resolve(
+        call.getOperation().getPath()))
+        .timeout(Duration.ofSeconds(REQUEST_TIMEOUT_SECONDS))
+        .header("Content-Type", "application/json")
+        .header("X-Session-Id", SESSION)
+        .POST(HttpRequest.BodyPublishers.ofString(call.getBody()));
+    if (compressed) {
+      builder.header("Accept-Encoding", "gzip");
+    }
+    return builder.build();
+  }
+
+  /**
+   * Sends requests on schedule, then waits for the last of them to complete.
+   *
+   * @param mix weight of each operation
+   * @param rate requests per second
+   * @param clients number of requests that may be in flight at once
+   * @param warmupSeconds seconds to send requests before measuring them
+   * @param durationSeconds seconds to send measured requests
+   * @return nanoseconds from the first measured request being due to the last completing
+   * @throws InterruptedException if interrupted while waiting for requests to complete
+   */
+  private long run(Map<Operation, Integer> mix, double rate, int clients, int warmupSeconds,
+                   int durationSeconds) throws InterruptedException {
+    List<Operation> operations = new ArrayList<>(mix.keySet());
+    int[] cumulative = new int[operations.size()];
+    int total = 0;
+    for (int i = 0; i < operations.size(); i++) {
+      total += mix.get(operations.get(i));
+      cumulative[i] = total;
+    }
+    // seeded, so that runs with the same options send the same sequence of requests
+    Random random = new Random(0);
+    ExecutorService pool = Executors.newFixedThreadPool(clients, r -> {
+      Thread thread = new Thread(r, "loadtest-client");
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    long start = System.nanoTime();
+    long measureFrom = start + warmupSeconds * NANOS_PER_SECOND;
+    long end = measureFrom + durationSeconds * NANOS_PER_SECOND;
+    for (long i = 0;; i++) {
+      long due = start + (long) (i * NANOS_PER_SECOND / rate);
+      if (due >= end) {
+        break;
+      }
+      long wait;
+      while ((wait = due - System.nanoTime()) > 0) {
+        LockSupport.parkNanos(wait);
+      }
+      int pick = random.nextInt(total);
+      int index = 0;
+      while (cumulative[index] <= pick) {
+        index++;
+      }
+      Operation operation = operations.get(index);
+      boolean measured = due >= measureFrom;
+      // queued behind busy clients when the server falls behind, and measured from due either way
+      pool.execute(() -> this.send(operation, due, measured));
+    }
+    pool.shutdown();
+    if (!pool.awaitTermination(DRAIN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      System.out.println("ERROR: Requests still running after " + DRAIN_TIMEOUT_SECONDS + " s");
+      pool.shutdownNow();
+    }
+    return Math.max(end, lastDone.get()) - measureFrom;
+  }
+
+  /**
+   * Sends one request and records its latency, on a client thread.
+   *
+   * @param operation operation to request
+   * @param due System.nanoTime when the request was due
+   * @param measured whether to record the request, which is false during warmup
+   */
+  private void send(Operation operation, long due, boolean measured) {
+    OperationStats operationStats = stats.get(operation);
+    Workload.Call call = workload.next(operation);
+    if (call == null) {
+      if (measured) {
+        operationStats.skip();
+      }
+      return;
+    }
+    long sent = System.nanoTime();
+    boolean ok;
+    try {
+      HttpResponse<byte[]> response = client.send(this.request(call),
+          HttpResponse.BodyHandlers.ofByteArray());
+      byte[] body = response.body();
+      ok = response.statusCode() == 200;
+      if (ok && body.length < MAX_ERROR_BODY) {
+        String text = new String(body, StandardCharsets.UTF_8);
+        ok = !text.equals("-1") && !text.contains("\"error\"");
+      }
+    } catch (IOException e) {
+      ok = false;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      ok = false;
+    }
+    long done = System.nanoTime();
+    workload.completed(call, ok);
+    if (measured) {
+      operationStats.record(due, sent, done, ok);
+      lastDone.accumulateAndGet(done, Math::max);
+    }
+  }
+
+  /**
+   * Prints the throughput and latencies of the measured requests.
+   *
+   * @param out stream to print to
+   * @param elapsedNanos nanoseconds the measured requests took
+   * @param rate requests per second that were scheduled
+   */
+  private void report(PrintStream out, long elapsedNanos, double rate) {
+    Histogram allResponse = new Histogram(3);
+    Histogram allService = new Histogram(3);
+    long errors = 0;
+    long skipped = 0;
+    for (OperationStats operationStats : stats.values()) {
+      allResponse.add(operationStats.getResponseTime());
+      allService.add(operationStats.getServiceTime());
+      errors += operationStats.getErrors();
+      skipped += operationStats.getSkipped();
+    }
+    double seconds = (double) elapsedNanos / NANOS_PER_SECOND;
+    double throughput = allResponse.getTotalCount() / seconds;
+    out.printf("Completed %d requests in %.2f s: %s requests/s (%.0f%% of the target rate), "
+        + "%d errors, %d skipped%n", allResponse.getTotalCount(), seconds, format(throughput),
+        100 * throughput / rate, errors, skipped);
+    out.printf("Rows left for updates and deletes: %d%n", workload.getPoolSize());
+
+    out.println();
+    out.println("Response time in ms, from when each request was due "
+        + "(corrected for coordinated omission):");
+    this.printTable(out, true, allResponse);
+    out.println();
+    out.println("Service time in ms, from when each request was sent:");
+    this.printTable(out, false, allService);
+  }
+
+  /**
+   * Prints one table of latency percentiles, with a row per operation and one for all of them.
+   *
+   * @param out stream to print to
+   * @param response whether to print response times rather than service times
+   * @param all histogram of every operation together
+   */
+  private void printTable(PrintStream out, boolean response, Histogram all) {
+    StringBuilder header = new StringBuilder(String.format("%-10s %8s %7s", "operation",
+        "count", "errors"));
+    for (double percentile : PERCENTILES) {
+      header.append(String.format(" %9s", "p" + format(percentile)));
+    }
+    out.println(header.append(String.format(" %9s", "max")));
+    for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+      OperationStats operationStats = entry.getValue();
+      Histogram histogram = response ? operationStats.getResponseTime()
+          : operationStats.getServiceTime();
+      if (histogram.getTotalCount() > 0) {
+        out.println(row(entry.getKey().getName(), histogram, operationStats.getErrors()));
+      }
+    }
+    long errors = 0;
+    for (OperationStats operationStats : stats.values()) {
+      errors += operationStats.getErrors();
+    }
+    out.println(row("all", all, errors));
+  }
+
+  /**
+   * Formats one row of a latency table.
+   *
+   * @param name name of the row
+   * @param histogram latencies in microseconds
+   * @param errors number of failed requests
+   * @return the row
+   */
+  private static String row(String name, Histogram histogram, long errors) {
+    StringBuilder row = new StringBuilder(String.format("%-10s %8d %7d", name,
+        histogram.getTotalCount(), errors));
+    for (double percentile : PERCENTILES) {
+      row.append(String.format(" %9.2f",
+          histogram.getValueAtPercentile(percentile) / MICROS_PER_MILLI));
+    }
+    return row.append(String.format(" %9.2f", histogram.getMaxValue() / MICROS_PER_MILLI))
+        .toString();
+  }
+
+  /**
+   * Writes the full percentile distribution of the response times of each operation, in the
+   * format of the HdrHistogram plotter, as one .hgrm file per operation.
+   *
+   * @param directory directory to write to, which is created if needed
+   * @throws IOException if a file cannot be written
+   */
+  private void writeHistograms(File directory) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Could not create " + directory);
+    }
+    for (Map.Entry<Operation, OperationStats> entry : stats.entrySet()) {
+      Histogram histogram = entry.getValue().getResponseTime();
+      if (histogram.getTotalCount() == 0) {
+        continue;
+      }
+      File file = new File(directory, entry.getKey().getName() + ".hgrm");
+      try (PrintStream out = new PrintStream(file, StandardCharsets.UTF_8)) {
+        histogram.outputPercentileDistribution(out, MICROS_PER_MILLI);
+      }
+    }
+    System.out.println("Wrote response time distributions to " + directory);
+  }
+
+  /**
+   * Formats a number without a fractional part when it is whole.
+   *
+   * @param value number to format
+   * @return the number as text
+   */
+  private static String format(double value) {
+    return value == Math.rint(value) ? String.valueOf((long) value)
+        : String.format("%.1f", value);
+  }
+}
@@ -0,0 +1,72 @@
+package edu.brown.cs.student.loadtest;
+
+import java.util.Locale;
+
+/**
+ * A kind of request the load test sends, named in the mix by the path of its route.
+ * @author Justin Rhee
+ */
+enum Operation {
+  GET_DB("/get_db", false),
+  GET_TABLE("/get_table", false),
+  INSERT("/insert", true),
+  UPDATE("/update", true),
+  DELETE("/delete", true);
+
+  private final String path;
+  private final boolean write;
+
+  /**
+   * Constructs an operation.
+   *
+   * @param path path of the route the operation requests
+   * @param write whether the operation writes to the table
+   */
+  Operation(String path, boolean write) {
+    this.path = path;
+    this.write = write;
+  }
+
+  /**
+   * Returns the path of the route the operation requests.
+   *
+   * @return path, starting with a slash
+   */
+  String getPath() {
+    return path;
+  }
+
+  /**
+   * Returns whether the operation writes to the table.
+   *
+   * @return true for inserts, updates and deletes
+   */
+  boolean isWrite() {
+    return write;
+  }
+
+  /**
+   * Returns the name of the operation in the mix and the report.
+   *
+   * @return path without the slash
+   */
+  String getName() {
+    return path.substring(1);
+  }
+
+  /**
+   * Finds an operation by name, ignoring case and a leading slash.
+   *
+   * @param name name of the operation, such as get_table
+   * @return the operation, or null if there is none by that name
+   */
+  static Operation of(String name) {
+    String lower = name.trim().toLowerCase(Locale.ROOT);
+    for (Operation operation : values()) {
+      if (operation.getName().equals(lower) || operation.path.equals(lower)) {
+        return operation;
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,90 @@
+package edu.brown.cs.student.loadtest;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and counts of the measured requests of one operation, recorded from many threads.
+ *
+ * <p>Two latencies are kept for each request. Response time runs from when the request was due
+ * by the schedule, so a request that waited for a free client because the server had fallen
+ * behind counts its wait too; this corrects for coordinated omission, which would otherwise hide
+ * exactly the slow periods. Service time runs from when the request was sent, as a closed-loop
+ * tool would measure it.
+ * @author Justin Rhee
+ */
+final class OperationStats {
+  private static final long HIGHEST_MICROS = TimeUnit.MINUTES.toMicros(10);
+  private static final int SIGNIFICANT_DIGITS = 3;
+
+  private final Histogram responseTime = new ConcurrentHistogram(HIGHEST_MICROS,
+      SIGNIFICANT_DIGITS);
+  private final Histogram serviceTime = new ConcurrentHistogram(HIGHEST_MICROS,
+      SIGNIFICANT_DIGITS);
+  private final LongAdder errors = new LongAdder();
+  private final LongAdder skipped = new LongAdder();
+
+  /**
+   * Records a completed request.
+   *
+   * @param dueNanos System.nanoTime when the request was due
+   * @param sentNanos System.nanoTime when it was sent
+   * @param doneNanos System.nanoTime when its response was read
+   * @param ok whether the server handled it successfully
+   */
+  void record(long dueNanos, long sentNanos, long doneNanos, boolean ok) {
+    responseTime.recordValue(Math.min(HIGHEST_MICROS,
+        TimeUnit.NANOSECONDS.toMicros(doneNanos - dueNanos)));
+    serviceTime.recordValue(Math.min(HIGHEST_MICROS,
+        TimeUnit.NANOSECONDS.toMicros(doneNanos - sentNanos)));
+    if (!ok) {
+      errors.increment();
+    }
+  }
+
+  /**
+   * Records a request that was not sent because there was no row for it to change.
+   */
+  void skip() {
+    skipped.increment();
+  }
+
+  /**
+   * Returns the response times, from when each request was due, in microseconds.
+   *
+   * @return histogram of response times
+   */
+  Histogram getResponseTime() {
+    return responseTime;
+  }
+
+  /**
+   * Returns the service times, from when each request was sent, in microseconds.
+   *
+   * @return histogram of service times
+   */
+  Histogram getServiceTime() {
+    return serviceTime;
+  }
+
+  /**
+   * Returns the number of requests that failed.
+   *
+   * @return number of errors
+   */
+  long getErrors() {
+    return errors.sum();
+  }
+
+  /**
+   * Returns the number of requests that were not sent.
+   *
+   * @return number of skipped requests
+   */
+  long getSkipped() {
+    return skipped.sum();
+  }
+}
@@ -0,0 +1,196 @@
+package edu.brown.cs.student.loadtest;
+
+import com.google.gson.Gson;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds the bodies of the requests of the load test, and keeps the rows it has inserted so that
+ * updates and deletes have rows to change.
+ *
+ * <p>Every row the load test writes has values that no other row has, so the server finds it by
+ * its values alone. A row being updated or deleted is taken out of the pool until its request
+ * completes, so no two requests change the same row at once; the load test never changes the
+ * rows that were in the table before it started.
+ * @author Justin Rhee
+ */
+final class Workload {
+  // far above the ids of the sample data, so generated keys do not collide with them
+  private static final long FIRST_VALUE = 1_000_000_000L;
+
+  private final Gson gson = new Gson();
+  private final String dbPath;
+  private final String table;
+  private final List<String> columns;
+  private final List<String> types;
+  private final int pageSize;
+  private final AtomicLong nextValue = new AtomicLong(FIRST_VALUE);
+  private final ConcurrentLinkedDeque<Map<String, Object>> rows = new ConcurrentLinkedDeque<>();
+
+  /**
+   * Constructs a workload.
+   *
+   * @param dbPath path of the database, as the server sees it
+   * @param table name of the table to read and write
+   * @param columns names of the columns of the table
+   * @param types declared types of the columns, in the same order
+   * @param pageSize rows per page read by get_table, or 0 to read the whole table
+   */
+  Workload(String dbPath, String table, List<String> columns, List<String> types, int pageSize) {
+    this.dbPath = dbPath;
+    this.table = table;
+    this.columns = columns;
+    this.types = types;
+    this.pageSize = pageSize;
+  }
+
+  /**
+   * A request to send, with the row it changes.
+   */
+  static final class Call {
+    private final Operation operation;
+    private final String body;
+    private final Map<String, Object> oldRow;
+    private final Map<String, Object> newRow;
+
+    /**
+     * Constructs a call.
+     *
+     * @param operation operation of the request
+     * @param body JSON body of the request
+     * @param oldRow row the request changes or deletes, or null
+     * @param newRow row the request inserts or updates to, or null
+     */
+    private Call(Operation operation, String body, Map<String, Object> oldRow,
+                 Map<String, Object> newRow) {
+      this.operation = operation;
+      this.body = body;
+      this.oldRow = oldRow;
+      this.newRow = newRow;
+    }
+
+    /**
+     * Returns the operation of the request.
+     *
+     * @return operation
+     */
+    Operation getOperation() {
+      return operation;
+    }
+
+    /**
+     * Returns the JSON body of the request.
+     *
+     * @return body
+     */
+    String getBody() {
+      return body;
+    }
+  }
+
+  /**
+   * Builds the next request of an operation.
+   *
+   * @param operation operation to request
+   * @return the call, or null if there is no row for an update or delete to change
+   */
+  Call next(Operation operation) {
+    Map<String, Object> body = new LinkedHashMap<>();
+    switch (operation) {
+      case GET_DB:
+        body.put("db_path", dbPath);
+        return new Call(operation, gson.toJson(body), null, null);
+      case GET_TABLE:
+        body.put("tb_name", table);
+        if (pageSize > 0) {
+          body.put("page_size", pageSize);
+        }
+        return new Call(operation, gson.toJson(body), null, null);
+      case INSERT:
+        Map<String, Object> inserted = this.newRow();
+        body.put("tb_name", table);
+        body.put("new_row", inserted);
+        return new Call(operation, gson.toJson(body), null, inserted);
+      case UPDATE:
+        Map<String, Object> old = rows.pollFirst();
+        if (old == null) {
+          return null;
+        }
+        Map<String, Object> updated = this.newRow();
+        body.put("tb_name", table);
+        body.put("old_row", old);
+        body.put("new_row", updated);
+        return new Call(operation, gson.toJson(body), old, updated);
+      default:
+        Map<String, Object> deleted = rows.pollFirst();
+        if (deleted == null) {
+          return null;
+        }
+        body.put("tb_name", table);
+        body.put("row", deleted);
+        return new Call(operation, gson.toJson(body), deleted, null);
+    }
+  }
+
+  /**
+   * Updates the pool of rows after a request completes.
+   *
+   * @param call the request
+   * @param ok whether the server made the change
+   */
+  void completed(Call call, boolean ok) {
+    switch (call.operation) {
+      case INSERT:
+        if (ok) {
+          rows.addLast(call.newRow);
+        }
+        break;
+      case UPDATE:
+        rows.addLast(ok ? call.newRow : call.oldRow);
+        break;
+      case DELETE:
+        if (!ok) {
+          rows.addLast(call.oldRow);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Returns the number of rows in the pool.
+   *
+   * @return number of rows that updates and deletes can change
+   */
+  int getPoolSize() {
+    return rows.size();
+  }
+
+  /**
+   * Makes a row with values no other row has, of the type of each column.
+   *
+   * @return values by column name
+   */
+  private Map<String, Object> newRow() {
+    long value = nextValue.getAndIncrement();
+    Map<String, Object> row = new LinkedHashMap<>();
+    for (int i = 0; i < columns.size(); i++) {
+      String type = types.get(i).toUpperCase(Locale.ROOT);
+      // the same rules SQLite uses to give a declared type its affinity
+      if (type.contains("INT")) {
+        row.put(columns.get(i), value);
+      } else if (type.contains("REAL") || type.contains("FLOA") || type.contains("DOUB")) {
+        row.put(columns.get(i), value + 0.5);
+      } else {
+        row.put(columns.get(i), "load-" + value + "-" + columns.get(i));
+      }
+    }
+    return row;
+  }
+}
@@ -0,0 +1,73 @@
+package edu.brown.cs.student.metrics;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsRegistryTest {
+  @Test
+  public void testCounterAndGauge() {
+    MetricsRegistry registry = new MetricsRegistry();
+    Counter hits = registry.counter("hits_total", "Hits.", "table", "a");
+    assertSame(hits, registry.counter("hits_total", "Hits.", "table", "a"));
+    hits.increment();
+    hits.add(2);
+    registry.counter("hits_total", "Hits.", "table", "b\"\\\n").increment();
+    Gauge open = registry.gauge("open", "Open things.\nTwo lines.");
+    open.increment();
+    open.increment();
+    open.decrement();
+
+    assertEquals("# HELP hits_total Hits.\n"
+        + "# TYPE hits_total counter\n"
+        + "hits_total{table=\"a\"} 3\n"
+        + "hits_total{table=\"b\\\"\\\\\\n\"} 1\n"
+        + "# HELP open Open things.\\nTwo lines.\n"
+        + "# TYPE open gauge\n"
+        + "open 1\n", registry.scrape());
+  }
+
+  @Test
+  public void testHistogram() {
+    MetricsRegistry registry = new MetricsRegistry();
+    Histogram latency = registry.histogram("latency_seconds", "Latency.",
+        new long[] {1_000_000L, 250_000_000L}, 1e9, "route", "/x");
+    latency.record(500_000L);
+    latency.record(1_000_000L);
+    latency.record(2_000_000L);
+    latency.record(2_000_000_000L);
+    assertEquals(4, latency.getCount());
+
+    assertEquals("# HELP latency_seconds Latency.\n"
+        + "# TYPE latency_seconds histogram\n"
+        + "latency_seconds_bucket{route=\"/x\",le=\"0.001\"} 2\n"
+        + "latency_seconds_bucket{route=\"/x\",le=\"0.25\"} 3\n"
+        + "latency_seconds_bucket{route=\"/x\",le=\"+Inf\"} 4\n"
+        + "latency_seconds_sum{route=\"/x\"} 2.0035\n"
+        + "latency_seconds_count{route=\"/x\"} 4\n", registry.scrape());
+  }
+
+  @Test
+  public void testUnlabelledHistogram() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.histogram("size_bytes", "Size.", new long[] {256}, 1).record(100);
+    String scrape = registry.scrape();
+    assertTrue(scrape.contains("size_bytes_bucket{le=\"256\"} 1\n"));
+    assertTrue(scrape.contains("size_bytes_sum 100\n"));
+    assertTrue(scrape.contains("size_bytes_count 1\n"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testTypeMismatch() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.counter("requests", "Requests.");
+    registry.gauge("requests", "Requests.");
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnpairedLabels() {
+    new MetricsRegistry().counter("requests_total", "Requests.", "method");
+  }
+}
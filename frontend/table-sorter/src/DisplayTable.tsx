@@ -1,6 +1,6 @@
 import React, { Component } from 'react';
 import './table.css'
-import {useState, useEffect} from 'react';
+import {useState, useEffect, useRef} from 'react';
 import axios from 'axios';
 // @ts-ignore
 import { AwesomeButton } from "react-awesome-button";
@@ -12,6 +12,14 @@ import InsertRow from './InsertRow';
 import TableRow from './TableRow';
 import { createImportSpecifier, ObjectFlags } from 'typescript';
 
+// number of rows requested per page; more pages are loaded as the table is scrolled
+const PAGE_SIZE = 100
+// distance in pixels below the window within which the next page is loaded
+const SCROLL_MARGIN = 500
+
+/* The column and direction a table is sorted by on the server */
+type SortKey = { column : string, ascending : boolean }
+
 /* This component is used to retreive, visualize, and modify the table data 
 @author Bumjin Joo
 @params dbName: name of the database to which we should connect
@@ -29,32 +37,54 @@ function DisplayTable(dbName : string, tableName : string, tableSel : boolean,
   headers: string[], setHeaders: React.Dispatch<React.SetStateAction<string[]>>,
   sort: boolean, setSort: React.Dispatch<React.SetStateAction<boolean>>, clear: () => void){
 
-  //update the headers once tabledata changes
+  //cursor of the next page of the table, or null once every row has been loaded
+  const [nextCursor, setNextCursor] = useState<number | null>(null)
+  //sort of the loaded pages, and a count of the times the first page was loaded
+  const pageSort = useRef<SortKey | null>(null)
+  const loads = useRef(0)
+
+  //update the headers once tabledata changes; null values are left out of a row, so every row is checked
   useEffect(() => {
-    if (tbData && tbData[0]) {setHeaders(Object.keys(tbData[0]))}
+    const keys = new Set<string>()
+    tbData.forEach((row) => Object.keys(row).forEach((key) => keys.add(key)))
+    keys.delete('_rowid')
+    if (keys.size > 0) {setHeaders(Array.from(keys))}
   }, [tbData])
 
-  //asynchronous post request to get the table data from the get_table endpoint 
-  const loadTable = async (dbName : string, tbName : string, tableSel : boolean) => {
-    if (tableSel) {
-      //build the json to send to the endpoint
-      const toSend = {
-        "db_path": 'data/' + dbName,
-        "tb_name": tbName
-      };
-
-      let config = {
-        headers: {
-          "Content-Type": "application/json",
-          'Access-Control-Allow-Origin': '*',
-        }
+  //asynchronous post request to get one page of the table data from the get_table endpoint
+  const fetchPage = (dbName : string, tbName : string, pageSize : number, cursor : number | null, sortKey : SortKey | null) => {
+    //build the json to send to the endpoint
+    const toSend = {
+      "db_path": 'data/' + dbName,
+      "tb_name": tbName,
+      "page_size": pageSize,
+      "cursor": cursor,
+      "sort": sortKey === null ? undefined : [sortKey]
+    };
+
+    let config = {
+      headers: {
+        "Content-Type": "application/json",
+        'Access-Control-Allow-Origin': '*',
       }
+    }
 
+    return axios.post('http://localhost:4567/get_table', toSend, config)
+  }
+
+  //load the first page of the table, with as many rows as are already shown so that reloading keeps them
+  const loadTable = async (dbName : string, tbName : string, tableSel : boolean, sortKey : SortKey | null = sort ? pageSort.current : null) => {
+    if (tableSel) {
+      const load = ++loads.current
       //await the response of retreiving the table
-      await axios.post('http://localhost:4567/get_table', toSend, config)
+      await fetchPage(dbName, tbName, Math.max(PAGE_SIZE, tbData.length), null, sortKey)
       .then(response => {
-        //update table data
-        setTBData(response.data);
+        if (load === loads.current) {
+          //update table data
+          pageSort.current = sortKey
+          setTBData(response.data['rows']);
+          setNextCursor(response.data['next_cursor']);
+        }
       })
       .catch(error => {
         console.log(error);
@@ -62,12 +92,54 @@ function DisplayTable(dbName : string, tableName : string, tableSel : boolean,
     }
   }
 
+  //sort the whole table on the server, since only some of its rows may be loaded
+  const sortTable = (header : string, ascend : boolean) => {
+    loadTable(dbName, tableName, tableSel, {column: header, ascending: ascend})
+  }
+
+  //load the next page once the end of the table comes near the bottom of the window
+  useEffect(() => {
+    //a page is only added to the rows it was requested after, so a page that arrives after the
+    //table was reloaded, sorted or cleared is dropped
+    let current = true
+    let loading = false
+    const loadNextPage = () => {
+      const tableDiv = document.getElementById('table-data')
+      if (nextCursor === null || tbData.length === 0 || loading || tableDiv === null
+        || tableDiv.getBoundingClientRect().bottom > window.innerHeight + SCROLL_MARGIN) {
+        return
+      }
+      loading = true
+      fetchPage(dbName, tableName, PAGE_SIZE, nextCursor, pageSort.current)
+      .then(response => {
+        if (current) {
+          setTBData(tbData.concat(response.data['rows']));
+          setNextCursor(response.data['next_cursor']);
+        }
+      })
+      .catch(error => {
+        loading = false
+        console.log(error);
+      });
+    }
+
+    //pages that do not fill the window are followed by the next one without waiting for a scroll
+    loadNextPage()
+    window.addEventListener('scroll', loadNextPage)
+    window.addEventListener('resize', loadNextPage)
+    return () => {
+      current = false
+      window.removeEventListener('scroll', loadNextPage)
+      window.removeEventListener('resize', loadNextPage)
+    }
+  }, [tbData, nextCursor, dbName, tableName])
+
   return (
     <div id='table-and-buttons'>
       {/* Create buttons to load and clear table */}
-      <div id='buttons'><AwesomeButton type="primary" onPress = {() => loadTable(dbName, tableName, tableSel)} >Load Table</AwesomeButton><AwesomeButton type="primary" onPress = {() => clear()} >Clear Table</AwesomeButton></div>
+      <div id='buttons'><AwesomeButton type="primary" onPress = {() => loadTable(dbName, tableName, tableSel)} >Load Table</AwesomeButton><AwesomeButton type="primary" onPress = {() => {loads.current++; clear()}} >Clear Table</AwesomeButton></div>
       {/* Create table! */}
-      <div id='table-data'>{Table(tbData, dbName, tableName, tableSel, headers, loadTable, sort, setSort)} </div>
+      <div id='table-data'>{Table(tbData, dbName, tableName, tableSel, headers, loadTable, sort, setSort, sortTable)} </div>
     </div>
   )
 }
@@ -82,11 +154,13 @@ This class represents the visualized table
 @params loadTable: a const used to fetch table data
 @params sort: a boolean describing whether the table data should be sorted or not
 @params setSort: a react hook used to set sort
+@params sortTable: a const used to fetch the table data sorted by a header
 */
 function Table(tableData : {}[], dbName : string, tbName : string, tableSel : boolean,
   headers : string[], 
   loadTable : (dbName: string, tbName: string, tableSel : boolean) => void, 
-  sort : boolean, setSort :  React.Dispatch<React.SetStateAction<boolean>>) {
+  sort : boolean, setSort :  React.Dispatch<React.SetStateAction<boolean>>,
+  sortTable : (header : string, ascend : boolean) => void) {
 
     const [editRow, setEditRow] = useState(-1)
     const [oldRow, setOldRow] = useState({})
@@ -96,34 +170,11 @@ function Table(tableData : {}[], dbName : string, tbName : string, tableSel : bo
 
     const storedTableData = tableData
 
-    const sortTable = (header : string, ascend : boolean) => {
-      storedTableData.sort((a,b) => 
-        {
-          {/* @ts-ignore */}
-          if (isNaN(Number(a[header])) || isNaN(Number(b[header]))) {
-          {if (!ascend) {
-            {/* @ts-ignore */}
-            return b[header].localeCompare(a[header])
-          } else {
-            {/* @ts-ignore */}
-            return a[header].localeCompare(b[header])
-          }}
-        } else {
-          if (ascend) {
-            {/* @ts-ignore */}
-            return Number(a[header]) - Number(b[header])
-          } else {
-            {/* @ts-ignore */}
-          return Number(b[header]) - Number(a[header])}
-        }}
-      )
-    }
-
     return (
       <div id="display-table">
         <table>
           <thead>
-            {storedTableData && storedTableData[0] && HeaderRow(storedTableData[0], sort, setSort, ascend, setAscend, sortHeader, setSortHeader, sortTable)}
+            {storedTableData && storedTableData[0] && HeaderRow(headers, sort, setSort, ascend, setAscend, sortHeader, setSortHeader, sortTable)}
           </thead>
           <tbody>
           {storedTableData.map((row, rowInd) =>  ((editRow === rowInd) ? (EditRow(dbName, tbName, tableSel, row, headers, loadTable, setEditRow, rowInd, newRow, oldRow, setOldRow)) : (TableRow(dbName, tbName, tableSel, row, headers, loadTable, editRow, setEditRow, rowInd, newRow, setOldRow))))}
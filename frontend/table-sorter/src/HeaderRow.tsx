@@ -9,7 +9,7 @@ import { createImportSpecifier, ObjectFlags } from 'typescript';
 
 /*
 This function represents the header row of the table
-@params row: the JavaScript object which maps headers to the row's entry / data
+@params headers: a string array of the headers of the table
 @params sort: a boolean describing whether the table data should be sorted or not
 @params setSort: a react hook used to set sort
 @params ascend: a boolean which describes if the data should be sorted in ascending order or not
@@ -18,7 +18,7 @@ This function represents the header row of the table
 @params setSortHeader: a React Hook used to set the value of sortHeader
 @params sorter: a const which sorts an array of rows 
 */
-function HeaderRow(row : {}, sort : boolean, setSort : React.Dispatch<React.SetStateAction<boolean>>, ascend : boolean, setAscend : React.Dispatch<React.SetStateAction<boolean>>, sortHeader : string, setSortHeader : React.Dispatch<React.SetStateAction<string>>, sorter :  (header: string, ascend : boolean) => void) {
+function HeaderRow(headers : string[], sort : boolean, setSort : React.Dispatch<React.SetStateAction<boolean>>, ascend : boolean, setAscend : React.Dispatch<React.SetStateAction<boolean>>, sortHeader : string, setSortHeader : React.Dispatch<React.SetStateAction<string>>, sorter :  (header: string, ascend : boolean) => void) {
   //this button switches whether the data should be sorted or not
   const sortButton = (sort : boolean, setSort : React.Dispatch<React.SetStateAction<boolean>>, setAscend : React.Dispatch<React.SetStateAction<boolean>>, header : string, setSortHeader : React.Dispatch<React.SetStateAction<string>>) => {
     setSort(!sort)
@@ -39,9 +39,8 @@ function HeaderRow(row : {}, sort : boolean, setSort : React.Dispatch<React.SetS
 
   return (
     <tr id="headers">
-      {/* Map an object to its keys (which in a table represents the headers) */}
-      {/* @ts-ignore */}
-      { Object.keys(row).map((key, headerInd) => 
+      {/* Map each header to its cell */}
+      { headers.map((key, headerInd) => 
         (<th id={"header " + headerInd} key={key}>
           {((!sort) || (key === sortHeader)) ? <AwesomeButton type="primary" onPress = {() => {sortButton(sort, setSort, setAscend, key, setSortHeader)}}>{key}</AwesomeButton> : key}
           {((sort) && (key === sortHeader)) ? <AwesomeButton type="secondary" onPress = {() => {ascendButton(sort, key, ascend, setAscend)}}>{ascend ? 	"\u25B2" : '\u25BC'}</AwesomeButton> : <></>}
@@ -69,8 +69,9 @@ function TableRow(dbName : string, tbName : string, tableSel : boolean,
 
   return ( 
     <tr id={'row ' + rowNum.toString()}>
+      {/* _rowid identifies the row in edits and deletes, and is not shown; cells follow the headers, since null values are left out of the row */}
       {/* @ts-ignore */}
-      { Object.keys(row).map((key) => (<td key={key}>{row[key]}</td>)) }
+      { headers.map((key) => (<td key={key}>{row[key]}</td>)) }
       {/* {editButton} */}
       {(editRow === -1) && <td id='edit-button'><AwesomeButton type="secondary" onPress = {() => {editButton(dbName, tbName)}} >Edit</AwesomeButton></td>}
       {(editRow === -1) && <td id='delete-button'><AwesomeButton type="secondary" onPress = {() => {deleteButton(dbName, tbName, row, headers)}} >Delete</AwesomeButton></td>}
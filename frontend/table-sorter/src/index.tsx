@@ -3,6 +3,12 @@ import ReactDOM from 'react-dom';
 import './index.css';
 import App from './App';
 import reportWebVitals from './reportWebVitals';
+import axios from 'axios';
+
+// every request names this page's session, so that other users do not switch its database
+const sessionBytes = new Uint8Array(16);
+crypto.getRandomValues(sessionBytes);
+axios.defaults.headers.common['X-Session-Id'] = Array.from(sessionBytes, (b) => ('0' + b.toString(16)).slice(-2)).join('');
 
 ReactDOM.render(
   <React.StrictMode>
@@ -14,6 +14,25 @@ let tbNames = [];
 let dbNames = ['horoscopes.sqlite3', 'kanban.sqlite3', 'movies.sqlite3'];
 let tableData;
 let columnNames = [];
+// Tables are loaded a page at a time, and more pages are loaded as the table is scrolled
+const PAGE_SIZE = 100;
+// Distance in pixels below the window within which the next page is loaded
+const SCROLL_MARGIN = 500;
+let currentTable = '';
+let nextCursor = null;
+let loadingPage = false;
+// Every request names this page's session, so that other users do not switch its database
+const sessionId = newSessionId();
+/**
+ * Creates a random id for the session of this page.
+ *
+ * @return session id
+ */
+function newSessionId() {
+    const bytes = new Uint8Array(16);
+    crypto.getRandomValues(bytes);
+    return Array.from(bytes, (b) => ('0' + b.toString(16)).slice(-2)).join('');
+}
 /**
  * Initializes the webpage.
  */
@@ -58,7 +77,7 @@ function connectDB() {
         const response = yield fetch('http://127.0.0.1:4567/get_db', {
             method: 'post',
             body: JSON.stringify(reqBody),
-            headers: { "Access-Control-Allow-Origin": "*" }
+            headers: { "Access-Control-Allow-Origin": "*", "X-Session-Id": sessionId }
         });
         currentDB = dbName;
         tbNames = (yield response.json())['tb_names'];
@@ -97,50 +116,138 @@ function removeChildren(element) {
     }
 }
 /**
- * Loads a table from a database.
+ * Fetches one page of a table from the backend.
+ *
+ * @param tbName name of the table
+ * @param cursor cursor returned with the previous page, or null for the first page
+ * @return the page
  */
-function loadTable() {
+function fetchPage(tbName, cursor) {
     return __awaiter(this, void 0, void 0, function* () {
-        const contentDiv = document.getElementById('content');
-        const tbSelector = document.getElementById('tb-selector');
-        const tbName = tbSelector.options[tbSelector.selectedIndex].value;
-        removeChildren(contentDiv);
         const reqBody = {
             db_path: 'data/' + currentDB,
-            tb_name: tbName
+            tb_name: tbName,
+            page_size: PAGE_SIZE,
+            cursor: cursor
         };
         const response = yield fetch('http://127.0.0.1:4567/get_table', {
             method: 'post',
             body: JSON.stringify(reqBody),
-            headers: { "Access-Control-Allow-Origin": "*" }
+            headers: { "Access-Control-Allow-Origin": "*", "X-Session-Id": sessionId }
         });
-        tableData = yield response.json();
+        return yield response.json();
+    });
+}
+/**
+ * Loads the first page of a table from a database, then as many more as fit in the window.
+ */
+function loadTable() {
+    return __awaiter(this, void 0, void 0, function* () {
+        const contentDiv = document.getElementById('content');
+        const tbSelector = document.getElementById('tb-selector');
+        const tbName = tbSelector.options[tbSelector.selectedIndex].value;
+        removeChildren(contentDiv);
+        currentTable = tbName;
+        nextCursor = null;
+        const page = yield fetchPage(tbName, null);
+        if (currentTable !== tbName) {
+            // another table was loaded while this page was on its way
+            return;
+        }
+        tableData = page.rows;
+        nextCursor = page.next_cursor;
         if (contentDiv != null) {
             const tableElt = document.createElement('table');
             contentDiv.appendChild(tableElt);
             const table = document.querySelector("table");
             columnNames = [];
-            let primaryKey = "";
-            for (let col in tableData[0]) {
-                if (col === "primary_key") {
-                    primaryKey = tableData[0][col];
-                }
-                else {
-                    columnNames.push(col);
-                }
-            }
-            if (primaryKey != "") {
-                columnNames.splice(columnNames.indexOf(primaryKey), 1);
-                columnNames.unshift(primaryKey);
-            }
+            addColumnNames(tableData);
             if (table != null) {
                 buildTableHeader(table, columnNames);
                 populateTable(table, tableData, columnNames);
             }
             updateModificationFields();
         }
+        yield loadVisiblePages();
+    });
+}
+/**
+ * Loads the next page of the current table and adds its rows to the end of the table.
+ *
+ * @return whether a page was loaded
+ */
+function loadNextPage() {
+    return __awaiter(this, void 0, void 0, function* () {
+        const table = document.querySelector("table");
+        if (nextCursor === null || loadingPage || table == null) {
+            return false;
+        }
+        loadingPage = true;
+        const tbName = currentTable;
+        try {
+            const page = yield fetchPage(tbName, nextCursor);
+            if (currentTable !== tbName || !table.isConnected) {
+                return false;
+            }
+            tableData = tableData.concat(page.rows);
+            nextCursor = page.next_cursor;
+            if (addColumnNames(page.rows)) {
+                // a column that was null in every earlier row needs a header of its own, so redraw
+                removeChildren(table);
+                buildTableHeader(table, columnNames);
+                populateTable(table, tableData, columnNames);
+                updateModificationFields();
+            }
+            else {
+                populateTable(table, page.rows, columnNames);
+            }
+            return true;
+        }
+        finally {
+            loadingPage = false;
+        }
     });
 }
+/**
+ * Loads pages of the current table until its end is below the bottom of the window, or every
+ * row is loaded.
+ */
+function loadVisiblePages() {
+    return __awaiter(this, void 0, void 0, function* () {
+        const contentDiv = document.getElementById('content');
+        while (contentDiv.getBoundingClientRect().bottom < window.innerHeight + SCROLL_MARGIN) {
+            if (!(yield loadNextPage())) {
+                return;
+            }
+        }
+    });
+}
+/**
+ * Adds the columns of some rows that are not yet in columnNames, with the primary key first.
+ *
+ * @param rows rows of the table
+ * @return whether any column was added
+ */
+function addColumnNames(rows) {
+    const count = columnNames.length;
+    let primaryKey = "";
+    // null values are left out of a row, so every row is checked for column names
+    for (let obj of rows) {
+        for (let col in obj) {
+            if (col === "primary_key") {
+                primaryKey = obj[col];
+            }
+            else if (col !== "_rowid" && !columnNames.includes(col)) {
+                columnNames.push(col);
+            }
+        }
+    }
+    if (primaryKey != "") {
+        columnNames.splice(columnNames.indexOf(primaryKey), 1);
+        columnNames.unshift(primaryKey);
+    }
+    return columnNames.length !== count;
+}
 /**
  * Constructs the header for a table.
  *
@@ -168,7 +275,8 @@ function populateTable(table, data, colNames) {
         let row = tableBody.insertRow();
         for (let name of colNames) {
             let td = document.createElement('td');
-            td.innerHTML = obj[name.toString()];
+            const value = obj[name.toString()];
+            td.innerHTML = value === undefined ? '' : value;
             row.appendChild(td);
         }
     }
@@ -178,7 +286,9 @@ function populateTable(table, data, colNames) {
  */
 function checkLoadedFromREPL() {
     return __awaiter(this, void 0, void 0, function* () {
-        const response = yield (yield fetch('http://127.0.0.1:4567/get_loaded')).json();
+        const response = yield (yield fetch('http://127.0.0.1:4567/get_loaded', {
+            headers: { "X-Session-Id": sessionId }
+        })).json();
         const regex = /\/.+\..+/g;
         const fromREPL = response['from_repl'];
         const loaded = response['loaded'];
@@ -193,7 +303,7 @@ function checkLoadedFromREPL() {
             const response = yield fetch('http://127.0.0.1:4567/get_db', {
                 method: 'post',
                 body: JSON.stringify(reqBody),
-                headers: { "Access-Control-Allow-Origin": "*" }
+                headers: { "Access-Control-Allow-Origin": "*", "X-Session-Id": sessionId }
             });
             currentDB = dbName;
             const dbIdx = dbNames.indexOf(dbName);
@@ -299,12 +409,18 @@ function main() {
     const tbClearButton = document.getElementById('clear-table');
     tbClearButton.addEventListener('click', () => {
         const contentDiv = document.getElementById('content');
+        currentTable = '';
+        nextCursor = null;
         removeChildren(contentDiv);
     });
+    window.addEventListener('scroll', loadVisiblePages);
+    window.addEventListener('resize', loadVisiblePages);
     const modSelector = document.getElementById('modification-selector');
     modSelector.addEventListener('change', updateModificationFields);
     const demoBtn = document.getElementById('demo-btn');
-    demoBtn.addEventListener('click', () => fetch('http://127.0.0.1:4567/demo'));
+    demoBtn.addEventListener('click', () => fetch('http://127.0.0.1:4567/demo', {
+        headers: { "X-Session-Id": sessionId }
+    }));
     setInterval(checkLoadedFromREPL, 1000);
 }
 main();
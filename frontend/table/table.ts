@@ -13,11 +13,22 @@ type dbRequestBody = {
 }
 
 /**
- * Type for requesting table data from a database.
+ * Type for requesting a page of table data from a database.
  */
 type tableRequestBody = {
   db_path : string;
   tb_name : string;
+  page_size : number;
+  cursor : number | null;
+}
+
+/**
+ * Type for a page of a table returned from the backend.
+ */
+type tablePage = {
+  rows : Array<tableObj>;
+  next_cursor : number | null;
+  total_rows : number;
 }
 
 /**
@@ -36,6 +47,28 @@ let dbNames : string[] = ['horoscopes.sqlite3', 'kanban.sqlite3', 'movies.sqlite
 let tableData : Array<tableObj>;
 let columnNames : Array<String> = [];
 
+// Tables are loaded a page at a time, and more pages are loaded as the table is scrolled
+const PAGE_SIZE : number = 100;
+// Distance in pixels below the window within which the next page is loaded
+const SCROLL_MARGIN : number = 500;
+let currentTable : string = '';
+let nextCursor : number | null = null;
+let loadingPage : boolean = false;
+
+// Every request names this page's session, so that other users do not switch its database
+const sessionId : string = newSessionId();
+
+/**
+ * Creates a random id for the session of this page.
+ *
+ * @return session id
+ */
+function newSessionId() : string {
+  const bytes = new Uint8Array(16);
+  crypto.getRandomValues(bytes);
+  return Array.from(bytes, (b) => ('0' + b.toString(16)).slice(-2)).join('');
+}
+
 /**
  * Initializes the webpage.
  */
@@ -87,7 +120,7 @@ async function connectDB() {
   const response = await fetch('http://127.0.0.1:4567/get_db', {
     method: 'post',
     body: JSON.stringify(reqBody),
-    headers: { "Access-Control-Allow-Origin":"*" }
+    headers: { "Access-Control-Allow-Origin":"*", "X-Session-Id": sessionId }
   });
   currentDB = dbName;
   tbNames = (await response.json())['tb_names'];
@@ -130,55 +163,139 @@ function removeChildren(element : HTMLElement) {
 }
 
 /**
- * Loads a table from a database.
+ * Fetches one page of a table from the backend.
+ *
+ * @param tbName name of the table
+ * @param cursor cursor returned with the previous page, or null for the first page
+ * @return the page
  */
-async function loadTable() : Promise<void> {
-  const contentDiv : HTMLElement = document.getElementById('content') as HTMLElement;
-  const tbSelector : HTMLSelectElement = document.getElementById('tb-selector') as HTMLSelectElement;
-  const tbName : string = tbSelector.options[tbSelector.selectedIndex].value;
-
-  removeChildren(contentDiv);
-
+async function fetchPage(tbName : string, cursor : number | null) : Promise<tablePage> {
   const reqBody : tableRequestBody = {
     db_path: 'data/' + currentDB,
-    tb_name: tbName
+    tb_name: tbName,
+    page_size: PAGE_SIZE,
+    cursor: cursor
   };
 
   const response = await fetch('http://127.0.0.1:4567/get_table', {
     method: 'post',
     body: JSON.stringify(reqBody),
-    headers: { "Access-Control-Allow-Origin":"*" }
+    headers: { "Access-Control-Allow-Origin":"*", "X-Session-Id": sessionId }
   });
+  return await response.json();
+}
 
-  tableData = await response.json();
+/**
+ * Loads the first page of a table from a database, then as many more as fit in the window.
+ */
+async function loadTable() : Promise<void> {
+  const contentDiv : HTMLElement = document.getElementById('content') as HTMLElement;
+  const tbSelector : HTMLSelectElement = document.getElementById('tb-selector') as HTMLSelectElement;
+  const tbName : string = tbSelector.options[tbSelector.selectedIndex].value;
+
+  removeChildren(contentDiv);
+  currentTable = tbName;
+  nextCursor = null;
+
+  const page : tablePage = await fetchPage(tbName, null);
+  if (currentTable !== tbName) {
+    // another table was loaded while this page was on its way
+    return;
+  }
+  tableData = page.rows;
+  nextCursor = page.next_cursor;
   if (contentDiv != null) {
     const tableElt : HTMLElement = document.createElement('table');
     contentDiv.appendChild(tableElt);
     const table : HTMLTableElement | null = document.querySelector("table");
     columnNames = [];
-    let primaryKey : String = "";
+    addColumnNames(tableData);
 
-    for (let col in tableData[0]) {
-      if (col === "primary_key") {
-        primaryKey = tableData[0][col];
-      } else {
-        columnNames.push(col);
-      }
+    if (table != null) {
+      buildTableHeader(table, columnNames);
+      populateTable(table, tableData, columnNames);
     }
+    updateModificationFields();
+  }
+  await loadVisiblePages();
+}
 
-    if (primaryKey != "") {
-      columnNames.splice(columnNames.indexOf(primaryKey), 1)
-      columnNames.unshift(primaryKey)
-    }
+/**
+ * Loads the next page of the current table and adds its rows to the end of the table.
+ *
+ * @return whether a page was loaded
+ */
+async function loadNextPage() : Promise<boolean> {
+  const table : HTMLTableElement | null = document.querySelector("table");
+  if (nextCursor === null || loadingPage || table == null) {
+    return false;
+  }
 
-    if (table != null) {
+  loadingPage = true;
+  const tbName : string = currentTable;
+  try {
+    const page : tablePage = await fetchPage(tbName, nextCursor);
+    if (currentTable !== tbName || !table.isConnected) {
+      return false;
+    }
+    tableData = tableData.concat(page.rows);
+    nextCursor = page.next_cursor;
+    if (addColumnNames(page.rows)) {
+      // a column that was null in every earlier row needs a header of its own, so redraw
+      removeChildren(table);
       buildTableHeader(table, columnNames);
       populateTable(table, tableData, columnNames);
+      updateModificationFields();
+    } else {
+      populateTable(table, page.rows, columnNames);
+    }
+    return true;
+  } finally {
+    loadingPage = false;
+  }
+}
+
+/**
+ * Loads pages of the current table until its end is below the bottom of the window, or every
+ * row is loaded.
+ */
+async function loadVisiblePages() : Promise<void> {
+  const contentDiv : HTMLElement = document.getElementById('content') as HTMLElement;
+  while (contentDiv.getBoundingClientRect().bottom < window.innerHeight + SCROLL_MARGIN) {
+    if (!(await loadNextPage())) {
+      return;
     }
-    updateModificationFields();
   }
 }
 
+/**
+ * Adds the columns of some rows that are not yet in columnNames, with the primary key first.
+ *
+ * @param rows rows of the table
+ * @return whether any column was added
+ */
+function addColumnNames(rows : Array<tableObj>) : boolean {
+  const count : number = columnNames.length;
+  let primaryKey : String = "";
+
+  // null values are left out of a row, so every row is checked for column names
+  for (let obj of rows) {
+    for (let col in obj) {
+      if (col === "primary_key") {
+        primaryKey = obj[col];
+      } else if (col !== "_rowid" && !columnNames.includes(col)) {
+        columnNames.push(col);
+      }
+    }
+  }
+
+  if (primaryKey != "") {
+    columnNames.splice(columnNames.indexOf(primaryKey), 1)
+    columnNames.unshift(primaryKey)
+  }
+  return columnNames.length !== count;
+}
+
 /**
  * Constructs the header for a table.
  *
@@ -207,7 +324,8 @@ function populateTable(table : HTMLTableElement, data : Array<tableObj>, colName
     let row : HTMLTableRowElement = tableBody.insertRow();
     for (let name of colNames) {
       let td : HTMLTableCellElement = document.createElement('td');
-      td.innerHTML = obj[name.toString()];
+      const value : string | undefined = obj[name.toString()];
+      td.innerHTML = value === undefined ? '' : value;
       row.appendChild(td);
     }
   }
@@ -217,7 +335,9 @@ function populateTable(table : HTMLTableElement, data : Array<tableObj>, colName
  * Checks if a database has been loaded from the REPL.
  */
 async function checkLoadedFromREPL() {
-  const response = await (await fetch('http://127.0.0.1:4567/get_loaded')).json();
+  const response = await (await fetch('http://127.0.0.1:4567/get_loaded', {
+    headers: { "X-Session-Id": sessionId }
+  })).json();
   const regex =  /\/.+\..+/g;
   const fromREPL : string = response['from_repl'];
   const loaded : string = response['loaded']
@@ -234,7 +354,7 @@ async function checkLoadedFromREPL() {
     const response = await fetch('http://127.0.0.1:4567/get_db', {
       method: 'post',
       body: JSON.stringify(reqBody),
-      headers: { "Access-Control-Allow-Origin":"*" }
+      headers: { "Access-Control-Allow-Origin":"*", "X-Session-Id": sessionId }
     });
 
     currentDB = dbName;
@@ -360,15 +480,22 @@ function main() {
   const tbClearButton : HTMLElement = document.getElementById('clear-table') as HTMLElement;
   tbClearButton.addEventListener('click', () => {
     const contentDiv : HTMLElement = document.getElementById('content') as HTMLElement;
+    currentTable = '';
+    nextCursor = null;
     removeChildren(contentDiv)
   });
 
+  window.addEventListener('scroll', loadVisiblePages);
+  window.addEventListener('resize', loadVisiblePages);
+
   const modSelector : HTMLSelectElement = document.getElementById('modification-selector') as HTMLSelectElement;
   modSelector.addEventListener('change', updateModificationFields);
 
 
   const demoBtn : HTMLButtonElement = document.getElementById('demo-btn') as HTMLButtonElement;
-  demoBtn.addEventListener('click', () => fetch('http://127.0.0.1:4567/demo'));
+  demoBtn.addEventListener('click', () => fetch('http://127.0.0.1:4567/demo', {
+    headers: { "X-Session-Id": sessionId }
+  }));
 
   setInterval(checkLoadedFromREPL, 1000);
 }